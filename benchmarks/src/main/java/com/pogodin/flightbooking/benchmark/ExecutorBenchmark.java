@@ -0,0 +1,125 @@
+package com.pogodin.flightbooking.benchmark;
+
+import com.pogodin.flightbooking.BookingAction;
+import com.pogodin.flightbooking.OperationResult;
+import com.pogodin.flightbooking.entity.BookingRequest;
+import com.pogodin.flightbooking.entity.FlightSeatsMap;
+import com.pogodin.flightbooking.server.FlightExecutor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 10k concurrent clients sending the booking requests to 1000 flights, every client waits for the answer
+ * and thinks before the next request, every applied request waits for the store.
+ * The clients are served by the fixed pool of platform threads with the lock per flight,
+ * or every client has its own virtual thread and the requests go through the per-flight mailboxes.
+ * The score is the time all the clients need to get all their answers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExecutorBenchmark {
+    private static final int CLIENTS = 10_000;
+    private static final int REQUESTS_PER_CLIENT = 10;
+    private static final int FLIGHTS = 1_000;
+    private static final int PLATFORM_THREADS = 200;
+    private static final long STORE_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    // time the client needs to send the next request after the answer, like the network round trip
+    @Param({"0", "500"})
+    public long thinkMicros;
+
+    private String[] flightIds;
+    private FlightSeatsMap[] seatMaps;
+    private ExecutorService platformPool;
+    private ExecutorService virtualThreads;
+    private FlightExecutor flightExecutor;
+
+    @Setup
+    public void setUp() {
+        flightIds = new String[FLIGHTS];
+        seatMaps = new FlightSeatsMap[FLIGHTS];
+        for (int i = 0; i < FLIGHTS; i++) {
+            flightIds[i] = "F" + i;
+            seatMaps[i] = new FlightSeatsMap(20, 8);
+        }
+        platformPool = Executors.newFixedThreadPool(PLATFORM_THREADS);
+        virtualThreads = Executors.newVirtualThreadPerTaskExecutor();
+        flightExecutor = new FlightExecutor((flightId, request) -> apply(Integer.parseInt(flightId, 1, flightId.length(), 10), request));
+    }
+
+    @TearDown
+    public void tearDown() {
+        platformPool.shutdownNow();
+        virtualThreads.shutdownNow();
+        flightExecutor.close();
+    }
+
+    @Benchmark
+    public void platformPoolWithFlightLocks() throws InterruptedException {
+        runClients(platformPool, (flight, request) -> {
+            synchronized (seatMaps[flight]) {
+                return apply(flight, request);
+            }
+        });
+    }
+
+    @Benchmark
+    public void virtualThreadsWithMailboxes() throws InterruptedException {
+        runClients(virtualThreads, (flight, request) -> flightExecutor.process(flightIds[flight], request));
+    }
+
+    private interface Client {
+        OperationResult send(int flight, BookingRequest request);
+    }
+
+    private void runClients(ExecutorService executor, Client client) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(CLIENTS);
+        for (int c = 0; c < CLIENTS; c++) {
+            final int clientId = c;
+            executor.execute(() -> {
+                for (int r = 0; r < REQUESTS_PER_CLIENT; r++) {
+                    if (thinkMicros > 0) {
+                        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(thinkMicros));
+                    }
+                    int flight = (clientId * 31 + r * 7) % FLIGHTS;
+                    client.send(flight, new BookingRequest(BookingAction.BOOK, (char) ('A' + r), clientId % 8, 1));
+                }
+                done.countDown();
+            });
+        }
+        done.await();
+    }
+
+    /**
+     * Booking the seat, or canceling it if it is booked already, and waiting for the store
+     */
+    private OperationResult apply(int flight, BookingRequest request) {
+        FlightSeatsMap seatMap = seatMaps[flight];
+        OperationResult result = seatMap.bookSeat(request.row(), request.seat(), request.passengers());
+        if (!result.isSuccess()) {
+            result = seatMap.cancelBook(request.row(), request.seat(), request.passengers());
+        }
+        LockSupport.parkNanos(STORE_NANOS);
+        return result;
+    }
+}
@@ -0,0 +1,70 @@
+package com.pogodin.flightbooking.benchmark;
+
+import com.pogodin.flightbooking.entity.FlightSeatsMap;
+import com.pogodin.flightbooking.operations.FileOperations;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading and saving the seat map save-file for several plane sizes, in the CSV and the binary format
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileOperationsBenchmark {
+
+    // rows x seats in a row
+    @Param({"20x8", "26x64", "26x512"})
+    public String planeSize;
+
+    @Param({".csv", ".bin"})
+    public String extension;
+
+    private FlightSeatsMap seatMap;
+    private File file;
+
+    @Setup
+    public void setUp() throws IOException {
+        String[] size = planeSize.split("x");
+        int rows = Integer.parseInt(size[0]);
+        int seats = Integer.parseInt(size[1]);
+        seatMap = new FlightSeatsMap(rows, seats);
+        for (int i = 0; i < rows; i++) {
+            seatMap.bookSeat((char) ('A' + i), i % seats, 1);
+        }
+        file = File.createTempFile("benchmark_booking", extension);
+        FileOperations.getInstance().saveBookingMap(seatMap, file.getPath());
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public FlightSeatsMap load() {
+        return FileOperations.getInstance().loadBookingMap(file.getPath());
+    }
+
+    @Benchmark
+    public void save() {
+        FileOperations.getInstance().saveBookingMap(seatMap, file.getPath());
+    }
+}
@@ -0,0 +1,66 @@
+package com.pogodin.flightbooking.benchmark;
+
+import com.pogodin.flightbooking.BookingAction;
+import com.pogodin.flightbooking.entity.BookingRequest;
+import com.pogodin.flightbooking.operations.BookingJournal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durable appends to the booking journal from many threads, every append returns after its record is forced to the disk.
+ * With the batch of 1 every record is forced on its own, with the bigger batches the records of the concurrent
+ * appends are forced together.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Threads(32)
+@Fork(1)
+public class GroupCommitBenchmark {
+    private static final BookingRequest REQUEST = new BookingRequest(BookingAction.BOOK, 'A', 0, 1);
+
+    @Param({"1", "256"})
+    public int maxBatchSize;
+
+    // how long the writer waits for more appends before forcing the batch
+    @Param({"0", "200"})
+    public long maxWaitMicros;
+
+    private Path journalPath;
+    private BookingJournal journal;
+
+    @Setup
+    public void setUp() throws IOException {
+        journalPath = File.createTempFile("benchmark_booking", ".journal").toPath();
+        journal = new BookingJournal(journalPath, maxBatchSize, maxWaitMicros);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(journalPath);
+    }
+
+    @Benchmark
+    public void append() {
+        journal.append(REQUEST);
+    }
+}
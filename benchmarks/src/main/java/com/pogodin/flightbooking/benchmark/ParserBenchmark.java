@@ -0,0 +1,50 @@
+package com.pogodin.flightbooking.benchmark;
+
+import com.pogodin.flightbooking.entity.BookingRequest;
+import com.pogodin.flightbooking.exception.MalformedRequestException;
+import com.pogodin.flightbooking.operations.BookingProcessor;
+import com.pogodin.flightbooking.operations.CommandParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of the command line into the booking request, for the valid and the malformed commands
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    @Param({"BOOK A0 4", "CANCEL T7 1", "BOOK ANY 3", "FLY A1 2", "BOOK A0 -1"})
+    public String command;
+
+    private final BookingProcessor bookingProcessor = new BookingProcessor("benchmark_parser.csv", 20, 8);
+    private final CommandParser commandParser = new CommandParser();
+
+    @Benchmark
+    public BookingRequest terminalToBookingRequest() {
+        try {
+            return bookingProcessor.terminalToBookingRequest(command);
+        } catch (MalformedRequestException e) {
+            return null;
+        }
+    }
+
+    @Benchmark
+    public int commandParser() {
+        return commandParser.parse(command) == CommandParser.Status.OK ? commandParser.getPassengers() : -1;
+    }
+}
@@ -0,0 +1,63 @@
+package com.pogodin.flightbooking.benchmark;
+
+import com.pogodin.flightbooking.BookingAction;
+import com.pogodin.flightbooking.OperationResult;
+import com.pogodin.flightbooking.entity.BookingRequest;
+import com.pogodin.flightbooking.operations.BookingProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end operation: the save-file is loaded, the seats are booked or canceled and the change is stored.
+ * Book and cancel of the same seats alternate, so every operation succeeds and is stored.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcessOperationBenchmark {
+    private static final BookingRequest BOOK = new BookingRequest(BookingAction.BOOK, 'C', 2, 3);
+    private static final BookingRequest CANCEL = new BookingRequest(BookingAction.CANCEL, 'C', 2, 3);
+
+    @Param({".csv", ".bin"})
+    public String extension;
+
+    private File file;
+    private BookingProcessor bookingProcessor;
+    private boolean booked;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = File.createTempFile("benchmark_process", extension);
+        file.delete();
+        bookingProcessor = new BookingProcessor(file.getPath(), 20, 8);
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public OperationResult processOperation() {
+        OperationResult result = bookingProcessor.processOperation(booked ? CANCEL : BOOK);
+        booked = !booked;
+        return result;
+    }
+}
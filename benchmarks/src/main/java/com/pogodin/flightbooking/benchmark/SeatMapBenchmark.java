@@ -0,0 +1,76 @@
+package com.pogodin.flightbooking.benchmark;
+
+import com.pogodin.flightbooking.OperationResult;
+import com.pogodin.flightbooking.entity.FlightSeatsMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Booking and canceling on the seat map in memory.
+ * Every book is followed by the cancel of the same seats, so the map keeps its initial occupancy.
+ * The two seats at the end of the row are booked, on the fragmented map they are the only two free seats together,
+ * so BOOK ANY goes over the single free seats before them. On the full map every book fails,
+ * which measures the failure path.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SeatMapBenchmark {
+    private static final int ROWS = 20;
+    private static final int SEATS = 8;
+
+    @Param({"empty", "fragmented", "full"})
+    public String occupancy;
+
+    private FlightSeatsMap seatMap;
+    private int row;
+
+    @Setup
+    public void setUp() {
+        seatMap = new FlightSeatsMap(ROWS, SEATS);
+        for (int i = 0; i < ROWS; i++) {
+            char rowLetter = (char) ('A' + i);
+            if ("full".equals(occupancy)) {
+                seatMap.bookSeat(rowLetter, 0, SEATS);
+            } else if ("fragmented".equals(occupancy)) {
+                // every second seat is taken, leaving single free seats and two free seats at the end
+                for (int seat = 1; seat < SEATS - 2; seat += 2) {
+                    seatMap.bookSeat(rowLetter, seat, 1);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public OperationResult bookAndCancel() {
+        char rowLetter = (char) ('A' + (row++ % ROWS));
+        OperationResult result = seatMap.bookSeat(rowLetter, SEATS - 2, 2);
+        if (result.isSuccess()) {
+            return seatMap.cancelBook(rowLetter, SEATS - 2, 2);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public OperationResult bookAnyAndCancel() {
+        OperationResult result = seatMap.bookAnySeats(2);
+        if (result.isSuccess()) {
+            return seatMap.cancelBook(result.getBooked().row(), result.getBooked().seat(), 2);
+        }
+        return result;
+    }
+}
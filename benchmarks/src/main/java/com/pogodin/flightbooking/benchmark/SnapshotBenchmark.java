@@ -0,0 +1,69 @@
+package com.pogodin.flightbooking.benchmark;
+
+import com.pogodin.flightbooking.OperationResult;
+import com.pogodin.flightbooking.entity.ConcurrentFlightSeatsMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The shared seat map of the server: the clients keep booking and canceling on their own rows,
+ * while the background save keeps taking the snapshots of the whole map.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SnapshotBenchmark {
+    private static final int ROWS = 20;
+    private static final int SEATS = 8;
+
+    @State(Scope.Group)
+    public static class SharedMap {
+        final ConcurrentFlightSeatsMap seatMap = new ConcurrentFlightSeatsMap(ROWS, SEATS);
+        final AtomicInteger clients = new AtomicInteger();
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        private char row;
+
+        public char row(SharedMap shared) {
+            if (row == 0) {
+                row = (char) ('A' + shared.clients.getAndIncrement() % ROWS);
+            }
+            return row;
+        }
+    }
+
+    @Benchmark
+    @Group("bookWhileSaving")
+    @GroupThreads(3)
+    public OperationResult bookAndCancel(SharedMap shared, Client client) {
+        char row = client.row(shared);
+        OperationResult result = shared.seatMap.bookSeat(row, 0, 2);
+        if (result.isSuccess()) {
+            return shared.seatMap.cancelBook(row, 0, 2);
+        }
+        return result;
+    }
+
+    @Benchmark
+    @Group("bookWhileSaving")
+    @GroupThreads(1)
+    public boolean[][] snapshot(SharedMap shared) {
+        return shared.seatMap.getSnapshot();
+    }
+}
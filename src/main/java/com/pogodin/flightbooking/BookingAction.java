@@ -1,5 +1,24 @@
 package com.pogodin.flightbooking;
 
 public enum BookingAction {
-    BOOK, CANCEL
+    BOOK, CANCEL,
+    // BOOK ANY N, the seats for N passengers together are picked by the system
+    BOOK_ANY,
+    // the seats are held in memory for a while, the hold is confirmed into the booking, released or expires
+    HOLD, CONFIRM, RELEASE;
+
+    /**
+     * @return true for the actions on the holds, they are served only while the seat map stays in memory
+     */
+    public boolean isHold() {
+        return this == HOLD || this == CONFIRM || this == RELEASE;
+    }
+
+    /**
+     * @return true if the applied action changes the bookings and should be stored, false for the holds
+     *         kept in memory only
+     */
+    public boolean isStored() {
+        return this != HOLD && this != RELEASE;
+    }
 }
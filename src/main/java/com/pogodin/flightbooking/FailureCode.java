@@ -0,0 +1,35 @@
+package com.pogodin.flightbooking;
+
+/**
+ * Reason of the failed operation.
+ * The seat maps fail with the result preallocated for the code, see {@link OperationResult#failure(FailureCode)},
+ * the message is rendered only when the failure is logged, so failing costs nothing more than succeeding.
+ */
+public enum FailureCode {
+    // some of the requested seats are occupied
+    SEATS_TAKEN("No possible way to seat the customers together at this place and row"),
+    // no row has enough free seats together, on BOOK ANY
+    NO_SEATS_TOGETHER("No possible way to seat the customers together in any row"),
+    // some of the requested seats do not exist in the plane
+    OUT_OF_BOUNDS("The requested seats do not exist in the plane"),
+    // the seats to confirm or release are not held
+    NOT_HELD("The requested seats are not held"),
+    // the command could not be parsed
+    MALFORMED("The command is malformed"),
+    // the action is not supported by the seat map
+    UNSUPPORTED_ACTION("The operation is not yet supported"),
+    // the flight could not be loaded or saved
+    FLIGHT_UNAVAILABLE("The flight is not available"),
+    // the replica of the server does not change the seats
+    READ_ONLY("The replica serves only the reads");
+
+    private final String description;
+
+    FailureCode(String description) {
+        this.description = description;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+}
@@ -1,37 +1,443 @@
 package com.pogodin.flightbooking;
 
 import com.pogodin.flightbooking.entity.BookingRequest;
+import com.pogodin.flightbooking.entity.OffHeapSeatMaps;
+import com.pogodin.flightbooking.exception.BookingSaveFileException;
 import com.pogodin.flightbooking.exception.MalformedRequestException;
+import com.pogodin.flightbooking.operations.BatchImporter;
+import com.pogodin.flightbooking.operations.BatchProcessor;
+import com.pogodin.flightbooking.operations.BookingJournal;
 import com.pogodin.flightbooking.operations.BookingProcessor;
+import com.pogodin.flightbooking.operations.BookingStore;
+import com.pogodin.flightbooking.operations.Checkpointer;
+import com.pogodin.flightbooking.operations.CommandParser;
+import com.pogodin.flightbooking.operations.FileBookingStore;
+import com.pogodin.flightbooking.operations.FileOperations;
+import com.pogodin.flightbooking.operations.FlightRegistry;
+import com.pogodin.flightbooking.operations.JournalBookingStore;
+import com.pogodin.flightbooking.operations.SeatMapTombstone;
+import com.pogodin.flightbooking.server.BookingRouter;
+import com.pogodin.flightbooking.server.BookingServer;
+import com.pogodin.flightbooking.server.FollowerServer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 public class MainApp {
-    private static final Logger logger = LoggerFactory.getLogger(MainApp.class);
     private static final String FILE_NAME = "booking_the_flight.csv";
+    // -Dbooking.file=booking_the_flight.bin keeps the seat map in the compact binary save-file
+    private static final String FILE_PROPERTY = "booking.file";
     private static final Integer MAX_ROWS = 20;
     public static final Integer MAX_SEATS = 8;
+    private static final String BATCH_MODE = "BATCH";
+    private static final String IMPORT_MODE = "IMPORT";
+    private static final int IMPORT_OUTPUT_BUFFER = 1 << 16;
+    private static final String STDIN = "-";
+    private static final String SERVER_MODE = "SERVE";
+    private static final String FOLLOWER_MODE = "FOLLOW";
+    private static final String ROUTER_MODE = "ROUTE";
+    // the servers of the router are saved next to the save-file with this suffix
+    private static final String ROUTER_SERVERS_SUFFIX = ".servers";
+    private static final String CONVERT_MODE = "CONVERT";
+    private static final int DEFAULT_PORT = 7878;
+    private static final long PERSIST_INTERVAL_MILLIS = 1000;
+    // -Dbooking.store=journal appends every operation to the journal instead of rewriting the CSV file
+    private static final String STORE_PROPERTY = "booking.store";
+    private static final String JOURNAL_STORE = "journal";
+    // -Dbooking.checkpoint.operations=10000 -Dbooking.checkpoint.millis=60000 make the checkpoint of the journal
+    // after so many operations or so many milliseconds, whichever comes first
+    private static final String CHECKPOINT_OPERATIONS_PROPERTY = "booking.checkpoint.operations";
+    private static final String CHECKPOINT_MILLIS_PROPERTY = "booking.checkpoint.millis";
+    private static final int CHECKPOINT_EVERY_OPERATIONS = 10_000;
+    private static final long CHECKPOINT_EVERY_MILLIS = 60_000;
+    // -Dbooking.journal.batch=256 -Dbooking.journal.waitMicros=200 commit up to 256 concurrent operations
+    // with a single fsync, waiting up to 200 microseconds for them
+    private static final String JOURNAL_BATCH_PROPERTY = "booking.journal.batch";
+    private static final String JOURNAL_WAIT_PROPERTY = "booking.journal.waitMicros";
+    // -Dbooking.flights=flights.properties defines the plane size per flight id, E.G. LH123=26x6,
+    // other flights have the default size
+    private static final String FLIGHTS_PROPERTY = "booking.flights";
+    private static final int FLIGHT_SHARDS = 64;
+    private static final long FLIGHT_IDLE_MILLIS = 300_000;
+    private static Properties flightSizes;
+    // -Dbooking.offheap.flights=100000 keeps up to so many flights of the server off the heap,
+    // the flights should have up to 26 rows and up to 64 seats in a row
+    private static final String OFF_HEAP_FLIGHTS_PROPERTY = "booking.offheap.flights";
+    private static final int OFF_HEAP_MAX_ROWS = 26;
+    private static final int OFF_HEAP_MAX_SEATS = 64;
+    // -Dbooking.hold.seconds=120 releases the seats held by the HOLD command of the server after 2 minutes
+    private static final String HOLD_SECONDS_PROPERTY = "booking.hold.seconds";
+
+    /**
+     * The logger is created on the first message, so the successful CLI run does not initialize the logging at all
+     */
+    private static final class LoggerHolder {
+        private static final Logger LOGGER = LoggerFactory.getLogger(MainApp.class);
+    }
+
+    private static Logger logger() {
+        return LoggerHolder.LOGGER;
+    }
 
     public static void main(String[] args) {
-        OperationResult result = processLine(args, MAX_ROWS, MAX_SEATS, FILE_NAME);
+        String fileName = System.getProperty(FILE_PROPERTY, FILE_NAME);
+        if (args.length > 0 && BATCH_MODE.equals(args[0])) {
+            processBatch(args, MAX_ROWS, MAX_SEATS, fileName);
+            return;
+        }
+        if (args.length > 0 && IMPORT_MODE.equals(args[0])) {
+            processImport(args, MAX_ROWS, MAX_SEATS, fileName);
+            return;
+        }
+        if (args.length == 3 && CONVERT_MODE.equals(args[0])) {
+            convert(args[1], args[2]);
+            return;
+        }
+        if (args.length > 0 && SERVER_MODE.equals(args[0])) {
+            startServer(args, MAX_ROWS, MAX_SEATS, fileName);
+            return;
+        }
+        if (args.length > 1 && FOLLOWER_MODE.equals(args[0])) {
+            startFollower(args);
+            return;
+        }
+        if (args.length > 2 && ROUTER_MODE.equals(args[0])) {
+            startRouter(args, fileName);
+            return;
+        }
+        OperationResult result = args.length == 4
+                ? processFlightLine(args, fileName)
+                : processLine(args, MAX_ROWS, MAX_SEATS, fileName);
         if (!result.isSuccess()) {
-            logger.warn(result.getFailureReason());
+            logger().debug("Command {} failed with {}", String.join(" ", args), result.getFailureCode());
         }
-        System.out.println(result.isSuccess() ? "SUCCESS" : "FAIL");
+        System.out.println(result.toResponse());
     }
 
     static OperationResult processLine(String[] commandLineRequest, int rowNumber, int seatNumber, String safeFileName){
-        BookingProcessor bp = new BookingProcessor(safeFileName, rowNumber, seatNumber);
+        BookingProcessor bp = new BookingProcessor(bookingStore(safeFileName), rowNumber, seatNumber);
         try {
             BookingRequest bookingRequest = bp.terminalToBookingRequest(commandLineRequest);
             return bp.processOperation(bookingRequest);
         } catch (MalformedRequestException e) {
-            logger.error("Exception on command execution. Command: " + Arrays.toString(commandLineRequest), e);
-            return OperationResult.failure(e.getMessage());
+            logger().error("Exception on command execution. Command: " + Arrays.toString(commandLineRequest), e);
+            return OperationResult.failure(FailureCode.MALFORMED, e.getMessage());
+        }
+    }
+
+    /**
+     * The command prefixed with the flight id, E.G. LH123 BOOK A0 1, is applied to the save-file of that flight
+     */
+    static OperationResult processFlightLine(String[] commandLineRequest, String safeFileName) {
+        String flightId = commandLineRequest[0];
+        if (!CommandParser.validFlightId(flightId)) {
+            return OperationResult.failure(FailureCode.MALFORMED, "flight id " + flightId + " is not valid");
+        }
+        BookingProcessor bp = flightProcessor(flightId, safeFileName);
+        try {
+            BookingRequest bookingRequest = bp.terminalToBookingRequest(
+                    Arrays.copyOfRange(commandLineRequest, 1, commandLineRequest.length));
+            return bp.processOperation(bookingRequest);
+        } catch (MalformedRequestException e) {
+            logger().error("Exception on command execution. Command: " + Arrays.toString(commandLineRequest), e);
+            return OperationResult.failure(FailureCode.MALFORMED, e.getMessage());
         }
     }
 
+    /**
+     * Batch mode, the commands are read line by line from a file or from the standard input.
+     * Usage: BATCH [commands file or - for stdin] [save every N applied changes]
+     */
+    static void processBatch(String[] args, int rowNumber, int seatNumber, String safeFileName) {
+        String source = args.length > 1 ? args[1] : STDIN;
+        int flushEvery = 0;
+        if (args.length > 2) {
+            try {
+                flushEvery = Integer.parseInt(args[2]);
+            } catch (NumberFormatException nfe) {
+                logger().error("Batch save interval is not a valid integer: " + args[2], nfe);
+                System.out.println("FAIL");
+                return;
+            }
+        }
+
+        BookingProcessor bookingProcessor = new BookingProcessor(bookingStore(safeFileName), rowNumber, seatNumber);
+        BatchProcessor batchProcessor = new BatchProcessor(bookingProcessor, flushEvery);
+        try (BufferedReader reader = STDIN.equals(source)
+                ? new BufferedReader(new InputStreamReader(System.in))
+                : new BufferedReader(new FileReader(source))) {
+            batchProcessor.process(reader, System.out);
+        } catch (IOException e) {
+            logger().error("Exception on reading the batch commands from " + source, e);
+            System.out.println("FAIL");
+        }
+    }
+
+    /**
+     * Import mode, the same as the batch mode for the large files, the commands are read, applied
+     * and answered with the results and the saves by the separate stages running at the same time.
+     * Usage: IMPORT [commands file or - for stdin] [save every N applied changes]
+     */
+    static void processImport(String[] args, int rowNumber, int seatNumber, String safeFileName) {
+        String source = args.length > 1 ? args[1] : STDIN;
+        int flushEvery = 0;
+        if (args.length > 2) {
+            try {
+                flushEvery = Integer.parseInt(args[2]);
+            } catch (NumberFormatException nfe) {
+                logger().error("Import save interval is not a valid integer: " + args[2], nfe);
+                System.out.println("FAIL");
+                return;
+            }
+        }
+
+        BookingProcessor bookingProcessor = new BookingProcessor(bookingStore(safeFileName), rowNumber, seatNumber);
+        BatchImporter importer = new BatchImporter(bookingProcessor, flushEvery);
+        // the results are flushed by the importer at the end, not with every line
+        PrintStream output = new PrintStream(
+                new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), IMPORT_OUTPUT_BUFFER), false);
+        try (ReadableByteChannel input = STDIN.equals(source)
+                ? Channels.newChannel(System.in)
+                : FileChannel.open(Path.of(source))) {
+            importer.process(input, output);
+        } catch (IOException e) {
+            logger().error("Exception on reading the imported commands from " + source, e);
+            output.println("FAIL");
+        }
+        output.flush();
+    }
+
+    /**
+     * Server mode, the seat map is kept in memory and the commands are accepted on the local port.
+     * Usage: SERVE [port]
+     */
+    static void startServer(String[] args, int rowNumber, int seatNumber, String safeFileName) {
+        int port = DEFAULT_PORT;
+        if (args.length > 1) {
+            try {
+                port = Integer.parseInt(args[1]);
+            } catch (NumberFormatException nfe) {
+                logger().error("Server port is not a valid integer: " + args[1], nfe);
+                System.out.println("FAIL");
+                return;
+            }
+        }
+
+        BookingStore store = bookingStore(safeFileName);
+        BookingProcessor bookingProcessor = new BookingProcessor(store, rowNumber, seatNumber);
+        BookingServer server = store instanceof JournalBookingStore journalStore
+                ? new BookingServer(bookingProcessor,
+                        new Checkpointer(journalStore, checkpointOperations(),
+                                Long.getLong(CHECKPOINT_MILLIS_PROPERTY, CHECKPOINT_EVERY_MILLIS)), port)
+                : new BookingServer(bookingProcessor, port, PERSIST_INTERVAL_MILLIS);
+        Integer offHeapFlights = Integer.getInteger(OFF_HEAP_FLIGHTS_PROPERTY);
+        FlightRegistry flights = new FlightRegistry(
+                flightId -> flightProcessor(flightId, safeFileName), FLIGHT_SHARDS, FLIGHT_IDLE_MILLIS,
+                offHeapFlights != null
+                        ? new OffHeapSeatMaps(offHeapFlights, OFF_HEAP_MAX_ROWS, OFF_HEAP_MAX_SEATS)
+                        : null);
+        Long holdSeconds = Long.getLong(HOLD_SECONDS_PROPERTY);
+        if (holdSeconds != null) {
+            flights.setHoldMillis(TimeUnit.SECONDS.toMillis(holdSeconds));
+        }
+        flights.setStoredFlights(() -> storedFlights(safeFileName));
+        logger().info("Indexed the availability of " + flights.indexStoredFlights() + " stored flights");
+        server.setFlightRegistry(flights);
+        try {
+            server.start();
+        } catch (IOException e) {
+            logger().error("Exception on starting the booking server on port " + port, e);
+            System.out.println("FAIL");
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "booking-server-shutdown"));
+        System.out.println("LISTENING " + server.getLocalPort());
+    }
 
-}
\ No newline at end of file
+    /**
+     * Follower mode, the seat maps are copied from the server on the leader port and kept up to date,
+     * the read commands are accepted on the local port.
+     * Usage: FOLLOW leader port [port]
+     */
+    static void startFollower(String[] args) {
+        int leaderPort;
+        int port = 0;
+        try {
+            leaderPort = Integer.parseInt(args[1]);
+            if (args.length > 2) {
+                port = Integer.parseInt(args[2]);
+            }
+        } catch (NumberFormatException nfe) {
+            logger().error("Follower port is not a valid integer: " + String.join(" ", args), nfe);
+            System.out.println("FAIL");
+            return;
+        }
+
+        FollowerServer follower = new FollowerServer(leaderPort, port);
+        try {
+            follower.start();
+        } catch (IOException e) {
+            logger().error("Exception on starting the follower of the leader on port " + leaderPort, e);
+            System.out.println("FAIL");
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(follower::stop, "follower-shutdown"));
+        System.out.println("LISTENING " + follower.getLocalPort());
+    }
+
+    /**
+     * Router mode, the commands prefixed with the flight id are forwarded to the server owning the flight,
+     * the flights are spread over the servers by the consistent hashing of the flight id.
+     * Usage: ROUTE port server port [server port...]
+     * The servers are saved next to the save-file and loaded from there on the next start, see {@link BookingRouter}
+     */
+    static void startRouter(String[] args, String safeFileName) {
+        int port;
+        List<Integer> serverPorts = new ArrayList<>();
+        try {
+            port = Integer.parseInt(args[1]);
+            for (int i = 2; i < args.length; i++) {
+                serverPorts.add(Integer.parseInt(args[i]));
+            }
+        } catch (NumberFormatException nfe) {
+            logger().error("Router port is not a valid integer: " + String.join(" ", args), nfe);
+            System.out.println("FAIL");
+            return;
+        }
+
+        BookingRouter router = new BookingRouter(port, serverPorts, Path.of(safeFileName + ROUTER_SERVERS_SUFFIX));
+        try {
+            router.start();
+        } catch (IOException e) {
+            logger().error("Exception on starting the booking router on port " + port, e);
+            System.out.println("FAIL");
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(router::stop, "booking-router-shutdown"));
+        System.out.println("LISTENING " + router.getLocalPort());
+    }
+
+    /**
+     * Converting the save-file to another format picked by the extension, E.G. CONVERT booking.csv booking.bin
+     */
+    static void convert(String sourceFileName, String targetFileName) {
+        try {
+            FileOperations.getInstance().convertBookingMap(sourceFileName, targetFileName);
+            System.out.println("SUCCESS");
+        } catch (BookingSaveFileException e) {
+            logger().error("Exception on converting " + sourceFileName + " to " + targetFileName, e);
+            System.out.println("FAIL");
+        }
+    }
+
+    /**
+     * Processor of the flight with the save-file next to the default one, E.G. booking_the_flight-LH123.csv
+     */
+    static BookingProcessor flightProcessor(String flightId, String safeFileName) {
+        int extension = safeFileName.lastIndexOf('.');
+        String flightFileName = extension > 0
+                ? safeFileName.substring(0, extension) + "-" + flightId + safeFileName.substring(extension)
+                : safeFileName + "-" + flightId;
+
+        int rows = MAX_ROWS;
+        int seats = MAX_SEATS;
+        String size = flightSizes().getProperty(flightId);
+        if (size != null) {
+            String[] rowsAndSeats = size.trim().split("x");
+            try {
+                int flightRows = Integer.parseInt(rowsAndSeats[0]);
+                seats = Integer.parseInt(rowsAndSeats[1]);
+                rows = flightRows;
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                logger().warn("Plane size of the flight " + flightId + " is not in the form of ROWSxSEATS: " + size);
+            }
+        }
+        return new BookingProcessor(bookingStore(flightFileName), rows, seats);
+    }
+
+    /**
+     * Ids of the flights having the save-files next to the default one, see {@link #flightProcessor}.
+     * The flights moved away from here are left out, see {@link SeatMapTombstone}
+     */
+    static List<String> storedFlights(String safeFileName) {
+        Path safeFile = Path.of(safeFileName).toAbsolutePath();
+        String fileName = safeFile.getFileName().toString();
+        int extension = fileName.lastIndexOf('.');
+        String prefix = (extension > 0 ? fileName.substring(0, extension) : fileName) + "-";
+        String suffix = extension > 0 ? fileName.substring(extension) : "";
+        List<String> flightIds = new ArrayList<>();
+        List<String> droppedIds = new ArrayList<>();
+        try (Stream<Path> files = Files.list(safeFile.getParent())) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (!name.startsWith(prefix)) {
+                    continue;
+                }
+                // the flight id has no dots, the journal files add their suffix after the extension
+                int idEnd = name.indexOf('.', prefix.length());
+                String flightId = name.substring(prefix.length(), idEnd < 0 ? name.length() : idEnd);
+                if (!CommandParser.validFlightId(flightId)
+                        || !name.startsWith(suffix, prefix.length() + flightId.length())) {
+                    continue;
+                }
+                if (name.endsWith(SeatMapTombstone.SUFFIX)) {
+                    droppedIds.add(flightId);
+                } else if (!flightIds.contains(flightId)) {
+                    flightIds.add(flightId);
+                }
+            }
+        } catch (IOException e) {
+            throw new BookingSaveFileException("Exception on listing the flights next to " + safeFileName, e);
+        }
+        flightIds.removeAll(droppedIds);
+        return flightIds;
+    }
+
+    private static synchronized Properties flightSizes() {
+        if (flightSizes == null) {
+            flightSizes = new Properties();
+            String flightsFile = System.getProperty(FLIGHTS_PROPERTY);
+            if (flightsFile != null) {
+                try (Reader reader = new FileReader(flightsFile)) {
+                    flightSizes.load(reader);
+                } catch (IOException e) {
+                    logger().error("Exception on reading the flights from " + flightsFile, e);
+                }
+            }
+        }
+        return flightSizes;
+    }
+
+    private static int checkpointOperations() {
+        return Integer.getInteger(CHECKPOINT_OPERATIONS_PROPERTY, CHECKPOINT_EVERY_OPERATIONS);
+    }
+
+    static BookingStore bookingStore(String safeFileName) {
+        if (JOURNAL_STORE.equals(System.getProperty(STORE_PROPERTY))) {
+            return new JournalBookingStore(safeFileName, checkpointOperations(),
+                    Integer.getInteger(JOURNAL_BATCH_PROPERTY, BookingJournal.DEFAULT_MAX_BATCH_SIZE),
+                    Long.getLong(JOURNAL_WAIT_PROPERTY, 0L));
+        }
+        return new FileBookingStore(safeFileName);
+    }
+}
@@ -1,31 +1,94 @@
 package com.pogodin.flightbooking;
 
+import com.pogodin.flightbooking.entity.BookingRequest;
+
 /**
  * represents a result of an operation
  */
 public class OperationResult {
-    private static final OperationResult SUCCESS_OPERATION = new OperationResult(true, "");
-    private final boolean operationIsSuccess;
-    private final String failureReason;
+    private static final OperationResult SUCCESS_OPERATION = new OperationResult(null, null, null);
+    private static final OperationResult[] FAILURES = new OperationResult[FailureCode.values().length];
+
+    static {
+        for (FailureCode code : FailureCode.values()) {
+            FAILURES[code.ordinal()] = new OperationResult(code, null, null);
+        }
+    }
+
+    // null on success
+    private final FailureCode failureCode;
+    // details of the failure known at the edges, E.G. the exception message, null if there are none
+    private final String failureDetail;
+    // seats picked by the system for the operation, E.G. on BOOK ANY
+    private final BookingRequest booked;
 
-    private OperationResult(boolean operationIsSuccess, String failureReason) {
-        this.operationIsSuccess = operationIsSuccess;
-        this.failureReason = failureReason;
+    private OperationResult(FailureCode failureCode, String failureDetail, BookingRequest booked) {
+        this.failureCode = failureCode;
+        this.failureDetail = failureDetail;
+        this.booked = booked;
     }
 
     public static OperationResult success(){
         return SUCCESS_OPERATION;
     }
 
-    public static OperationResult failure(String reason) {
-        return new OperationResult(false, reason);
+    /**
+     * @param booked the booking of the seats picked by the system, in the form of the exact BOOK request
+     */
+    public static OperationResult success(BookingRequest booked) {
+        return new OperationResult(null, null, booked);
+    }
+
+    /**
+     * @return the preallocated result of the failure, nothing is allocated
+     */
+    public static OperationResult failure(FailureCode code) {
+        return FAILURES[code.ordinal()];
+    }
+
+    /**
+     * @param detail details of the failure added to the message of the code, E.G. the exception message
+     */
+    public static OperationResult failure(FailureCode code, String detail) {
+        return new OperationResult(code, detail, null);
     }
 
     public boolean isSuccess() {
-        return operationIsSuccess;
+        return failureCode == null;
+    }
+
+    /**
+     * @return the reason of the failure, null on success
+     */
+    public FailureCode getFailureCode() {
+        return failureCode;
     }
 
+    /**
+     * @return the message of the failure rendered from the code and the details, empty on success
+     */
     public String getFailureReason() {
-        return failureReason;
+        if (failureCode == null) {
+            return "";
+        }
+        return failureDetail == null ? failureCode.getDescription() : failureCode.getDescription() + ": " + failureDetail;
+    }
+
+    public BookingRequest getBooked() {
+        return booked;
+    }
+
+    /**
+     * Response line for the client: SUCCESS or FAIL.
+     * If the system picked the seats, they are reported after SUCCESS as the first seat and number of seats, E.G.
+     * "SUCCESS C2 4" for C2, C3, C4 and C5.
+     *
+     * @return the response line
+     */
+    public String toResponse() {
+        if (failureCode != null) {
+            return "FAIL";
+        }
+        return booked == null ? "SUCCESS" : "SUCCESS " + booked.row() + booked.seat() + " " + booked.passengers();
     }
 }
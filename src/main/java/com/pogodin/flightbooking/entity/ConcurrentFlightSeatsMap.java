@@ -0,0 +1,356 @@
+package com.pogodin.flightbooking.entity;
+
+import com.pogodin.flightbooking.BookingAction;
+import com.pogodin.flightbooking.FailureCode;
+import com.pogodin.flightbooking.OperationResult;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Stores the seat map inside the plane and could be shared between threads without locks.
+ * Every row is a single word with one bit per seat, so a plane could have up to 64 seats in a row.
+ * Booking and canceling a run of seats is a single compare-and-set of the row,
+ * either all the seats of the run change or none of them, and a seat is never booked twice.
+ * The threads changing different rows never retry because of each other.
+ * \b
+ * The version of the whole map is built only when it is read, see {@link #currentVersion()}.
+ * The length of the longest run of free seats of every row is kept next to the map, so BOOK ANY skips the rows
+ * without a long enough run, see {@link #bookAnySeats(int)}.
+ */
+public class ConcurrentFlightSeatsMap implements VersionedSeatMap {
+    // Number of letters in english
+    private static final int MAX_FEASIBLE_ROW_NUMBER = 26;
+    private static final int MAX_FEASIBLE_ROW_SIZE = Long.SIZE;
+
+    // the change of the row is handed to the listener in three steps
+    private static final int PENDING = 0;
+    private static final int LISTENING = 1;
+    private static final int LISTENED = 2;
+    private static final VarHandle LISTENER_STATE;
+
+    static {
+        try {
+            LISTENER_STATE = MethodHandles.lookup().findVarHandle(Row.class, "listenerState", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Occupied seats map, the latest state of every row. A is zero index, B first, etc.
+     */
+    private final AtomicReferenceArray<Row> rows;
+
+    /**
+     * Length of the longest run of free seats in every row, updated by the thread that changed the row
+     * right after the change. Could lag behind the row for a moment, so it only tells which rows to look at.
+     */
+    private final AtomicIntegerArray largestFreeRuns;
+
+    // rows are from A to Z
+    private final char lastRow;
+    private final int seatsInARow;
+    // set before the map is shared between the threads
+    private SeatChangeListener changeListener;
+
+    /**
+     * State of the row after one of its changes, replaced as a whole by the next change.
+     * Seat N of the row is the bit N of the word, the bit is set when the seat is occupied.
+     */
+    private static final class Row {
+        final long word;
+        // number of the changes of the row made so far
+        final long changes;
+        final BookingAction action;
+        final int seat;
+        final int passengers;
+        // the state this change replaced, kept until the change is handed to the listener
+        volatile Row previous;
+        volatile int listenerState;
+
+        Row(long word, long changes, BookingAction action, int seat, int passengers, Row previous) {
+            this.word = word;
+            this.changes = changes;
+            this.action = action;
+            this.seat = seat;
+            this.passengers = passengers;
+            this.previous = previous;
+            this.listenerState = previous != null ? PENDING : LISTENED;
+        }
+    }
+
+    public ConcurrentFlightSeatsMap(int rowsNumber, int seatsInRow) {
+        if (rowsNumber > MAX_FEASIBLE_ROW_NUMBER) {
+            throw new IllegalArgumentException("No feasible way to create the plane map with " + rowsNumber + " rows");
+        }
+        if (seatsInRow > MAX_FEASIBLE_ROW_SIZE) {
+            throw new IllegalArgumentException(
+                    "No feasible way to create the concurrent plane map with " + seatsInRow + " seats in a row");
+        }
+        this.rows = new AtomicReferenceArray<>(rowsNumber);
+        this.largestFreeRuns = new AtomicIntegerArray(rowsNumber);
+        this.lastRow = (char) ('A' + (rowsNumber - 1));
+        this.seatsInARow = seatsInRow;
+        Row empty = new Row(0, 0, null, 0, 0, null);
+        for (int i = 0; i < rowsNumber; i++) {
+            rows.set(i, empty);
+            largestFreeRuns.set(i, seatsInRow);
+        }
+    }
+
+    public ConcurrentFlightSeatsMap(boolean[][] occupiedMap) {
+        this(occupiedMap.length, occupiedMap.length == 0 ? 0 : occupiedMap[0].length);
+        if (occupiedMap.length == 0 || occupiedMap[0].length == 0) {
+            throw new IllegalArgumentException("Occupied map cannot be an empty array");
+        }
+        for (int i = 0; i < occupiedMap.length; i++) {
+            long rowWord = 0;
+            for (int j = 0; j < Math.min(seatsInARow, occupiedMap[i].length); j++) {
+                if (occupiedMap[i][j]) {
+                    rowWord |= 1L << j;
+                }
+            }
+            rows.set(i, new Row(rowWord, 0, null, 0, 0, null));
+            largestFreeRuns.set(i, largestFreeRun(rowWord));
+        }
+    }
+
+    /**
+     * Book the run of seats atomically. The row is re-read and the compare-and-set is retried
+     * only when another thread changed the same row in between.
+     */
+    @Override
+    public OperationResult bookSeat(char row, int seat, int passengers) {
+        if (!validRun(row, seat, passengers)) {
+            return OperationResult.failure(FailureCode.OUT_OF_BOUNDS);
+        }
+
+        int rowIndex = row - 'A';
+        long mask = runMask(seat, passengers);
+        Row current;
+        do {
+            current = rows.get(rowIndex);
+            if ((current.word & mask) != 0) {
+                return OperationResult.failure(FailureCode.SEATS_TAKEN);
+            }
+        } while (!publish(rowIndex, current, current.word | mask, BookingAction.BOOK, seat, passengers));
+
+        changed(rowIndex);
+        return OperationResult.success();
+    }
+
+    /**
+     * Picking the smallest run of free seats the passengers fit in.
+     * Only the rows with a long enough run by the free-run index are searched.
+     * If another thread changes the picked row before the compare-and-set, the search is repeated.
+     */
+    @Override
+    public OperationResult bookAnySeats(int passengers) {
+        while (passengers > 0 && passengers <= seatsInARow) {
+            int bestRow = -1;
+            int bestSeat = -1;
+            Row bestRowState = null;
+            int bestRun = Integer.MAX_VALUE;
+            for (int i = 0; i < rows.length() && bestRun > passengers; i++) {
+                if (largestFreeRuns.get(i) < passengers) {
+                    continue;
+                }
+                Row current = rows.get(i);
+                long rowWord = current.word;
+                int seat = 0;
+                while (seat < seatsInARow) {
+                    int runStart = seat + Long.numberOfTrailingZeros(~rowWord >>> seat);
+                    if (runStart >= seatsInARow) {
+                        break;
+                    }
+                    int runEnd = Math.min(seatsInARow, runStart + Long.numberOfTrailingZeros(rowWord >>> runStart));
+                    int run = runEnd - runStart;
+                    if (run >= passengers && run < bestRun) {
+                        bestRow = i;
+                        bestSeat = runStart;
+                        bestRowState = current;
+                        bestRun = run;
+                    }
+                    seat = runEnd;
+                }
+            }
+
+            if (bestRow < 0) {
+                break;
+            }
+            long rowWord = bestRowState.word | runMask(bestSeat, passengers);
+            if (publish(bestRow, bestRowState, rowWord, BookingAction.BOOK, bestSeat, passengers)) {
+                changed(bestRow);
+                return OperationResult.success(
+                        new BookingRequest(BookingAction.BOOK, (char) ('A' + bestRow), bestSeat, passengers));
+            }
+        }
+        return OperationResult.failure(FailureCode.NO_SEATS_TOGETHER);
+    }
+
+    @Override
+    public OperationResult cancelBook(char row, int seat, int passengers) {
+        if (!validRun(row, seat, passengers)) {
+            return OperationResult.failure(FailureCode.OUT_OF_BOUNDS);
+        }
+
+        int rowIndex = row - 'A';
+        long mask = runMask(seat, passengers);
+        Row current;
+        do {
+            current = rows.get(rowIndex);
+        } while (!publish(rowIndex, current, current.word & ~mask, BookingAction.CANCEL, seat, passengers));
+
+        changed(rowIndex);
+        return OperationResult.success();
+    }
+
+    /**
+     * @param changeListener receiver of every change of the map, should be set before the map is shared
+     */
+    public void setChangeListener(SeatChangeListener changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    /**
+     * The version is built on read: the rows are collected until two collections in a row find the same rows,
+     * then nothing changed between them and the rows are of the same moment. The writers never wait for the readers,
+     * a reader retries only when a row changed while it was collecting.
+     * The number of the version is the number of the changes of all the rows.
+     */
+    @Override
+    public SeatMapVersion currentVersion() {
+        Row[] collected = collectRows();
+        while (true) {
+            Row[] again = collectRows();
+            if (sameRows(collected, again)) {
+                break;
+            }
+            collected = again;
+        }
+
+        long number = 0;
+        long[][] rowWords = new long[collected.length][];
+        for (int i = 0; i < collected.length; i++) {
+            number += collected[i].changes;
+            rowWords[i] = new long[]{collected[i].word};
+        }
+        return new SeatMapVersion(number, rowWords, seatsInARow);
+    }
+
+    @Override
+    public char getLastRow() {
+        return lastRow;
+    }
+
+    @Override
+    public int getSeatsInARow() {
+        return seatsInARow;
+    }
+
+    boolean seatAvailable(char row, int seat) {
+        return validSeat(row, seat) && (rows.get(row - 'A').word & (1L << seat)) == 0;
+    }
+
+    boolean validSeat(char row, int seat) {
+        return row >= 'A' && row <= lastRow && seat >= 0 && seat < seatsInARow;
+    }
+
+    private boolean validRun(char row, int seat, int passengers) {
+        return passengers >= 1 && validSeat(row, seat) && passengers <= seatsInARow - seat;
+    }
+
+    private Row[] collectRows() {
+        Row[] collected = new Row[rows.length()];
+        for (int i = 0; i < collected.length; i++) {
+            collected[i] = rows.get(i);
+        }
+        return collected;
+    }
+
+    private static boolean sameRows(Row[] collected, Row[] again) {
+        for (int i = 0; i < collected.length; i++) {
+            if (collected[i] != again[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Replacing the row with its next state, if the row is still of the read state.
+     * Without the listener the change is not kept for it, so the replaced states are not kept either.
+     *
+     * @return false if another thread changed the row after it was read
+     */
+    private boolean publish(int rowIndex, Row current, long rowWord, BookingAction action, int seat, int passengers) {
+        Row next = new Row(rowWord, current.changes + 1, action, seat, passengers,
+                changeListener != null ? current : null);
+        return rows.compareAndSet(rowIndex, current, next);
+    }
+
+    private void changed(int rowIndex) {
+        updateLargestFreeRun(rowIndex);
+        if (changeListener != null) {
+            handChanges(rowIndex);
+        }
+    }
+
+    /**
+     * Updating the free-run index after the change of the row. The row is read again after the update,
+     * so when another thread changed the row meanwhile, the run of the latest row is stored last.
+     */
+    private void updateLargestFreeRun(int rowIndex) {
+        long rowWord;
+        do {
+            rowWord = rows.get(rowIndex).word;
+            largestFreeRuns.set(rowIndex, largestFreeRun(rowWord));
+        } while (rows.get(rowIndex).word != rowWord);
+    }
+
+    private int largestFreeRun(long rowWord) {
+        long free = ~rowWord & runMask(0, seatsInARow);
+        int largest = 0;
+        // every step shortens every run of the free seats by one
+        while (free != 0) {
+            free &= free >>> 1;
+            largest++;
+        }
+        return largest;
+    }
+
+    /**
+     * Handing the changes of the row to the listener in the order they were made.
+     * The oldest change not handed yet is found through the replaced states, and only the thread that marks it
+     * as being handed calls the listener, so a change is handed once. Nobody waits: the thread finding another one
+     * handing a change of the row leaves, and that thread goes on with the later changes of the row after it.
+     */
+    private void handChanges(int rowIndex) {
+        while (true) {
+            Row oldest = rows.get(rowIndex);
+            if (oldest.listenerState == LISTENED) {
+                return;
+            }
+            Row previous;
+            while ((previous = oldest.previous) != null && previous.listenerState != LISTENED) {
+                oldest = previous;
+            }
+            if (!LISTENER_STATE.compareAndSet(oldest, PENDING, LISTENING)) {
+                return;
+            }
+            try {
+                changeListener.seatsChanged(oldest.action, (char) ('A' + rowIndex), oldest.seat, oldest.passengers);
+            } finally {
+                oldest.previous = null;
+                oldest.listenerState = LISTENED;
+            }
+        }
+    }
+
+    private static long runMask(int seat, int length) {
+        return (-1L >>> (Long.SIZE - length)) << seat;
+    }
+}
@@ -1,45 +1,87 @@
 package com.pogodin.flightbooking.entity;
 
+import com.pogodin.flightbooking.BookingAction;
+import com.pogodin.flightbooking.FailureCode;
 import com.pogodin.flightbooking.OperationResult;
 
 import java.util.Arrays;
 
 /**
  * Stores the seat map inside the plane
+ * Not thread safe, see {@link ConcurrentFlightSeatsMap} for the map shared between threads.
+ * The versions are created on request from the thread owning the map, E.G. for the background save,
+ * and copy only the rows changed since the previous version.
  */
-public class FlightSeatsMap {
+public class FlightSeatsMap implements VersionedSeatMap {
     // Number of letters in english
     private static final int MAX_FEASIBLE_ROW_NUMBER = 26;
 
+    // Number of seats packed into one word of the row
+    private static final int SEATS_IN_A_WORD = Long.SIZE;
+
     /**
-     * Occupied seats map represented as array
+     * Occupied seats map represented as bitset, one or more long words per row
      * First index represents the row. A is zero index, B first, etc.
-     * Second index represents the seat in the row. 1 is zero index, 2 is first index, etc.
+     * Seat N of the row is the bit N % 64 of the word N / 64, the bit is set when the seat is occupied.
      * Size of the array settled in the constructor
      */
-    private final boolean[][] occupiedMap;
+    private final long[][] occupiedRows;
+
+    /**
+     * Length of the longest run of free seats in every row, updated on every change of the row.
+     * Rows without a long enough run are skipped without looking at their seats.
+     */
+    private final int[] largestFreeRuns;
+
+    /**
+     * Held seats, the same bits are set in the occupied rows, so the held seats could not be booked.
+     * The holds are kept in memory only, the held seats are free in the versions and in the snapshots.
+     */
+    private final long[][] heldRows;
+
+    // the last created version, the rows changed after it and the number of changes made so far
+    private SeatMapVersion version;
+    private long changedRows;
+    private long changes;
 
     // rows are from A to Z
     private final char lastRow;
     private final int seatsInARow;
 
     public FlightSeatsMap(int rowsNumber, int seatsInRow) {
-        this.occupiedMap = new boolean[rowsNumber][seatsInRow];
         if (rowsNumber > MAX_FEASIBLE_ROW_NUMBER) {
             throw new IllegalArgumentException("No feasible way to create the plane map with " + rowsNumber + " rows");
         }
+        this.occupiedRows = new long[rowsNumber][wordsInARow(seatsInRow)];
+        this.heldRows = new long[rowsNumber][wordsInARow(seatsInRow)];
+        this.largestFreeRuns = new int[rowsNumber];
 
         this.lastRow = (char) ('A' + (rowsNumber - 1));
         this.seatsInARow = seatsInRow;
+        Arrays.fill(largestFreeRuns, seatsInRow);
+        this.version = new SeatMapVersion(0, copyRows(occupiedRows), seatsInRow);
     }
 
     public FlightSeatsMap(boolean[][] occupiedMap) {
         if (occupiedMap.length == 0 || occupiedMap[0].length == 0) {
             throw new IllegalArgumentException("Occupied map cannot be an empty array");
         }
-        this.lastRow = (char) ('A' + (occupiedMap.length));
+        this.lastRow = (char) ('A' + (occupiedMap.length - 1));
         this.seatsInARow = occupiedMap[0].length;
-        this.occupiedMap = Arrays.stream(occupiedMap).map(boolean[]::clone).toArray(boolean[][]::new);
+        this.occupiedRows = new long[occupiedMap.length][wordsInARow(seatsInARow)];
+        this.heldRows = new long[occupiedMap.length][wordsInARow(seatsInARow)];
+        for (int i = 0; i < occupiedMap.length; i++) {
+            for (int j = 0; j < Math.min(seatsInARow, occupiedMap[i].length); j++) {
+                if (occupiedMap[i][j]) {
+                    occupiedRows[i][j / SEATS_IN_A_WORD] |= 1L << j;
+                }
+            }
+        }
+        this.largestFreeRuns = new int[occupiedMap.length];
+        for (int i = 0; i < occupiedMap.length; i++) {
+            largestFreeRuns[i] = largestFreeRun(occupiedRows[i]);
+        }
+        this.version = new SeatMapVersion(0, copyRows(occupiedRows), seatsInARow);
     }
 
     /**
@@ -52,20 +94,62 @@ public class FlightSeatsMap {
      * @param passengers the number of passengers that would like to book a flight.
      * @return SUCCESS if the seat was booked successfully, FAIL otherwise.
      */
+    @Override
+    public OperationResult bookSeat(char row, int seat, int passengers) {
+        if (!validRun(row, seat, passengers)) {
+            return OperationResult.failure(FailureCode.OUT_OF_BOUNDS);
+        }
+        if (anyOccupied(occupiedRows[row - 'A'], seat, passengers)) {
+            return OperationResult.failure(FailureCode.SEATS_TAKEN);
+        }
+
+        changeRun(row - 'A', seat, passengers, true);
+        return OperationResult.success();
+    }
+
     public OperationResult bookSeat(Character row, int seat, int passengers) {
-        int rowIndex = row - 'A';
-        for (int i = 0; i < passengers; i++) {
-            if (!seatAvailable(row, seat + i)) {
-                return OperationResult.failure(
-                        "No possible way to seat " + passengers + " customers together at this place and row.");
+        return bookSeat(row.charValue(), seat, passengers);
+    }
+
+    /**
+     * Book the seats for the passengers together, the seats are picked by the system.
+     * The smallest run of free seats the passengers fit in is picked, so the large runs are kept for the large groups.
+     * On the equal runs the first row and the first seat are picked.
+     *
+     * @param passengers the number of passengers that would like to seat together
+     * @return SUCCESS with the booked seats, FAIL if there is no row with enough free seats together
+     */
+    @Override
+    public OperationResult bookAnySeats(int passengers) {
+        int bestRow = -1;
+        int bestSeat = -1;
+        int bestRun = Integer.MAX_VALUE;
+        // the exact fit cannot be improved, so the search stops on it
+        for (int i = 0; i < occupiedRows.length && bestRun > passengers && passengers > 0; i++) {
+            if (largestFreeRuns[i] < passengers) {
+                continue;
             }
-        }
 
-        for (int i = 0; i < passengers; i++) {
-            occupiedMap[rowIndex][seat + i] = true;
+            long[] rowWords = occupiedRows[i];
+            int seat = nextSeat(rowWords, 0, false);
+            while (seat < seatsInARow) {
+                int runEnd = nextSeat(rowWords, seat, true);
+                int run = runEnd - seat;
+                if (run >= passengers && run < bestRun) {
+                    bestRow = i;
+                    bestSeat = seat;
+                    bestRun = run;
+                }
+                seat = nextSeat(rowWords, runEnd, false);
+            }
         }
 
-        return OperationResult.success();
+        if (bestRow < 0) {
+            return OperationResult.failure(FailureCode.NO_SEATS_TOGETHER);
+        }
+        changeRun(bestRow, bestSeat, passengers, true);
+        return OperationResult.success(
+                new BookingRequest(BookingAction.BOOK, (char) ('A' + bestRow), bestSeat, passengers));
     }
 
     /**
@@ -77,42 +161,309 @@ public class FlightSeatsMap {
      * @param passengers the number of passengers that would like to book a flight
      * @return SUCCESS if the seat exists, FAIL if seat does not exist in this plane map
      */
+    @Override
+    public OperationResult cancelBook(char row, int seat, int passengers) {
+        if (!validRun(row, seat, passengers)) {
+            return OperationResult.failure(FailureCode.OUT_OF_BOUNDS);
+        }
+
+        changeRun(row - 'A', seat, passengers, false);
+        return OperationResult.success();
+    }
+
     public OperationResult cancelBook(Character row, Integer seat, int passengers) {
+        return cancelBook(row.charValue(), seat.intValue(), passengers);
+    }
+
+    /**
+     * Set the seats occupied, ignoring the existent state of the seats.
+     * Used for restoring the booking that was already made before, E.G. on the journal replay.
+     *
+     * @param row        the character representing a row in the plane
+     * @param seat       the first seat of the run
+     * @param passengers the number of passengers the seats were booked for
+     * @return SUCCESS if the seats exist, FAIL if seat does not exist in this plane map
+     */
+    public OperationResult restoreBooking(char row, int seat, int passengers) {
+        if (!validRun(row, seat, passengers)) {
+            return OperationResult.failure(FailureCode.OUT_OF_BOUNDS);
+        }
+
+        changeRun(row - 'A', seat, passengers, true);
+        return OperationResult.success();
+    }
+
+    @Override
+    public OperationResult holdSeats(char row, int seat, int passengers) {
+        if (!validRun(row, seat, passengers)) {
+            return OperationResult.failure(FailureCode.OUT_OF_BOUNDS);
+        }
         int rowIndex = row - 'A';
-        for (int i = 0; i < passengers; i++) {
-            if (!validSeat(row, seat + i)) {
-                return OperationResult.failure(
-                        "Not possible to cancel the requested seats." +
-                                " Seat " + row + (seat + i) + " does not exist");
-            }
+        if (anyOccupied(occupiedRows[rowIndex], seat, passengers)) {
+            return OperationResult.failure(FailureCode.SEATS_TAKEN);
         }
 
-        for (int i = 0; i < passengers; i++) {
-            occupiedMap[rowIndex][seat + i] = false;
+        // the bookings are not changed, so neither is the version
+        setRun(occupiedRows[rowIndex], seat, passengers, true);
+        setRun(heldRows[rowIndex], seat, passengers, true);
+        largestFreeRuns[rowIndex] = largestFreeRun(occupiedRows[rowIndex]);
+        return OperationResult.success();
+    }
+
+    @Override
+    public OperationResult confirmHold(char row, int seat, int passengers) {
+        if (!validRun(row, seat, passengers)) {
+            return OperationResult.failure(FailureCode.OUT_OF_BOUNDS);
         }
+        int rowIndex = row - 'A';
+        if (!allSet(heldRows[rowIndex], seat, passengers)) {
+            return OperationResult.failure(FailureCode.NOT_HELD);
+        }
+
+        // the seats stay occupied and become booked
+        setRun(heldRows[rowIndex], seat, passengers, false);
+        changedRows |= 1L << rowIndex;
+        changes++;
+        return OperationResult.success(new BookingRequest(BookingAction.BOOK, row, seat, passengers));
+    }
 
+    @Override
+    public OperationResult releaseHold(char row, int seat, int passengers) {
+        if (!validRun(row, seat, passengers)) {
+            return OperationResult.failure(FailureCode.OUT_OF_BOUNDS);
+        }
+        int rowIndex = row - 'A';
+        if (!anyOccupied(heldRows[rowIndex], seat, passengers)) {
+            return OperationResult.failure(FailureCode.NOT_HELD);
+        }
+
+        long[] occupiedWords = occupiedRows[rowIndex];
+        long[] heldWords = heldRows[rowIndex];
+        for (int word = 0; word < heldWords.length; word++) {
+            occupiedWords[word] &= ~(heldWords[word] & runMaskOfWord(word, seat, passengers));
+        }
+        setRun(heldWords, seat, passengers, false);
+        largestFreeRuns[rowIndex] = largestFreeRun(occupiedWords);
         return OperationResult.success();
     }
 
+    /**
+     * The version of the current state, the rows changed since the previous version are copied into it
+     * and the other rows are shared with the previous version. Should be called by the thread changing the map.
+     */
+    @Override
+    public SeatMapVersion currentVersion() {
+        if (version.getNumber() != changes) {
+            version = version.withRows(changes, occupiedRows, heldRows, changedRows);
+            changedRows = 0;
+        }
+        return version;
+    }
+
+    /**
+     * The map as it is stored, the held seats are free. Read from the rows themselves,
+     * so the version of the map is not built and the changed rows are left for {@link #currentVersion()}
+     */
+    @Override
     public boolean[][] getSnapshot() {
-        return occupiedMap;
+        boolean[][] snapshot = new boolean[occupiedRows.length][];
+        for (int i = 0; i < occupiedRows.length; i++) {
+            snapshot[i] = getRow((char) ('A' + i));
+        }
+        return snapshot;
+    }
+
+    /**
+     * The row as it is stored, the held seats are free
+     */
+    @Override
+    public boolean[] getRow(char row) {
+        long[] occupiedWords = occupiedRows[row - 'A'];
+        long[] heldWords = heldRows[row - 'A'];
+        boolean[] seats = new boolean[seatsInARow];
+        for (int i = 0; i < seatsInARow; i++) {
+            seats[i] = occupied(occupiedWords, i) && !occupied(heldWords, i);
+        }
+        return seats;
+    }
+
+    /**
+     * @return the largest number of free seats together in the row, 0 if there is no such row
+     */
+    public int getLargestFreeRun(char row) {
+        return row >= 'A' && row <= lastRow ? largestFreeRuns[row - 'A'] : 0;
+    }
+
+    @Override
+    public int getLargestFreeRun() {
+        int largest = 0;
+        for (int run : largestFreeRuns) {
+            largest = Math.max(largest, run);
+        }
+        return largest;
     }
 
+    @Override
+    public int getFreeSeats() {
+        int occupied = 0;
+        for (long[] rowWords : occupiedRows) {
+            for (long word : rowWords) {
+                occupied += Long.bitCount(word);
+            }
+        }
+        return occupiedRows.length * seatsInARow - occupied;
+    }
+
+    @Override
     public char getLastRow() {
         return lastRow;
     }
 
+    @Override
     public int getSeatsInARow() {
         return seatsInARow;
     }
 
+    boolean seatAvailable(char row, int seat) {
+        return validSeat(row, seat) && !occupied(occupiedRows[row - 'A'], seat);
+    }
+
     boolean seatAvailable(Character row, Integer seat) {
-        int rowIndex = row - 'A';
-        return validSeat(row, seat) && !occupiedMap[rowIndex][seat];
+        return seatAvailable(row.charValue(), seat.intValue());
+    }
+
+    boolean validSeat(char row, int seat) {
+        return row >= 'A' && row <= lastRow && seat >= 0 && seat < seatsInARow;
     }
 
     boolean validSeat(Character row, Integer seat) {
-        return row >= 'A' && row < lastRow && seat >= 0 && seat < seatsInARow;
+        return validSeat(row.charValue(), seat.intValue());
+    }
+
+    /**
+     * Verifying the run has at least one seat and all its seats exist
+     */
+    private boolean validRun(char row, int seat, int passengers) {
+        return passengers >= 1 && validSeat(row, seat) && passengers <= seatsInARow - seat;
+    }
+
+    private static int wordsInARow(int seatsInRow) {
+        return (seatsInRow + SEATS_IN_A_WORD - 1) / SEATS_IN_A_WORD;
+    }
+
+    private static boolean occupied(long[] rowWords, int seat) {
+        return (rowWords[seat / SEATS_IN_A_WORD] & (1L << seat)) != 0;
+    }
+
+    /**
+     * Verifying if any seat of the run is occupied, the run is checked by a single mask per word
+     */
+    private static boolean anyOccupied(long[] rowWords, int seat, int passengers) {
+        int end = seat + passengers;
+        for (int word = seat / SEATS_IN_A_WORD; seat < end; word++) {
+            int wordEnd = Math.min(end, (word + 1) * SEATS_IN_A_WORD);
+            if ((rowWords[word] & runMask(seat, wordEnd - seat)) != 0) {
+                return true;
+            }
+            seat = wordEnd;
+        }
+        return false;
+    }
+
+    /**
+     * Verifying if all the seats of the run are set, the run is checked by a single mask per word
+     */
+    private static boolean allSet(long[] rowWords, int seat, int passengers) {
+        int end = seat + passengers;
+        for (int word = seat / SEATS_IN_A_WORD; seat < end; word++) {
+            int wordEnd = Math.min(end, (word + 1) * SEATS_IN_A_WORD);
+            long mask = runMask(seat, wordEnd - seat);
+            if ((rowWords[word] & mask) != mask) {
+                return false;
+            }
+            seat = wordEnd;
+        }
+        return true;
+    }
+
+    /**
+     * @return the bits of the run within the word of the row
+     */
+    private static long runMaskOfWord(int word, int seat, int passengers) {
+        int wordStart = word * SEATS_IN_A_WORD;
+        int start = Math.max(seat, wordStart);
+        int end = Math.min(seat + passengers, wordStart + SEATS_IN_A_WORD);
+        return start >= end ? 0 : runMask(start, end - start);
+    }
+
+    private void changeRun(int rowIndex, int seat, int passengers, boolean occupied) {
+        setRun(occupiedRows[rowIndex], seat, passengers, occupied);
+        if (!occupied) {
+            // canceling the held seats ends the hold as well
+            setRun(heldRows[rowIndex], seat, passengers, false);
+        }
+        largestFreeRuns[rowIndex] = largestFreeRun(occupiedRows[rowIndex]);
+        changedRows |= 1L << rowIndex;
+        changes++;
+    }
+
+    private static long[][] copyRows(long[][] rows) {
+        long[][] copy = new long[rows.length][];
+        for (int i = 0; i < rows.length; i++) {
+            copy[i] = rows[i].clone();
+        }
+        return copy;
+    }
+
+    private int largestFreeRun(long[] rowWords) {
+        int largest = 0;
+        int seat = nextSeat(rowWords, 0, false);
+        while (seat < seatsInARow) {
+            int runEnd = nextSeat(rowWords, seat, true);
+            largest = Math.max(largest, runEnd - seat);
+            seat = nextSeat(rowWords, runEnd, false);
+        }
+        return largest;
+    }
+
+    /**
+     * Looking for the next seat in the given state, jumping over the whole words in the other state
+     *
+     * @return the first seat starting from the provided one in the given state, or the number of seats in a row
+     */
+    private int nextSeat(long[] rowWords, int from, boolean occupied) {
+        int word = from / SEATS_IN_A_WORD;
+        if (word >= rowWords.length) {
+            return seatsInARow;
+        }
+        long bits = (occupied ? rowWords[word] : ~rowWords[word]) & (-1L << from);
+        while (bits == 0) {
+            if (++word == rowWords.length) {
+                return seatsInARow;
+            }
+            bits = occupied ? rowWords[word] : ~rowWords[word];
+        }
+        return Math.min(seatsInARow, word * SEATS_IN_A_WORD + Long.numberOfTrailingZeros(bits));
+    }
+
+    private static void setRun(long[] rowWords, int seat, int passengers, boolean occupied) {
+        int end = seat + passengers;
+        for (int word = seat / SEATS_IN_A_WORD; seat < end; word++) {
+            int wordEnd = Math.min(end, (word + 1) * SEATS_IN_A_WORD);
+            long mask = runMask(seat, wordEnd - seat);
+            rowWords[word] = occupied ? rowWords[word] | mask : rowWords[word] & ~mask;
+            seat = wordEnd;
+        }
+    }
+
+    /**
+     * Mask of the run of seats inside one word
+     *
+     * @param seat   first seat of the run, only the position inside the word is used
+     * @param length number of seats, from 1 to 64
+     */
+    private static long runMask(int seat, int length) {
+        return (-1L >>> (SEATS_IN_A_WORD - length)) << seat;
     }
 
     /**
@@ -123,12 +474,12 @@ public class FlightSeatsMap {
     public String toString() {
         StringBuilder sb = new StringBuilder()
                 .append("row map in a readable format \n")
-                .append(lastRow - 'A').append(" rows and ").append(seatsInARow).append(" seats").append("\n")
+                .append(lastRow - 'A' + 1).append(" rows and ").append(seatsInARow).append(" seats").append("\n")
                 .append(drawPlaneNose(seatsInARow)).append("\n");
 
-        for (int i = 0; i < occupiedMap.length; i++) {
+        for (int i = 0; i < occupiedRows.length; i++) {
             for (int j = 0; j < seatsInARow; j++) {
-                if (occupiedMap[i][j]) {
+                if (occupied(occupiedRows[i], j)) {
                     sb.append('\u25A0'); // filled square
                 } else {
                     sb.append('\u25A1'); // empty square
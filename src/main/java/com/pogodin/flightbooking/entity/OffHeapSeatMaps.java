@@ -0,0 +1,578 @@
+package com.pogodin.flightbooking.entity;
+
+import com.pogodin.flightbooking.BookingAction;
+import com.pogodin.flightbooking.FailureCode;
+import com.pogodin.flightbooking.OperationResult;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+
+/**
+ * Seat maps of many flights packed into a single off-heap memory segment.
+ * Every flight takes a slot of the same size at the fixed offset: the header word with the plane size,
+ * followed by the occupancy bits of the rows, one or more long words per row like in {@link FlightSeatsMap},
+ * by the bits of the held seats of the rows in the same form, and by the length of the longest run of free seats
+ * of every row, so BOOK ANY skips the rows without a long enough run.
+ * The held seats are occupied as well, so they could not be booked, and are free in the snapshots.
+ * The heap keeps only the segment and the lock stripes, so the heap usage does not grow with the number of flights.
+ * Thread safe, operations on the flight are applied under the lock stripe of the flight.
+ * The memory is released on {@link #close()}, the seat maps could not be used after it.
+ */
+public class OffHeapSeatMaps implements AutoCloseable {
+    private static final int SEATS_IN_A_WORD = Long.SIZE;
+    private static final int MAX_FEASIBLE_ROW_NUMBER = 26;
+    private static final int LOCK_STRIPES = 1024;
+    // position of the occupancy bits of the rows within the slot, right after the header word
+    private static final long OCCUPIED_WORDS = Long.BYTES;
+
+    private final Arena arena = Arena.ofShared();
+    private final MemorySegment segment;
+    private final int capacity;
+    private final int maxRows;
+    private final int maxSeatsInARow;
+    private final long slotBytes;
+    // position of the bits of the held seats of the rows within the slot
+    private final long heldWordsOffset;
+    // position of the free-run index of the rows within the slot
+    private final long freeRunsOffset;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    // slots released by the removed flights, reused before the never used ones
+    private final int[] freeSlots;
+    private int freeSlotsCount;
+    private int usedSlots;
+
+    /**
+     * @param capacity       maximum number of flights kept at once
+     * @param maxRows        maximum number of rows of the flight, up to 26
+     * @param maxSeatsInARow maximum number of seats in a row of the flight
+     */
+    public OffHeapSeatMaps(int capacity, int maxRows, int maxSeatsInARow) {
+        if (maxRows > MAX_FEASIBLE_ROW_NUMBER || maxRows < 1 || maxSeatsInARow < 1 || capacity < 1) {
+            throw new IllegalArgumentException("No feasible way to keep " + capacity + " flights of "
+                    + maxRows + " rows and " + maxSeatsInARow + " seats");
+        }
+        this.capacity = capacity;
+        this.maxRows = maxRows;
+        this.maxSeatsInARow = maxSeatsInARow;
+        this.heldWordsOffset = OCCUPIED_WORDS + Long.BYTES * (long) maxRows * wordsInARow(maxSeatsInARow);
+        this.freeRunsOffset = heldWordsOffset + Long.BYTES * (long) maxRows * wordsInARow(maxSeatsInARow);
+        // the slots stay aligned to the long words
+        this.slotBytes = freeRunsOffset + Long.BYTES * (((long) maxRows * Integer.BYTES + Long.BYTES - 1) / Long.BYTES);
+        this.segment = arena.allocate(slotBytes * capacity, Long.BYTES);
+        this.freeSlots = new int[capacity];
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Adding the empty seat map of the flight
+     *
+     * @return the slot of the flight the other operations are called with
+     */
+    public int addFlight(int rowsNumber, int seatsInRow) {
+        checkPlaneSize(rowsNumber, seatsInRow);
+        int slot = tryAllocateSlot();
+        if (slot < 0) {
+            throw new IllegalStateException("No room for more than " + capacity + " flights");
+        }
+        initSlot(slot, rowsNumber, seatsInRow);
+        return slot;
+    }
+
+    /**
+     * Adding the flight with the copy of the provided seat map
+     *
+     * @return the slot of the flight the other operations are called with
+     */
+    public int addFlight(SeatMap seatMap) {
+        int slot = tryAddFlight(seatMap);
+        if (slot < 0) {
+            throw new IllegalStateException("No room for more than " + capacity + " flights");
+        }
+        return slot;
+    }
+
+    /**
+     * Adding the flight with the copy of the provided seat map if there is room for it
+     *
+     * @return the slot of the flight the other operations are called with, -1 if all the slots are taken
+     */
+    public int tryAddFlight(SeatMap seatMap) {
+        boolean[][] snapshot = seatMap.getSnapshot();
+        checkPlaneSize(snapshot.length, seatMap.getSeatsInARow());
+        int slot = tryAllocateSlot();
+        if (slot < 0) {
+            return -1;
+        }
+        initSlot(slot, snapshot.length, seatMap.getSeatsInARow());
+        synchronized (lock(slot)) {
+            for (int i = 0; i < snapshot.length; i++) {
+                for (int j = 0; j < snapshot[i].length; j++) {
+                    if (snapshot[i][j]) {
+                        setRun(slot, OCCUPIED_WORDS, i, j, 1, true);
+                    }
+                }
+                updateFreeRun(slot, i);
+            }
+        }
+        return slot;
+    }
+
+    /**
+     * Removing the flight, its slot is reused by the next added flight
+     */
+    public void removeFlight(int slot) {
+        checkSlot(slot);
+        synchronized (lock(slot)) {
+            segment.set(ValueLayout.JAVA_LONG, slot * slotBytes, 0);
+        }
+        synchronized (this) {
+            freeSlots[freeSlotsCount++] = slot;
+        }
+    }
+
+    /**
+     * See {@link FlightSeatsMap#bookSeat(char, int, int)}
+     */
+    public OperationResult bookSeat(int slot, char row, int seat, int passengers) {
+        checkSlot(slot);
+        synchronized (lock(slot)) {
+            if (!validRun(slot, row, seat, passengers)) {
+                return OperationResult.failure(FailureCode.OUT_OF_BOUNDS);
+            }
+            if (anySet(slot, OCCUPIED_WORDS, row - 'A', seat, passengers)) {
+                return OperationResult.failure(FailureCode.SEATS_TAKEN);
+            }
+            changeRun(slot, row - 'A', seat, passengers, true);
+            return OperationResult.success();
+        }
+    }
+
+    /**
+     * See {@link FlightSeatsMap#bookAnySeats(int)}, only the rows with a long enough run by the free-run index
+     * are searched
+     */
+    public OperationResult bookAnySeats(int slot, int passengers) {
+        checkSlot(slot);
+        synchronized (lock(slot)) {
+            int seatsInARow = seatsInARow(slot);
+            int bestRow = -1;
+            int bestSeat = -1;
+            int bestRun = Integer.MAX_VALUE;
+            for (int i = 0; i < rows(slot) && bestRun > passengers && passengers > 0; i++) {
+                if (freeRun(slot, i) < passengers) {
+                    continue;
+                }
+                int seat = nextSeat(slot, i, 0, false);
+                while (seat < seatsInARow) {
+                    int runEnd = nextSeat(slot, i, seat, true);
+                    int run = runEnd - seat;
+                    if (run >= passengers && run < bestRun) {
+                        bestRow = i;
+                        bestSeat = seat;
+                        bestRun = run;
+                    }
+                    seat = nextSeat(slot, i, runEnd, false);
+                }
+            }
+
+            if (bestRow < 0) {
+                return OperationResult.failure(FailureCode.NO_SEATS_TOGETHER);
+            }
+            changeRun(slot, bestRow, bestSeat, passengers, true);
+            return OperationResult.success(
+                    new BookingRequest(BookingAction.BOOK, (char) ('A' + bestRow), bestSeat, passengers));
+        }
+    }
+
+    /**
+     * See {@link FlightSeatsMap#cancelBook(char, int, int)}
+     */
+    public OperationResult cancelBook(int slot, char row, int seat, int passengers) {
+        checkSlot(slot);
+        synchronized (lock(slot)) {
+            if (!validRun(slot, row, seat, passengers)) {
+                return OperationResult.failure(FailureCode.OUT_OF_BOUNDS);
+            }
+            changeRun(slot, row - 'A', seat, passengers, false);
+            return OperationResult.success();
+        }
+    }
+
+    /**
+     * See {@link FlightSeatsMap#holdSeats(char, int, int)}
+     */
+    public OperationResult holdSeats(int slot, char row, int seat, int passengers) {
+        checkSlot(slot);
+        synchronized (lock(slot)) {
+            if (!validRun(slot, row, seat, passengers)) {
+                return OperationResult.failure(FailureCode.OUT_OF_BOUNDS);
+            }
+            int rowIndex = row - 'A';
+            if (anySet(slot, OCCUPIED_WORDS, rowIndex, seat, passengers)) {
+                return OperationResult.failure(FailureCode.SEATS_TAKEN);
+            }
+            setRun(slot, heldWordsOffset, rowIndex, seat, passengers, true);
+            changeRun(slot, rowIndex, seat, passengers, true);
+            return OperationResult.success();
+        }
+    }
+
+    /**
+     * See {@link FlightSeatsMap#confirmHold(char, int, int)}
+     */
+    public OperationResult confirmHold(int slot, char row, int seat, int passengers) {
+        checkSlot(slot);
+        synchronized (lock(slot)) {
+            if (!validRun(slot, row, seat, passengers)) {
+                return OperationResult.failure(FailureCode.OUT_OF_BOUNDS);
+            }
+            int rowIndex = row - 'A';
+            if (!allSet(slot, heldWordsOffset, rowIndex, seat, passengers)) {
+                return OperationResult.failure(FailureCode.NOT_HELD);
+            }
+            // the seats stay occupied and become booked
+            setRun(slot, heldWordsOffset, rowIndex, seat, passengers, false);
+            return OperationResult.success(new BookingRequest(BookingAction.BOOK, row, seat, passengers));
+        }
+    }
+
+    /**
+     * See {@link FlightSeatsMap#releaseHold(char, int, int)}
+     */
+    public OperationResult releaseHold(int slot, char row, int seat, int passengers) {
+        checkSlot(slot);
+        synchronized (lock(slot)) {
+            if (!validRun(slot, row, seat, passengers)) {
+                return OperationResult.failure(FailureCode.OUT_OF_BOUNDS);
+            }
+            int rowIndex = row - 'A';
+            if (!anySet(slot, heldWordsOffset, rowIndex, seat, passengers)) {
+                return OperationResult.failure(FailureCode.NOT_HELD);
+            }
+            // only the held seats of the run are set free, the booked ones stay booked
+            int end = seat + passengers;
+            for (int word = seat / SEATS_IN_A_WORD; seat < end; word++) {
+                int wordEnd = Math.min(end, (word + 1) * SEATS_IN_A_WORD);
+                long released = heldWord(slot, rowIndex, word) & runMask(seat, wordEnd - seat);
+                long occupiedOffset = wordOffset(slot, OCCUPIED_WORDS, rowIndex, word);
+                segment.set(ValueLayout.JAVA_LONG, occupiedOffset,
+                        segment.get(ValueLayout.JAVA_LONG, occupiedOffset) & ~released);
+                long heldOffset = wordOffset(slot, heldWordsOffset, rowIndex, word);
+                segment.set(ValueLayout.JAVA_LONG, heldOffset,
+                        segment.get(ValueLayout.JAVA_LONG, heldOffset) & ~released);
+                seat = wordEnd;
+            }
+            updateFreeRun(slot, rowIndex);
+            return OperationResult.success();
+        }
+    }
+
+    public boolean seatAvailable(int slot, char row, int seat) {
+        checkSlot(slot);
+        synchronized (lock(slot)) {
+            return validSeat(slot, row, seat) && nextSeat(slot, row - 'A', seat, true) != seat;
+        }
+    }
+
+    /**
+     * See {@link SeatMap#getLargestFreeRun()}
+     */
+    public int largestFreeRun(int slot) {
+        checkSlot(slot);
+        synchronized (lock(slot)) {
+            int largest = 0;
+            for (int i = 0; i < rows(slot); i++) {
+                largest = Math.max(largest, freeRun(slot, i));
+            }
+            return largest;
+        }
+    }
+
+    /**
+     * See {@link SeatMap#getFreeSeats()}, the held seats are not free
+     */
+    public int freeSeats(int slot) {
+        checkSlot(slot);
+        synchronized (lock(slot)) {
+            int seatsInARow = seatsInARow(slot);
+            int words = wordsInARow(seatsInARow);
+            int occupied = 0;
+            for (int i = 0; i < rows(slot); i++) {
+                for (int word = 0; word < words; word++) {
+                    occupied += Long.bitCount(word(slot, i, word));
+                }
+            }
+            return rows(slot) * seatsInARow - occupied;
+        }
+    }
+
+    public boolean[][] getSnapshot(int slot) {
+        checkSlot(slot);
+        synchronized (lock(slot)) {
+            boolean[][] snapshot = new boolean[rows(slot)][seatsInARow(slot)];
+            for (int i = 0; i < snapshot.length; i++) {
+                for (int j = 0; j < snapshot[i].length; j++) {
+                    // the held seats are free in the snapshot like in the stored map
+                    int word = j / SEATS_IN_A_WORD;
+                    snapshot[i][j] = (word(slot, i, word) & ~heldWord(slot, i, word) & (1L << j)) != 0;
+                }
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * @return the seat map view of the flight, the changes are applied to this storage
+     */
+    public SeatMap seatMap(int slot) {
+        checkSlot(slot);
+        return new FlightView(slot);
+    }
+
+    /**
+     * Releasing the off-heap memory of all the flights, the second call does nothing
+     */
+    @Override
+    public synchronized void close() {
+        if (arena.scope().isAlive()) {
+            arena.close();
+        }
+    }
+
+    /**
+     * Seat map of one flight of the storage
+     */
+    private class FlightView implements SeatMap {
+        private final int slot;
+
+        FlightView(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public OperationResult bookSeat(char row, int seat, int passengers) {
+            return OffHeapSeatMaps.this.bookSeat(slot, row, seat, passengers);
+        }
+
+        @Override
+        public OperationResult bookAnySeats(int passengers) {
+            return OffHeapSeatMaps.this.bookAnySeats(slot, passengers);
+        }
+
+        @Override
+        public OperationResult cancelBook(char row, int seat, int passengers) {
+            return OffHeapSeatMaps.this.cancelBook(slot, row, seat, passengers);
+        }
+
+        @Override
+        public OperationResult holdSeats(char row, int seat, int passengers) {
+            return OffHeapSeatMaps.this.holdSeats(slot, row, seat, passengers);
+        }
+
+        @Override
+        public OperationResult confirmHold(char row, int seat, int passengers) {
+            return OffHeapSeatMaps.this.confirmHold(slot, row, seat, passengers);
+        }
+
+        @Override
+        public OperationResult releaseHold(char row, int seat, int passengers) {
+            return OffHeapSeatMaps.this.releaseHold(slot, row, seat, passengers);
+        }
+
+        @Override
+        public boolean[][] getSnapshot() {
+            return OffHeapSeatMaps.this.getSnapshot(slot);
+        }
+
+        @Override
+        public int getLargestFreeRun() {
+            return largestFreeRun(slot);
+        }
+
+        @Override
+        public int getFreeSeats() {
+            return freeSeats(slot);
+        }
+
+        @Override
+        public char getLastRow() {
+            return (char) ('A' + rows(slot) - 1);
+        }
+
+        @Override
+        public int getSeatsInARow() {
+            return seatsInARow(slot);
+        }
+    }
+
+    private void checkPlaneSize(int rowsNumber, int seatsInRow) {
+        if (rowsNumber < 1 || rowsNumber > maxRows || seatsInRow < 1 || seatsInRow > maxSeatsInARow) {
+            throw new IllegalArgumentException("No feasible way to keep the plane map with "
+                    + rowsNumber + " rows and " + seatsInRow + " seats");
+        }
+    }
+
+    private void initSlot(int slot, int rowsNumber, int seatsInRow) {
+        synchronized (lock(slot)) {
+            long base = slot * slotBytes;
+            segment.asSlice(base, slotBytes).fill((byte) 0);
+            segment.set(ValueLayout.JAVA_LONG, base, ((long) rowsNumber << Integer.SIZE) | seatsInRow);
+            for (int i = 0; i < rowsNumber; i++) {
+                segment.set(ValueLayout.JAVA_INT, freeRunOffset(slot, i), seatsInRow);
+            }
+        }
+    }
+
+    /**
+     * @return the free slot, -1 if all the slots are taken
+     */
+    private synchronized int tryAllocateSlot() {
+        if (freeSlotsCount > 0) {
+            return freeSlots[--freeSlotsCount];
+        }
+        if (usedSlots == capacity) {
+            return -1;
+        }
+        return usedSlots++;
+    }
+
+    private void checkSlot(int slot) {
+        if (slot < 0 || slot >= capacity) {
+            throw new IllegalArgumentException("Flight slot " + slot + " does not exist");
+        }
+    }
+
+    private Object lock(int slot) {
+        return locks[slot & (LOCK_STRIPES - 1)];
+    }
+
+    private int rows(int slot) {
+        return (int) (segment.get(ValueLayout.JAVA_LONG, slot * slotBytes) >>> Integer.SIZE);
+    }
+
+    private int seatsInARow(int slot) {
+        return (int) segment.get(ValueLayout.JAVA_LONG, slot * slotBytes);
+    }
+
+    private boolean validSeat(int slot, char row, int seat) {
+        return row >= 'A' && row - 'A' < rows(slot) && seat >= 0 && seat < seatsInARow(slot);
+    }
+
+    private boolean validRun(int slot, char row, int seat, int passengers) {
+        return passengers >= 1 && validSeat(slot, row, seat) && passengers <= seatsInARow(slot) - seat;
+    }
+
+    /**
+     * @param area position of the bits within the slot, {@link #OCCUPIED_WORDS} or {@link #heldWordsOffset}
+     */
+    private long wordOffset(int slot, long area, int rowIndex, int word) {
+        return slot * slotBytes + area + Long.BYTES * ((long) rowIndex * wordsInARow(seatsInARow(slot)) + word);
+    }
+
+    private long word(int slot, int rowIndex, int word) {
+        return segment.get(ValueLayout.JAVA_LONG, wordOffset(slot, OCCUPIED_WORDS, rowIndex, word));
+    }
+
+    private long heldWord(int slot, int rowIndex, int word) {
+        return segment.get(ValueLayout.JAVA_LONG, wordOffset(slot, heldWordsOffset, rowIndex, word));
+    }
+
+    private boolean anySet(int slot, long area, int rowIndex, int seat, int passengers) {
+        int end = seat + passengers;
+        for (int word = seat / SEATS_IN_A_WORD; seat < end; word++) {
+            int wordEnd = Math.min(end, (word + 1) * SEATS_IN_A_WORD);
+            long mask = runMask(seat, wordEnd - seat);
+            if ((segment.get(ValueLayout.JAVA_LONG, wordOffset(slot, area, rowIndex, word)) & mask) != 0) {
+                return true;
+            }
+            seat = wordEnd;
+        }
+        return false;
+    }
+
+    private boolean allSet(int slot, long area, int rowIndex, int seat, int passengers) {
+        int end = seat + passengers;
+        for (int word = seat / SEATS_IN_A_WORD; seat < end; word++) {
+            int wordEnd = Math.min(end, (word + 1) * SEATS_IN_A_WORD);
+            long mask = runMask(seat, wordEnd - seat);
+            if ((segment.get(ValueLayout.JAVA_LONG, wordOffset(slot, area, rowIndex, word)) & mask) != mask) {
+                return false;
+            }
+            seat = wordEnd;
+        }
+        return true;
+    }
+
+    private void changeRun(int slot, int rowIndex, int seat, int passengers, boolean occupied) {
+        setRun(slot, OCCUPIED_WORDS, rowIndex, seat, passengers, occupied);
+        if (!occupied) {
+            // canceling the held seats ends the hold as well
+            setRun(slot, heldWordsOffset, rowIndex, seat, passengers, false);
+        }
+        updateFreeRun(slot, rowIndex);
+    }
+
+    private long freeRunOffset(int slot, int rowIndex) {
+        return slot * slotBytes + freeRunsOffset + (long) rowIndex * Integer.BYTES;
+    }
+
+    private int freeRun(int slot, int rowIndex) {
+        return segment.get(ValueLayout.JAVA_INT, freeRunOffset(slot, rowIndex));
+    }
+
+    private void updateFreeRun(int slot, int rowIndex) {
+        int seatsInARow = seatsInARow(slot);
+        int largest = 0;
+        int seat = nextSeat(slot, rowIndex, 0, false);
+        while (seat < seatsInARow) {
+            int runEnd = nextSeat(slot, rowIndex, seat, true);
+            largest = Math.max(largest, runEnd - seat);
+            seat = nextSeat(slot, rowIndex, runEnd, false);
+        }
+        segment.set(ValueLayout.JAVA_INT, freeRunOffset(slot, rowIndex), largest);
+    }
+
+    private void setRun(int slot, long area, int rowIndex, int seat, int passengers, boolean occupied) {
+        int end = seat + passengers;
+        for (int word = seat / SEATS_IN_A_WORD; seat < end; word++) {
+            int wordEnd = Math.min(end, (word + 1) * SEATS_IN_A_WORD);
+            long mask = runMask(seat, wordEnd - seat);
+            long offset = wordOffset(slot, area, rowIndex, word);
+            long bits = segment.get(ValueLayout.JAVA_LONG, offset);
+            segment.set(ValueLayout.JAVA_LONG, offset, occupied ? bits | mask : bits & ~mask);
+            seat = wordEnd;
+        }
+    }
+
+    /**
+     * @return the first seat starting from the provided one in the given state, or the number of seats in a row
+     */
+    private int nextSeat(int slot, int rowIndex, int from, boolean occupied) {
+        int seatsInARow = seatsInARow(slot);
+        int words = wordsInARow(seatsInARow);
+        int word = from / SEATS_IN_A_WORD;
+        if (word >= words) {
+            return seatsInARow;
+        }
+        long bits = (occupied ? word(slot, rowIndex, word) : ~word(slot, rowIndex, word)) & (-1L << from);
+        while (bits == 0) {
+            if (++word == words) {
+                return seatsInARow;
+            }
+            bits = occupied ? word(slot, rowIndex, word) : ~word(slot, rowIndex, word);
+        }
+        return Math.min(seatsInARow, word * SEATS_IN_A_WORD + Long.numberOfTrailingZeros(bits));
+    }
+
+    private static int wordsInARow(int seatsInRow) {
+        return (seatsInRow + SEATS_IN_A_WORD - 1) / SEATS_IN_A_WORD;
+    }
+
+    private static long runMask(int seat, int length) {
+        return (-1L >>> (SEATS_IN_A_WORD - length)) << seat;
+    }
+}
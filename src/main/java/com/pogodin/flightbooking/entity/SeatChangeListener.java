@@ -0,0 +1,21 @@
+package com.pogodin.flightbooking.entity;
+
+import com.pogodin.flightbooking.BookingAction;
+
+/**
+ * Receiver of the changes of the {@link ConcurrentFlightSeatsMap}, E.G. to stream them to the subscribers.
+ * The changes of the same row are received in the order they were made, one at a time,
+ * the changes of different rows could be received in any order and at the same time.
+ * Called by the thread that made the change, or by another thread that changed the same row meanwhile.
+ */
+@FunctionalInterface
+public interface SeatChangeListener {
+
+    /**
+     * @param action     BOOK or CANCEL
+     * @param row        the row of the changed seats
+     * @param seat       the first changed seat
+     * @param passengers number of the changed seats
+     */
+    void seatsChanged(BookingAction action, char row, int seat, int passengers);
+}
@@ -0,0 +1,98 @@
+package com.pogodin.flightbooking.entity;
+
+import com.pogodin.flightbooking.FailureCode;
+import com.pogodin.flightbooking.OperationResult;
+
+/**
+ * Seat map of the plane the booking operations are applied to.
+ * Rows are letters starting from A, seats in the row are numbers starting from 0.
+ */
+public interface SeatMap {
+
+    /**
+     * Book the run of seats starting from the seat, all the seats should exist and be free
+     *
+     * @param row        the character representing a row in the plane
+     * @param seat       the first seat of the run
+     * @param passengers the number of passengers that would like to seat together
+     * @return SUCCESS if the seats were booked, FAIL otherwise
+     */
+    OperationResult bookSeat(char row, int seat, int passengers);
+
+    /**
+     * Book the run of seats for the passengers together, the seats are picked by the map
+     *
+     * @param passengers the number of passengers that would like to seat together
+     * @return SUCCESS with the booked seats in {@link OperationResult#getBooked()}, FAIL if no row fits them
+     */
+    OperationResult bookAnySeats(int passengers);
+
+    /**
+     * Set the run of seats free, ignoring the existent state of the seats
+     *
+     * @param row        the character representing a row in the plane
+     * @param seat       the first seat of the run
+     * @param passengers the number of passengers whose seats are freed
+     * @return SUCCESS if the seats exist, FAIL otherwise
+     */
+    OperationResult cancelBook(char row, int seat, int passengers);
+
+    /**
+     * Hold the run of seats, the held seats could not be booked until the hold is confirmed or released.
+     * The hold is kept in memory only, the held seats stay free in the stored map.
+     *
+     * @return SUCCESS if the seats were held, FAIL otherwise, E.G. if the map does not support the holds
+     */
+    default OperationResult holdSeats(char row, int seat, int passengers) {
+        return OperationResult.failure(FailureCode.UNSUPPORTED_ACTION);
+    }
+
+    /**
+     * Book the held run of seats
+     *
+     * @return SUCCESS with the booking in {@link OperationResult#getBooked()}, FAIL if any seat of the run is not held
+     */
+    default OperationResult confirmHold(char row, int seat, int passengers) {
+        return OperationResult.failure(FailureCode.UNSUPPORTED_ACTION);
+    }
+
+    /**
+     * Set the held seats of the run free, the booked seats of the run stay booked
+     *
+     * @return SUCCESS if any seat of the run was held, FAIL otherwise
+     */
+    default OperationResult releaseHold(char row, int seat, int passengers) {
+        return OperationResult.failure(FailureCode.UNSUPPORTED_ACTION);
+    }
+
+    /**
+     * Copy of the seat map, true stands for the occupied seat
+     *
+     * @return the seat map as array of rows
+     */
+    boolean[][] getSnapshot();
+
+    /**
+     * Copy of the single row, true stands for the occupied seat
+     *
+     * @param row the existing row
+     * @return the seats of the row
+     */
+    default boolean[] getRow(char row) {
+        return getSnapshot()[row - 'A'];
+    }
+
+    /**
+     * @return the largest number of free seats together in any row
+     */
+    int getLargestFreeRun();
+
+    /**
+     * @return number of free seats in the whole plane
+     */
+    int getFreeSeats();
+
+    char getLastRow();
+
+    int getSeatsInARow();
+}
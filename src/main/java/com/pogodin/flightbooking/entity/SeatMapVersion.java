@@ -0,0 +1,126 @@
+package com.pogodin.flightbooking.entity;
+
+/**
+ * Immutable version of the seat map, taken from the {@link VersionedSeatMap}.
+ * Could be read from any thread without locks, every version is the state of the whole map between two operations.
+ * The next version of the {@link FlightSeatsMap} copies only the words of the changed rows,
+ * the other rows are shared with the previous version.
+ * Seat N of the row is the bit N % 64 of the word N / 64, the bit is set when the seat is occupied.
+ */
+public final class SeatMapVersion {
+    private static final int SEATS_IN_A_WORD = Long.SIZE;
+
+    private final long number;
+    // never changed once the version is created, the row arrays are shared between the versions
+    private final long[][] rows;
+    private final int seatsInARow;
+
+    SeatMapVersion(long number, long[][] rows, int seatsInARow) {
+        this.number = number;
+        this.rows = rows;
+        this.seatsInARow = seatsInARow;
+    }
+
+    /**
+     * @return number of the version, the number of changes of the map made before it
+     */
+    public long getNumber() {
+        return number;
+    }
+
+    public char getLastRow() {
+        return (char) ('A' + rows.length - 1);
+    }
+
+    public int getSeatsInARow() {
+        return seatsInARow;
+    }
+
+    /**
+     * @return true if the seat exists and is occupied in this version
+     */
+    public boolean isOccupied(char row, int seat) {
+        int rowIndex = row - 'A';
+        if (rowIndex < 0 || rowIndex >= rows.length || seat < 0 || seat >= seatsInARow) {
+            return false;
+        }
+        return (rows[rowIndex][seat / SEATS_IN_A_WORD] & (1L << seat)) != 0;
+    }
+
+    /**
+     * Copy of the seat map of this version, true stands for the occupied seat
+     *
+     * @return the seat map as array of rows
+     */
+    public boolean[][] getSnapshot() {
+        boolean[][] snapshot = new boolean[rows.length][seatsInARow];
+        for (int i = 0; i < rows.length; i++) {
+            long[] rowWords = rows[i];
+            for (int j = 0; j < seatsInARow; j++) {
+                snapshot[i][j] = (rowWords[j / SEATS_IN_A_WORD] & (1L << j)) != 0;
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * @return the largest number of free seats together in any row of this version
+     */
+    public int getLargestFreeRun() {
+        int largest = 0;
+        for (long[] rowWords : rows) {
+            int run = 0;
+            for (int j = 0; j < seatsInARow; j++) {
+                run = (rowWords[j / SEATS_IN_A_WORD] & (1L << j)) != 0 ? 0 : run + 1;
+                largest = Math.max(largest, run);
+            }
+        }
+        return largest;
+    }
+
+    /**
+     * @return number of free seats in this version
+     */
+    public int getFreeSeats() {
+        int occupied = 0;
+        for (long[] rowWords : rows) {
+            for (long word : rowWords) {
+                occupied += Long.bitCount(word);
+            }
+        }
+        return rows.length * seatsInARow - occupied;
+    }
+
+    int rowsNumber() {
+        return rows.length;
+    }
+
+    /**
+     * @return the words of the row, must not be changed
+     */
+    long[] rowWords(int rowIndex) {
+        return rows[rowIndex];
+    }
+
+    /**
+     * The version with the changed rows copied from the source, the other rows are shared with this version
+     *
+     * @param number      number of the new version
+     * @param sourceRows  the current rows of the map, the changed ones are copied
+     * @param heldRows    the seats of the source rows that are held and should stay free in the version
+     * @param changedRows bit N is set when the row N was changed after this version
+     * @return the new version
+     */
+    SeatMapVersion withRows(long number, long[][] sourceRows, long[][] heldRows, long changedRows) {
+        long[][] nextRows = rows.clone();
+        for (long changed = changedRows; changed != 0; changed &= changed - 1) {
+            int rowIndex = Long.numberOfTrailingZeros(changed);
+            long[] rowWords = sourceRows[rowIndex].clone();
+            for (int i = 0; i < rowWords.length; i++) {
+                rowWords[i] &= ~heldRows[rowIndex][i];
+            }
+            nextRows[rowIndex] = rowWords;
+        }
+        return new SeatMapVersion(number, nextRows, seatsInARow);
+    }
+}
@@ -0,0 +1,32 @@
+package com.pogodin.flightbooking.entity;
+
+/**
+ * Seat map providing its state as the immutable {@link SeatMapVersion}.
+ * The readers, E.G. the background save, take the current version and see the consistent state of the whole map
+ * without any locks, while the bookings continue.
+ */
+public interface VersionedSeatMap extends SeatMap {
+
+    /**
+     * @return the version with all the changes made so far, never changed afterwards
+     */
+    SeatMapVersion currentVersion();
+
+    /**
+     * Copy of the current version, all its rows are of the same moment
+     */
+    @Override
+    default boolean[][] getSnapshot() {
+        return currentVersion().getSnapshot();
+    }
+
+    @Override
+    default int getLargestFreeRun() {
+        return currentVersion().getLargestFreeRun();
+    }
+
+    @Override
+    default int getFreeSeats() {
+        return currentVersion().getFreeSeats();
+    }
+}
@@ -0,0 +1,7 @@
+package com.pogodin.flightbooking.exception;
+
+public class FlightUnavailableException extends RuntimeException {
+    public FlightUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,36 @@
+package com.pogodin.flightbooking.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event of a single booking operation applied to the seat map.
+ * Costs nothing unless the recording with the event enabled is running.
+ */
+@Name("com.pogodin.flightbooking.Booking")
+@Label("Booking")
+@Category("Flight Booking")
+@Description("Booking operation applied to the seat map")
+public class BookingEvent extends Event {
+
+    @Label("Action")
+    public String action;
+
+    @Label("Row")
+    public char row;
+
+    @Label("Seat")
+    public int seat;
+
+    @Label("Passengers")
+    public int passengers;
+
+    @Label("Success")
+    public boolean success;
+
+    @Label("Failure Code")
+    public String failureCode;
+}
@@ -0,0 +1,153 @@
+package com.pogodin.flightbooking.metrics;
+
+import com.pogodin.flightbooking.FailureCode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latencies of the booking operation stages, enabled with -Dbooking.metrics=true.
+ * When disabled, the timers do not even read the clock, so the stages cost nothing extra.
+ * When enabled, the metrics are registered as the com.pogodin.flightbooking:type=BookingMetrics MBean.
+ * The failed operations are counted by their {@link FailureCode}.
+ */
+public class BookingMetrics implements BookingMetricsMBean {
+    public static final boolean ENABLED = Boolean.getBoolean("booking.metrics");
+
+    private static final BookingMetrics INSTANCE = new BookingMetrics();
+    private static final double NANOS_IN_MICRO = 1_000.0;
+
+    /**
+     * Stages of the booking operation
+     */
+    public enum Stage {
+        // checking if the save-file exists
+        FILE_CHECK,
+        // loading the seat map
+        LOAD,
+        // booking or canceling the seats in memory
+        APPLY,
+        // storing the change
+        PERSIST,
+        // the whole operation
+        TOTAL
+    }
+
+    private final Map<Stage, LatencyHistogram> histograms = new EnumMap<>(Stage.class);
+    private final AtomicLongArray failures = new AtomicLongArray(FailureCode.values().length);
+
+    private BookingMetrics() {
+        for (Stage stage : Stage.values()) {
+            histograms.put(stage, new LatencyHistogram());
+        }
+        if (ENABLED) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(
+                        this, new ObjectName("com.pogodin.flightbooking:type=BookingMetrics"));
+            } catch (JMException e) {
+                // not a static field, the CLI loads this class on every run and should not initialize the logging
+                Logger logger = LoggerFactory.getLogger(BookingMetrics.class);
+                logger.warn("Booking metrics are not registered in JMX", e);
+            }
+        }
+    }
+
+    public static BookingMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return the current time to start the stage from, 0 if the metrics are disabled
+     */
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Recording the stage that started at the provided time
+     *
+     * @param stage   the finished stage
+     * @param started the time returned by {@link #start()} or by the previous stage
+     * @return the current time, so the next stage starts from it
+     */
+    public long record(Stage stage, long started) {
+        if (!ENABLED) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        histograms.get(stage).record(now - started);
+        return now;
+    }
+
+    /**
+     * Counting the failed operation by its reason
+     */
+    public void recordFailure(FailureCode code) {
+        if (ENABLED) {
+            failures.incrementAndGet(code.ordinal());
+        }
+    }
+
+    public long failures(FailureCode code) {
+        return failures.get(code.ordinal());
+    }
+
+    public LatencyHistogram histogram(Stage stage) {
+        return histograms.get(stage);
+    }
+
+    /**
+     * @return the one line summary of every stage, E.G. "LOAD count=10 p50=12.3us p99=20.1us p999=20.1us; ...",
+     *         followed by the failures, E.G. "; FAILED SEATS_TAKEN=3 OUT_OF_BOUNDS=1"
+     */
+    @Override
+    public String getSummary() {
+        StringBuilder sb = new StringBuilder();
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram histogram = histograms.get(stage);
+            if (!sb.isEmpty()) {
+                sb.append("; ");
+            }
+            sb.append(stage).append(" count=").append(histogram.count())
+                    .append(" p50=").append(micros(histogram.percentile(50))).append("us")
+                    .append(" p99=").append(micros(histogram.percentile(99))).append("us")
+                    .append(" p999=").append(micros(histogram.percentile(99.9))).append("us");
+        }
+        int failuresStart = sb.length();
+        for (FailureCode code : FailureCode.values()) {
+            long count = failures.get(code.ordinal());
+            if (count > 0) {
+                sb.append(sb.length() == failuresStart ? "; FAILED " : " ").append(code).append('=').append(count);
+            }
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public double getPercentileMicros(String stage, double percentile) {
+        return micros(histograms.get(Stage.valueOf(stage)).percentile(percentile));
+    }
+
+    @Override
+    public long getFailures(String code) {
+        return failures(FailureCode.valueOf(code));
+    }
+
+    @Override
+    public void reset() {
+        histograms.values().forEach(LatencyHistogram::reset);
+        for (int i = 0; i < failures.length(); i++) {
+            failures.set(i, 0);
+        }
+    }
+
+    private static double micros(long nanos) {
+        return Math.round(nanos / NANOS_IN_MICRO * 10) / 10.0;
+    }
+}
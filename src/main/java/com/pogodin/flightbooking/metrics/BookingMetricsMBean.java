@@ -0,0 +1,27 @@
+package com.pogodin.flightbooking.metrics;
+
+/**
+ * JMX view of the booking stage latencies
+ */
+public interface BookingMetricsMBean {
+
+    /**
+     * @return count, p50, p99 and p999 in microseconds of every stage
+     */
+    String getSummary();
+
+    /**
+     * @param stage      the stage name, E.G. LOAD
+     * @param percentile the percentile from 0 to 100
+     * @return the latency in microseconds
+     */
+    double getPercentileMicros(String stage, double percentile);
+
+    /**
+     * @param code the failure code, E.G. SEATS_TAKEN
+     * @return number of the operations failed with the code
+     */
+    long getFailures(String code);
+
+    void reset();
+}
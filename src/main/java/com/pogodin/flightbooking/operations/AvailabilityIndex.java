@@ -0,0 +1,98 @@
+package com.pogodin.flightbooking.operations;
+
+import com.pogodin.flightbooking.entity.SeatMap;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Index of the flights by the largest number of free seats together and by the number of free seats,
+ * E.G. to find the flights that still could seat 5 passengers together.
+ * The flights are kept in the buckets by the largest free run, every bucket is ordered by the free seats,
+ * so the search visits only the buckets of the long enough runs and the flights it finds,
+ * never the seat maps and never the other flights.
+ * Thread safe, the flights are updated in parallel and the search does not wait for the updates:
+ * the flight updated during the search is found in the state before or after the update.
+ */
+public class AvailabilityIndex {
+    private static final Comparator<Availability> BY_FREE_SEATS =
+            Comparator.comparingInt(Availability::freeSeats).thenComparing(Availability::flightId);
+
+    private final ConcurrentHashMap<String, Availability> flights = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Integer, ConcurrentSkipListSet<Availability>> buckets =
+            new ConcurrentSkipListMap<>();
+
+    private record Availability(String flightId, int largestFreeRun, int freeSeats) {
+    }
+
+    /**
+     * Updating the flight after its seat map was loaded or changed.
+     * The updates of the same flight should not run in parallel, E.G. they are made under the lock of the flight.
+     *
+     * @param flightId the flight id, E.G. LH123
+     * @param seatMap  the seat map of the flight
+     */
+    public void update(String flightId, SeatMap seatMap) {
+        update(flightId, seatMap.getLargestFreeRun(), seatMap.getFreeSeats());
+    }
+
+    /**
+     * See {@link #update(String, SeatMap)}
+     */
+    public void update(String flightId, int largestFreeRun, int freeSeats) {
+        Availability next = new Availability(flightId, largestFreeRun, freeSeats);
+        Availability previous = flights.put(flightId, next);
+        if (next.equals(previous)) {
+            return;
+        }
+        // added before removed, so the search never misses the flight
+        buckets.computeIfAbsent(largestFreeRun, run -> new ConcurrentSkipListSet<>(BY_FREE_SEATS)).add(next);
+        if (previous != null) {
+            buckets.get(previous.largestFreeRun()).remove(previous);
+        }
+    }
+
+    /**
+     * Removing the flight, E.G. after it was moved to another node
+     *
+     * @param flightId the flight id, E.G. LH123
+     */
+    public void remove(String flightId) {
+        Availability previous = flights.remove(flightId);
+        if (previous != null) {
+            buckets.get(previous.largestFreeRun()).remove(previous);
+        }
+    }
+
+    /**
+     * Finding the flights with enough free seats
+     *
+     * @param seatsTogether number of free seats the flight should have together in one row
+     * @param freeSeats     number of free seats the flight should have in total
+     * @return ids of the flights, the flights with the shortest fitting run and the fewest free seats first
+     */
+    public List<String> findFlights(int seatsTogether, int freeSeats) {
+        Availability fewestFreeSeats = new Availability("", 0, freeSeats);
+        // the flight updated during the search could be met in both buckets
+        Set<String> found = new LinkedHashSet<>();
+        for (ConcurrentSkipListSet<Availability> bucket : buckets.tailMap(seatsTogether).values()) {
+            for (Availability availability : bucket.tailSet(fewestFreeSeats)) {
+                found.add(availability.flightId());
+            }
+        }
+        return new ArrayList<>(found);
+    }
+
+    /**
+     * @return number of the indexed flights
+     */
+    public int size() {
+        return flights.size();
+    }
+}
@@ -0,0 +1,387 @@
+package com.pogodin.flightbooking.operations;
+
+import com.pogodin.flightbooking.FailureCode;
+import com.pogodin.flightbooking.OperationResult;
+import com.pogodin.flightbooking.entity.BookingRequest;
+import com.pogodin.flightbooking.entity.FlightSeatsMap;
+import com.pogodin.flightbooking.entity.SeatMapVersion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Applies a large file of booking commands, E.G. the bookings of a whole day, in the same way as the {@link BatchProcessor}:
+ * the same per-line SUCCESS/FAIL output, the same final seat map and the saves after the same lines.
+ * The work is split into three stages running at the same time:
+ * the reader reads the input in large chunks and parses the lines of a chunk,
+ * the calling thread applies the parsed commands to the seat map strictly in the input order,
+ * the writer prints the results and saves the versions of the seat map taken by the applying thread.
+ * \b
+ * The stages hand over the chunks through the bounded queues and the chunks are reused,
+ * so the reader waits once all the chunks are ahead of the slower stages and the memory stays bounded by the chunks.
+ * The lines are parsed straight from the bytes, so the commands should be in ASCII, like the command line ones.
+ * The throughput of every import is logged in lines per second.
+ */
+public class BatchImporter {
+    private static final Logger logger = LoggerFactory.getLogger(BatchImporter.class);
+    private static final int DEFAULT_CHUNK_BYTES = 1 << 20;
+    private static final int DEFAULT_CHUNKS = 4;
+    private static final int INITIAL_LINES = 1 << 12;
+
+    private final BookingProcessor bookingProcessor;
+    private final int flushEvery;
+    private final int chunkBytes;
+    private final int chunks;
+
+    /**
+     * Lines of the input read into one chunk, with their parsed commands and later with their results
+     */
+    private static final class Chunk {
+        private byte[] text;
+        // bytes of the text read so far, the last line could be incomplete until the next chunk is read
+        private int length;
+        private int lines;
+        // bounds of the trimmed non-empty lines in the text
+        private int[] starts = new int[INITIAL_LINES];
+        private int[] ends = new int[INITIAL_LINES];
+        // null for the malformed line, its status is kept instead
+        private BookingRequest[] requests = new BookingRequest[INITIAL_LINES];
+        private CommandParser.Status[] statuses = new CommandParser.Status[INITIAL_LINES];
+        private OperationResult[] results = new OperationResult[INITIAL_LINES];
+        // version of the seat map to save after the result of the line
+        private SeatMapVersion[] saves = new SeatMapVersion[INITIAL_LINES];
+        private boolean endOfInput;
+        private SeatMapVersion finalSave;
+        private IOException failure;
+
+        private Chunk(int bytes) {
+            this.text = new byte[bytes];
+        }
+
+        private void reset() {
+            length = 0;
+            lines = 0;
+            endOfInput = false;
+            finalSave = null;
+            failure = null;
+        }
+
+        /**
+         * Dropping the references to the requests, results and versions of the written chunk
+         */
+        private void clear() {
+            Arrays.fill(requests, 0, lines, null);
+            Arrays.fill(results, 0, lines, null);
+            Arrays.fill(saves, 0, lines, null);
+        }
+
+        private void addLine(int start, int end, BookingRequest request, CommandParser.Status status) {
+            if (lines == starts.length) {
+                int capacity = lines * 2;
+                starts = Arrays.copyOf(starts, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+                requests = Arrays.copyOf(requests, capacity);
+                statuses = Arrays.copyOf(statuses, capacity);
+                results = Arrays.copyOf(results, capacity);
+                saves = Arrays.copyOf(saves, capacity);
+            }
+            starts[lines] = start;
+            ends[lines] = end;
+            requests[lines] = request;
+            statuses[lines] = status;
+            lines++;
+        }
+
+        private String line(int index) {
+            return new String(text, starts[index], ends[index] - starts[index], StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * The line of the chunk seen by the parser without decoding it into a String
+     */
+    private static final class AsciiLine implements CharSequence {
+        private byte[] text;
+        private int start;
+        private int end;
+
+        private AsciiLine of(byte[] text, int start, int end) {
+            this.text = text;
+            this.start = start;
+            this.end = end;
+            return this;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (text[start + index] & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return new String(text, start + from, to - from, StandardCharsets.ISO_8859_1);
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(0, length()).toString();
+        }
+    }
+
+    /**
+     * @param bookingProcessor processor the commands are applied and saved with
+     * @param flushEvery       number of applied changes after which the seat map is saved,
+     *                         0 or less means the seat map is saved only at the end of the input
+     */
+    public BatchImporter(BookingProcessor bookingProcessor, int flushEvery) {
+        this(bookingProcessor, flushEvery, DEFAULT_CHUNK_BYTES, DEFAULT_CHUNKS);
+    }
+
+    /**
+     * @param chunkBytes size of the chunk the input is read with, grows for the longer lines
+     * @param chunks     number of the chunks in flight between the stages, at least 2
+     */
+    BatchImporter(BookingProcessor bookingProcessor, int flushEvery, int chunkBytes, int chunks) {
+        this.bookingProcessor = bookingProcessor;
+        this.flushEvery = flushEvery;
+        this.chunkBytes = Math.max(1, chunkBytes);
+        this.chunks = Math.max(2, chunks);
+    }
+
+    /**
+     * Reading the commands until the end of the input and applying them in order
+     *
+     * @param input  source of newline separated commands, E.G. the file channel
+     * @param output destination of the per-line SUCCESS/FAIL results
+     * @return number of commands that were applied successfully
+     */
+    public int process(ReadableByteChannel input, PrintStream output) throws IOException {
+        long started = System.nanoTime();
+        FlightSeatsMap seatMap = bookingProcessor.loadSeatMap();
+
+        BlockingQueue<Chunk> free = new ArrayBlockingQueue<>(chunks);
+        BlockingQueue<Chunk> parsed = new ArrayBlockingQueue<>(chunks);
+        BlockingQueue<Chunk> applied = new ArrayBlockingQueue<>(chunks);
+        for (int i = 0; i < chunks; i++) {
+            free.add(new Chunk(chunkBytes));
+        }
+        AtomicReference<RuntimeException> writeFailure = new AtomicReference<>();
+        Thread reader = new Thread(() -> read(input, free, parsed), "batch-import-reader");
+        Thread writer = new Thread(() -> write(output, applied, free, writeFailure), "batch-import-writer");
+        reader.setDaemon(true);
+        writer.setDaemon(true);
+        reader.start();
+        writer.start();
+
+        long lines = 0;
+        int appliedCount = 0;
+        int unsaved = 0;
+        IOException readFailure;
+        try {
+            while (true) {
+                Chunk chunk = parsed.take();
+                for (int i = 0; i < chunk.lines; i++) {
+                    BookingRequest request = chunk.requests[i];
+                    OperationResult result = request != null
+                            ? bookingProcessor.applyStoredOperation(seatMap, request)
+                            : OperationResult.failure(FailureCode.MALFORMED, chunk.statuses[i].getDescription());
+                    chunk.results[i] = result;
+                    if (result.isSuccess()) {
+                        appliedCount++;
+                        unsaved++;
+                        if (flushEvery > 0 && unsaved >= flushEvery) {
+                            chunk.saves[i] = seatMap.currentVersion();
+                            unsaved = 0;
+                        }
+                    }
+                }
+                lines += chunk.lines;
+                readFailure = chunk.failure;
+                if (chunk.endOfInput && readFailure == null && unsaved > 0) {
+                    chunk.finalSave = seatMap.currentVersion();
+                }
+                // the import stops once the seat map could not be saved, like the batch processor does
+                boolean end = chunk.endOfInput || writeFailure.get() != null;
+                chunk.endOfInput = end;
+                applied.put(chunk);
+                if (end) {
+                    break;
+                }
+            }
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Batch import is interrupted");
+        } finally {
+            reader.interrupt();
+            writer.interrupt();
+        }
+
+        if (writeFailure.get() != null) {
+            throw writeFailure.get();
+        }
+        if (readFailure != null) {
+            throw readFailure;
+        }
+        long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        logger.info("Imported " + lines + " lines, " + appliedCount + " applied, in " + millis + " ms: "
+                + lines * 1000 / millis + " lines/s");
+        return appliedCount;
+    }
+
+    /**
+     * The reader stage, filling the free chunks from the input and parsing their complete lines.
+     * The incomplete last line of the chunk is moved to the beginning of the next one.
+     */
+    private void read(ReadableByteChannel input, BlockingQueue<Chunk> free, BlockingQueue<Chunk> parsed) {
+        CommandParser parser = new CommandParser(true);
+        AsciiLine line = new AsciiLine();
+        try {
+            Chunk chunk = free.take();
+            chunk.reset();
+            while (true) {
+                boolean endOfInput = false;
+                try {
+                    endOfInput = fill(input, chunk);
+                } catch (IOException e) {
+                    chunk.failure = e;
+                }
+                if (chunk.failure != null) {
+                    chunk.endOfInput = true;
+                    parsed.put(chunk);
+                    return;
+                }
+
+                int lineStart = 0;
+                for (int i = 0; i < chunk.length; i++) {
+                    byte value = chunk.text[i];
+                    if (value == '\n' || value == '\r') {
+                        parseLine(chunk, lineStart, i, parser, line);
+                        lineStart = i + 1;
+                    }
+                }
+                if (endOfInput) {
+                    parseLine(chunk, lineStart, chunk.length, parser, line);
+                    chunk.endOfInput = true;
+                    parsed.put(chunk);
+                    return;
+                }
+                if (lineStart == 0 && chunk.lines == 0) {
+                    // the line is longer than the chunk
+                    chunk.text = Arrays.copyOf(chunk.text, chunk.text.length * 2);
+                    continue;
+                }
+
+                Chunk next = free.take();
+                next.reset();
+                int tail = chunk.length - lineStart;
+                if (next.text.length < tail) {
+                    next.text = new byte[chunk.text.length];
+                }
+                System.arraycopy(chunk.text, lineStart, next.text, 0, tail);
+                next.length = tail;
+                parsed.put(chunk);
+                chunk = next;
+            }
+        } catch (InterruptedException e) {
+            // the import is over, the applying thread stopped taking the chunks
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return true if the end of the input is reached
+     */
+    private static boolean fill(ReadableByteChannel input, Chunk chunk) throws IOException {
+        while (chunk.length < chunk.text.length) {
+            int read = input.read(ByteBuffer.wrap(chunk.text, chunk.length, chunk.text.length - chunk.length));
+            if (read < 0) {
+                return true;
+            }
+            chunk.length += read;
+        }
+        return false;
+    }
+
+    /**
+     * Adding the line to the chunk unless it is empty, the line is trimmed the same way the batch processor does it
+     */
+    private static void parseLine(Chunk chunk, int start, int end, CommandParser parser, AsciiLine line) {
+        while (start < end && chunk.text[start] <= ' ' && chunk.text[start] >= 0) {
+            start++;
+        }
+        while (end > start && chunk.text[end - 1] <= ' ' && chunk.text[end - 1] >= 0) {
+            end--;
+        }
+        if (start == end) {
+            return;
+        }
+        CommandParser.Status status = parser.parse(line.of(chunk.text, start, end));
+        chunk.addLine(start, end, status == CommandParser.Status.OK ? parser.toBookingRequest() : null, status);
+    }
+
+    /**
+     * The writer stage, printing the results and saving the seat map after the same lines as the batch processor.
+     * Once a save fails, the rest of the chunks are returned to the reader without printing and saving,
+     * until the applying thread stops.
+     */
+    private void write(PrintStream output, BlockingQueue<Chunk> applied, BlockingQueue<Chunk> free,
+                       AtomicReference<RuntimeException> failure) {
+        try {
+            while (true) {
+                Chunk chunk = applied.take();
+                if (failure.get() == null) {
+                    try {
+                        writeChunk(chunk, output);
+                    } catch (RuntimeException e) {
+                        logger.error("Exception on saving the seat map during the batch import", e);
+                        failure.set(e);
+                    }
+                }
+                chunk.clear();
+                boolean end = chunk.endOfInput;
+                free.put(chunk);
+                if (end) {
+                    output.flush();
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeChunk(Chunk chunk, PrintStream output) {
+        for (int i = 0; i < chunk.lines; i++) {
+            OperationResult result = chunk.results[i];
+            output.println(result.toResponse());
+            // the line is decoded from the chunk bytes only to be logged
+            if (!result.isSuccess() && logger.isDebugEnabled()) {
+                logger.debug("Command {} failed with {}", chunk.line(i), result.getFailureCode());
+            }
+            SeatMapVersion save = chunk.saves[i];
+            if (save != null) {
+                bookingProcessor.saveSeatMap(new FlightSeatsMap(save.getSnapshot()));
+            }
+        }
+        if (chunk.finalSave != null) {
+            bookingProcessor.saveSeatMap(new FlightSeatsMap(chunk.finalSave.getSnapshot()));
+        }
+    }
+}
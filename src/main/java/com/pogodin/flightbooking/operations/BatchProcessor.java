@@ -0,0 +1,84 @@
+package com.pogodin.flightbooking.operations;
+
+import com.pogodin.flightbooking.FailureCode;
+import com.pogodin.flightbooking.OperationResult;
+import com.pogodin.flightbooking.entity.FlightSeatsMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+
+/**
+ * Applies many booking commands against one seat map loaded once.
+ * Every line of the input is a separate command in the same form as the command line arguments, E.G. "BOOK A0 1".
+ * For every non-empty line SUCCESS or FAIL is printed, in the order of the input.
+ * The seat map is persisted every N applied changes and once at the end of the input.
+ */
+public class BatchProcessor {
+    private static final Logger logger = LoggerFactory.getLogger(BatchProcessor.class);
+
+    private final BookingProcessor bookingProcessor;
+    private final int flushEvery;
+    private final CommandParser parser = new CommandParser(true);
+
+    /**
+     * @param bookingProcessor processor the commands are parsed, applied and saved with
+     * @param flushEvery       number of applied changes after which the seat map is saved,
+     *                         0 or less means the seat map is saved only at the end of the input
+     */
+    public BatchProcessor(BookingProcessor bookingProcessor, int flushEvery) {
+        this.bookingProcessor = bookingProcessor;
+        this.flushEvery = flushEvery;
+    }
+
+    /**
+     * Reading the commands line by line until the end of the input and applying them in order
+     *
+     * @param input  source of newline separated commands
+     * @param output destination of the per-line SUCCESS/FAIL results
+     * @return number of commands that were applied successfully
+     */
+    public int process(BufferedReader input, PrintStream output) throws IOException {
+        FlightSeatsMap seatMap = bookingProcessor.loadSeatMap();
+        int applied = 0;
+        int unsaved = 0;
+
+        String line;
+        while ((line = input.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            OperationResult result = processCommand(seatMap, line);
+            output.println(result.toResponse());
+            if (!result.isSuccess()) {
+                logger.debug("Command {} failed with {}", line, result.getFailureCode());
+                continue;
+            }
+
+            applied++;
+            unsaved++;
+            if (flushEvery > 0 && unsaved >= flushEvery) {
+                bookingProcessor.saveSeatMap(seatMap);
+                unsaved = 0;
+            }
+        }
+
+        if (unsaved > 0) {
+            bookingProcessor.saveSeatMap(seatMap);
+        }
+        output.flush();
+        return applied;
+    }
+
+    private OperationResult processCommand(FlightSeatsMap seatMap, String line) {
+        CommandParser.Status status = parser.parse(line);
+        if (status != CommandParser.Status.OK) {
+            return OperationResult.failure(FailureCode.MALFORMED, status.getDescription());
+        }
+        return bookingProcessor.applyStoredOperation(seatMap, parser.toBookingRequest());
+    }
+}
@@ -0,0 +1,228 @@
+package com.pogodin.flightbooking.operations;
+
+import com.pogodin.flightbooking.entity.FlightSeatsMap;
+import com.pogodin.flightbooking.entity.SeatMap;
+import com.pogodin.flightbooking.exception.BookingSaveFileException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Compact binary save-file of the seat map, accessed through the memory mapped file.
+ * The file starts with the header: magic number, number of rows and number of seats in a row.
+ * Then every row takes two slots of the fixed size, the slot keeps the generation of the row,
+ * the row with one bit per seat, the bit is set when the seat is occupied, and the checksum of both.
+ * The row is loaded from the slot of the higher generation with the matching checksum.
+ * A single row is updated in place by writing the next generation into its other slot, without touching
+ * the rest of the file, so the write torn by a crash leaves the previous state of the row in the first slot.
+ * The whole seat map is written next to the save-file and replaces it at once, see {@link #save(SeatMap, Path)}.
+ */
+public class BinarySeatMapFile {
+    static final int MAGIC = 0x4642534D; // FBSM
+    static final int HEADER_SIZE = Integer.BYTES * 3;
+    // generation before the row bytes and checksum after them
+    static final int SLOT_OVERHEAD = Integer.BYTES * 2;
+    static final String TEMP_PREFIX = ".tmp-";
+
+    private BinarySeatMapFile() {}
+
+    /**
+     * Writing the whole seat map to the temp file next to the save-file, flushing it to the disk and replacing
+     * the save-file with it at once, a crash leaves either the old or the new save-file.
+     * The rename itself is flushed with the directory before returning.
+     */
+    public static void save(SeatMap seatMap, Path path) {
+        Path tempPath = path.resolveSibling(TEMP_PREFIX + path.getFileName());
+        write(seatMap, tempPath);
+        try {
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new BookingSaveFileException("Exception on replacing the seat map booking: " + path, e);
+        }
+        FileOperations.getInstance().force(path.toAbsolutePath().getParent());
+    }
+
+    private static void write(SeatMap seatMap, Path path) {
+        boolean[][] snapshot = seatMap.getSnapshot();
+        int seatsInARow = seatMap.getSeatsInARow();
+        int slotSize = slotSize(seatsInARow);
+        long size = HEADER_SIZE + (long) snapshot.length * 2 * slotSize;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(MAGIC).putInt(snapshot.length).putInt(seatsInARow);
+
+            byte[] rowBytes = new byte[bytesInARow(seatsInARow)];
+            for (int i = 0; i < snapshot.length; i++) {
+                pack(snapshot[i], rowBytes);
+                // the second slot stays empty until the row is updated
+                writeSlot(buffer, HEADER_SIZE + i * 2 * slotSize, i, 1, rowBytes);
+            }
+            buffer.force();
+        } catch (IOException e) {
+            throw new BookingSaveFileException(
+                    "Exception during the attempt on saving the seat map booking: " + path, e);
+        }
+    }
+
+    public static FlightSeatsMap load(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            verifyHeaderFits(channel, path);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int rows = readHeader(buffer, channel.size(), path);
+            int seatsInARow = buffer.getInt(Integer.BYTES * 2);
+            int slotSize = slotSize(seatsInARow);
+            byte[] rowBytes = new byte[bytesInARow(seatsInARow)];
+
+            boolean[][] occupiedMap = new boolean[rows][seatsInARow];
+            for (int i = 0; i < rows; i++) {
+                int rowOffset = HEADER_SIZE + i * 2 * slotSize;
+                int slot = currentSlot(buffer, rowOffset, slotSize, i, rowBytes);
+                if (slot < 0) {
+                    throw new BookingSaveFileException(
+                            "Booking file checksum does not match, file is corrupted: " + path);
+                }
+                buffer.get(rowOffset + slot * slotSize + Integer.BYTES, rowBytes);
+                unpack(rowBytes, occupiedMap[i]);
+            }
+            return new FlightSeatsMap(occupiedMap);
+        } catch (IOException e) {
+            throw new BookingSaveFileException(
+                    "Exception on reading the booking data. File might be corrupted or missed: " + path, e);
+        }
+    }
+
+    /**
+     * Updating the single row of the existing file, only the slot of the row holding its older state is written
+     *
+     * @param seatMap the seat map to take the row from
+     * @param row     the row to update
+     * @param path    the existing save-file of the same plane size
+     */
+    public static void saveRow(SeatMap seatMap, char row, Path path) {
+        int rowIndex = row - 'A';
+        boolean[] seats = seatMap.getRow(row);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            verifyHeaderFits(channel, path);
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            readHeader(header, channel.size(), path);
+            if (header.getInt(Integer.BYTES * 2) != seats.length || header.getInt(Integer.BYTES) <= rowIndex) {
+                throw new BookingSaveFileException("Booking file has a different plane size: " + path);
+            }
+
+            int slotSize = slotSize(seats.length);
+            MappedByteBuffer rowBuffer = channel.map(FileChannel.MapMode.READ_WRITE,
+                    HEADER_SIZE + (long) rowIndex * 2 * slotSize, 2L * slotSize);
+            byte[] rowBytes = new byte[bytesInARow(seats.length)];
+            int slot = currentSlot(rowBuffer, 0, slotSize, rowIndex, rowBytes);
+            int generation = slot < 0 ? 0 : rowBuffer.getInt(slot * slotSize);
+
+            pack(seats, rowBytes);
+            // the slot of the current state is kept until the new one is on the disk
+            writeSlot(rowBuffer, slot == 0 ? slotSize : 0, rowIndex, generation + 1, rowBytes);
+            rowBuffer.force();
+        } catch (IOException e) {
+            throw new BookingSaveFileException(
+                    "Exception during the attempt on saving the seat map booking: " + path, e);
+        }
+    }
+
+    static boolean isBinary(String filePath) {
+        return filePath.endsWith(FileOperations.BINARY_EXTENSION);
+    }
+
+    private static void verifyHeaderFits(FileChannel channel, Path path) throws IOException {
+        if (channel.size() < HEADER_SIZE) {
+            throw new BookingSaveFileException("Booking file is too short to contain the header: " + path);
+        }
+    }
+
+    /**
+     * @return number of rows stored in the file
+     */
+    private static int readHeader(MappedByteBuffer buffer, long fileSize, Path path) {
+        if (buffer.getInt(0) != MAGIC) {
+            throw new BookingSaveFileException("Booking file is not a binary seat map: " + path);
+        }
+        int rows = buffer.getInt(Integer.BYTES);
+        int seatsInARow = buffer.getInt(Integer.BYTES * 2);
+        if (rows <= 0 || seatsInARow <= 0
+                || fileSize < HEADER_SIZE + (long) rows * 2 * slotSize(seatsInARow)) {
+            throw new BookingSaveFileException(
+                    "Booking file loaded no booking data. Verify file is not empty: " + path);
+        }
+        return rows;
+    }
+
+    /**
+     * The slot of the row holding its current state
+     *
+     * @param buffer    the buffer with both slots of the row
+     * @param rowOffset position of the first slot of the row in the buffer
+     * @param rowBytes  buffer of the row size, overwritten
+     * @return 0 or 1, -1 if neither slot has the matching checksum
+     */
+    private static int currentSlot(ByteBuffer buffer, int rowOffset, int slotSize, int rowIndex, byte[] rowBytes) {
+        int current = -1;
+        int currentGeneration = 0;
+        for (int slot = 0; slot < 2; slot++) {
+            int offset = rowOffset + slot * slotSize;
+            int generation = buffer.getInt(offset);
+            buffer.get(offset + Integer.BYTES, rowBytes);
+            if (generation > currentGeneration
+                    && buffer.getInt(offset + Integer.BYTES + rowBytes.length)
+                    == slotChecksum(rowIndex, generation, rowBytes)) {
+                current = slot;
+                currentGeneration = generation;
+            }
+        }
+        return current;
+    }
+
+    private static void writeSlot(ByteBuffer buffer, int offset, int rowIndex, int generation, byte[] rowBytes) {
+        buffer.putInt(offset, generation);
+        buffer.put(offset + Integer.BYTES, rowBytes);
+        buffer.putInt(offset + Integer.BYTES + rowBytes.length, slotChecksum(rowIndex, generation, rowBytes));
+    }
+
+    static int slotSize(int seatsInARow) {
+        return bytesInARow(seatsInARow) + SLOT_OVERHEAD;
+    }
+
+    private static int bytesInARow(int seatsInARow) {
+        return (seatsInARow + Byte.SIZE - 1) / Byte.SIZE;
+    }
+
+    private static void pack(boolean[] seats, byte[] rowBytes) {
+        for (int i = 0; i < rowBytes.length; i++) {
+            rowBytes[i] = 0;
+        }
+        for (int i = 0; i < seats.length; i++) {
+            if (seats[i]) {
+                rowBytes[i / Byte.SIZE] |= (byte) (1 << (i % Byte.SIZE));
+            }
+        }
+    }
+
+    private static void unpack(byte[] rowBytes, boolean[] seats) {
+        for (int i = 0; i < seats.length; i++) {
+            seats[i] = (rowBytes[i / Byte.SIZE] & (1 << (i % Byte.SIZE))) != 0;
+        }
+    }
+
+    private static int slotChecksum(int rowIndex, int generation, byte[] rowBytes) {
+        CRC32 crc = new CRC32();
+        crc.update(rowIndex);
+        crc.update(ByteBuffer.allocate(Integer.BYTES).putInt(0, generation).array());
+        crc.update(rowBytes);
+        return (int) crc.getValue();
+    }
+}
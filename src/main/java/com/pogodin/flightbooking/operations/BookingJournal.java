@@ -0,0 +1,327 @@
+package com.pogodin.flightbooking.operations;
+
+import com.pogodin.flightbooking.BookingAction;
+import com.pogodin.flightbooking.OperationResult;
+import com.pogodin.flightbooking.entity.BookingRequest;
+import com.pogodin.flightbooking.entity.FlightSeatsMap;
+import com.pogodin.flightbooking.exception.BookingSaveFileException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Append-only journal of the applied booking operations.
+ * Every operation is a fixed size record: action, row, first seat and number of passengers.
+ * Replaying a record sets the seats to the state the operation left them in, so replaying the journal
+ * onto a snapshot that already contains some of its operations gives the same seat map.
+ * Records are appended to the active file. On the checkpoint the active file is sealed into a numbered segment,
+ * E.G. booking.csv.journal.3, and the segments are removed once the snapshot containing them is stored.
+ * \b
+ * Records of the concurrent appends are committed together: the appends join the pending batch,
+ * one of them writes the whole batch with a single fsync while the next batch is collected,
+ * and every append returns only once its batch is on the disk.
+ */
+public class BookingJournal {
+    static final int RECORD_SIZE = 8;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 256;
+
+    private static final BookingAction[] ACTIONS = BookingAction.values();
+
+    private final Path journalPath;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+
+    // guards the batches, not a monitor, so the virtual threads waiting for the fsync are not pinned
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition batchWritten = lock.newCondition();
+    private final Condition batchFull = lock.newCondition();
+    private Batch pending;
+    private boolean writing;
+
+    /**
+     * Records committed with a single fsync
+     */
+    private static class Batch {
+        private final ByteBuffer records;
+        private int size;
+        private boolean written;
+        private BookingSaveFileException failure;
+
+        Batch(int maxBatchSize) {
+            this.records = ByteBuffer.allocate(maxBatchSize * RECORD_SIZE);
+        }
+    }
+
+    public BookingJournal(Path journalPath) {
+        this(journalPath, DEFAULT_MAX_BATCH_SIZE, 0);
+    }
+
+    /**
+     * @param journalPath   path of the active journal file
+     * @param maxBatchSize  maximum number of records committed with a single fsync
+     * @param maxWaitMicros how long the batch waits for more records before it is written, 0 to write it right away.
+     *                      The batch collected while the previous one is written is committed together anyway.
+     */
+    public BookingJournal(Path journalPath, int maxBatchSize, long maxWaitMicros) {
+        this.journalPath = journalPath;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxWaitNanos = TimeUnit.MICROSECONDS.toNanos(maxWaitMicros);
+        this.pending = new Batch(this.maxBatchSize);
+    }
+
+    /**
+     * Appending the operation to the end of the journal, the record is on the disk when the method returns
+     *
+     * @param applied the operation that was applied successfully
+     */
+    public void append(BookingRequest applied) {
+        place(applied).await();
+    }
+
+    /**
+     * Placing the record of the operation after the records placed before it, without waiting for the disk.
+     * The caller applying the operations under its own lock places them in the same order,
+     * then waits for the record outside of the lock.
+     *
+     * @param applied the operation that was applied successfully
+     * @return the record to wait for, it is on the disk once {@link BookingStore.PendingRecord#await()} returns
+     */
+    public BookingStore.PendingRecord place(BookingRequest applied) {
+        lock.lock();
+        try {
+            while (pending.size == maxBatchSize) {
+                batchWritten.awaitUninterruptibly();
+            }
+            Batch batch = pending;
+            encode(applied, batch.records);
+            if (++batch.size == maxBatchSize) {
+                batchFull.signal();
+            }
+            return () -> awaitWritten(batch);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void awaitWritten(Batch batch) {
+        lock.lock();
+        try {
+            while (!batch.written) {
+                if (writing) {
+                    batchWritten.awaitUninterruptibly();
+                } else {
+                    writePending();
+                }
+            }
+            if (batch.failure != null) {
+                throw batch.failure;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writing the pending batch, called under the lock by one of the appends waiting for it.
+     * The lock is released while the batch is on the way to the disk, so the next batch is collected meanwhile.
+     */
+    private void writePending() {
+        writing = true;
+        boolean interrupted = false;
+        try {
+            long waitNanos = maxWaitNanos;
+            while (pending.size < maxBatchSize && waitNanos > 0) {
+                try {
+                    waitNanos = batchFull.awaitNanos(waitNanos);
+                } catch (InterruptedException e) {
+                    // restored after the write, the interrupted thread cannot write to the file channel
+                    interrupted = true;
+                    break;
+                }
+            }
+
+            Batch batch = pending;
+            pending = new Batch(maxBatchSize);
+            // the appends waiting for the room join the new batch
+            batchWritten.signalAll();
+            lock.unlock();
+            try {
+                write(batch.records.flip());
+            } catch (BookingSaveFileException e) {
+                batch.failure = e;
+            } finally {
+                lock.lock();
+            }
+            batch.written = true;
+        } finally {
+            writing = false;
+            batchWritten.signalAll();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void write(ByteBuffer records) {
+        try (FileChannel channel = FileChannel.open(journalPath,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (records.hasRemaining()) {
+                channel.write(records);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            throw new BookingSaveFileException("Exception on writing the booking journal: " + journalPath, e);
+        }
+    }
+
+    /**
+     * Applying all the journal records to the seat map in the order they were written,
+     * the sealed segments first and the active file after them.
+     *
+     * @param seatMap the seat map to restore the operations on
+     * @return number of replayed operations
+     */
+    public int replay(FlightSeatsMap seatMap) {
+        int replayed = 0;
+        for (long segment : sealedSegments()) {
+            replayed += replayFile(segmentPath(segment), seatMap);
+        }
+        return replayed + replayFile(journalPath, seatMap);
+    }
+
+    /**
+     * Sealing the active file into the next segment, the following records go to the new active file.
+     * Every operation recorded before the method returns is in a sealed segment.
+     *
+     * @return number of the sealed segment, or -1 if there was nothing to seal
+     */
+    public long seal() {
+        lock.lock();
+        try {
+            while (writing) {
+                batchWritten.awaitUninterruptibly();
+            }
+            if (!Files.exists(journalPath)) {
+                return -1;
+            }
+            List<Long> segments = sealedSegments();
+            long segment = segments.isEmpty() ? 0 : segments.get(segments.size() - 1) + 1;
+            try {
+                Files.move(journalPath, segmentPath(segment), StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                throw new BookingSaveFileException("Exception on sealing the booking journal: " + journalPath, e);
+            }
+            return segment;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removing the sealed segments up to the provided one, used once a snapshot containing them is stored
+     *
+     * @param lastSegment the last segment to remove
+     */
+    public void removeSealed(long lastSegment) {
+        for (long segment : sealedSegments()) {
+            if (segment > lastSegment) {
+                break;
+            }
+            try {
+                Files.deleteIfExists(segmentPath(segment));
+            } catch (IOException e) {
+                throw new BookingSaveFileException(
+                        "Exception on removing the booking journal segment: " + segmentPath(segment), e);
+            }
+        }
+    }
+
+    /**
+     * Numbers of the sealed segments in the order they were sealed
+     */
+    List<Long> sealedSegments() {
+        Path directory = journalPath.toAbsolutePath().getParent();
+        String prefix = journalPath.getFileName() + ".";
+        List<Long> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*")) {
+            for (Path file : files) {
+                String number = file.getFileName().toString().substring(prefix.length());
+                if (!number.isEmpty() && number.chars().allMatch(Character::isDigit)) {
+                    segments.add(Long.parseLong(number));
+                }
+            }
+        } catch (IOException e) {
+            throw new BookingSaveFileException("Exception on listing the booking journal segments: " + journalPath, e);
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    /**
+     * A record cut by a crash in the middle of writing it is ignored
+     */
+    private int replayFile(Path file, FlightSeatsMap seatMap) {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+
+        ByteBuffer records;
+        try {
+            records = ByteBuffer.wrap(Files.readAllBytes(file));
+        } catch (IOException e) {
+            throw new BookingSaveFileException("Exception on reading the booking journal: " + file, e);
+        }
+
+        int replayed = 0;
+        while (records.remaining() >= RECORD_SIZE) {
+            BookingRequest request = decode(records);
+            OperationResult result = request.action() == BookingAction.BOOK
+                    ? seatMap.restoreBooking(request.row(), request.seat(), request.passengers())
+                    : seatMap.cancelBook(request.row(), request.seat(), request.passengers());
+            if (!result.isSuccess()) {
+                throw new BookingSaveFileException("Booking journal does not match the seat map: " + file
+                        + ". " + request + ": " + result.getFailureReason());
+            }
+            replayed++;
+        }
+        return replayed;
+    }
+
+    public Path getJournalPath() {
+        return journalPath;
+    }
+
+    private Path segmentPath(long segment) {
+        return journalPath.resolveSibling(journalPath.getFileName() + "." + segment);
+    }
+
+    static void encode(BookingRequest request, ByteBuffer buffer) {
+        buffer.put((byte) request.action().ordinal())
+                .put((byte) request.row())
+                .putShort((short) request.seat())
+                .putInt(request.passengers());
+    }
+
+    static BookingRequest decode(ByteBuffer buffer) {
+        int action = buffer.get();
+        char row = (char) buffer.get();
+        int seat = Short.toUnsignedInt(buffer.getShort());
+        int passengers = buffer.getInt();
+        if (action < 0 || action >= ACTIONS.length) {
+            throw new BookingSaveFileException("Booking journal contains an unknown operation " + action);
+        }
+        return new BookingRequest(ACTIONS[action], row, seat, passengers);
+    }
+}
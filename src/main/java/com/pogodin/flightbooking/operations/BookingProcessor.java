@@ -3,25 +3,36 @@ package com.pogodin.flightbooking.operations;
 import com.pogodin.flightbooking.BookingAction;
 import com.pogodin.flightbooking.entity.BookingRequest;
 import com.pogodin.flightbooking.entity.FlightSeatsMap;
+import com.pogodin.flightbooking.entity.SeatMap;
+import com.pogodin.flightbooking.FailureCode;
 import com.pogodin.flightbooking.OperationResult;
 import com.pogodin.flightbooking.exception.MalformedRequestException;
+import com.pogodin.flightbooking.metrics.BookingEvent;
+import com.pogodin.flightbooking.metrics.BookingMetrics;
+import com.pogodin.flightbooking.metrics.BookingMetrics.Stage;
+import jdk.jfr.FlightRecorder;
 
-import java.io.File;
 import java.util.Arrays;
 
 /**
- * contains information on the save-file with the data on the current flight booking
+ * contains information on the store with the data on the current flight booking
  * the size of the plane is also provided
  */
 public class BookingProcessor {
+    // place of the BOOK command asking the system to pick the seats
+    static final String ANY_PLACE = "ANY";
 
-    private final String filePath;
+    private final BookingStore bookingStore;
     private final int planeRowsNumber;
 
     private final int planeRowSize;
 
     public BookingProcessor(String filePath, int planeRowsNumber, int planeRowSize) {
-        this.filePath = filePath;
+        this(new FileBookingStore(filePath), planeRowsNumber, planeRowSize);
+    }
+
+    public BookingProcessor(BookingStore bookingStore, int planeRowsNumber, int planeRowSize) {
+        this.bookingStore = bookingStore;
         this.planeRowsNumber = planeRowsNumber;
         this.planeRowSize = planeRowSize;
     }
@@ -29,6 +40,8 @@ public class BookingProcessor {
     /**
      * Proceeding with the booking operation or cancel operation based on the booking request.
      * Data is either retrieved from the file or, if file does not exists yet, the new one will be created and stored.
+     * The store stays locked against the other processes from the load until the operation is stored.
+     * The holds are not served, they live only as long as the seat map stays in memory.
      *
      * @param request request contains the booking action, seat number and number of passengers would like
      *                to book seats in a row, one to one starting from the seat number
@@ -36,29 +49,185 @@ public class BookingProcessor {
      *         failure otherwise with the reason
      */
     public OperationResult processOperation(BookingRequest request) {
-        FlightSeatsMap seatMap;
-        if (new File(filePath).exists()) {
-            seatMap = FileOperations.getInstance().loadBookingMap(filePath);
-        } else {
-            seatMap = new FlightSeatsMap(planeRowsNumber, planeRowSize);
+        if (heldOnlyByServer(request)) {
+            return holdRejected();
         }
-
+        BookingMetrics metrics = BookingMetrics.getInstance();
+        long started = BookingMetrics.start();
         OperationResult actionResult;
+        // the other processes sharing the store wait until the operation is recorded
+        try (BookingStore.OperationLock lock = bookingStore.lockOperation(request)) {
+            FlightSeatsMap seatMap = loadSeatMap(lock);
+
+            actionResult = applyOperation(seatMap, request);
+            if (actionResult.isSuccess()) {
+                recordOperation(seatMap, appliedRequest(request, actionResult), lock);
+            }
+        }
+        if (!actionResult.isSuccess()) {
+            metrics.recordFailure(actionResult.getFailureCode());
+        }
+        metrics.record(Stage.TOTAL, started);
+        return actionResult;
+
+    }
+
+    /**
+     * Loading the seat map from the store, or creating an empty one of the configured plane size
+     * if nothing is stored yet.
+     *
+     * @return the seat map of the current flight
+     */
+    public FlightSeatsMap loadSeatMap() {
+        long started = BookingMetrics.start();
+        FlightSeatsMap seatMap = bookingStore.load(planeRowsNumber, planeRowSize);
+        BookingMetrics.getInstance().record(Stage.LOAD, started);
+        return seatMap;
+    }
+
+    private FlightSeatsMap loadSeatMap(BookingStore.OperationLock lock) {
+        long started = BookingMetrics.start();
+        FlightSeatsMap seatMap = bookingStore.load(planeRowsNumber, planeRowSize, lock);
+        BookingMetrics.getInstance().record(Stage.LOAD, started);
+        return seatMap;
+    }
+
+    /**
+     * Applying the booking request to the seat map that is stored afterwards, E.G. by the batch.
+     * The holds are rejected as by {@link #processOperation}, they would be gone with the seat map.
+     *
+     * @param seatMap the seat map to change
+     * @param request the booking request to apply
+     * @return operation result with success if the seat map was changed, failure otherwise with the reason
+     */
+    public OperationResult applyStoredOperation(SeatMap seatMap, BookingRequest request) {
+        if (heldOnlyByServer(request)) {
+            return holdRejected();
+        }
+        return applyOperation(seatMap, request);
+    }
+
+    /**
+     * Applying the booking request to the provided seat map in memory only, nothing is persisted.
+     *
+     * @param seatMap the seat map to change
+     * @param request the booking request to apply
+     * @return operation result with success if the seat map was changed, failure otherwise with the reason
+     */
+    public OperationResult applyOperation(SeatMap seatMap, BookingRequest request) {
+        // the event type is registered with the first event, which is a noticeable part of the one-shot CLI run,
+        // so the events are created only once the Flight Recorder is started
+        BookingEvent event = null;
+        if (FlightRecorder.isInitialized()) {
+            event = new BookingEvent();
+            event.begin();
+        }
+        long started = BookingMetrics.start();
+
+        OperationResult result = changeSeatMap(seatMap, request);
+
+        BookingMetrics.getInstance().record(Stage.APPLY, started);
+        if (event != null && event.shouldCommit()) {
+            BookingRequest applied = result.isSuccess() ? appliedRequest(request, result) : request;
+            event.action = request.action().name();
+            event.row = applied.row();
+            event.seat = applied.seat();
+            event.passengers = request.passengers();
+            event.success = result.isSuccess();
+            event.failureCode = result.isSuccess() ? null : result.getFailureCode().name();
+            event.commit();
+        }
+        return result;
+    }
+
+    private OperationResult changeSeatMap(SeatMap seatMap, BookingRequest request) {
         if (request.action() == BookingAction.BOOK) {
-            actionResult = seatMap.bookSeat(request.row(), request.seat(), request.passengers());
+            return seatMap.bookSeat(request.row(), request.seat(), request.passengers());
         } else if (request.action() == BookingAction.CANCEL) {
-            actionResult = seatMap.cancelBook(request.row(), request.seat(), request.passengers());
-        } else {
-            return OperationResult.failure("The operation " + request.action() + " not yet supported");
+            return seatMap.cancelBook(request.row(), request.seat(), request.passengers());
+        } else if (request.action() == BookingAction.BOOK_ANY) {
+            return seatMap.bookAnySeats(request.passengers());
+        } else if (request.action() == BookingAction.HOLD) {
+            return seatMap.holdSeats(request.row(), request.seat(), request.passengers());
+        } else if (request.action() == BookingAction.CONFIRM) {
+            return seatMap.confirmHold(request.row(), request.seat(), request.passengers());
+        } else if (request.action() == BookingAction.RELEASE) {
+            return seatMap.releaseHold(request.row(), request.seat(), request.passengers());
         }
+        return OperationResult.failure(FailureCode.UNSUPPORTED_ACTION);
+    }
 
-        if (!actionResult.isSuccess()) {
-            return actionResult;
-        }
+    /**
+     * The operation in the form it should be stored in: the exact BOOK of the picked seats for BOOK ANY
+     * and of the held seats for CONFIRM, the request itself otherwise
+     *
+     * @param request the applied request
+     * @param result  the successful result of the request
+     * @return the operation to store
+     */
+    public static BookingRequest appliedRequest(BookingRequest request, OperationResult result) {
+        return result.getBooked() != null ? result.getBooked() : request;
+    }
 
-        FileOperations.getInstance().saveBookingMap(seatMap, filePath);
-        return OperationResult.success();
+    /**
+     * Storing the single operation that was applied to the seat map with {@link #applyOperation}
+     *
+     * @param seatMap the seat map after the operation
+     * @param applied the applied operation
+     */
+    public void recordOperation(SeatMap seatMap, BookingRequest applied) {
+        long started = BookingMetrics.start();
+        bookingStore.recordOperation(seatMap, applied);
+        BookingMetrics.getInstance().record(Stage.PERSIST, started);
+    }
 
+    private void recordOperation(SeatMap seatMap, BookingRequest applied, BookingStore.OperationLock lock) {
+        long started = BookingMetrics.start();
+        bookingStore.recordOperation(seatMap, applied, lock);
+        BookingMetrics.getInstance().record(Stage.PERSIST, started);
+    }
+
+    /**
+     * Placing the operation applied to the seat map with {@link #applyOperation} among the stored ones,
+     * see {@link BookingStore#placeOperation}
+     *
+     * @param seatMap the seat map after the operation
+     * @param applied the applied operation
+     * @return the record to wait for until it is stored
+     */
+    public BookingStore.PendingRecord placeOperation(SeatMap seatMap, BookingRequest applied) {
+        long started = BookingMetrics.start();
+        BookingStore.PendingRecord record = bookingStore.placeOperation(seatMap, applied);
+        return () -> {
+            record.await();
+            BookingMetrics.getInstance().record(Stage.PERSIST, started);
+        };
+    }
+
+    /**
+     * Storing the whole seat map into the store of this processor
+     *
+     * @param seatMap the seat map to store
+     */
+    public void saveSeatMap(SeatMap seatMap) {
+        long started = BookingMetrics.start();
+        bookingStore.save(seatMap);
+        BookingMetrics.getInstance().record(Stage.PERSIST, started);
+    }
+
+    /**
+     * Removing the seat map from the store of this processor, E.G. after the flight was moved to another node
+     */
+    public void deleteSeatMap() {
+        bookingStore.delete();
+    }
+
+    /**
+     * @return true if the seat map was removed by {@link #deleteSeatMap()} and not saved since, see
+     *         {@link BookingStore#isDeleted()}
+     */
+    public boolean seatMapDeleted() {
+        return bookingStore.isDeleted();
     }
 
     /**
@@ -66,7 +235,7 @@ public class BookingProcessor {
      * See the overload of this method for more information on params and outcomes expectations
      *
      */
-    BookingRequest terminalToBookingRequest(String commandLineRequest) throws MalformedRequestException {
+    public BookingRequest terminalToBookingRequest(String commandLineRequest) throws MalformedRequestException {
         if (commandLineRequest.isEmpty()) {
             throw new MalformedRequestException("operation is an empty string");
         }
@@ -84,6 +253,8 @@ public class BookingProcessor {
      * CANCEL A0 1
      * BOOK B3 5
      * CANCEL C2 6
+     * BOOK ANY 4 - the seats for 4 passengers together are picked by the system
+     * HOLD A0 2, CONFIRM A0 2, RELEASE A0 2 - the seats held for a while, then booked or set free
      *
      * @param commandBlocks the booking flight operations as string[] array to proceed with
      * @return string array with operation blocks
@@ -96,24 +267,30 @@ public class BookingProcessor {
                     Arrays.toString(commandBlocks) + ". Valid form examples: \"BOOK A0 1\" or \"CANCEL A5 3\" ");
         }
 
+        BookingAction action;
         try {
-            BookingAction action = BookingAction.valueOf(commandBlocks[0]);
-            brBuilder.setAction(action);
+            action = BookingAction.valueOf(commandBlocks[0]);
         } catch (IllegalArgumentException ex) {
             throw new MalformedRequestException("Operation " + commandBlocks[0] + " is not supported");
         }
+        if (action == BookingAction.BOOK_ANY) {
+            throw new MalformedRequestException("Operation " + commandBlocks[0] + " is not supported");
+        }
 
         final String place = commandBlocks[1];
-        if (place.length() != 2
+        if (action == BookingAction.BOOK && ANY_PLACE.equals(place)) {
+            brBuilder.setAction(BookingAction.BOOK_ANY);
+        } else if (place.length() != 2
                 || place.charAt(0) < 'A' || place.charAt(0) > 'Z'
                 || place.charAt(1) < '0' || place.charAt(1) > '9') {
             throw new MalformedRequestException("The place is defined incorrectly. " +
                     "Cannot proceed an operation on the " + place + " seat.");
+        } else {
+            brBuilder.setAction(action);
+            brBuilder.setRow(commandBlocks[1].charAt(0));
+            brBuilder.setSeat(commandBlocks[1].charAt(1) - '0');
         }
 
-        brBuilder.setRow(commandBlocks[1].charAt(0));
-        brBuilder.setSeat(commandBlocks[1].charAt(1) - '0');
-
         final String passengersNumber = commandBlocks[2];
         try {
             int passengersInt = Integer.parseInt(passengersNumber);
@@ -132,4 +309,14 @@ public class BookingProcessor {
         return brBuilder.build();
     }
 
+    private static boolean heldOnlyByServer(BookingRequest request) {
+        return request.action() != null && request.action().isHold();
+    }
+
+    /**
+     * The holds would be gone with the seat map right after the operation
+     */
+    private static OperationResult holdRejected() {
+        return OperationResult.failure(FailureCode.UNSUPPORTED_ACTION, "the seats are held only by the server");
+    }
 }
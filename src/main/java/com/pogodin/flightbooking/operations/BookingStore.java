@@ -0,0 +1,124 @@
+package com.pogodin.flightbooking.operations;
+
+import com.pogodin.flightbooking.entity.BookingRequest;
+import com.pogodin.flightbooking.entity.FlightSeatsMap;
+import com.pogodin.flightbooking.entity.SeatMap;
+
+/**
+ * Persistent storage of the flight seat map used by {@link BookingProcessor}
+ */
+public interface BookingStore {
+
+    /**
+     * Lock of the stored data held while a single operation is loaded, applied and recorded
+     */
+    interface OperationLock extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * Record of an operation placed among the recorded ones, which might be not persisted yet
+     */
+    interface PendingRecord {
+        /**
+         * Waiting until the record is persisted
+         */
+        void await();
+    }
+
+    /**
+     * Loading the stored seat map, or creating an empty one if nothing is stored yet
+     *
+     * @param planeRowsNumber number of rows of the empty plane
+     * @param planeRowSize    number of seats in a row of the empty plane
+     * @return the seat map of the flight
+     */
+    FlightSeatsMap load(int planeRowsNumber, int planeRowSize);
+
+    /**
+     * Loading the stored seat map while the lock of the operation is held, see {@link #lockOperation}.
+     * The store is loaded the same way as without the lock by default.
+     *
+     * @param planeRowsNumber number of rows of the empty plane
+     * @param planeRowSize    number of seats in a row of the empty plane
+     * @param lock            the lock returned by {@link #lockOperation} for the operation
+     * @return the seat map of the flight
+     */
+    default FlightSeatsMap load(int planeRowsNumber, int planeRowSize, OperationLock lock) {
+        return load(planeRowsNumber, planeRowSize);
+    }
+
+    /**
+     * Persisting the single operation that was just applied successfully to the seat map
+     *
+     * @param seatMap the seat map after the operation
+     * @param applied the applied operation
+     */
+    void recordOperation(SeatMap seatMap, BookingRequest applied);
+
+    /**
+     * Persisting the operation while the lock of the operation is held, see {@link #lockOperation}.
+     * The operation is persisted the same way as without the lock by default.
+     *
+     * @param seatMap the seat map after the operation
+     * @param applied the applied operation
+     * @param lock    the lock returned by {@link #lockOperation} for the operation
+     */
+    default void recordOperation(SeatMap seatMap, BookingRequest applied, OperationLock lock) {
+        recordOperation(seatMap, applied);
+    }
+
+    /**
+     * Placing the record of the operation after the operations placed or recorded before it,
+     * the record is persisted once the returned record is awaited. The caller applying the operations
+     * under its own lock places them in the same order without holding the lock while they are persisted.
+     * The operation is persisted right away by default.
+     *
+     * @param seatMap the seat map after the operation
+     * @param applied the applied operation
+     * @return the record to wait for
+     */
+    default PendingRecord placeOperation(SeatMap seatMap, BookingRequest applied) {
+        recordOperation(seatMap, applied);
+        return () -> {
+        };
+    }
+
+    /**
+     * Persisting the whole seat map
+     *
+     * @param seatMap the seat map to store
+     */
+    void save(SeatMap seatMap);
+
+    /**
+     * Removing the stored seat map, E.G. after the flight was moved to another node.
+     * Nothing is removed by default.
+     */
+    default void delete() {
+    }
+
+    /**
+     * The store remembers the removal until the seat map is saved again, also across the restarts.
+     * Nothing is removed by default, so nothing is remembered either.
+     *
+     * @return true if the seat map was removed by {@link #delete()} and not saved since
+     */
+    default boolean isDeleted() {
+        return false;
+    }
+
+    /**
+     * Locking the stored data the request could change against the other processes using the same store,
+     * so the operation is loaded, applied and recorded without losing their changes.
+     * The store is not locked by default.
+     *
+     * @param request the request about to be processed
+     * @return the lock to close after the operation is recorded, passed to the load and the record of the operation
+     */
+    default OperationLock lockOperation(BookingRequest request) {
+        return () -> {
+        };
+    }
+}
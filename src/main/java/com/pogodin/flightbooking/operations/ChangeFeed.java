@@ -0,0 +1,244 @@
+package com.pogodin.flightbooking.operations;
+
+import com.pogodin.flightbooking.BookingAction;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Stream of the seat changes, E.G. for the seat map displays and the analytics, without reading the save-files.
+ * Every change is a compact delta: the flight, the action, the row, the first seat, the number of seats
+ * and the sequence number of the change in the feed.
+ * \b
+ * The changes are kept in a ring buffer preallocated for the given number of the latest changes,
+ * so publishing a change allocates nothing and never waits for the subscribers.
+ * The publishers take turns under a short lock, so the ring has a single writer at a time and a slot is never
+ * written by two publishers at once, even when the ring is overwritten faster than one of them writes its slot.
+ * The subscribers never take the lock: they read the ring at their own pace and check that the slot was not
+ * overwritten meanwhile, and wait for the next change only when they have read all of them,
+ * see {@link Subscriber#awaitChange}.
+ * A subscriber falling behind by more than the capacity loses the overwritten changes
+ * and continues from the oldest change still kept, see {@link Subscriber#poll}.
+ */
+public class ChangeFeed {
+    private static final VarHandle STATES = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final BookingAction[] ACTIONS = BookingAction.values();
+    // result of the poll when the subscriber fell behind the ring
+    public static final int LOST = -1;
+
+    private final int capacity;
+    private final int mask;
+    // state of every slot: 2 * (sequence + 1) once the change is written, the same plus 1 while it is written,
+    // 0 before the first change
+    private final long[] states;
+    private final String[] flightIds;
+    // action, row, seat and number of seats packed into one word
+    private final long[] changes;
+    private final ReentrantLock publishLock = new ReentrantLock();
+    private final Condition changePublished = publishLock.newCondition();
+    // written under the publish lock, once the change of the previous sequence number is written
+    private volatile long nextSequence;
+    // number of the subscribers waiting for the next change, under the publish lock
+    private int waitingSubscribers;
+
+    /**
+     * Receiver of the changes, called by the thread polling the subscriber
+     */
+    @FunctionalInterface
+    public interface ChangeListener {
+        /**
+         * @param sequence sequence number of the change in the feed
+         * @param flightId the flight id, null for the default flight of the server
+         * @param action   BOOK or CANCEL
+         * @param row      the row of the changed seats
+         * @param seat     the first changed seat
+         * @param seats    number of the changed seats
+         */
+        void onChange(long sequence, String flightId, BookingAction action, char row, int seat, int seats);
+    }
+
+    /**
+     * Copy of a seat map taken together with the position in the feed, E.G. to start a replica of the seat map.
+     * Applying the changes of the seat map from the sequence number on, BOOK as setting the seats occupied
+     * and CANCEL as setting them free, brings the copy up to date. Some of these changes could be already in the copy,
+     * applying them once more is harmless, as their later changes follow them.
+     *
+     * @param sequence sequence number of the first change that could be missing in the copy
+     * @param seats    the seat map as array of rows, true stands for the occupied seat
+     */
+    public record Snapshot(long sequence, boolean[][] seats) {
+    }
+
+    /**
+     * Reader of the feed, used by one thread at a time
+     */
+    public final class Subscriber {
+        private long next;
+
+        private Subscriber(long next) {
+            this.next = next;
+        }
+
+        /**
+         * @return sequence number of the next change the subscriber reads
+         */
+        public long getNextSequence() {
+            return next;
+        }
+
+        /**
+         * Handing the published changes to the listener in the order of the sequence numbers
+         *
+         * @param listener  receiver of the changes
+         * @param maxChanges maximum number of the changes handed over by the call
+         * @return number of the changes handed over, or {@link #LOST} if the next change was already overwritten,
+         *         then the subscriber continues from the oldest change still kept and the lost ones should be
+         *         taken from the save-file
+         */
+        public int poll(ChangeListener listener, int maxChanges) {
+            int handed = 0;
+            while (handed < maxChanges) {
+                int slot = (int) next & mask;
+                long written = written(next);
+                long state = (long) STATES.getAcquire(states, slot);
+                if (state != written) {
+                    if (state > written + 1) {
+                        next = Math.max(next + 1, nextSequence - capacity);
+                        return LOST;
+                    }
+                    // not written yet
+                    return handed;
+                }
+                String flightId = flightIds[slot];
+                long change = changes[slot];
+                VarHandle.loadLoadFence();
+                if ((long) STATES.getAcquire(states, slot) != written) {
+                    next = Math.max(next + 1, nextSequence - capacity);
+                    return LOST;
+                }
+                listener.onChange(next, flightId, ACTIONS[(int) (change >>> 56)],
+                        (char) ((change >>> 40) & 0xFFFF), (int) ((change >>> 20) & 0xFFFFF), (int) (change & 0xFFFFF));
+                next++;
+                handed++;
+            }
+            return handed;
+        }
+
+        /**
+         * Waiting until the change the subscriber reads next is published, E.G. when the poll handed nothing over.
+         * The publisher wakes the waiting subscribers, nothing is polled meanwhile.
+         *
+         * @param timeout the longest time to wait
+         * @param unit    unit of the timeout
+         * @return true if the next change is published, false if the time ran out first
+         */
+        public boolean awaitChange(long timeout, TimeUnit unit) throws InterruptedException {
+            if (nextSequence > next) {
+                return true;
+            }
+            long remaining = unit.toNanos(timeout);
+            publishLock.lockInterruptibly();
+            try {
+                waitingSubscribers++;
+                try {
+                    while (nextSequence <= next) {
+                        if (remaining <= 0) {
+                            return false;
+                        }
+                        remaining = changePublished.awaitNanos(remaining);
+                    }
+                    return true;
+                } finally {
+                    waitingSubscribers--;
+                }
+            } finally {
+                publishLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * @param capacity number of the latest changes kept for the subscribers, rounded up to a power of 2
+     */
+    public ChangeFeed(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity of the change feed should be from 1 to 2^30: " + capacity);
+        }
+        this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.states = new long[this.capacity];
+        this.flightIds = new String[this.capacity];
+        this.changes = new long[this.capacity];
+    }
+
+    /**
+     * Publishing the change, could be called from any thread.
+     * The changes of the same seats should be published in the order they were applied,
+     * E.G. under the lock of the flight.
+     *
+     * @param flightId the flight id, null for the default flight of the server
+     * @param action   BOOK or CANCEL
+     * @param row      the row of the changed seats
+     * @param seat     the first changed seat
+     * @param seats    number of the changed seats
+     * @return sequence number of the change
+     */
+    public long publish(String flightId, BookingAction action, char row, int seat, int seats) {
+        long change = (long) action.ordinal() << 56 | (long) row << 40 | (long) (seat & 0xFFFFF) << 20
+                | (seats & 0xFFFFF);
+        publishLock.lock();
+        try {
+            long sequence = nextSequence;
+            int slot = (int) sequence & mask;
+            STATES.setVolatile(states, slot, written(sequence) + 1);
+            VarHandle.storeStoreFence();
+            flightIds[slot] = flightId;
+            changes[slot] = change;
+            STATES.setRelease(states, slot, written(sequence));
+            nextSequence = sequence + 1;
+            if (waitingSubscribers > 0) {
+                changePublished.signalAll();
+            }
+            return sequence;
+        } finally {
+            publishLock.unlock();
+        }
+    }
+
+    /**
+     * @return subscriber of the changes published from now on
+     */
+    public Subscriber subscribe() {
+        return new Subscriber(nextSequence);
+    }
+
+    /**
+     * @param fromSequence sequence number of the first change to read, E.G. the next one after the last change
+     *                     the subscriber has seen before it reconnected
+     * @return subscriber of the changes starting with the given one, if it is still kept
+     */
+    public Subscriber subscribe(long fromSequence) {
+        return new Subscriber(Math.max(0, fromSequence));
+    }
+
+    /**
+     * @return sequence number the next published change gets
+     */
+    public long nextSequence() {
+        return nextSequence;
+    }
+
+    /**
+     * @return number of the latest changes kept in the ring
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private static long written(long sequence) {
+        return 2 * (sequence + 1);
+    }
+}
@@ -0,0 +1,116 @@
+package com.pogodin.flightbooking.operations;
+
+import com.pogodin.flightbooking.entity.SeatMap;
+import com.pogodin.flightbooking.entity.VersionedSeatMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Makes the checkpoints of the journaled seat map in the background: the full snapshot is stored
+ * and the journal it covers is removed, so the journal and the time to load the seat map stay bounded.
+ * The checkpoint is made after the configured number of recorded operations or after the configured time,
+ * whichever comes first, and only if something was recorded since the last one.
+ * The snapshot is taken from the live seat map while the bookings continue. With the {@link VersionedSeatMap}
+ * it is a single consistent version, otherwise a seat changed during the checkpoint might be in any of its states.
+ * Either way the operations after the sealed journal are still in the journal and replayed on load.
+ */
+public class Checkpointer {
+    private static final Logger logger = LoggerFactory.getLogger(Checkpointer.class);
+
+    private final JournalBookingStore store;
+    private final long everyOperations;
+    private final long everyMillis;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "booking-checkpointer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicLong recordedOperations = new AtomicLong();
+    private final AtomicBoolean checkpointScheduled = new AtomicBoolean();
+
+    private volatile SeatMap seatMap;
+    private volatile long checkpointedOperations;
+
+    /**
+     * @param store           store the checkpoints are made in
+     * @param everyOperations number of recorded operations after which the checkpoint is made
+     * @param everyMillis     longest time between the checkpoints while operations are recorded
+     */
+    public Checkpointer(JournalBookingStore store, long everyOperations, long everyMillis) {
+        if (everyOperations <= 0 || everyMillis <= 0) {
+            throw new IllegalArgumentException("Checkpoint should be made after a positive number of operations "
+                    + "and milliseconds, not " + everyOperations + " and " + everyMillis);
+        }
+        this.store = store;
+        this.everyOperations = everyOperations;
+        this.everyMillis = everyMillis;
+    }
+
+    /**
+     * Starting the periodic checkpoints of the seat map
+     *
+     * @param seatMap the live seat map the operations are applied to
+     */
+    public void start(SeatMap seatMap) {
+        this.seatMap = seatMap;
+        executor.scheduleWithFixedDelay(this::checkpoint, everyMillis, everyMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Counting the operation recorded into the journal, the checkpoint is requested when enough of them
+     * are recorded. Never blocks the calling thread.
+     */
+    public void operationRecorded() {
+        long recorded = recordedOperations.incrementAndGet();
+        if (recorded - checkpointedOperations >= everyOperations && checkpointScheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::checkpoint);
+            } catch (RejectedExecutionException e) {
+                // stopping, the last checkpoint is made by stop
+                checkpointScheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Stopping the periodic checkpoints and making the last one
+     */
+    public void stop() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        checkpoint();
+    }
+
+    /**
+     * Runs on the checkpointer thread only, and once more on stop after the thread is finished
+     */
+    private void checkpoint() {
+        checkpointScheduled.set(false);
+        long recorded = recordedOperations.get();
+        if (recorded == checkpointedOperations) {
+            return;
+        }
+
+        try {
+            long started = System.nanoTime();
+            store.save(seatMap);
+            checkpointedOperations = recorded;
+            logger.info("Checkpoint of " + recorded + " operations made in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) + " ms");
+        } catch (RuntimeException e) {
+            logger.error("Exception on making the checkpoint of the seat map", e);
+        }
+    }
+}
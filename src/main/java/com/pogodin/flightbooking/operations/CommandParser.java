@@ -0,0 +1,298 @@
+package com.pogodin.flightbooking.operations;
+
+import com.pogodin.flightbooking.BookingAction;
+import com.pogodin.flightbooking.entity.BookingRequest;
+
+/**
+ * Parses the booking commands, E.G. "BOOK A0 1", straight from the characters without splitting them
+ * and without creating any objects. Invalid commands are reported with the {@link Status} instead of the exception,
+ * the parsed command is available from the getters until the next command is parsed.
+ * Accepts and rejects exactly the same commands as {@link BookingProcessor#terminalToBookingRequest(String)}.
+ * Optionally the command could be prefixed with the flight id, E.G. "LH123 BOOK A0 1".
+ * Keeps the state of the last command, so every thread should use its own parser.
+ */
+public class CommandParser {
+
+    /**
+     * Outcome of parsing the command
+     */
+    public enum Status {
+        OK("command is valid"),
+        EMPTY("operation is an empty string"),
+        WRONG_FORM("command is not constructed in a desired form, valid form examples: \"BOOK A0 1\" or \"CANCEL A5 3\""),
+        UNSUPPORTED_OPERATION("operation is not supported"),
+        WRONG_PLACE("the place is defined incorrectly"),
+        WRONG_PASSENGERS("number of passengers is not a positive integer"),
+        WRONG_FLIGHT("flight id should be up to " + MAX_FLIGHT_ID_LENGTH + " latin letters, digits, '-' or '_'");
+
+        private final String description;
+
+        Status(String description) {
+            this.description = description;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    public static final int MAX_FLIGHT_ID_LENGTH = 32;
+    private static final int TOKENS = 3;
+
+    private final boolean anyWhitespace;
+    private final boolean flightIds;
+    // start and end of the flight id, action, place and passengers in the command
+    private final int[] tokenBounds = new int[(TOKENS + 1) * 2];
+
+    private CharSequence command;
+    private int flightStart;
+    private int flightEnd;
+    private BookingAction action;
+    private char row;
+    private int seat;
+    private int passengers;
+
+    /**
+     * Parser of the command line form, the parts are separated with the single space
+     */
+    public CommandParser() {
+        this(false, false);
+    }
+
+    /**
+     * @param anyWhitespace true if the parts of the command are separated by any whitespace and the command is trimmed,
+     *                      like the lines of the batch input, false if they are separated with the single space
+     */
+    public CommandParser(boolean anyWhitespace) {
+        this(anyWhitespace, false);
+    }
+
+    /**
+     * @param anyWhitespace see {@link #CommandParser(boolean)}
+     * @param flightIds     true if the command could be prefixed with the flight id
+     */
+    public CommandParser(boolean anyWhitespace, boolean flightIds) {
+        this.anyWhitespace = anyWhitespace;
+        this.flightIds = flightIds;
+    }
+
+    /**
+     * Parsing the command, on success the parts of it are available from the getters
+     *
+     * @param command the command in the form of "BOOK A0 1"
+     * @return {@link Status#OK} if the command is valid, the reason of rejection otherwise
+     */
+    public Status parse(CharSequence command) {
+        int start = 0;
+        int end = command.length();
+        if (anyWhitespace) {
+            while (start < end && command.charAt(start) <= ' ') {
+                start++;
+            }
+            while (end > start && command.charAt(end - 1) <= ' ') {
+                end--;
+            }
+        } else {
+            // the trailing parts after the last separator are dropped, like String.split does it
+            while (end > 0 && command.charAt(end - 1) == ' ') {
+                end--;
+            }
+        }
+        if (command.isEmpty() || anyWhitespace && start == end) {
+            return Status.EMPTY;
+        }
+        int tokens = start == end ? 0 : splitTokens(command, start, end);
+        if (tokens != TOKENS && !(flightIds && tokens == TOKENS + 1)) {
+            return Status.WRONG_FORM;
+        }
+
+        this.command = command;
+        int first = 0;
+        flightStart = 0;
+        flightEnd = 0;
+        if (tokens == TOKENS + 1) {
+            if (!validFlightId(command, tokenBounds[0], tokenBounds[1])) {
+                return Status.WRONG_FLIGHT;
+            }
+            flightStart = tokenBounds[0];
+            flightEnd = tokenBounds[1];
+            first = 2;
+        }
+
+        if (!parseAction(command, tokenBounds[first], tokenBounds[first + 1])) {
+            return Status.UNSUPPORTED_OPERATION;
+        }
+        if (!parsePlace(command, tokenBounds[first + 2], tokenBounds[first + 3])) {
+            return Status.WRONG_PLACE;
+        }
+        if (!parsePassengers(command, tokenBounds[first + 4], tokenBounds[first + 5])) {
+            return Status.WRONG_PASSENGERS;
+        }
+        return Status.OK;
+    }
+
+    /**
+     * @return the flight id the last command was prefixed with, null if the command was not prefixed
+     */
+    public String getFlightId() {
+        return flightEnd > flightStart ? command.subSequence(flightStart, flightEnd).toString() : null;
+    }
+
+    public BookingAction getAction() {
+        return action;
+    }
+
+    public char getRow() {
+        return row;
+    }
+
+    public int getSeat() {
+        return seat;
+    }
+
+    public int getPassengers() {
+        return passengers;
+    }
+
+    /**
+     * @return the booking request of the last successfully parsed command
+     */
+    public BookingRequest toBookingRequest() {
+        return new BookingRequest(action, row, seat, passengers);
+    }
+
+    /**
+     * @param flightId the flight id to check
+     * @return true if the flight id is up to 32 latin letters, digits, '-' or '_', so it could be a part of the file name
+     */
+    public static boolean validFlightId(CharSequence flightId) {
+        return validFlightId(flightId, 0, flightId.length());
+    }
+
+    private static boolean validFlightId(CharSequence command, int start, int end) {
+        if (end == start || end - start > MAX_FLIGHT_ID_LENGTH) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            char c = command.charAt(i);
+            if (!(c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z' || c >= '0' && c <= '9' || c == '-' || c == '_')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Storing the bounds of the parts of the command into the token bounds
+     *
+     * @return number of parts, or -1 if there are more parts than a command could have
+     */
+    private int splitTokens(CharSequence command, int start, int end) {
+        int tokens = 0;
+        int tokenStart = start;
+        for (int i = start; i <= end; i++) {
+            if (i < end && !isSeparator(command.charAt(i))) {
+                continue;
+            }
+            if (tokens == TOKENS + 1) {
+                return -1;
+            }
+            tokenBounds[tokens * 2] = tokenStart;
+            tokenBounds[tokens * 2 + 1] = i;
+            tokens++;
+            if (anyWhitespace) {
+                while (i + 1 < end && isSeparator(command.charAt(i + 1))) {
+                    i++;
+                }
+            }
+            tokenStart = i + 1;
+        }
+        return tokens;
+    }
+
+    private boolean isSeparator(char c) {
+        if (!anyWhitespace) {
+            return c == ' ';
+        }
+        // the characters of the \s regular expression class
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private boolean parseAction(CharSequence command, int start, int end) {
+        if (matches(command, start, end, "BOOK")) {
+            action = BookingAction.BOOK;
+        } else if (matches(command, start, end, "CANCEL")) {
+            action = BookingAction.CANCEL;
+        } else if (matches(command, start, end, "HOLD")) {
+            action = BookingAction.HOLD;
+        } else if (matches(command, start, end, "CONFIRM")) {
+            action = BookingAction.CONFIRM;
+        } else if (matches(command, start, end, "RELEASE")) {
+            action = BookingAction.RELEASE;
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private boolean parsePlace(CharSequence command, int start, int end) {
+        if (action == BookingAction.BOOK && matches(command, start, end, BookingProcessor.ANY_PLACE)) {
+            action = BookingAction.BOOK_ANY;
+            row = 0;
+            seat = 0;
+            return true;
+        }
+        if (end - start != 2) {
+            return false;
+        }
+        char rowChar = command.charAt(start);
+        char seatChar = command.charAt(start + 1);
+        if (rowChar < 'A' || rowChar > 'Z' || seatChar < '0' || seatChar > '9') {
+            return false;
+        }
+        row = rowChar;
+        seat = seatChar - '0';
+        return true;
+    }
+
+    /**
+     * Accepting the same numbers Integer.parseInt does, including the leading plus and the non-latin digits,
+     * as long as the number is positive
+     */
+    private boolean parsePassengers(CharSequence command, int start, int end) {
+        if (start < end && command.charAt(start) == '+') {
+            start++;
+        }
+        if (start == end) {
+            return false;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = Character.digit(command.charAt(i), 10);
+            if (digit < 0) {
+                return false;
+            }
+            value = value * 10 + digit;
+            if (value > Integer.MAX_VALUE) {
+                return false;
+            }
+        }
+        if (value < 1) {
+            return false;
+        }
+        passengers = (int) value;
+        return true;
+    }
+
+    private static boolean matches(CharSequence command, int start, int end, String expected) {
+        if (end - start != expected.length()) {
+            return false;
+        }
+        for (int i = 0; i < expected.length(); i++) {
+            if (command.charAt(start + i) != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
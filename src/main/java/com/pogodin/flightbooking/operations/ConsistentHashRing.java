@@ -0,0 +1,98 @@
+package com.pogodin.flightbooking.operations;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Assignment of the flights to the nodes by the consistent hashing of the flight id, E.G. for the router
+ * of the booking servers each keeping its own part of the flights.
+ * Every node is placed on the ring of 64-bit hashes at many points, the flight belongs to the node
+ * of the first point at or after the hash of the flight id. Adding a node takes over only the flights
+ * falling before its points, about 1/N of them, the other flights stay where they were.
+ * The assignment depends only on the nodes, so every router with the same nodes routes the same way.
+ * \b
+ * Not thread safe, the nodes should not be changed while the flights are looked up, E.G. under a write lock.
+ *
+ * @param <N> type of the nodes, their string form is hashed and should be unique
+ */
+public class ConsistentHashRing<N> {
+    // points of every node on the ring, more points spread the flights more evenly
+    public static final int DEFAULT_POINTS = 128;
+
+    private final int points;
+    private final TreeMap<Long, N> ring = new TreeMap<>();
+    private final List<N> nodes = new ArrayList<>();
+
+    public ConsistentHashRing() {
+        this(DEFAULT_POINTS);
+    }
+
+    /**
+     * @param points number of the points of every node on the ring
+     */
+    public ConsistentHashRing(int points) {
+        if (points < 1) {
+            throw new IllegalArgumentException("Number of the points of a node should be positive: " + points);
+        }
+        this.points = points;
+    }
+
+    /**
+     * @param node the node to add, nothing changes if it is already on the ring
+     */
+    public void addNode(N node) {
+        if (nodes.contains(node)) {
+            return;
+        }
+        nodes.add(node);
+        for (int i = 0; i < points; i++) {
+            // the collision of two 64-bit points is left to the node added first
+            ring.putIfAbsent(hash(node + "#" + i), node);
+        }
+    }
+
+    /**
+     * @param node the node to remove, its flights go to the nodes of the next points
+     */
+    public void removeNode(N node) {
+        if (nodes.remove(node)) {
+            ring.values().removeIf(node::equals);
+        }
+    }
+
+    /**
+     * @param flightId the flight id, E.G. LH123
+     * @return the node owning the flight, null if there are no nodes
+     */
+    public N nodeFor(String flightId) {
+        if (ring.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Long, N> point = ring.ceilingEntry(hash(flightId));
+        return point != null ? point.getValue() : ring.firstEntry().getValue();
+    }
+
+    /**
+     * @return the nodes in the order they were added
+     */
+    public List<N> getNodes() {
+        return List.copyOf(nodes);
+    }
+
+    /**
+     * 64-bit FNV-1a of the UTF-8 bytes with the final mix of SplitMix64, so the close ids land far apart
+     */
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+        return hash ^ (hash >>> 31);
+    }
+}
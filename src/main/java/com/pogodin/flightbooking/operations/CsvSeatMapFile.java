@@ -0,0 +1,155 @@
+package com.pogodin.flightbooking.operations;
+
+import com.opencsv.CSVReader;
+import com.opencsv.exceptions.CsvValidationException;
+import com.pogodin.flightbooking.entity.FlightSeatsMap;
+import com.pogodin.flightbooking.entity.SeatMap;
+import com.pogodin.flightbooking.exception.BookingSaveFileException;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CSV save-file of the seat map with one line per row, E.G. "1","0","0" for the row with the first seat occupied.
+ * The file is written and read straight from the bytes, so the one-shot CLI run does not load the CSV library.
+ * A file in any other CSV form, E.G. edited by hand with the spaces or the empty lines, is read with OpenCSV.
+ */
+public class CsvSeatMapFile {
+    private static final byte QUOTE = '"';
+    private static final byte SEPARATOR = ',';
+    private static final byte LINE_END = '\n';
+    private static final byte CARRIAGE_RETURN = '\r';
+
+    private CsvSeatMapFile() {}
+
+    /**
+     * Writing the same bytes as the default OpenCSV writer: every value quoted, every line ended with \n
+     */
+    public static void save(SeatMap seatMap, Path path) {
+        boolean[][] snapshot = seatMap.getSnapshot();
+        int seatsInARow = seatMap.getSeatsInARow();
+        // "0", per seat, the last separator is replaced with the line end
+        byte[] content = new byte[snapshot.length * seatsInARow * 4];
+        int position = 0;
+        for (boolean[] row : snapshot) {
+            for (int i = 0; i < row.length; i++) {
+                content[position++] = QUOTE;
+                content[position++] = (byte) (row[i] ? '1' : '0');
+                content[position++] = QUOTE;
+                content[position++] = i < row.length - 1 ? SEPARATOR : LINE_END;
+            }
+        }
+        try {
+            Files.write(path, content);
+        } catch (IOException e) {
+            throw new BookingSaveFileException(
+                    "Exception during the attempt on saving the seat map booking: " + path, e);
+        }
+    }
+
+    public static FlightSeatsMap load(Path path) {
+        byte[] content;
+        try {
+            content = Files.readAllBytes(path);
+        } catch (IOException e) {
+            throw new BookingSaveFileException(
+                    "Exception on reading the booking data. File might be corrupted or missed: " + path, e);
+        }
+        boolean[][] seatingMapArray = parse(content);
+        if (seatingMapArray == null) {
+            seatingMapArray = OpenCsv.load(path);
+        }
+        if (seatingMapArray.length == 0) {
+            throw new BookingSaveFileException(
+                    "Booking file loaded no booking data. Verify file is not empty: " + path);
+        }
+        return new FlightSeatsMap(seatingMapArray);
+    }
+
+    /**
+     * Parsing the lines of the values 0 and 1, quoted or not, the way OpenCSV reads them
+     *
+     * @return the rows of the seat map, or null if the file has anything else and should be read with OpenCSV
+     */
+    static boolean[][] parse(byte[] content) {
+        List<boolean[]> rows = new ArrayList<>();
+        int lineStart = 0;
+        while (lineStart < content.length) {
+            int lineEnd = lineStart;
+            while (lineEnd < content.length && content[lineEnd] != LINE_END) {
+                lineEnd++;
+            }
+            int valuesEnd = lineEnd > lineStart && content[lineEnd - 1] == CARRIAGE_RETURN ? lineEnd - 1 : lineEnd;
+            boolean[] row = parseRow(content, lineStart, valuesEnd);
+            if (row == null) {
+                return null;
+            }
+            rows.add(row);
+            lineStart = lineEnd + 1;
+        }
+        return rows.toArray(new boolean[0][]);
+    }
+
+    private static boolean[] parseRow(byte[] content, int start, int end) {
+        if (start == end) {
+            return null;
+        }
+        int values = 1;
+        for (int i = start; i < end; i++) {
+            if (content[i] == SEPARATOR) {
+                values++;
+            }
+        }
+        boolean[] row = new boolean[values];
+        int valueStart = start;
+        for (int i = 0; i < values; i++) {
+            int valueEnd = valueStart;
+            while (valueEnd < end && content[valueEnd] != SEPARATOR) {
+                valueEnd++;
+            }
+            int length = valueEnd - valueStart;
+            int digit;
+            if (length == 1) {
+                digit = content[valueStart];
+            } else if (length == 3 && content[valueStart] == QUOTE && content[valueStart + 2] == QUOTE) {
+                digit = content[valueStart + 1];
+            } else {
+                return null;
+            }
+            if (digit != '0' && digit != '1') {
+                return null;
+            }
+            row[i] = digit == '1';
+            valueStart = valueEnd + 1;
+        }
+        return row;
+    }
+
+    /**
+     * Kept apart, so the OpenCSV classes are not even loaded while the file is read without them
+     */
+    private static final class OpenCsv {
+        private static boolean[][] load(Path path) {
+            List<boolean[]> dataList = new ArrayList<>();
+
+            try (CSVReader reader = new CSVReader(new FileReader(path.toFile()))) {
+                String[] nextLine;
+                while ((nextLine = reader.readNext()) != null) {
+                    boolean[] row = new boolean[nextLine.length];
+                    for (int i = 0; i < nextLine.length; i++) {
+                        row[i] = nextLine[i].equals("1");
+                    }
+                    dataList.add(row);
+                }
+            } catch (IOException | CsvValidationException e) {
+                throw new BookingSaveFileException(
+                        "Exception on reading the booking data. File might be corrupted or missed: " + path, e);
+            }
+            return dataList.toArray(new boolean[0][]);
+        }
+    }
+}
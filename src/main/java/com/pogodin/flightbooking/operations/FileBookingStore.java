@@ -0,0 +1,111 @@
+package com.pogodin.flightbooking.operations;
+
+import com.pogodin.flightbooking.BookingAction;
+import com.pogodin.flightbooking.entity.BookingRequest;
+import com.pogodin.flightbooking.entity.FlightSeatsMap;
+import com.pogodin.flightbooking.entity.SeatMap;
+import com.pogodin.flightbooking.exception.BookingSaveFileException;
+import com.pogodin.flightbooking.metrics.BookingMetrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Stores the seat map in the save-file. The CSV file is rewritten completely on every operation,
+ * the binary file gets only the changed row updated.
+ * The processes sharing the save-file lock it for every operation: the binary file only for the changed row,
+ * so the operations on different rows go in parallel, the CSV file for all the rows.
+ */
+public class FileBookingStore implements BookingStore {
+    private final String filePath;
+
+    public FileBookingStore(String filePath) {
+        this.filePath = filePath;
+    }
+
+    @Override
+    public FlightSeatsMap load(int planeRowsNumber, int planeRowSize) {
+        return load(planeRowsNumber, planeRowSize, null);
+    }
+
+    /**
+     * The binary file is read under the shared lock of its header, the other rows could be written meanwhile
+     * by the other processes
+     */
+    @Override
+    public FlightSeatsMap load(int planeRowsNumber, int planeRowSize, OperationLock lock) {
+        long started = BookingMetrics.start();
+        boolean exists = new File(filePath).exists();
+        BookingMetrics.getInstance().record(BookingMetrics.Stage.FILE_CHECK, started);
+        if (!exists) {
+            return new FlightSeatsMap(planeRowsNumber, planeRowSize);
+        }
+        if (!(lock instanceof SeatMapFileLock fileLock) || !BinarySeatMapFile.isBinary(filePath)) {
+            return FileOperations.getInstance().loadBookingMap(filePath);
+        }
+        return fileLock.underHeaderLock(true, () -> FileOperations.getInstance().loadBookingMap(filePath));
+    }
+
+    @Override
+    public void recordOperation(SeatMap seatMap, BookingRequest applied) {
+        recordOperation(seatMap, applied, null);
+    }
+
+    /**
+     * The row of the binary file is written under the exclusive lock of its header
+     */
+    @Override
+    public void recordOperation(SeatMap seatMap, BookingRequest applied, OperationLock lock) {
+        if (!(lock instanceof SeatMapFileLock fileLock) || !BinarySeatMapFile.isBinary(filePath)) {
+            FileOperations.getInstance().saveBookingRow(seatMap, applied.row(), filePath);
+            return;
+        }
+        fileLock.underHeaderLock(false, () -> {
+            FileOperations.getInstance().saveBookingRow(seatMap, applied.row(), filePath);
+            return null;
+        });
+    }
+
+    /**
+     * The seat map saved after it was removed is not removed anymore
+     */
+    @Override
+    public void save(SeatMap seatMap) {
+        FileOperations.getInstance().saveBookingMap(seatMap, filePath);
+        SeatMapTombstone.remove(filePath);
+    }
+
+    /**
+     * Removing the save-file together with its lock-file, the removal is remembered by the {@link SeatMapTombstone}
+     */
+    @Override
+    public void delete() {
+        SeatMapTombstone.create(filePath);
+        try {
+            Files.deleteIfExists(Path.of(filePath));
+        } catch (IOException e) {
+            throw new BookingSaveFileException("Exception on deleting the seat map file: " + filePath, e);
+        }
+        SeatMapFileLock.deleteLockFile(filePath);
+    }
+
+    @Override
+    public boolean isDeleted() {
+        return SeatMapTombstone.exists(filePath);
+    }
+
+    /**
+     * Locking the row of the request in the existing binary file. BOOK ANY could pick any row,
+     * the CSV file and the new file are written completely, so all the rows are locked for them.
+     */
+    @Override
+    public OperationLock lockOperation(BookingRequest request) {
+        boolean singleRow = BinarySeatMapFile.isBinary(filePath) && new File(filePath).exists()
+                && request.action() != BookingAction.BOOK_ANY && request.row() >= 'A' && request.row() <= 'Z';
+        return singleRow
+                ? SeatMapFileLock.lockRow(filePath, request.row())
+                : SeatMapFileLock.lockAllRows(filePath);
+    }
+}
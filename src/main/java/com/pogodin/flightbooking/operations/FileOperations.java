@@ -1,66 +1,82 @@
 package com.pogodin.flightbooking.operations;
 
-import com.opencsv.CSVReader;
-import com.opencsv.CSVWriter;
-import com.opencsv.exceptions.CsvValidationException;
 import com.pogodin.flightbooking.entity.FlightSeatsMap;
+import com.pogodin.flightbooking.entity.SeatMap;
+
 import com.pogodin.flightbooking.exception.BookingSaveFileException;
 
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
+/**
+ * Reads and writes the seat map save-file. The format is picked by the file extension:
+ * the compact binary format for the .bin files, CSV with one line per row for any other file.
+ */
 public class FileOperations {
-    private static FileOperations instance;
+    public static final String BINARY_EXTENSION = ".bin";
+    private static final FileOperations INSTANCE = new FileOperations();
 
     private FileOperations() {}
 
     public static FileOperations getInstance() {
-        if (instance == null) {
-            instance = new FileOperations();
+        return INSTANCE;
+    }
+
+    public void saveBookingMap(SeatMap seatMap, String filePath) {
+        if (BinarySeatMapFile.isBinary(filePath)) {
+            BinarySeatMapFile.save(seatMap, Paths.get(filePath));
+            return;
         }
-        return instance;
+        CsvSeatMapFile.save(seatMap, Paths.get(filePath));
     }
 
-    public void saveBookingMap(FlightSeatsMap seatMap, String filePath) {
-        boolean[][] seatMappingArr = seatMap.getSnapshot();
-        try (CSVWriter writer = new CSVWriter(new FileWriter(filePath))) {
-            for (boolean[] row : seatMappingArr) {
-                String[] rowAsString = new String[row.length];
-                for (int i = 0; i < row.length; i++) {
-                    rowAsString[i] = row[i] ? "1" : "0"; // Convert double to String
-                }
-                writer.writeNext(rowAsString); // Write the row to the CSV
-            }
-        } catch (IOException e) {
-            throw new BookingSaveFileException(
-                    "Exception during the attempt on saving the seat map booking: " + filePath);
+    /**
+     * Saving the seat map after the change of a single row. The binary file is updated in place,
+     * only the bytes of the row are written. The CSV file is rewritten completely.
+     *
+     * @param seatMap  the changed seat map
+     * @param row      the changed row
+     * @param filePath the save-file
+     */
+    public void saveBookingRow(SeatMap seatMap, char row, String filePath) {
+        if (BinarySeatMapFile.isBinary(filePath) && new File(filePath).exists()) {
+            BinarySeatMapFile.saveRow(seatMap, row, Paths.get(filePath));
+            return;
         }
+        saveBookingMap(seatMap, filePath);
     }
 
-    public FlightSeatsMap loadBookingMap(String filePath) {
-        List<boolean[]> dataList = new ArrayList<>();
+    /**
+     * Converting the save-file from one format to another, E.G. from CSV to binary
+     *
+     * @param sourcePath the existing save-file
+     * @param targetPath the save-file to create, the format is picked by the extension
+     */
+    public void convertBookingMap(String sourcePath, String targetPath) {
+        saveBookingMap(loadBookingMap(sourcePath), targetPath);
+    }
 
-        try (CSVReader reader = new CSVReader(new FileReader(filePath))) {
-            String[] nextLine;
-            while ((nextLine = reader.readNext()) != null) {
-                boolean[] row = new boolean[nextLine.length];
-                for (int i = 0; i < nextLine.length; i++) {
-                    row[i] = nextLine[i].equals("1");
-                }
-                dataList.add(row);
-            }
-        } catch (IOException | CsvValidationException e) {
-            throw new BookingSaveFileException(
-                    "Exception on reading the booking data. File might be corrupted or missed: " + filePath, e);
+    /**
+     * Flushing the written file to the disk, E.G. before it replaces the previous save-file
+     *
+     * @param path the file or the directory, the directory is flushed to keep the renames and the removals in it
+     */
+    public void force(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            throw new BookingSaveFileException("Exception on flushing to the disk: " + path, e);
         }
-        boolean[][] seatingMapArray = dataList.toArray(new boolean[0][]);
-        if (seatingMapArray.length == 0) {
-            throw new BookingSaveFileException(
-                    "Booking file loaded no booking data. Verify file is not empty: " + filePath);
+    }
+
+    public FlightSeatsMap loadBookingMap(String filePath) {
+        if (BinarySeatMapFile.isBinary(filePath)) {
+            return BinarySeatMapFile.load(Paths.get(filePath));
         }
-        return new FlightSeatsMap(seatingMapArray);
+        return CsvSeatMapFile.load(Paths.get(filePath));
     }
 }
@@ -0,0 +1,647 @@
+package com.pogodin.flightbooking.operations;
+
+import com.pogodin.flightbooking.BookingAction;
+import com.pogodin.flightbooking.FailureCode;
+import com.pogodin.flightbooking.OperationResult;
+import com.pogodin.flightbooking.entity.BookingRequest;
+import com.pogodin.flightbooking.entity.FlightSeatsMap;
+import com.pogodin.flightbooking.entity.OffHeapSeatMaps;
+import com.pogodin.flightbooking.entity.SeatMap;
+import com.pogodin.flightbooking.exception.FlightUnavailableException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Seat maps of many flights kept in memory, every flight with its own dimensions and its own store
+ * provided by the processor of the flight.
+ * The flights are spread over the shards by the flight id, the shard is locked only to find the flight,
+ * so operations on different flights never wait for each other, operations on the same flight are applied one by one.
+ * The flight is loaded on the first operation and is evicted from the memory after it was not used for a while.
+ * With the off-heap storage the loaded seat maps are kept in it instead of the heap, when it is full
+ * the least recently used flight is evicted to make room, the flight is unavailable if none could be evicted.
+ * Every loaded flight is kept in the {@link AvailabilityIndex} updated on every change, also after the eviction,
+ * so the flights with enough free seats are found without loading or scanning the seat maps.
+ * \b
+ * The seats are held by the HOLD command for the hold time, the holds are kept in memory only
+ * and expire in the {@link TimingWheel} advanced by {@link #expireHolds()}.
+ * CONFIRM and RELEASE should name exactly the run of the hold. The flight with holds is not evicted.
+ * With the {@link ChangeFeed} every stored change is published to it under the lock of the flight,
+ * so the changes of every flight are in the feed in the order they were applied.
+ * The flight is moved to another registry, E.G. of another node, by {@link #importFlight} there
+ * followed by {@link #dropFlight} here, the holds of the flight are not moved.
+ * The dropped flight is remembered by its store, also across the restarts, the commands for it are rejected
+ * instead of creating it again here, until it is imported back.
+ */
+public class FlightRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(FlightRegistry.class);
+    // precision of the hold expiry, expireHolds should be called as often
+    public static final long HOLD_TICK_MILLIS = 100;
+    public static final long DEFAULT_HOLD_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private final Function<String, BookingProcessor> processors;
+    private final Shard[] shards;
+    private final long idleNanos;
+    private final OffHeapSeatMaps offHeapSeatMaps;
+    private final AvailabilityIndex availability = new AvailabilityIndex();
+    private final TimingWheel<Hold> holdExpiry = new TimingWheel<>(HOLD_TICK_MILLIS, nowMillis());
+    private volatile long holdMillis = DEFAULT_HOLD_MILLIS;
+    private volatile ChangeFeed changeFeed;
+    private volatile Supplier<Collection<String>> storedFlights = List::of;
+
+    /**
+     * Flights of one shard
+     */
+    private static class Shard {
+        private final Map<String, Flight> flights = new HashMap<>();
+    }
+
+    /**
+     * Seat map of one flight, changed only under the lock of the flight
+     */
+    private static class Flight {
+        // not a monitor, so the virtual threads are not pinned while the flight is loaded or saved
+        private final ReentrantLock lock = new ReentrantLock();
+        private final BookingProcessor processor;
+        private SeatMap seatMap;
+        // slot of the off-heap storage, -1 if the seat map is on the heap
+        private int slot = -1;
+        private boolean changed;
+        private boolean evicted;
+        private volatile long lastAccessNanos = System.nanoTime();
+        // holds by their first seat, created on the first hold
+        private Map<Integer, Hold> holds;
+
+        Flight(BookingProcessor processor) {
+            this.processor = processor;
+        }
+
+        boolean hasHolds() {
+            return holds != null && !holds.isEmpty();
+        }
+    }
+
+    /**
+     * Seats held on the flight, removed on confirm, release or expiry
+     */
+    private static class Hold {
+        private final String flightId;
+        private final Flight flight;
+        private final BookingRequest request;
+        private TimingWheel.Timeout<Hold> expiry;
+
+        Hold(String flightId, Flight flight, BookingRequest request) {
+            this.flightId = flightId;
+            this.flight = flight;
+            this.request = request;
+        }
+    }
+
+    /**
+     * @param processors processor of the flight by the flight id, it defines the plane size and the store of the flight
+     * @param shards     number of shards, rounded up to the power of two
+     * @param idleMillis time after which the unused flight is evicted by {@link #evictIdle()}
+     */
+    public FlightRegistry(Function<String, BookingProcessor> processors, int shards, long idleMillis) {
+        this(processors, shards, idleMillis, null);
+    }
+
+    /**
+     * @param processors      see {@link #FlightRegistry(Function, int, long)}
+     * @param shards          see {@link #FlightRegistry(Function, int, long)}
+     * @param idleMillis      see {@link #FlightRegistry(Function, int, long)}
+     * @param offHeapSeatMaps storage the loaded seat maps are kept in, null to keep them on the heap
+     */
+    public FlightRegistry(Function<String, BookingProcessor> processors, int shards, long idleMillis,
+                          OffHeapSeatMaps offHeapSeatMaps) {
+        this.processors = processors;
+        this.offHeapSeatMaps = offHeapSeatMaps;
+        this.shards = new Shard[Integer.highestOneBit(Math.max(1, shards * 2 - 1))];
+        for (int i = 0; i < this.shards.length; i++) {
+            this.shards[i] = new Shard();
+        }
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+    }
+
+    /**
+     * Applying the booking request to the flight and recording it into the store of the flight.
+     * The flight is loaded if it is not in the memory yet.
+     *
+     * @param flightId the flight id, E.G. LH123
+     * @param request  the booking request
+     * @return operation result with success if the operation succeeds, failure otherwise with the reason
+     */
+    public OperationResult process(String flightId, BookingRequest request) {
+        Flight flight;
+        try {
+            flight = lockFlight(flightId);
+        } catch (FlightUnavailableException e) {
+            return OperationResult.failure(FailureCode.FLIGHT_UNAVAILABLE, e.getMessage());
+        }
+        try {
+            Hold hold = null;
+            if (request.action() == BookingAction.CONFIRM || request.action() == BookingAction.RELEASE) {
+                hold = flight.holds == null ? null : flight.holds.get(holdKey(request));
+                if (hold == null || hold.request.passengers() != request.passengers()) {
+                    return OperationResult.failure(FailureCode.NOT_HELD);
+                }
+            }
+
+            OperationResult result = flight.processor.applyOperation(flight.seatMap, request);
+            // the confirm fails if some held seats were canceled, the rest of them are released on expiry
+            if (hold != null && (result.isSuccess() || request.action() == BookingAction.RELEASE)) {
+                removeHold(hold);
+            }
+            if (result.isSuccess()) {
+                if (request.action() == BookingAction.HOLD) {
+                    addHold(flightId, flight, request);
+                }
+                if (request.action().isStored()) {
+                    BookingRequest applied = BookingProcessor.appliedRequest(request, result);
+                    flight.processor.recordOperation(flight.seatMap, applied);
+                    flight.changed = true;
+                    publish(flightId, applied);
+                }
+                availability.update(flightId, flight.seatMap);
+            }
+            return result;
+        } finally {
+            flight.lock.unlock();
+        }
+    }
+
+    /**
+     * Copy of the seat map of the flight consistent with the change feed: the changes of the feed starting
+     * with the sequence number of the snapshot are made after it. The flight is loaded if it is not in the memory yet.
+     *
+     * @param flightId the flight id, E.G. LH123
+     * @return the snapshot of the flight, the held seats are free in it
+     */
+    public ChangeFeed.Snapshot snapshot(String flightId) {
+        Flight flight = lockFlight(flightId);
+        try {
+            ChangeFeed feed = changeFeed;
+            // the changes of the flight are published under its lock
+            return new ChangeFeed.Snapshot(feed != null ? feed.nextSequence() : 0, flight.seatMap.getSnapshot());
+        } finally {
+            flight.lock.unlock();
+        }
+    }
+
+    /**
+     * Same as {@link #snapshot(String)}, but only for the flight the registry already has in the memory
+     * or in the store, E.G. for the replicas, whose reads should not create the flights
+     *
+     * @param flightId the flight id, E.G. LH123
+     * @return the snapshot of the flight, null if the registry has no such flight
+     */
+    public ChangeFeed.Snapshot existingSnapshot(String flightId) {
+        Shard shard = shards[shardIndex(flightId)];
+        boolean loaded;
+        synchronized (shard) {
+            loaded = shard.flights.containsKey(flightId);
+        }
+        if (!loaded && !storedFlights.get().contains(flightId)) {
+            return null;
+        }
+        return snapshot(flightId);
+    }
+
+    /**
+     * Locking the flight loaded into the memory, the caller should unlock it
+     *
+     * @throws FlightUnavailableException if there is no room for the flight in the off-heap storage
+     *                                    or the flight was dropped from this registry
+     */
+    private Flight lockFlight(String flightId) {
+        return lockFlight(flightId, true);
+    }
+
+    /**
+     * @param load false to lock the flight without loading it, E.G. to replace its seat map
+     */
+    private Flight lockFlight(String flightId, boolean load) {
+        while (true) {
+            Flight flight = flight(flightId);
+            flight.lock.lock();
+            if (flight.evicted) {
+                // evicted between the lookup and the lock, the next lookup loads it again
+                flight.lock.unlock();
+                continue;
+            }
+            boolean dropped = false;
+            try {
+                if (load && flight.seatMap == null) {
+                    dropped = flight.processor.seatMapDeleted();
+                    if (!dropped) {
+                        load(flight);
+                        availability.update(flightId, flight.seatMap);
+                    }
+                }
+            } catch (RuntimeException e) {
+                flight.lock.unlock();
+                throw e;
+            }
+            if (dropped) {
+                // created by the lookup after the drop, so it is not loaded yet
+                flight.evicted = true;
+                flight.lock.unlock();
+                removeFromShard(flightId, flight);
+                throw new FlightUnavailableException("Flight " + flightId + " was moved away from this registry");
+            }
+            flight.lastAccessNanos = System.nanoTime();
+            return flight;
+        }
+    }
+
+    /**
+     * Replacing the seat map of the flight with the one moved from another registry and storing it
+     *
+     * @param flightId the flight id, E.G. LH123
+     * @param seats    the seat map as array of rows, true stands for the occupied seat
+     */
+    public void importFlight(String flightId, boolean[][] seats) {
+        // the seat map is replaced, so it is not loaded, also when the flight was dropped before
+        Flight flight = lockFlight(flightId, false);
+        try {
+            FlightSeatsMap imported = new FlightSeatsMap(seats);
+            flight.processor.saveSeatMap(imported);
+            dropHolds(flight);
+            if (flight.slot >= 0) {
+                offHeapSeatMaps.removeFlight(flight.slot);
+                flight.slot = -1;
+            }
+            place(flight, imported);
+            flight.changed = false;
+            availability.update(flightId, flight.seatMap);
+        } finally {
+            flight.lock.unlock();
+        }
+    }
+
+    /**
+     * Removing the flight from the memory and from its store, E.G. after it was moved to another registry.
+     * The flight is not created here again by the later commands, see {@link #importFlight} to bring it back
+     *
+     * @param flightId the flight id, E.G. LH123
+     * @throws FlightUnavailableException if the flight is already dropped
+     */
+    public void dropFlight(String flightId) {
+        Flight flight = lockFlight(flightId);
+        try {
+            flight.processor.deleteSeatMap();
+            dropHolds(flight);
+            if (flight.slot >= 0) {
+                offHeapSeatMaps.removeFlight(flight.slot);
+                flight.slot = -1;
+            }
+            flight.evicted = true;
+            availability.remove(flightId);
+        } finally {
+            flight.lock.unlock();
+        }
+        removeFromShard(flightId, flight);
+    }
+
+    /**
+     * @param storedFlights ids of the flights having the stored seat maps, E.G. from the names of the save-files
+     */
+    public void setStoredFlights(Supplier<Collection<String>> storedFlights) {
+        this.storedFlights = storedFlights;
+    }
+
+    /**
+     * @return ids of the stored flights and of the flights in the memory, in the alphabetical order
+     */
+    public List<String> flightIds() {
+        TreeSet<String> flightIds = new TreeSet<>(storedFlights.get());
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                flightIds.addAll(shard.flights.keySet());
+            }
+        }
+        return List.copyOf(flightIds);
+    }
+
+    /**
+     * @param changeFeed feed the stored changes of the flights are published to, null to publish nothing
+     */
+    public void setChangeFeed(ChangeFeed changeFeed) {
+        this.changeFeed = changeFeed;
+    }
+
+    /**
+     * @param holdMillis time after which the seats held by the HOLD command are released
+     */
+    public void setHoldMillis(long holdMillis) {
+        this.holdMillis = holdMillis;
+    }
+
+    /**
+     * Releasing the holds whose time is over, should be called every {@link #HOLD_TICK_MILLIS} by one thread
+     *
+     * @return number of the released holds
+     */
+    public int expireHolds() {
+        return holdExpiry.advance(nowMillis(), this::expire);
+    }
+
+    /**
+     * Indexing the stored flights, so the search finds them right after the start without waiting for them to be used.
+     * Every stored seat map is loaded once and dropped right away, the flights are not kept in the memory.
+     * Should be called before the flights are used, the index is updated by the commands afterwards.
+     * The flight that could not be loaded stays out of the index until a command loads it.
+     *
+     * @return number of the indexed flights
+     */
+    public int indexStoredFlights() {
+        int indexed = 0;
+        for (String flightId : storedFlights.get()) {
+            try {
+                availability.update(flightId, processors.apply(flightId).loadSeatMap());
+                indexed++;
+            } catch (RuntimeException e) {
+                logger.warn("Exception on indexing the stored flight " + flightId, e);
+            }
+        }
+        return indexed;
+    }
+
+    /**
+     * Finding the flights with enough free seats among the stored and the loaded flights, see {@link AvailabilityIndex}
+     *
+     * @param seatsTogether number of free seats the flight should have together in one row
+     * @param freeSeats     number of free seats the flight should have in total
+     * @return ids of the flights, the flights with the shortest fitting run and the fewest free seats first
+     */
+    public List<String> findFlights(int seatsTogether, int freeSeats) {
+        return availability.findFlights(seatsTogether, freeSeats);
+    }
+
+    /**
+     * Evicting the flights that were not used for longer than the idle time, the changed flights are saved
+     * into their stores before the eviction. The shard is locked only to find the idle flights and to remove
+     * the evicted ones, the flights are saved without it, so the other flights of the shard stay available.
+     *
+     * @return number of evicted flights
+     */
+    public int evictIdle() {
+        long now = System.nanoTime();
+        int evicted = 0;
+        List<Map.Entry<String, Flight>> candidates = new ArrayList<>();
+        for (Shard shard : shards) {
+            candidates.clear();
+            synchronized (shard) {
+                for (Map.Entry<String, Flight> entry : shard.flights.entrySet()) {
+                    if (now - entry.getValue().lastAccessNanos >= idleNanos) {
+                        candidates.add(Map.entry(entry.getKey(), entry.getValue()));
+                    }
+                }
+            }
+            for (Map.Entry<String, Flight> candidate : candidates) {
+                if (evictIdle(candidate.getValue(), now)) {
+                    synchronized (shard) {
+                        shard.flights.remove(candidate.getKey(), candidate.getValue());
+                    }
+                    evicted++;
+                }
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Saving and evicting all the flights, then releasing the off-heap storage of the seat maps
+     */
+    public void close() {
+        for (Shard shard : shards) {
+            List<Flight> flights;
+            synchronized (shard) {
+                flights = List.copyOf(shard.flights.values());
+                shard.flights.clear();
+            }
+            for (Flight flight : flights) {
+                evict(flight, true);
+            }
+        }
+        if (offHeapSeatMaps != null) {
+            offHeapSeatMaps.close();
+        }
+    }
+
+    /**
+     * @return number of flights kept in the memory
+     */
+    public int loadedFlights() {
+        int loaded = 0;
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                loaded += shard.flights.size();
+            }
+        }
+        return loaded;
+    }
+
+    private Flight flight(String flightId) {
+        Shard shard = shards[shardIndex(flightId)];
+        synchronized (shard) {
+            return shard.flights.computeIfAbsent(flightId, id -> new Flight(processors.apply(id)));
+        }
+    }
+
+    private void removeFromShard(String flightId, Flight flight) {
+        Shard shard = shards[shardIndex(flightId)];
+        synchronized (shard) {
+            shard.flights.remove(flightId, flight);
+        }
+    }
+
+    private void load(Flight flight) {
+        place(flight, flight.processor.loadSeatMap());
+    }
+
+    /**
+     * Keeping the seat map of the flight, the least recently used flights are evicted
+     * when there is no room for it in the off-heap storage
+     *
+     * @throws FlightUnavailableException if no flight could be evicted
+     */
+    private void place(Flight flight, FlightSeatsMap seatMap) {
+        if (offHeapSeatMaps == null) {
+            flight.seatMap = seatMap;
+            return;
+        }
+        int slot = offHeapSeatMaps.tryAddFlight(seatMap);
+        while (slot < 0) {
+            if (!evictLeastRecentlyUsed()) {
+                throw new FlightUnavailableException("No room for more flights in the off-heap storage");
+            }
+            slot = offHeapSeatMaps.tryAddFlight(seatMap);
+        }
+        flight.slot = slot;
+        flight.seatMap = offHeapSeatMaps.seatMap(slot);
+    }
+
+    /**
+     * Evicting the least recently used flight of the off-heap storage. Called under the lock of the flight
+     * being placed, so the flights locked by the other threads are skipped instead of waited for.
+     *
+     * @return true if a flight was evicted
+     */
+    private boolean evictLeastRecentlyUsed() {
+        List<Map.Entry<String, Flight>> candidates = new ArrayList<>();
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                for (Map.Entry<String, Flight> entry : shard.flights.entrySet()) {
+                    candidates.add(Map.entry(entry.getKey(), entry.getValue()));
+                }
+            }
+        }
+        candidates.sort(Comparator.comparingLong(candidate -> candidate.getValue().lastAccessNanos));
+        for (Map.Entry<String, Flight> candidate : candidates) {
+            Flight victim = candidate.getValue();
+            if (!victim.lock.tryLock()) {
+                continue;
+            }
+            try {
+                // the flight being placed has no slot yet
+                if (victim.evicted || victim.slot < 0 || !evict(victim, false)) {
+                    continue;
+                }
+            } finally {
+                victim.lock.unlock();
+            }
+            Shard shard = shards[shardIndex(candidate.getKey())];
+            synchronized (shard) {
+                shard.flights.remove(candidate.getKey(), victim);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private int shardIndex(String flightId) {
+        int hash = flightId.hashCode();
+        return (hash ^ (hash >>> 16)) & (shards.length - 1);
+    }
+
+    private void addHold(String flightId, Flight flight, BookingRequest request) {
+        if (flight.holds == null) {
+            flight.holds = new HashMap<>();
+        }
+        Hold hold = new Hold(flightId, flight, request);
+        Hold replaced = flight.holds.put(holdKey(request), hold);
+        if (replaced != null) {
+            // its seats were canceled and held again
+            replaced.expiry.cancel();
+        }
+        hold.expiry = holdExpiry.schedule(hold, nowMillis() + holdMillis);
+    }
+
+    private void dropHolds(Flight flight) {
+        if (flight.holds != null) {
+            for (Hold hold : flight.holds.values()) {
+                hold.expiry.cancel();
+            }
+            flight.holds = null;
+        }
+    }
+
+    private void removeHold(Hold hold) {
+        hold.flight.holds.remove(holdKey(hold.request));
+        hold.expiry.cancel();
+    }
+
+    /**
+     * Releasing the expired hold, unless it was confirmed or released in the meantime
+     */
+    private void expire(Hold hold) {
+        Flight flight = hold.flight;
+        flight.lock.lock();
+        try {
+            if (flight.evicted || flight.holds == null || flight.holds.get(holdKey(hold.request)) != hold) {
+                return;
+            }
+            flight.holds.remove(holdKey(hold.request));
+            BookingRequest request = hold.request;
+            flight.seatMap.releaseHold(request.row(), request.seat(), request.passengers());
+            availability.update(hold.flightId, flight.seatMap);
+        } finally {
+            flight.lock.unlock();
+        }
+    }
+
+    private static int holdKey(BookingRequest request) {
+        return (request.row() << Short.SIZE) | request.seat();
+    }
+
+    private static long nowMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    /**
+     * Evicting the flight found idle, unless it was used or evicted since then
+     *
+     * @param idleSince the time the flight was found idle at
+     * @return true if the flight is saved and marked as evicted
+     */
+    private boolean evictIdle(Flight flight, long idleSince) {
+        flight.lock.lock();
+        try {
+            if (flight.evicted || idleSince - flight.lastAccessNanos < idleNanos) {
+                return false;
+            }
+            return evict(flight, false);
+        } finally {
+            flight.lock.unlock();
+        }
+    }
+
+    /**
+     * @param dropHolds true to evict the flight with holds, they are lost
+     * @return true if the flight is saved and marked as evicted, false if it could not be saved or has holds
+     *         and stays in the memory
+     */
+    private boolean evict(Flight flight, boolean dropHolds) {
+        flight.lock.lock();
+        try {
+            if (!dropHolds && flight.hasHolds()) {
+                return false;
+            }
+            if (flight.changed) {
+                try {
+                    flight.processor.saveSeatMap(flight.seatMap);
+                } catch (RuntimeException e) {
+                    logger.error("Exception on saving the evicted flight", e);
+                    return false;
+                }
+            }
+            if (flight.slot >= 0) {
+                offHeapSeatMaps.removeFlight(flight.slot);
+                flight.slot = -1;
+            }
+            flight.evicted = true;
+            return true;
+        } finally {
+            flight.lock.unlock();
+        }
+    }
+
+    private void publish(String flightId, BookingRequest applied) {
+        ChangeFeed feed = changeFeed;
+        if (feed != null) {
+            feed.publish(flightId, applied.action(), applied.row(), applied.seat(), applied.passengers());
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.pogodin.flightbooking.operations;
+
+import com.pogodin.flightbooking.entity.BookingRequest;
+import com.pogodin.flightbooking.entity.FlightSeatsMap;
+import com.pogodin.flightbooking.entity.SeatMap;
+import com.pogodin.flightbooking.exception.BookingSaveFileException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Stores the seat map as the CSV snapshot plus the journal of the operations applied after it.
+ * Every operation costs one small append to the journal instead of the whole file rewrite,
+ * the seat map is restored from the snapshot with the journal replayed on top of it.
+ * Saving the whole seat map is a checkpoint: the snapshot is replaced and the journal it covers is removed.
+ */
+public class JournalBookingStore implements BookingStore {
+    static final String JOURNAL_SUFFIX = ".journal";
+    // the prefix keeps the extension, so the temp snapshot is written in the same format
+    private static final String TEMP_PREFIX = ".tmp-";
+
+    private final Path snapshotPath;
+    private final BookingJournal journal;
+    private final int maxReplayedOperations;
+
+    public JournalBookingStore(String filePath) {
+        this(filePath, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param filePath              path of the CSV snapshot, the journal is stored next to it
+     * @param maxReplayedOperations when more operations are replayed on load, the checkpoint is made right away,
+     *                              so the next load is fast again
+     */
+    public JournalBookingStore(String filePath, int maxReplayedOperations) {
+        this(filePath, maxReplayedOperations, BookingJournal.DEFAULT_MAX_BATCH_SIZE, 0);
+    }
+
+    /**
+     * @param filePath              see {@link #JournalBookingStore(String, int)}
+     * @param maxReplayedOperations see {@link #JournalBookingStore(String, int)}
+     * @param maxBatchSize          maximum number of operations committed to the journal with a single fsync
+     * @param maxWaitMicros         how long the operation waits for the others to be committed together,
+     *                              see {@link BookingJournal#BookingJournal(Path, int, long)}
+     */
+    public JournalBookingStore(String filePath, int maxReplayedOperations, int maxBatchSize, long maxWaitMicros) {
+        this.snapshotPath = Paths.get(filePath);
+        this.journal = new BookingJournal(Paths.get(filePath + JOURNAL_SUFFIX), maxBatchSize, maxWaitMicros);
+        this.maxReplayedOperations = maxReplayedOperations;
+    }
+
+    @Override
+    public FlightSeatsMap load(int planeRowsNumber, int planeRowSize) {
+        FlightSeatsMap seatMap = Files.exists(snapshotPath)
+                ? FileOperations.getInstance().loadBookingMap(snapshotPath.toString())
+                : new FlightSeatsMap(planeRowsNumber, planeRowSize);
+        if (journal.replay(seatMap) > maxReplayedOperations) {
+            save(seatMap);
+        }
+        return seatMap;
+    }
+
+    @Override
+    public void recordOperation(SeatMap seatMap, BookingRequest applied) {
+        journal.append(applied);
+    }
+
+    @Override
+    public PendingRecord placeOperation(SeatMap seatMap, BookingRequest applied) {
+        return journal.place(applied);
+    }
+
+    /**
+     * The journal is replayed as a whole and the checkpoint rewrites the snapshot, so all the rows are locked
+     */
+    @Override
+    public OperationLock lockOperation(BookingRequest request) {
+        return SeatMapFileLock.lockAllRows(snapshotPath.toString());
+    }
+
+    /**
+     * Sealing the journal first, so every operation of the sealed segments is already in the seat map when
+     * the snapshot is taken. The new snapshot is written next to the old one, flushed to the disk and replaces it
+     * at once, a crash leaves either the old or the new snapshot. The sealed segments are removed only after
+     * the rename itself is flushed with the directory, so a crash never finds the old snapshot without the journal.
+     * Booking threads are blocked only while the journal is sealed, not while the snapshot is written.
+     */
+    @Override
+    public void save(SeatMap seatMap) {
+        long sealedSegment = journal.seal();
+        Path tempPath = snapshotPath.resolveSibling(TEMP_PREFIX + snapshotPath.getFileName());
+        FileOperations fileOperations = FileOperations.getInstance();
+        fileOperations.saveBookingMap(seatMap, tempPath.toString());
+        fileOperations.force(tempPath);
+        try {
+            Files.move(tempPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new BookingSaveFileException("Exception on replacing the seat map snapshot: " + snapshotPath, e);
+        }
+        fileOperations.force(snapshotPath.toAbsolutePath().getParent());
+        journal.removeSealed(sealedSegment);
+        // the seat map saved after it was removed is not removed anymore
+        SeatMapTombstone.remove(snapshotPath.toString());
+    }
+
+    /**
+     * Removing the journal first, the snapshot left by a crash in between is still a consistent seat map.
+     * The lock-file goes last. The removal is remembered by the {@link SeatMapTombstone} made before anything
+     * is removed.
+     */
+    @Override
+    public void delete() {
+        SeatMapTombstone.create(snapshotPath.toString());
+        journal.seal();
+        journal.removeSealed(Long.MAX_VALUE);
+        try {
+            Files.deleteIfExists(snapshotPath);
+        } catch (IOException e) {
+            throw new BookingSaveFileException("Exception on deleting the seat map snapshot: " + snapshotPath, e);
+        }
+        SeatMapFileLock.deleteLockFile(snapshotPath.toString());
+    }
+
+    @Override
+    public boolean isDeleted() {
+        return SeatMapTombstone.exists(snapshotPath.toString());
+    }
+}
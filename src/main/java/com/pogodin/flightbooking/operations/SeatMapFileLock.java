@@ -0,0 +1,145 @@
+package com.pogodin.flightbooking.operations;
+
+import com.pogodin.flightbooking.exception.BookingSaveFileException;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Lock of the save-file shared by all the processes booking the same flight, E.G. the concurrent CLI invocations.
+ * The locks are taken on the regions of the lock-file next to the save-file, E.G. booking_the_flight.bin.lock:
+ * the first byte stands for the header of the save-file and every next byte for one row,
+ * so the processes changing different rows hold different regions and proceed in parallel.
+ * The save-file itself is not locked, closing any other channel of it would release all the locks of the process.
+ * Within one process the save-file is locked by one thread at a time.
+ */
+class SeatMapFileLock implements BookingStore.OperationLock {
+    static final String LOCK_SUFFIX = ".lock";
+    private static final long HEADER_POSITION = 0;
+    private static final long ROWS_POSITION = 1;
+
+    // the regions locked by the different threads of the same process must not overlap, see FileChannel#lock
+    private static final ConcurrentHashMap<Path, ReentrantLock> PROCESS_LOCKS = new ConcurrentHashMap<>();
+
+    private final Path lockPath;
+    private final ReentrantLock processLock;
+    private final FileChannel channel;
+
+    private SeatMapFileLock(Path lockPath, ReentrantLock processLock, FileChannel channel) {
+        this.lockPath = lockPath;
+        this.processLock = processLock;
+        this.channel = channel;
+    }
+
+    /**
+     * Locking the single row of the save-file, waiting for the processes holding it
+     *
+     * @param filePath the save-file
+     * @param row      the row, E.G. 'D'
+     * @return the lock to close once the row is saved
+     */
+    static SeatMapFileLock lockRow(String filePath, char row) {
+        return lock(filePath, ROWS_POSITION + (row - 'A'), 1);
+    }
+
+    /**
+     * Locking all the rows of the save-file, for the operations that could change any row or rewrite the whole file
+     *
+     * @param filePath the save-file
+     * @return the lock to close once the save-file is saved
+     */
+    static SeatMapFileLock lockAllRows(String filePath) {
+        return lock(filePath, ROWS_POSITION, Long.MAX_VALUE - ROWS_POSITION);
+    }
+
+    /**
+     * Running the action under the lock of the header, while the rows stay locked.
+     * The header is locked shared to read the save-file consistently and exclusively to change it,
+     * so the reader never sees the row half written by another process.
+     *
+     * @param shared true to read the save-file, false to write it
+     * @param action the action reading or writing the save-file
+     * @return result of the action
+     */
+    <T> T underHeaderLock(boolean shared, Supplier<T> action) {
+        try {
+            FileLock headerLock = channel.lock(HEADER_POSITION, 1, shared);
+            try {
+                return action.get();
+            } finally {
+                headerLock.release();
+            }
+        } catch (IOException e) {
+            throw new BookingSaveFileException("Exception on locking the booking file: " + lockPath, e);
+        }
+    }
+
+    /**
+     * Releasing all the regions of the save-file held by this lock
+     */
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new BookingSaveFileException("Exception on unlocking the booking file: " + lockPath, e);
+        } finally {
+            processLock.unlock();
+        }
+    }
+
+    /**
+     * Removing the lock-file of the removed save-file, E.G. after the flight was moved to another node.
+     * The file is removed under the lock of all the rows, so no operation of this process is in progress.
+     *
+     * @param filePath the removed save-file
+     */
+    static void deleteLockFile(String filePath) {
+        try (SeatMapFileLock lock = lockAllRows(filePath)) {
+            Files.deleteIfExists(lock.lockPath);
+            PROCESS_LOCKS.remove(lock.lockPath, lock.processLock);
+        } catch (IOException e) {
+            throw new BookingSaveFileException("Exception on deleting the lock file of: " + filePath, e);
+        }
+    }
+
+    private static SeatMapFileLock lock(String filePath, long position, long size) {
+        Path lockPath = Paths.get(filePath + LOCK_SUFFIX).toAbsolutePath().normalize();
+        ReentrantLock processLock = PROCESS_LOCKS.computeIfAbsent(lockPath, path -> new ReentrantLock());
+        processLock.lock();
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(lockPath,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channel.lock(position, size, false);
+            return new SeatMapFileLock(lockPath, processLock, channel);
+        } catch (IOException e) {
+            closeQuietly(channel);
+            processLock.unlock();
+            throw new BookingSaveFileException("Exception on locking the booking file: " + lockPath, e);
+        } catch (RuntimeException e) {
+            closeQuietly(channel);
+            processLock.unlock();
+            throw e;
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // the lock is not held anyway
+        }
+    }
+}
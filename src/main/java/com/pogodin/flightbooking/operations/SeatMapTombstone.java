@@ -0,0 +1,57 @@
+package com.pogodin.flightbooking.operations;
+
+import com.pogodin.flightbooking.exception.BookingSaveFileException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Marker of the seat map removed from the store, E.G. booking_the_flight-LH123.csv.dropped next to the removed
+ * save-file of the flight moved to another node. The marker stays across the restarts, so the flight is not
+ * created here again by a late command, until the seat map is saved here again.
+ */
+public final class SeatMapTombstone {
+    public static final String SUFFIX = ".dropped";
+
+    private SeatMapTombstone() {}
+
+    /**
+     * Creating the marker before the save-file is removed, a crash in between leaves the flight dropped
+     *
+     * @param filePath the save-file about to be removed
+     */
+    static void create(String filePath) {
+        Path path = Path.of(filePath + SUFFIX);
+        try {
+            if (!Files.exists(path)) {
+                Files.createFile(path);
+            }
+        } catch (IOException e) {
+            throw new BookingSaveFileException("Exception on marking the seat map as removed: " + filePath, e);
+        }
+        FileOperations.getInstance().force(path.toAbsolutePath().getParent());
+    }
+
+    /**
+     * Removing the marker after the seat map is saved again
+     *
+     * @param filePath the saved save-file
+     */
+    static void remove(String filePath) {
+        try {
+            Files.deleteIfExists(Path.of(filePath + SUFFIX));
+        } catch (IOException e) {
+            throw new BookingSaveFileException("Exception on removing the marker of the removed seat map: "
+                    + filePath, e);
+        }
+    }
+
+    /**
+     * @param filePath the save-file
+     * @return true if the seat map of the save-file was removed and not saved since
+     */
+    static boolean exists(String filePath) {
+        return Files.exists(Path.of(filePath + SUFFIX));
+    }
+}
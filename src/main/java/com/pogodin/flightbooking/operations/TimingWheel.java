@@ -0,0 +1,165 @@
+package com.pogodin.flightbooking.operations;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel expiring the scheduled items, E.G. the seat holds, at the tick of their deadline.
+ * Every level has 64 slots, a slot of the first level is one tick, a slot of the next level is 64 slots
+ * of the previous one, so 4 levels of 100 ms ticks cover 19 days. An item is kept in the slot of its deadline
+ * on the lowest level covering it and moves one level down when the wheel reaches its slot,
+ * so scheduling, canceling and expiring an item cost O(1) without a timer per item and without scanning the items.
+ * \b
+ * Items are scheduled and canceled from any thread without locks, the wheel is advanced by a single thread,
+ * E.G. the scheduler of the server, and the expired items are handed to it.
+ * The deadlines are rounded up to the tick, so an item expires up to one tick late but never early.
+ *
+ * @param <T> type of the scheduled items
+ */
+public class TimingWheel<T> {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 4;
+    // the deadlines further than the top level are kept in its last slot and placed again when it is reached
+    private static final long MAX_TICKS = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+    private final long tickMillis;
+    private final long startMillis;
+    // head of the list of the timeouts in every slot of every level, changed by the advancing thread only
+    @SuppressWarnings("unchecked")
+    private final Timeout<T>[][] slots = (Timeout<T>[][]) new Timeout<?>[LEVELS][SLOTS];
+    // scheduled by any thread and not placed into the slots yet
+    private final ConcurrentLinkedQueue<Timeout<T>> scheduled = new ConcurrentLinkedQueue<>();
+    // number of the ticks the wheel has passed
+    private long currentTick;
+
+    /**
+     * Item scheduled in the wheel
+     */
+    public static final class Timeout<T> {
+        private final T item;
+        private final long deadlineTick;
+        private volatile boolean canceled;
+        private Timeout<T> next;
+
+        private Timeout(T item, long deadlineTick) {
+            this.item = item;
+            this.deadlineTick = deadlineTick;
+        }
+
+        public T getItem() {
+            return item;
+        }
+
+        /**
+         * Canceling the item, it is dropped from the wheel without expiring once its slot is reached
+         */
+        public void cancel() {
+            canceled = true;
+        }
+    }
+
+    /**
+     * @param tickMillis  length of the tick, the precision of the deadlines
+     * @param startMillis the current time, the deadlines and the advance times are of the same clock
+     */
+    public TimingWheel(long tickMillis, long startMillis) {
+        if (tickMillis < 1) {
+            throw new IllegalArgumentException("Tick of the timing wheel should be positive: " + tickMillis);
+        }
+        this.tickMillis = tickMillis;
+        this.startMillis = startMillis;
+    }
+
+    /**
+     * Scheduling the item to expire at the deadline, could be called from any thread
+     *
+     * @param item           the item handed to the expiry consumer at the deadline
+     * @param deadlineMillis time of the expiry on the clock the wheel was started with
+     * @return the timeout to cancel the expiry with
+     */
+    public Timeout<T> schedule(T item, long deadlineMillis) {
+        long sinceStart = Math.max(0, deadlineMillis - startMillis);
+        Timeout<T> timeout = new Timeout<>(item, (sinceStart + tickMillis - 1) / tickMillis);
+        scheduled.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Passing the ticks up to the current time and expiring the items whose deadline is passed.
+     * Should be called by one thread at a time, at least once per tick to expire the items in time.
+     *
+     * @param nowMillis the current time
+     * @param expired   consumer of the expired items
+     * @return number of the expired items
+     */
+    public int advance(long nowMillis, Consumer<T> expired) {
+        long targetTick = (nowMillis - startMillis) / tickMillis;
+        int expiredCount = 0;
+        for (Timeout<T> timeout = scheduled.poll(); timeout != null; timeout = scheduled.poll()) {
+            expiredCount += place(timeout, expired);
+        }
+        while (currentTick < targetTick) {
+            currentTick++;
+            cascade();
+            int slot = (int) (currentTick & (SLOTS - 1));
+            Timeout<T> timeout = slots[0][slot];
+            slots[0][slot] = null;
+            while (timeout != null) {
+                Timeout<T> next = timeout.next;
+                timeout.next = null;
+                expiredCount += place(timeout, expired);
+                timeout = next;
+            }
+        }
+        return expiredCount;
+    }
+
+    /**
+     * Moving the timeouts of the upper levels reached at the current tick one or more levels down,
+     * starting from the top level, so they could land in the lower slots reached at the same tick
+     */
+    private void cascade() {
+        int level = 0;
+        while (level < LEVELS - 1 && (currentTick & ((1L << (SLOT_BITS * (level + 1))) - 1)) == 0) {
+            level++;
+        }
+        for (; level > 0; level--) {
+            int slot = (int) ((currentTick >>> (SLOT_BITS * level)) & (SLOTS - 1));
+            Timeout<T> timeout = slots[level][slot];
+            slots[level][slot] = null;
+            while (timeout != null) {
+                Timeout<T> next = timeout.next;
+                timeout.next = null;
+                place(timeout, null);
+                timeout = next;
+            }
+        }
+    }
+
+    /**
+     * Putting the timeout into the slot of its deadline, or expiring it if the deadline is reached
+     *
+     * @return 1 if the timeout expired, 0 otherwise
+     */
+    private int place(Timeout<T> timeout, Consumer<T> expired) {
+        if (timeout.canceled) {
+            return 0;
+        }
+        long ticks = timeout.deadlineTick - currentTick;
+        if (ticks <= 0 && expired != null) {
+            expired.accept(timeout.item);
+            return 1;
+        }
+        // reached while cascading, expires in the first level slot of the current tick
+        long deadlineTick = currentTick + Math.min(Math.max(ticks, 0), MAX_TICKS);
+        int level = 0;
+        while (level < LEVELS - 1 && ticks >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        int slot = (int) ((deadlineTick >>> (SLOT_BITS * level)) & (SLOTS - 1));
+        timeout.next = slots[level][slot];
+        slots[level][slot] = timeout;
+        return 0;
+    }
+}
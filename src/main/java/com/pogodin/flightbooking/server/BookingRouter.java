@@ -0,0 +1,434 @@
+package com.pogodin.flightbooking.server;
+
+import com.pogodin.flightbooking.FailureCode;
+import com.pogodin.flightbooking.OperationResult;
+import com.pogodin.flightbooking.exception.BookingSaveFileException;
+import com.pogodin.flightbooking.operations.CommandParser;
+import com.pogodin.flightbooking.operations.ConsistentHashRing;
+import com.pogodin.flightbooking.operations.FileOperations;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Router of the commands to the booking servers each keeping its own part of the flights,
+ * the flights are assigned to the servers by the {@link ConsistentHashRing} of the flight ids.
+ * Clients send the commands prefixed with the flight id the same way as to a single server, E.G. "LH123 BOOK A0 1"
+ * or "SEATS LH123", the router forwards every command to the server owning the flight and answers with its response.
+ * The commands without the flight id are rejected, the default flights of the servers are not routed.
+ * Every client gets its own connections to the servers, opened on the first command to each of them.
+ * \b
+ * "ADD 7003" adds the server on the port 7003 and moves to it the flights it takes over from the other servers:
+ * the router asks every server for its STORED flights, copies the seat map of every moved flight with SEATS,
+ * stores it on the new server with IMPORT and removes it from the old one with DROP, the other flights stay.
+ * The commands wait while the flights are moved, so none of them reaches the old server of a moved flight.
+ * The answer is the MOVED line with the number of the moved flights, E.G. "MOVED 12".
+ * The holds of the moved flights are not moved, their seats are free on the new server.
+ * \b
+ * The servers are saved to the servers file before the router starts and every time a server is added,
+ * a restarted router loads them from the file instead of the servers it is started with, so it routes the moved flights
+ * to their new servers. The router does not route until it knows the servers, the commands fail meanwhile.
+ */
+public class BookingRouter {
+    private static final Logger logger = LoggerFactory.getLogger(BookingRouter.class);
+    // command adding the server, answered with the number of the moved flights
+    static final String ADD_COMMAND = "ADD";
+    static final String MOVED_RESPONSE = "MOVED";
+    private static final String TEMP_PREFIX = ".tmp-";
+
+    private final int port;
+    private final List<Integer> startServers;
+    private final Path serversFile;
+    private final ExecutorService clientExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    // the ring is read under the read lock while the commands are forwarded, changed under the write lock
+    private final ReentrantReadWriteLock routing = new ReentrantReadWriteLock();
+    private final ConsistentHashRing<Integer> ring = new ConsistentHashRing<>();
+
+    private ServerSocket serverSocket;
+    private Thread acceptThread;
+
+    /**
+     * Connection to one of the servers, used by one thread at a time
+     */
+    private static final class ServerConnection implements AutoCloseable {
+        private final int port;
+        private final Socket socket;
+        private final BufferedReader reader;
+        private final PrintWriter writer;
+
+        ServerConnection(int port) throws IOException {
+            this.port = port;
+            this.socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            this.reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            this.writer = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+        }
+
+        String send(String command) throws IOException {
+            writer.println(command);
+            String response = reader.readLine();
+            if (response == null) {
+                throw new IOException("Server on port " + port + " closed the connection");
+            }
+            return response;
+        }
+
+        /**
+         * @throws IOException if the response differs from the expected one
+         */
+        void send(String command, String expected) throws IOException {
+            String response = send(command);
+            if (!response.startsWith(expected)) {
+                throw new IOException("Server on port " + port + " failed the command " + command + ": " + response);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    /**
+     * @param port        local port to listen on, 0 to pick any free port
+     * @param serverPorts local ports of the booking servers the flights are spread over, used on the first start only
+     * @param serversFile file the servers are saved to, one port per line
+     */
+    public BookingRouter(int port, List<Integer> serverPorts, Path serversFile) {
+        if (serverPorts.isEmpty()) {
+            throw new IllegalArgumentException("Router needs at least one booking server");
+        }
+        this.port = port;
+        this.startServers = List.copyOf(serverPorts);
+        this.serversFile = serversFile;
+    }
+
+    /**
+     * Loading the servers, or saving the given ones on the first start, and starting to accept the clients
+     *
+     * @throws IOException if the servers file could not be read or written, the router does not start then
+     */
+    public synchronized void start() throws IOException {
+        List<Integer> servers = loadServers();
+        routing.writeLock().lock();
+        try {
+            for (int serverPort : servers) {
+                ring.addNode(serverPort);
+            }
+        } finally {
+            routing.writeLock().unlock();
+        }
+        serverSocket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+        acceptThread = new Thread(this::acceptClients, "booking-router-accept");
+        acceptThread.start();
+        logger.info("Booking router of the servers " + ring.getNodes() + " is listening on port "
+                + serverSocket.getLocalPort());
+    }
+
+    /**
+     * Stopping to accept the clients
+     */
+    public synchronized void stop() {
+        if (serverSocket == null) {
+            return;
+        }
+        try {
+            serverSocket.close();
+            acceptThread.join();
+        } catch (IOException e) {
+            logger.warn("Exception on closing the router socket", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        clientExecutor.shutdownNow();
+        try {
+            clientExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        serverSocket = null;
+        logger.info("Booking router stopped");
+    }
+
+    public int getLocalPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @param flightId the flight id, E.G. LH123
+     * @return port of the server owning the flight, -1 if the servers are not known yet
+     */
+    public int serverFor(String flightId) {
+        routing.readLock().lock();
+        try {
+            Integer serverPort = ring.nodeFor(flightId);
+            return serverPort != null ? serverPort : -1;
+        } finally {
+            routing.readLock().unlock();
+        }
+    }
+
+    private void acceptClients() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket client = serverSocket.accept();
+                clientExecutor.execute(() -> serveClient(client));
+            } catch (SocketException e) {
+                // server socket is closed on stop
+            } catch (IOException e) {
+                logger.warn("Exception on accepting the client connection", e);
+            }
+        }
+    }
+
+    private void serveClient(Socket client) {
+        Map<Integer, ServerConnection> connections = new HashMap<>();
+        try (client;
+             BufferedReader reader = new BufferedReader(
+                     new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter writer = new PrintWriter(client.getOutputStream(), true, StandardCharsets.UTF_8)) {
+            CommandParser parser = new CommandParser(false, true);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                writer.println(line.trim().startsWith(ADD_COMMAND + " ")
+                        ? addServer(line.trim())
+                        : route(parser, line.trim(), connections));
+            }
+        } catch (IOException e) {
+            logger.warn("Exception on serving the client connection", e);
+        } finally {
+            for (ServerConnection connection : connections.values()) {
+                closeQuietly(connection);
+            }
+        }
+    }
+
+    /**
+     * Forwarding the command to the server owning its flight
+     *
+     * @param parser      parser of the client connection
+     * @param line        the command in the form of "LH123 BOOK A0 1" or "SEATS LH123"
+     * @param connections connections of the client to the servers, by the port
+     * @return the response of the server, or FAIL if the command has no flight or the server is not reachable
+     */
+    String route(CommandParser parser, String line, Map<Integer, ServerConnection> connections) {
+        String flightId;
+        if (line.startsWith(BookingServer.SEATS_COMMAND + " ")) {
+            String[] parts = line.split("\\s+");
+            if (parts.length != 2 || !CommandParser.validFlightId(parts[1])) {
+                return BookingServer.rejectCommand(line, "expected SEATS flight id");
+            }
+            flightId = parts[1];
+        } else {
+            CommandParser.Status status = parser.parse(line);
+            if (status != CommandParser.Status.OK) {
+                return BookingServer.rejectCommand(line, status.getDescription());
+            }
+            flightId = parser.getFlightId();
+            if (flightId == null) {
+                return BookingServer.rejectCommand(line, "the flight id is required");
+            }
+        }
+
+        routing.readLock().lock();
+        Integer serverPort = ring.nodeFor(flightId);
+        if (serverPort == null) {
+            routing.readLock().unlock();
+            return OperationResult.failure(FailureCode.FLIGHT_UNAVAILABLE, "the servers are not known yet")
+                    .toResponse();
+        }
+        try {
+            ServerConnection connection = connections.get(serverPort);
+            if (connection == null) {
+                connection = new ServerConnection(serverPort);
+                connections.put(serverPort, connection);
+            }
+            return connection.send(line);
+        } catch (IOException e) {
+            logger.error("Exception on routing the command " + line + " to the server on port " + serverPort, e);
+            closeQuietly(connections.remove(serverPort));
+            return OperationResult.failure(FailureCode.FLIGHT_UNAVAILABLE, e.getMessage()).toResponse();
+        } finally {
+            routing.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adding the server and moving to it the flights it takes over.
+     * If a flight could not be moved, the flights moved so far are moved back and the server is not added.
+     *
+     * @param line the command in the form of "ADD 7003"
+     * @return the MOVED line with the number of the moved flights, or FAIL
+     */
+    String addServer(String line) {
+        String[] parts = line.split("\\s+");
+        int serverPort;
+        try {
+            serverPort = parts.length == 2 ? Integer.parseInt(parts[1]) : -1;
+        } catch (NumberFormatException e) {
+            serverPort = -1;
+        }
+        if (serverPort < 0) {
+            return BookingServer.rejectCommand(line, "expected ADD server port");
+        }
+
+        routing.writeLock().lock();
+        try (ServerConnection target = new ServerConnection(serverPort)) {
+            if (ring.getNodes().contains(serverPort)) {
+                return BookingServer.rejectCommand(line, "the server on port " + serverPort + " is already added");
+            }
+            List<Integer> owners = ring.getNodes();
+            ring.addNode(serverPort);
+            List<String> moved = new ArrayList<>();
+            List<ServerConnection> sources = new ArrayList<>();
+            try {
+                for (int owner : owners) {
+                    ServerConnection source = new ServerConnection(owner);
+                    sources.add(source);
+                    String stored = source.send(BookingServer.STORED_COMMAND);
+                    if (!stored.startsWith(BookingServer.FLIGHTS_RESPONSE)) {
+                        throw new IOException("Server on port " + owner + " did not list its flights: " + stored);
+                    }
+                    for (String flightId : stored.split(" ")) {
+                        if (!flightId.equals(BookingServer.FLIGHTS_RESPONSE) && ring.nodeFor(flightId) == serverPort) {
+                            moveFlight(flightId, source, target);
+                            moved.add(flightId);
+                        }
+                    }
+                }
+                saveServers(ring.getNodes());
+            } catch (IOException e) {
+                logger.error("Exception on adding the server on port " + serverPort
+                        + ", moving back " + moved.size() + " flights", e);
+                ring.removeNode(serverPort);
+                moveBack(moved, sources, target);
+                return OperationResult.failure(FailureCode.FLIGHT_UNAVAILABLE, e.getMessage()).toResponse();
+            } finally {
+                for (ServerConnection source : sources) {
+                    closeQuietly(source);
+                }
+            }
+            logger.info("Added the server on port " + serverPort + ", moved " + moved.size() + " flights to it");
+            return MOVED_RESPONSE + " " + moved.size();
+        } catch (IOException e) {
+            logger.error("Exception on connecting to the added server on port " + serverPort, e);
+            return OperationResult.failure(FailureCode.FLIGHT_UNAVAILABLE, e.getMessage()).toResponse();
+        } finally {
+            routing.writeLock().unlock();
+        }
+    }
+
+    /**
+     * The servers saved by the previous run of the router win over the given ones,
+     * as the flights could have been moved to the servers added since. The given servers are saved on the first run
+     */
+    private List<Integer> loadServers() throws IOException {
+        if (!Files.exists(serversFile)) {
+            saveServers(startServers);
+            return startServers;
+        }
+        List<Integer> servers = new ArrayList<>();
+        for (String line : Files.readAllLines(serversFile, StandardCharsets.UTF_8)) {
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                servers.add(Integer.parseInt(line.trim()));
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed server port " + line + " in the servers file " + serversFile, e);
+            }
+        }
+        if (servers.isEmpty()) {
+            throw new IOException("No servers in the servers file " + serversFile);
+        }
+        if (!new HashSet<>(servers).equals(new HashSet<>(startServers))) {
+            logger.info("Routing to the saved servers " + servers + " instead of " + startServers);
+        }
+        return servers;
+    }
+
+    /**
+     * Replacing the servers file at once, a crash leaves either the old or the new servers
+     */
+    private void saveServers(List<Integer> servers) throws IOException {
+        Path tempFile = serversFile.resolveSibling(TEMP_PREFIX + serversFile.getFileName());
+        List<String> lines = new ArrayList<>();
+        for (int server : servers) {
+            lines.add(String.valueOf(server));
+        }
+        Files.write(tempFile, lines, StandardCharsets.UTF_8);
+        FileOperations fileOperations = FileOperations.getInstance();
+        try {
+            fileOperations.force(tempFile);
+            Files.move(tempFile, serversFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            fileOperations.force(serversFile.toAbsolutePath().getParent());
+        } catch (BookingSaveFileException e) {
+            throw new IOException("Exception on saving the servers file " + serversFile, e);
+        }
+    }
+
+    /**
+     * Copying the seat map of the flight to the target server, then removing it from the source one
+     */
+    private static void moveFlight(String flightId, ServerConnection source, ServerConnection target)
+            throws IOException {
+        String seats = source.send(BookingServer.SEATS_COMMAND + " " + flightId);
+        if (!seats.startsWith(BookingServer.SEATS_COMMAND + " ")) {
+            throw new IOException(
+                    "Server on port " + source.port + " did not send the flight " + flightId + ": " + seats);
+        }
+        target.send(BookingServer.IMPORT_COMMAND + " " + flightId
+                + seats.substring(BookingServer.SEATS_COMMAND.length()), OperationResult.success().toResponse());
+        source.send(BookingServer.DROP_COMMAND + " " + flightId, OperationResult.success().toResponse());
+    }
+
+    private void moveBack(List<String> moved, List<ServerConnection> sources, ServerConnection target) {
+        Map<Integer, ServerConnection> byPort = new HashMap<>();
+        for (ServerConnection source : sources) {
+            byPort.put(source.port, source);
+        }
+        for (String flightId : moved) {
+            try {
+                moveFlight(flightId, target, byPort.get(ring.nodeFor(flightId)));
+            } catch (IOException e) {
+                logger.error("Exception on moving back the flight " + flightId + ", it stays on the server on port "
+                        + target.port, e);
+            }
+        }
+    }
+
+    private static void closeQuietly(ServerConnection connection) {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (IOException e) {
+            logger.warn("Exception on closing the connection to the server on port " + connection.port, e);
+        }
+    }
+}
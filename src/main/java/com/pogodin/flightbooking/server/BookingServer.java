@@ -0,0 +1,638 @@
+package com.pogodin.flightbooking.server;
+
+import com.pogodin.flightbooking.BookingAction;
+import com.pogodin.flightbooking.FailureCode;
+import com.pogodin.flightbooking.OperationResult;
+import com.pogodin.flightbooking.entity.BookingRequest;
+import com.pogodin.flightbooking.entity.ConcurrentFlightSeatsMap;
+import com.pogodin.flightbooking.entity.FlightSeatsMap;
+import com.pogodin.flightbooking.entity.SeatMapVersion;
+import com.pogodin.flightbooking.exception.BookingSaveFileException;
+import com.pogodin.flightbooking.exception.FlightUnavailableException;
+import com.pogodin.flightbooking.metrics.BookingMetrics;
+import com.pogodin.flightbooking.operations.BookingProcessor;
+import com.pogodin.flightbooking.operations.BookingStore;
+import com.pogodin.flightbooking.operations.ChangeFeed;
+import com.pogodin.flightbooking.operations.Checkpointer;
+import com.pogodin.flightbooking.operations.CommandParser;
+import com.pogodin.flightbooking.operations.FlightRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+
+/**
+ * Long-running booking server keeping the seat map of the flight in memory.
+ * Clients connect to the local port and send one command per line, E.G. "BOOK A0 1",
+ * every command is answered with a SUCCESS or FAIL line.
+ * Every client is served by its own virtual thread.
+ * Commands of different clients are applied in parallel on the lock-free seat map,
+ * so the plane could have up to 64 seats in a row.
+ * Changes are saved to the save-file in the background, the last save happens on the shutdown.
+ * With the checkpointer every change is recorded into the journal right away,
+ * and the checkpointer stores the full seat map in the background instead. The changes are then applied
+ * one at a time and placed into the journal in the same order, only the wait for the disk is parallel.
+ * With the flight registry the command could be prefixed with the flight id, E.G. "LH123 BOOK A0 1",
+ * such commands are applied to the flights of the registry through the {@link FlightExecutor},
+ * in the order of arrival per flight. The commands without the flight id are applied to the default flight.
+ * The flights of the registry also serve the holds, E.G. "LH123 HOLD A0 2" followed by "LH123 CONFIRM A0 2",
+ * the holds are released when not confirmed in time.
+ * The METRICS command is answered with the latencies of the booking stages, see {@link BookingMetrics}.
+ * The FIND command is answered with the flights of the registry having enough free seats,
+ * E.G. "FIND 5" for 5 seats together or "FIND 5 20" for 5 seats together and 20 seats in total,
+ * the answer is the FLIGHTS line with the flight ids, E.G. "FLIGHTS LH123 LH456".
+ * Every booking and cancel of the default flight and of the registry flights is published to the {@link ChangeFeed}.
+ * The SUBSCRIBE command turns the connection into the stream of the changes, E.G. "CHANGE 42 LH123 BOOK A0 2",
+ * "SUBSCRIBE 40" starts from the change 40 if it is still kept. The stream starts with the SUBSCRIBED line
+ * with the sequence number of the first change, the LOST line with the next sequence number tells
+ * that the subscriber fell behind and the changes before it are lost. The HEAD line with the sequence number
+ * of the next change is sent every 100 ms, so the subscriber knows how far it is behind.
+ * The SEATS command is answered with the seat map of the default flight, "SEATS LH123" with the one of the flight,
+ * one word of 0 and 1 per row, E.G. "SEATS 01100 00000". The SNAPSHOT command is answered the same way
+ * with the sequence number of the change feed the seat map is consistent with, see {@link ChangeFeed.Snapshot},
+ * E.G. "SNAPSHOT 42 01100 00000", the replicas start with it, see {@link FollowerServer}.
+ * Unlike SEATS, the SNAPSHOT of a flight the registry does not have fails instead of creating the flight.
+ * The STORED command is answered with the FLIGHTS line of the flights stored by the registry,
+ * "IMPORT LH123 01100 00000" replaces the flight with the given seat map and stores it, "DROP LH123" removes
+ * the flight from the memory and from its store, the {@link BookingRouter} moves the flights between the servers so.
+ */
+public class BookingServer {
+    private static final Logger logger = LoggerFactory.getLogger(BookingServer.class);
+    // command answered with the one line summary of the stage latencies
+    static final String METRICS_COMMAND = "METRICS";
+    // command answered with the flights having enough free seats
+    static final String FIND_COMMAND = "FIND";
+    static final String FLIGHTS_RESPONSE = "FLIGHTS";
+    // command turning the connection into the stream of the seat changes
+    static final String SUBSCRIBE_COMMAND = "SUBSCRIBE";
+    static final String SUBSCRIBED_RESPONSE = "SUBSCRIBED";
+    static final String CHANGE_RESPONSE = "CHANGE";
+    static final String LOST_RESPONSE = "LOST";
+    static final String HEAD_RESPONSE = "HEAD";
+    private static final long HEAD_INTERVAL_MILLIS = 100;
+    // commands answered with the seat map, the latter with the position in the change feed
+    static final String SEATS_COMMAND = "SEATS";
+    static final String SNAPSHOT_COMMAND = "SNAPSHOT";
+    // commands moving the flights between the servers
+    static final String STORED_COMMAND = "STORED";
+    static final String IMPORT_COMMAND = "IMPORT";
+    static final String DROP_COMMAND = "DROP";
+    private static final int CHANGE_FEED_CAPACITY = 1 << 16;
+    // changes written to the subscriber at once
+    private static final int STREAM_BATCH = 256;
+    // how often the idle flights are evicted from the registry
+    private static final long EVICT_INTERVAL_MILLIS = 10_000;
+
+    private final BookingProcessor bookingProcessor;
+    private final Checkpointer checkpointer;
+    private final int port;
+    private final long persistIntervalMillis;
+
+    private final ExecutorService clientExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    // connections of the clients being served, closed on stop before the last save
+    private final Set<Socket> clients = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService persistExecutor = Executors.newSingleThreadScheduledExecutor();
+    private final ChangeFeed changeFeed = new ChangeFeed(CHANGE_FEED_CAPACITY);
+    // with the journal only: the changes of the default flight are applied and journaled one at a time,
+    // so the journal replays them in the order they were applied. The feed needs no lock, the seat map
+    // hands the changes of every row to it in their order
+    private final ReentrantLock journalOrder = new ReentrantLock();
+
+    // number of the seat map version stored by the last background save
+    private volatile long savedVersion;
+
+    private FlightRegistry flights;
+    private FlightExecutor flightExecutor;
+    private ConcurrentFlightSeatsMap seatMap;
+    private ServerSocket serverSocket;
+    private Thread acceptThread;
+
+    /**
+     * @param bookingProcessor      processor the commands are parsed, applied and saved with
+     * @param port                  local port to listen on, 0 to pick any free port
+     * @param persistIntervalMillis how often the changed seat map is saved in the background
+     */
+    public BookingServer(BookingProcessor bookingProcessor, int port, long persistIntervalMillis) {
+        this.bookingProcessor = bookingProcessor;
+        this.checkpointer = null;
+        this.port = port;
+        this.persistIntervalMillis = persistIntervalMillis;
+    }
+
+    /**
+     * @param bookingProcessor processor the commands are parsed, applied and recorded with
+     * @param checkpointer     checkpointer of the journal the processor records the commands into
+     * @param port             local port to listen on, 0 to pick any free port
+     */
+    public BookingServer(BookingProcessor bookingProcessor, Checkpointer checkpointer, int port) {
+        this.bookingProcessor = bookingProcessor;
+        this.checkpointer = checkpointer;
+        this.port = port;
+        this.persistIntervalMillis = 0;
+    }
+
+    /**
+     * Serving the commands prefixed with the flight id from the registry, should be set before the start
+     *
+     * @param flights registry of the flights, it is closed when the server stops
+     */
+    public void setFlightRegistry(FlightRegistry flights) {
+        this.flights = flights;
+    }
+
+    /**
+     * Loading the seat map and starting to accept the clients
+     */
+    public synchronized void start() throws IOException {
+        seatMap = new ConcurrentFlightSeatsMap(bookingProcessor.loadSeatMap().getSnapshot());
+        seatMap.setChangeListener(this::publishChange);
+        serverSocket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+        if (checkpointer != null) {
+            checkpointer.start(seatMap);
+        } else {
+            persistExecutor.scheduleWithFixedDelay(
+                    this::persist, persistIntervalMillis, persistIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+        if (flights != null) {
+            flights.setChangeFeed(changeFeed);
+            flightExecutor = new FlightExecutor(flights::process);
+            persistExecutor.scheduleWithFixedDelay(
+                    this::evictIdleFlights, EVICT_INTERVAL_MILLIS, EVICT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            persistExecutor.scheduleAtFixedRate(this::expireHolds,
+                    FlightRegistry.HOLD_TICK_MILLIS, FlightRegistry.HOLD_TICK_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        acceptThread = new Thread(this::acceptClients, "booking-server-accept");
+        acceptThread.start();
+        logger.info("Booking server is listening on port " + serverSocket.getLocalPort());
+    }
+
+    /**
+     * Stopping to accept the clients and saving the last changes
+     */
+    public synchronized void stop() {
+        if (serverSocket == null) {
+            return;
+        }
+        try {
+            serverSocket.close();
+            acceptThread.join();
+        } catch (IOException e) {
+            logger.warn("Exception on closing the server socket", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // the clients could keep changing the seats until their connections are closed
+        for (Socket client : clients) {
+            try {
+                client.close();
+            } catch (IOException e) {
+                logger.warn("Exception on closing the client connection", e);
+            }
+        }
+        clientExecutor.shutdownNow();
+        persistExecutor.shutdown();
+        try {
+            clientExecutor.awaitTermination(5, TimeUnit.SECONDS);
+            persistExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (checkpointer != null) {
+            checkpointer.stop();
+        } else {
+            persist();
+        }
+        if (flights != null) {
+            flightExecutor.close();
+            flights.close();
+        }
+        serverSocket = null;
+        logger.info("Booking server stopped");
+    }
+
+    public int getLocalPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return feed of the seat changes, E.G. for the subscribers in the same process
+     */
+    public ChangeFeed getChangeFeed() {
+        return changeFeed;
+    }
+
+    /**
+     * Parsing and applying one command against the in-memory seat map
+     *
+     * @param parser parser of the client connection
+     * @param line   the command in the form of "BOOK A0 1"
+     * @return result of the command
+     */
+    OperationResult processCommand(CommandParser parser, String line) {
+        long started = BookingMetrics.start();
+        OperationResult result = applyCommand(parser, line);
+        if (!result.isSuccess()) {
+            BookingMetrics.getInstance().recordFailure(result.getFailureCode());
+        }
+        BookingMetrics.getInstance().record(BookingMetrics.Stage.TOTAL, started);
+        return result;
+    }
+
+    private OperationResult applyCommand(CommandParser parser, String line) {
+        CommandParser.Status status = parser.parse(line.trim());
+        if (status != CommandParser.Status.OK) {
+            return OperationResult.failure(FailureCode.MALFORMED, status.getDescription());
+        }
+
+        BookingRequest request = parser.toBookingRequest();
+        String flightId = parser.getFlightId();
+        if (flightId != null) {
+            try {
+                return flightExecutor.process(flightId, request);
+            } catch (BookingSaveFileException e) {
+                logger.error("Exception on processing the command of the flight " + flightId, e);
+                return OperationResult.failure(FailureCode.FLIGHT_UNAVAILABLE, e.getMessage());
+            }
+        }
+        if (checkpointer == null) {
+            return bookingProcessor.applyOperation(seatMap, request);
+        }
+
+        OperationResult result;
+        BookingStore.PendingRecord record;
+        journalOrder.lock();
+        try {
+            result = bookingProcessor.applyOperation(seatMap, request);
+            if (!result.isSuccess()) {
+                return result;
+            }
+            record = bookingProcessor.placeOperation(seatMap, BookingProcessor.appliedRequest(request, result));
+        } finally {
+            journalOrder.unlock();
+        }
+        record.await();
+        checkpointer.operationRecorded();
+        return result;
+    }
+
+    private void acceptClients() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket client = serverSocket.accept();
+                clients.add(client);
+                clientExecutor.execute(() -> serveClient(client));
+            } catch (SocketException e) {
+                // server socket is closed on stop
+            } catch (IOException e) {
+                logger.warn("Exception on accepting the client connection", e);
+            }
+        }
+    }
+
+    private void serveClient(Socket client) {
+        try (client;
+             BufferedReader reader = new BufferedReader(
+                     new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter writer = new PrintWriter(client.getOutputStream(), true, StandardCharsets.UTF_8)) {
+            CommandParser parser = new CommandParser(false, flights != null);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                if (METRICS_COMMAND.equals(line.trim())) {
+                    writer.println(BookingMetrics.getInstance().getSummary());
+                    continue;
+                }
+                if (line.trim().startsWith(FIND_COMMAND + " ")) {
+                    writer.println(findFlights(line.trim()));
+                    continue;
+                }
+                if (line.trim().startsWith(SEATS_COMMAND) || line.trim().startsWith(SNAPSHOT_COMMAND)) {
+                    writer.println(seats(line.trim()));
+                    continue;
+                }
+                if (STORED_COMMAND.equals(line.trim())) {
+                    writer.println(storedFlights(line));
+                    continue;
+                }
+                if (line.trim().startsWith(IMPORT_COMMAND + " ") || line.trim().startsWith(DROP_COMMAND + " ")) {
+                    writer.println(moveFlight(line.trim()));
+                    continue;
+                }
+                if (line.trim().startsWith(SUBSCRIBE_COMMAND)) {
+                    ChangeFeed.Subscriber subscriber = subscribe(line.trim());
+                    if (subscriber == null) {
+                        writer.println(rejectCommand(line, "expected SUBSCRIBE [first sequence number]"));
+                        continue;
+                    }
+                    streamChanges(subscriber, writer);
+                    return;
+                }
+                OperationResult result = processCommand(parser, line);
+                if (!result.isSuccess()) {
+                    logger.debug("Command {} failed with {}", line, result.getFailureCode());
+                }
+                writer.println(result.toResponse());
+            }
+        } catch (IOException e) {
+            if (!client.isClosed()) {
+                logger.warn("Exception on serving the client connection", e);
+            }
+            // closed on stop otherwise
+        } finally {
+            clients.remove(client);
+        }
+    }
+
+    /**
+     * Answering the FIND command from the availability index of the registry
+     *
+     * @param line the command in the form of "FIND 5" or "FIND 5 20"
+     * @return the FLIGHTS line with the flight ids, or FAIL if the command is malformed or there is no registry
+     */
+    String findFlights(String line) {
+        if (flights == null) {
+            return rejectCommand(line, "there are no flights to search");
+        }
+        return findFlights(line, flights::findFlights);
+    }
+
+    /**
+     * @param line   the command in the form of "FIND 5" or "FIND 5 20"
+     * @param search the search of the flights by the seats together and the free seats
+     * @return the FLIGHTS line with the flight ids, or FAIL if the command is malformed
+     */
+    static String findFlights(String line, BiFunction<Integer, Integer, List<String>> search) {
+        String[] parts = line.split("\\s+");
+        if (parts.length > 3) {
+            return rejectCommand(line, "expected FIND [seats together] [free seats]");
+        }
+        try {
+            int seatsTogether = Integer.parseInt(parts[1]);
+            int freeSeats = parts.length == 3 ? Integer.parseInt(parts[2]) : 0;
+            StringBuilder response = new StringBuilder(FLIGHTS_RESPONSE);
+            for (String flightId : search.apply(seatsTogether, freeSeats)) {
+                response.append(' ').append(flightId);
+            }
+            return response.toString();
+        } catch (NumberFormatException e) {
+            return rejectCommand(line, "the number of seats is malformed");
+        }
+    }
+
+    /**
+     * @param line the command in the form of "SUBSCRIBE" or "SUBSCRIBE 40"
+     * @return subscriber of the change feed, null if the command is malformed
+     */
+    ChangeFeed.Subscriber subscribe(String line) {
+        String[] parts = line.split("\\s+");
+        if (!SUBSCRIBE_COMMAND.equals(parts[0]) || parts.length > 2) {
+            return null;
+        }
+        if (parts.length == 1) {
+            return changeFeed.subscribe();
+        }
+        try {
+            return changeFeed.subscribe(Long.parseLong(parts[1]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Answering the SEATS and SNAPSHOT commands
+     *
+     * @param line the command in the form of "SEATS", "SEATS LH123", "SNAPSHOT" or "SNAPSHOT LH123"
+     * @return the seat map line, or FAIL if the command is malformed or the flight is not available
+     */
+    String seats(String line) {
+        String[] parts = line.split("\\s+");
+        boolean snapshot = SNAPSHOT_COMMAND.equals(parts[0]);
+        if (!snapshot && !SEATS_COMMAND.equals(parts[0]) || parts.length > 2) {
+            return rejectCommand(line, "expected " + parts[0] + " [flight id]");
+        }
+        ChangeFeed.Snapshot seats;
+        if (parts.length == 1) {
+            // the changes made after the version was taken get the later sequence numbers
+            long sequence = changeFeed.nextSequence();
+            seats = new ChangeFeed.Snapshot(sequence, seatMap.currentVersion().getSnapshot());
+        } else if (flights == null || !CommandParser.validFlightId(parts[1])) {
+            return rejectCommand(line, "there is no flight " + parts[1]);
+        } else {
+            try {
+                // the replicas ask for the snapshots, their reads should not create the flights
+                seats = snapshot ? flights.existingSnapshot(parts[1]) : flights.snapshot(parts[1]);
+            } catch (BookingSaveFileException | FlightUnavailableException e) {
+                logger.error("Exception on loading the flight " + parts[1], e);
+                return OperationResult.failure(FailureCode.FLIGHT_UNAVAILABLE).toResponse();
+            }
+        }
+        if (seats == null) {
+            return OperationResult.failure(FailureCode.FLIGHT_UNAVAILABLE).toResponse();
+        }
+        StringBuilder response = new StringBuilder(parts[0]);
+        if (snapshot) {
+            response.append(' ').append(seats.sequence());
+        }
+        appendRows(response, seats.seats());
+        return response.toString();
+    }
+
+    /**
+     * @return the FLIGHTS line with the ids of the flights stored by the registry, or FAIL if there is no registry
+     */
+    String storedFlights(String line) {
+        if (flights == null) {
+            return rejectCommand(line, "there are no flights to store");
+        }
+        List<String> flightIds;
+        try {
+            flightIds = flights.flightIds();
+        } catch (BookingSaveFileException e) {
+            logger.error("Exception on listing the stored flights", e);
+            return OperationResult.failure(FailureCode.FLIGHT_UNAVAILABLE, e.getMessage()).toResponse();
+        }
+        StringBuilder response = new StringBuilder(FLIGHTS_RESPONSE);
+        for (String flightId : flightIds) {
+            response.append(' ').append(flightId);
+        }
+        return response.toString();
+    }
+
+    /**
+     * Answering the IMPORT and DROP commands
+     *
+     * @param line the command in the form of "IMPORT LH123 01100 00000" or "DROP LH123"
+     * @return SUCCESS, or FAIL if the command is malformed or the flight could not be stored
+     */
+    String moveFlight(String line) {
+        String[] parts = line.split("\\s+");
+        boolean importing = IMPORT_COMMAND.equals(parts[0]);
+        if (flights == null || parts.length < 2 || !CommandParser.validFlightId(parts[1])) {
+            return rejectCommand(line, "expected " + parts[0] + " flight id");
+        }
+        boolean[][] seats = importing ? parseRows(parts, 2) : null;
+        if (importing ? seats == null : parts.length > 2) {
+            return rejectCommand(line, importing ? "the seat map is malformed" : "expected DROP flight id");
+        }
+        try {
+            if (importing) {
+                flights.importFlight(parts[1], seats);
+            } else {
+                flights.dropFlight(parts[1]);
+            }
+        } catch (BookingSaveFileException | FlightUnavailableException e) {
+            logger.error("Exception on moving the flight " + parts[1], e);
+            return OperationResult.failure(FailureCode.FLIGHT_UNAVAILABLE, e.getMessage()).toResponse();
+        }
+        logger.info((importing ? "Imported" : "Dropped") + " the flight " + parts[1]);
+        return OperationResult.success().toResponse();
+    }
+
+    /**
+     * Appending the rows of the seat map as the words of 0 and 1, 1 stands for the occupied seat
+     */
+    static void appendRows(StringBuilder line, boolean[][] seats) {
+        for (boolean[] row : seats) {
+            line.append(' ');
+            for (boolean occupied : row) {
+                line.append(occupied ? '1' : '0');
+            }
+        }
+    }
+
+    /**
+     * Parsing the rows written by {@link #appendRows}
+     *
+     * @param parts the words of the line
+     * @param from  index of the word of the first row
+     * @return the seat map, null if there are no rows or they are malformed
+     */
+    static boolean[][] parseRows(String[] parts, int from) {
+        if (parts.length <= from) {
+            return null;
+        }
+        boolean[][] seats = new boolean[parts.length - from][];
+        for (int i = from; i < parts.length; i++) {
+            String row = parts[i];
+            if (row.length() != parts[from].length() || !row.matches("[01]+")) {
+                return null;
+            }
+            seats[i - from] = new boolean[row.length()];
+            for (int j = 0; j < row.length(); j++) {
+                seats[i - from][j] = row.charAt(j) == '1';
+            }
+        }
+        return seats;
+    }
+
+    /**
+     * Writing the changes to the subscriber as they are published, until the client is gone or the server stops
+     */
+    private void streamChanges(ChangeFeed.Subscriber subscriber, PrintWriter writer) {
+        writer.println(SUBSCRIBED_RESPONSE + " " + subscriber.getNextSequence());
+        StringBuilder batch = new StringBuilder();
+        ChangeFeed.ChangeListener toLine = (sequence, flightId, action, row, seat, seats) -> {
+            batch.append(CHANGE_RESPONSE).append(' ').append(sequence);
+            if (flightId != null) {
+                batch.append(' ').append(flightId);
+            }
+            batch.append(' ').append(action).append(' ').append(row).append(seat).append(' ').append(seats)
+                    .append(System.lineSeparator());
+        };
+        long headSent = System.nanoTime();
+        while (!writer.checkError()) {
+            if (subscriber.poll(toLine, STREAM_BATCH) == ChangeFeed.LOST) {
+                batch.append(LOST_RESPONSE).append(' ').append(subscriber.getNextSequence())
+                        .append(System.lineSeparator());
+            }
+            if (System.nanoTime() - headSent >= TimeUnit.MILLISECONDS.toNanos(HEAD_INTERVAL_MILLIS)) {
+                batch.append(HEAD_RESPONSE).append(' ').append(changeFeed.nextSequence())
+                        .append(System.lineSeparator());
+                headSent = System.nanoTime();
+            }
+            if (batch.isEmpty()) {
+                long untilHead = TimeUnit.MILLISECONDS.toNanos(HEAD_INTERVAL_MILLIS) - (System.nanoTime() - headSent);
+                try {
+                    subscriber.awaitChange(untilHead, TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    // the server stops
+                    return;
+                }
+                continue;
+            }
+            writer.print(batch);
+            writer.flush();
+            batch.setLength(0);
+        }
+    }
+
+    /**
+     * Publishing the change of the default flight to the feed, the seat map hands the changes of a row in their order
+     */
+    private void publishChange(BookingAction action, char row, int seat, int passengers) {
+        changeFeed.publish(null, action, row, seat, passengers);
+    }
+
+    static String rejectCommand(String line, String reason) {
+        logger.debug("Command {} failed with {}: {}", line, FailureCode.MALFORMED, reason);
+        return OperationResult.failure(FailureCode.MALFORMED, reason).toResponse();
+    }
+
+    private void expireHolds() {
+        try {
+            flights.expireHolds();
+        } catch (RuntimeException e) {
+            logger.error("Exception on expiring the seat holds", e);
+        }
+    }
+
+    private void evictIdleFlights() {
+        try {
+            int evicted = flights.evictIdle();
+            if (evicted > 0) {
+                logger.info("Evicted " + evicted + " idle flights");
+            }
+        } catch (RuntimeException e) {
+            logger.error("Exception on evicting the idle flights", e);
+        }
+    }
+
+    /**
+     * Saving the current version of the seat map while the clients keep booking,
+     * the changes made during the save are saved on the next run
+     */
+    private void persist() {
+        SeatMapVersion version = seatMap.currentVersion();
+        if (version.getNumber() == savedVersion) {
+            return;
+        }
+
+        try {
+            bookingProcessor.saveSeatMap(new FlightSeatsMap(version.getSnapshot()));
+            savedVersion = version.getNumber();
+        } catch (RuntimeException e) {
+            logger.error("Exception on saving the seat map in the background", e);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.pogodin.flightbooking.server;
+
+import com.pogodin.flightbooking.OperationResult;
+import com.pogodin.flightbooking.entity.BookingRequest;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * Applies the booking requests of every flight one by one in the order of arrival,
+ * while the requests of different flights are applied in parallel.
+ * Every flight with pending requests has a mailbox, drained by a virtual thread, so nobody waits for the lock of the flight
+ * and the flights without pending requests cost nothing.
+ * Sits in front of the operation applying a single request, E.G. {@code FlightRegistry::process}
+ * or {@code (flightId, request) -> processor(flightId).processOperation(request)}.
+ */
+public class FlightExecutor implements AutoCloseable {
+    private final BiFunction<String, BookingRequest, OperationResult> operation;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final ConcurrentHashMap<String, Mailbox> mailboxes = new ConcurrentHashMap<>();
+
+    /**
+     * Pending requests of one flight, changed only inside the atomic compute of the mailboxes map
+     */
+    private static class Mailbox {
+        private final Queue<Task> tasks = new ArrayDeque<>();
+    }
+
+    private record Task(BookingRequest request, CompletableFuture<OperationResult> result) {
+    }
+
+    /**
+     * @param operation operation applying the request to the flight, called for one flight at a time
+     */
+    public FlightExecutor(BiFunction<String, BookingRequest, OperationResult> operation) {
+        this.operation = operation;
+    }
+
+    /**
+     * Putting the request into the mailbox of the flight, the mailbox is drained if it is not drained already
+     *
+     * @return result of the request, completed when the request is applied
+     */
+    public CompletableFuture<OperationResult> submit(String flightId, BookingRequest request) {
+        Task task = new Task(request, new CompletableFuture<>());
+        boolean[] firstTask = new boolean[1];
+        mailboxes.compute(flightId, (id, mailbox) -> {
+            if (mailbox == null) {
+                mailbox = new Mailbox();
+                firstTask[0] = true;
+            }
+            mailbox.tasks.add(task);
+            return mailbox;
+        });
+        if (firstTask[0]) {
+            try {
+                executor.execute(() -> drain(flightId, task));
+            } catch (RejectedExecutionException e) {
+                // closed, nobody is going to drain the mailbox
+                Mailbox rejected = mailboxes.remove(flightId);
+                rejected.tasks.forEach(rejectedTask -> rejectedTask.result().completeExceptionally(e));
+            }
+        }
+        return task.result();
+    }
+
+    /**
+     * Applying the request and waiting for the result, cheap to call from the virtual thread
+     *
+     * @return result of the request
+     */
+    public OperationResult process(String flightId, BookingRequest request) {
+        try {
+            return submit(flightId, request).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Waiting for the pending requests to be applied, the new requests are not accepted
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Applying the requests of the flight until its mailbox is empty, the empty mailbox is removed
+     *
+     * @param task the first task of the mailbox
+     */
+    private void drain(String flightId, Task task) {
+        while (task != null) {
+            try {
+                task.result().complete(operation.apply(flightId, task.request()));
+            } catch (RuntimeException e) {
+                task.result().completeExceptionally(e);
+            }
+
+            Task[] next = new Task[1];
+            mailboxes.compute(flightId, (id, mailbox) -> {
+                mailbox.tasks.remove();
+                next[0] = mailbox.tasks.peek();
+                return next[0] != null ? mailbox : null;
+            });
+            task = next[0];
+        }
+    }
+}
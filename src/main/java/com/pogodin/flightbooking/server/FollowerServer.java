@@ -0,0 +1,496 @@
+package com.pogodin.flightbooking.server;
+
+import com.pogodin.flightbooking.BookingAction;
+import com.pogodin.flightbooking.FailureCode;
+import com.pogodin.flightbooking.OperationResult;
+import com.pogodin.flightbooking.entity.FlightSeatsMap;
+import com.pogodin.flightbooking.operations.AvailabilityIndex;
+import com.pogodin.flightbooking.operations.ChangeFeed;
+import com.pogodin.flightbooking.operations.CommandParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Read-only replica of the {@link BookingServer}, E.G. to serve the availability reads next to the leader.
+ * The follower copies the seat map of the default flight with the SNAPSHOT command, subscribes to the change feed
+ * of the leader from the sequence number of the copy and applies every change to its own seat map,
+ * a BOOK as setting the seats occupied and a CANCEL as setting them free, see {@link
+ * com.pogodin.flightbooking.operations.ChangeFeed.Snapshot}. The flights of the registry are copied the same way
+ * once they are changed or asked for, the flights the leader does not have are not created by asking.
+ * The holds are not replicated, the held seats are free on the follower.
+ * \b
+ * The clients send the read commands the same way as to the leader: SEATS, SEATS LH123, FIND 5 or FIND 5 20.
+ * The LAG command is answered with the number of the changes the follower is behind the leader
+ * and the milliseconds since it heard from the leader last, E.G. "LAG 0 35".
+ * The other commands fail with {@link FailureCode#READ_ONLY}.
+ * When the connection to the leader is lost or the follower falls behind the change feed,
+ * the follower keeps serving the copies it has and copies all its flights again once it is connected back.
+ */
+public class FollowerServer {
+    private static final Logger logger = LoggerFactory.getLogger(FollowerServer.class);
+    // command answered with the replication lag
+    static final String LAG_COMMAND = "LAG";
+    private static final long RECONNECT_MILLIS = 1000;
+    // key of the default flight of the leader among the copied flights
+    private static final String DEFAULT_FLIGHT = "";
+
+    private final int leaderPort;
+    private final int port;
+    private final ExecutorService clientExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    // guards the copied flights, the copies are changed by the replication thread and the clients asking
+    // for the flights not copied yet. The leader is never talked to under it, so the reads of the copies
+    // do not wait for the network
+    private final ReentrantLock lock = new ReentrantLock();
+    // guards the snapshot connection, the copies are asked for one at a time
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+    private final Map<String, FlightSeatsMap> flights = new HashMap<>();
+    // sequence number of the first change not in the copy of the flight yet
+    private final Map<String, Long> firstSequences = new HashMap<>();
+    private final AvailabilityIndex availability = new AvailabilityIndex();
+
+    // sequence number of the next change to apply and the one of the next change of the leader
+    private volatile long nextSequence;
+    private volatile long leaderSequence;
+    private volatile long leaderHeardNanos = System.nanoTime();
+    private volatile boolean stopped;
+    // number of the connections to the leader, the copy taken on an older connection is not kept
+    private volatile long connections;
+
+    // closed on stop without the snapshot lock, so the copy waiting for the leader is interrupted
+    private volatile Socket snapshotSocket;
+    private BufferedReader snapshotReader;
+    private PrintWriter snapshotWriter;
+    private volatile Socket changesSocket;
+    private ServerSocket serverSocket;
+    private Thread acceptThread;
+    private Thread replicationThread;
+
+    /**
+     * @param leaderPort local port of the leader {@link BookingServer}
+     * @param port       local port to listen on, 0 to pick any free port
+     */
+    public FollowerServer(int leaderPort, int port) {
+        this.leaderPort = leaderPort;
+        this.port = port;
+    }
+
+    /**
+     * Copying the default flight from the leader, subscribing to its changes and starting to accept the clients
+     *
+     * @throws IOException if the leader is not reachable or the port is taken
+     */
+    public synchronized void start() throws IOException {
+        BufferedReader changes = connect();
+        serverSocket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+        replicationThread = new Thread(() -> replicate(changes), "follower-replication");
+        replicationThread.start();
+        acceptThread = new Thread(this::acceptClients, "follower-accept");
+        acceptThread.start();
+        logger.info("Follower of the leader on port " + leaderPort + " is listening on port "
+                + serverSocket.getLocalPort());
+    }
+
+    /**
+     * Disconnecting from the leader and stopping to accept the clients
+     */
+    public synchronized void stop() {
+        if (serverSocket == null) {
+            return;
+        }
+        stopped = true;
+        try {
+            serverSocket.close();
+            closeConnections();
+            replicationThread.interrupt();
+            acceptThread.join();
+            replicationThread.join();
+        } catch (IOException e) {
+            logger.warn("Exception on closing the follower sockets", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        clientExecutor.shutdownNow();
+        try {
+            clientExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        serverSocket = null;
+        logger.info("Follower stopped");
+    }
+
+    public int getLocalPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return number of the changes of the leader the follower has not applied yet, as of the last HEAD of the leader
+     */
+    public long getLag() {
+        return Math.max(0, leaderSequence - nextSequence);
+    }
+
+    /**
+     * Copying the default flight and the flights copied before and subscribing to the changes following the copies.
+     * The copies are taken first and replaced together, the clients are served the old ones meanwhile
+     *
+     * @return reader of the change stream
+     */
+    private BufferedReader connect() throws IOException {
+        Map<String, ChangeFeed.Snapshot> snapshots = new HashMap<>();
+        snapshotLock.lock();
+        try {
+            closeConnections();
+            connections++;
+            snapshotSocket = new Socket(InetAddress.getLoopbackAddress(), leaderPort);
+            snapshotReader = new BufferedReader(
+                    new InputStreamReader(snapshotSocket.getInputStream(), StandardCharsets.UTF_8));
+            snapshotWriter = new PrintWriter(snapshotSocket.getOutputStream(), true, StandardCharsets.UTF_8);
+
+            List<String> copied;
+            lock.lock();
+            try {
+                copied = new ArrayList<>(flights.keySet());
+            } finally {
+                lock.unlock();
+            }
+            copied.remove(DEFAULT_FLIGHT);
+            ChangeFeed.Snapshot defaultFlight = fetch(DEFAULT_FLIGHT);
+            if (defaultFlight == null) {
+                throw new IOException("Leader on port " + leaderPort + " did not send the default flight");
+            }
+            snapshots.put(DEFAULT_FLIGHT, defaultFlight);
+            for (String flightId : copied) {
+                snapshots.put(flightId, fetch(flightId));
+            }
+        } finally {
+            snapshotLock.unlock();
+        }
+
+        lock.lock();
+        try {
+            for (Map.Entry<String, ChangeFeed.Snapshot> snapshot : snapshots.entrySet()) {
+                if (snapshot.getValue() != null) {
+                    keep(snapshot.getKey(), snapshot.getValue());
+                } else {
+                    // the flight was moved away from the leader
+                    flights.remove(snapshot.getKey());
+                    firstSequences.remove(snapshot.getKey());
+                    availability.remove(snapshot.getKey());
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        // the flights copied later start from the later sequence numbers, their earlier changes are skipped
+        long fromSequence = snapshots.get(DEFAULT_FLIGHT).sequence();
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), leaderPort);
+        changesSocket = socket;
+        BufferedReader changes = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        PrintWriter writer = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+        writer.println(BookingServer.SUBSCRIBE_COMMAND + " " + fromSequence);
+        String subscribed = changes.readLine();
+        if (!(BookingServer.SUBSCRIBED_RESPONSE + " " + fromSequence).equals(subscribed)) {
+            throw new IOException("Leader on port " + leaderPort + " did not accept the subscription: " + subscribed);
+        }
+        nextSequence = fromSequence;
+        leaderSequence = Math.max(leaderSequence, fromSequence);
+        leaderHeardNanos = System.nanoTime();
+        return changes;
+    }
+
+    private void closeConnections() throws IOException {
+        if (snapshotSocket != null) {
+            snapshotSocket.close();
+        }
+        if (changesSocket != null) {
+            changesSocket.close();
+        }
+    }
+
+    /**
+     * Asking the leader for the snapshot of the flight, nothing is copied yet
+     *
+     * @param flightId the flight id, {@link #DEFAULT_FLIGHT} for the default flight
+     * @return the snapshot, null if the leader has no such flight
+     */
+    private ChangeFeed.Snapshot fetch(String flightId) throws IOException {
+        snapshotLock.lock();
+        try {
+            snapshotWriter.println(flightId.isEmpty()
+                    ? BookingServer.SNAPSHOT_COMMAND
+                    : BookingServer.SNAPSHOT_COMMAND + " " + flightId);
+            String line = snapshotReader.readLine();
+            if (line == null) {
+                throw new IOException("Leader on port " + leaderPort + " closed the connection");
+            }
+            String[] parts = line.split(" ");
+            boolean[][] seats = BookingServer.SNAPSHOT_COMMAND.equals(parts[0]) && parts.length > 2
+                    ? BookingServer.parseRows(parts, 2)
+                    : null;
+            if (seats == null) {
+                logger.debug("Leader did not send the flight {}: {}", flightId, line);
+                return null;
+            }
+            try {
+                return new ChangeFeed.Snapshot(Long.parseLong(parts[1]), seats);
+            } catch (NumberFormatException e) {
+                throw new IOException("Leader sent the malformed snapshot: " + line, e);
+            }
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    /**
+     * Keeping the snapshot as the copy of the flight, should be called under the lock
+     */
+    private void keep(String flightId, ChangeFeed.Snapshot snapshot) {
+        FlightSeatsMap seatMap = new FlightSeatsMap(snapshot.seats());
+        flights.put(flightId, seatMap);
+        firstSequences.put(flightId, snapshot.sequence());
+        if (!flightId.isEmpty()) {
+            availability.update(flightId, seatMap);
+        }
+    }
+
+    /**
+     * Copying the flight not copied yet from the leader. The copy is kept only if no other copy of the flight
+     * was kept while the leader was asked and the follower did not reconnect meanwhile,
+     * as the changes of the stream could be already past such a copy
+     *
+     * @return the seat map of the flight, null if the leader has no such flight
+     */
+    private boolean[][] copyMissing(String flightId) throws IOException {
+        long connection = connections;
+        ChangeFeed.Snapshot snapshot = fetch(flightId);
+        if (snapshot == null) {
+            return null;
+        }
+        lock.lock();
+        try {
+            FlightSeatsMap copied = flights.get(flightId);
+            if (copied != null) {
+                return copied.getSnapshot();
+            }
+            if (connection == connections) {
+                keep(flightId, snapshot);
+            }
+            return snapshot.seats();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Applying the change stream until the follower stops, reconnecting when the stream is lost
+     */
+    private void replicate(BufferedReader changes) {
+        CommandParser parser = new CommandParser(false, true);
+        while (!stopped) {
+            try {
+                if (changes == null) {
+                    changes = connect();
+                    logger.info("Follower is connected back to the leader on port " + leaderPort);
+                }
+                String line;
+                while ((line = changes.readLine()) != null) {
+                    if (!apply(parser, line)) {
+                        break;
+                    }
+                }
+                changes = null;
+                continue;
+            } catch (IOException e) {
+                if (stopped) {
+                    return;
+                }
+                logger.warn("Follower lost the leader on port " + leaderPort + ": " + e.getMessage());
+            }
+            changes = null;
+            try {
+                Thread.sleep(RECONNECT_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Applying one line of the change stream
+     *
+     * @return false if the changes are lost and the flights should be copied again
+     */
+    private boolean apply(CommandParser parser, String line) throws IOException {
+        String[] parts = line.split(" ", 3);
+        try {
+            switch (parts[0]) {
+                case BookingServer.HEAD_RESPONSE -> {
+                    leaderSequence = Math.max(nextSequence, Long.parseLong(parts[1]));
+                    leaderHeardNanos = System.nanoTime();
+                    return true;
+                }
+                case BookingServer.LOST_RESPONSE -> {
+                    logger.warn("Follower fell behind the change feed of the leader, copying the flights again");
+                    return false;
+                }
+                case BookingServer.CHANGE_RESPONSE -> {
+                    if (parts.length < 3 || parser.parse(parts[2]) != CommandParser.Status.OK) {
+                        throw new IOException("Leader sent the malformed change: " + line);
+                    }
+                    applyChange(Long.parseLong(parts[1]), parser);
+                    return true;
+                }
+                default -> throw new IOException("Leader sent the unexpected line: " + line);
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Leader sent the malformed line: " + line, e);
+        }
+    }
+
+    /**
+     * Applying the change to the copy of its flight, the flight is copied first if it is not copied yet
+     *
+     * @throws IOException if the leader has no flight of the change, so the follower should copy the flights again
+     */
+    private void applyChange(long sequence, CommandParser change) throws IOException {
+        String flightId = change.getFlightId() != null ? change.getFlightId() : DEFAULT_FLIGHT;
+        boolean copied;
+        lock.lock();
+        try {
+            copied = flights.containsKey(flightId);
+        } finally {
+            lock.unlock();
+        }
+        if (!copied && copyMissing(flightId) == null) {
+            throw new IOException("Leader has no flight " + flightId + " of the change " + sequence);
+        }
+
+        lock.lock();
+        try {
+            FlightSeatsMap seatMap = flights.get(flightId);
+            // the copy taken after the change already has it
+            if (sequence >= firstSequences.get(flightId)) {
+                OperationResult result = change.getAction() == BookingAction.BOOK
+                        ? seatMap.restoreBooking(change.getRow(), change.getSeat(), change.getPassengers())
+                        : seatMap.cancelBook(change.getRow(), change.getSeat(), change.getPassengers());
+                if (!result.isSuccess()) {
+                    logger.warn("Change " + sequence + " of the flight " + flightId + " failed: "
+                            + result.getFailureReason());
+                }
+                if (!flightId.isEmpty()) {
+                    availability.update(flightId, seatMap);
+                }
+            }
+            nextSequence = sequence + 1;
+            leaderSequence = Math.max(leaderSequence, nextSequence);
+            leaderHeardNanos = System.nanoTime();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void acceptClients() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket client = serverSocket.accept();
+                clientExecutor.execute(() -> serveClient(client));
+            } catch (SocketException e) {
+                // server socket is closed on stop
+            } catch (IOException e) {
+                logger.warn("Exception on accepting the client connection", e);
+            }
+        }
+    }
+
+    private void serveClient(Socket client) {
+        try (client;
+             BufferedReader reader = new BufferedReader(
+                     new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter writer = new PrintWriter(client.getOutputStream(), true, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                writer.println(processCommand(line.trim()));
+            }
+        } catch (IOException e) {
+            logger.warn("Exception on serving the client connection", e);
+        }
+    }
+
+    /**
+     * Answering one read command from the copies
+     *
+     * @param line the command in the form of "SEATS LH123", "FIND 5" or "LAG"
+     * @return the response line
+     */
+    String processCommand(String line) {
+        if (LAG_COMMAND.equals(line)) {
+            return LAG_COMMAND + " " + getLag() + " "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - leaderHeardNanos);
+        }
+        if (line.startsWith(BookingServer.FIND_COMMAND + " ")) {
+            return BookingServer.findFlights(line, availability::findFlights);
+        }
+        if (line.startsWith(BookingServer.SEATS_COMMAND)) {
+            return seats(line);
+        }
+        logger.debug("Command {} failed with {}", line, FailureCode.READ_ONLY);
+        return OperationResult.failure(FailureCode.READ_ONLY).toResponse();
+    }
+
+    private String seats(String line) {
+        String[] parts = line.split("\\s+");
+        if (!BookingServer.SEATS_COMMAND.equals(parts[0]) || parts.length > 2) {
+            return BookingServer.rejectCommand(line, "expected SEATS [flight id]");
+        }
+        String flightId = parts.length == 2 ? parts[1] : DEFAULT_FLIGHT;
+        if (!flightId.isEmpty() && !CommandParser.validFlightId(flightId)) {
+            return BookingServer.rejectCommand(line, "there is no flight " + flightId);
+        }
+        boolean[][] seats;
+        lock.lock();
+        try {
+            FlightSeatsMap seatMap = flights.get(flightId);
+            seats = seatMap != null ? seatMap.getSnapshot() : null;
+        } finally {
+            lock.unlock();
+        }
+        if (seats == null) {
+            try {
+                seats = copyMissing(flightId);
+            } catch (IOException e) {
+                logger.warn("Exception on copying the flight " + flightId + " from the leader", e);
+            }
+        }
+        if (seats == null) {
+            return OperationResult.failure(FailureCode.FLIGHT_UNAVAILABLE).toResponse();
+        }
+        StringBuilder response = new StringBuilder(BookingServer.SEATS_COMMAND);
+        BookingServer.appendRows(response, seats);
+        return response.toString();
+    }
+}
@@ -4,8 +4,13 @@ import com.pogodin.flightbooking.operations.BookingProcessor;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -30,9 +35,19 @@ public class MainAppTest {
         if (testDbFile.exists()) {
             testDbFile.delete();
         }
+        new File(FILE_NAME + ".lock").delete();
     }
 
 
+    @Test
+    void testStoredFlights_DroppedFlightsAreLeftOut(@TempDir Path directory) throws IOException {
+        for (String name : new String[]{"booking-LH1.csv", "booking-LH1.csv.journal", "booking-LH2.csv.dropped",
+                "booking-LH3.csv", "booking-LH3.csv.dropped", "booking-LH4.bin"}) {
+            Files.createFile(directory.resolve(name));
+        }
+        assertEquals(List.of("LH1"), MainApp.storedFlights(directory.resolve("booking.csv").toString()));
+    }
+
     @Test
     void testLargeSequenceOfOperations() {
         //top to bottom seat booking
@@ -0,0 +1,244 @@
+package com.pogodin.flightbooking.entity;
+
+import com.pogodin.flightbooking.BookingAction;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentFlightSeatsMapTest {
+    private static final int ROWS = 4;
+    private static final int SEATS = 8;
+    private static final int THREADS = 8;
+    private static final int OPERATIONS_PER_THREAD = 200_000;
+
+    @Test
+    void testBookSeat_FailsOnOccupiedAndOutOfBounds() {
+        ConcurrentFlightSeatsMap seatsMap = new ConcurrentFlightSeatsMap(5, 5);
+        assertTrue(seatsMap.bookSeat('A', 1, 2).isSuccess(), "Booking A1-A2 should be successful");
+        assertFalse(seatsMap.bookSeat('A', 2, 2).isSuccess(), "A2 is already occupied");
+        assertFalse(seatsMap.bookSeat('A', 4, 2).isSuccess(), "A5 does not exist");
+        assertFalse(seatsMap.bookSeat('F', 0, 1).isSuccess(), "Row F does not exist");
+        assertFalse(seatsMap.bookSeat('F', 0, 0).isSuccess(), "Empty run on a missing row should fail, not throw");
+        assertFalse(seatsMap.bookSeat('B', 0, -1).isSuccess(), "Passengers should be positive");
+        assertTrue(seatsMap.cancelBook('A', 1, 2).isSuccess(), "Canceling A1-A2 should be successful");
+        assertTrue(seatsMap.bookSeat('A', 2, 2).isSuccess(), "Booking A2-A3 should be successful after cancel");
+    }
+
+    @Test
+    void testBookAnySeats_PicksSmallestFittingRun() {
+        ConcurrentFlightSeatsMap seatsMap = new ConcurrentFlightSeatsMap(3, 8);
+        seatsMap.bookSeat('A', 3, 1);
+        seatsMap.bookSeat('B', 0, 5);
+        seatsMap.bookSeat('C', 0, 8);
+
+        // free runs: A0-A2, A4-A7 and B5-B7
+        assertEquals(new BookingRequest(BookingAction.BOOK, 'A', 4, 4), seatsMap.bookAnySeats(4).getBooked());
+        assertEquals(new BookingRequest(BookingAction.BOOK, 'A', 0, 2), seatsMap.bookAnySeats(2).getBooked());
+        assertEquals(new BookingRequest(BookingAction.BOOK, 'B', 5, 3), seatsMap.bookAnySeats(3).getBooked());
+        assertFalse(seatsMap.bookAnySeats(2).isSuccess(), "Only single free seats are left");
+    }
+
+    @Test
+    void testBookAnySeats_FollowsFreeRunsOfLoadedAndCanceledRows() {
+        ConcurrentFlightSeatsMap seatsMap = new ConcurrentFlightSeatsMap(new boolean[][]{
+                {true, true, true, true}, {true, false, false, true}});
+        assertFalse(seatsMap.bookAnySeats(3).isSuccess(), "No row has 3 free seats together");
+
+        assertTrue(seatsMap.cancelBook('A', 1, 3).isSuccess());
+        assertEquals(new BookingRequest(BookingAction.BOOK, 'A', 1, 3), seatsMap.bookAnySeats(3).getBooked());
+        assertEquals(new BookingRequest(BookingAction.BOOK, 'B', 1, 2), seatsMap.bookAnySeats(2).getBooked());
+        assertFalse(seatsMap.bookAnySeats(1).isSuccess(), "All the seats are booked");
+    }
+
+    @Test
+    void testConstructor_FailsOnTooWideRow() {
+        assertThrows(IllegalArgumentException.class, () -> new ConcurrentFlightSeatsMap(5, 65));
+    }
+
+    /**
+     * Every thread books random runs on the same few rows and cancels only its own bookings.
+     * The owner of every seat is tracked aside: a successful booking of a seat that already has
+     * an owner means the seat was double-booked.
+     */
+    @Test
+    void testConcurrentBookAndCancel_NoDoubleBooking() throws Exception {
+        ConcurrentFlightSeatsMap seatsMap = new ConcurrentFlightSeatsMap(ROWS, SEATS);
+        AtomicIntegerArray owners = new AtomicIntegerArray(ROWS * SEATS);
+        CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int t = 1; t <= THREADS; t++) {
+            final int owner = t;
+            results.add(executor.submit(() -> {
+                Random random = new Random(owner);
+                List<int[]> booked = new ArrayList<>();
+                int bookings = 0;
+                start.await();
+                for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                    if (!booked.isEmpty() && random.nextInt(3) == 0) {
+                        int[] run = booked.remove(random.nextInt(booked.size()));
+                        for (int s = run[1]; s < run[1] + run[2]; s++) {
+                            assertTrue(owners.compareAndSet(run[0] * SEATS + s, owner, 0));
+                        }
+                        assertTrue(seatsMap.cancelBook((char) ('A' + run[0]), run[1], run[2]).isSuccess());
+                        continue;
+                    }
+
+                    int row = random.nextInt(ROWS);
+                    int passengers = 1 + random.nextInt(3);
+                    int seat = random.nextInt(SEATS - passengers + 1);
+                    if (seatsMap.bookSeat((char) ('A' + row), seat, passengers).isSuccess()) {
+                        for (int s = seat; s < seat + passengers; s++) {
+                            assertTrue(owners.compareAndSet(row * SEATS + s, 0, owner),
+                                    "Seat " + (char) ('A' + row) + s + " was double-booked");
+                        }
+                        booked.add(new int[]{row, seat, passengers});
+                        bookings++;
+                    }
+                }
+                return bookings;
+            }));
+        }
+
+        start.countDown();
+        int bookings = 0;
+        for (Future<Integer> result : results) {
+            bookings += result.get();
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertTrue(bookings > 0, "Some bookings should succeed");
+
+        boolean[][] snapshot = seatsMap.getSnapshot();
+        for (int row = 0; row < ROWS; row++) {
+            for (int seat = 0; seat < SEATS; seat++) {
+                assertEquals(owners.get(row * SEATS + seat) != 0, snapshot[row][seat],
+                        "Seat " + (char) ('A' + row) + seat + " state differs from its owner");
+            }
+        }
+    }
+
+    /**
+     * The writer books the seats of the rows A and B in turns, A0, B0, A1, B1 and so on,
+     * so every consistent state has as many seats booked in A as in B, or one more.
+     * The reader should never see the row B ahead of the row A.
+     */
+    @Test
+    void testCurrentVersion_ReaderSeesConsistentMap() throws Exception {
+        ConcurrentFlightSeatsMap seatsMap = new ConcurrentFlightSeatsMap(2, 64);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        CountDownLatch start = new CountDownLatch(1);
+        Future<?> writer = executor.submit(() -> {
+            start.await();
+            for (int i = 0; i < 2_000; i++) {
+                int seat = i % 64;
+                if (seat == 0) {
+                    seatsMap.cancelBook('A', 0, 64);
+                    seatsMap.cancelBook('B', 0, 64);
+                }
+                seatsMap.bookSeat('A', seat, 1);
+                seatsMap.bookSeat('B', seat, 1);
+            }
+            return null;
+        });
+        Future<Long> reader = executor.submit(() -> {
+            start.await();
+            long lastNumber = -1;
+            while (!writer.isDone()) {
+                SeatMapVersion version = seatsMap.currentVersion();
+                assertTrue(version.getNumber() >= lastNumber, "Versions should only grow");
+                lastNumber = version.getNumber();
+                int bookedA = booked(version.getSnapshot()[0]);
+                int bookedB = booked(version.getSnapshot()[1]);
+                assertTrue(bookedA == bookedB || bookedA == bookedB + 1,
+                        "Inconsistent version " + lastNumber + ": A " + bookedA + ", B " + bookedB);
+            }
+            return lastNumber;
+        });
+
+        start.countDown();
+        writer.get(30, TimeUnit.SECONDS);
+        reader.get(30, TimeUnit.SECONDS);
+        executor.shutdown();
+        // every book and every cancel published a version
+        assertEquals(2_000 * 2 + 32 * 2, seatsMap.currentVersion().getNumber());
+    }
+
+    private static int booked(boolean[] row) {
+        int booked = 0;
+        for (boolean occupied : row) {
+            if (occupied) {
+                booked++;
+            }
+        }
+        return booked;
+    }
+
+    @Test
+    void testChangeListener_ChangesInTheirOrder() {
+        ConcurrentFlightSeatsMap seatsMap = new ConcurrentFlightSeatsMap(3, 8);
+        List<String> changes = new ArrayList<>();
+        seatsMap.setChangeListener((action, row, seat, passengers) ->
+                changes.add(action + " " + row + seat + " " + passengers));
+
+        seatsMap.bookSeat('A', 0, 3);
+        seatsMap.bookSeat('A', 1, 1);
+        seatsMap.bookAnySeats(8);
+        seatsMap.cancelBook('A', 0, 2);
+
+        assertEquals(List.of("BOOK A0 3", "BOOK B0 8", "CANCEL A0 2"), changes);
+        assertEquals(3, seatsMap.currentVersion().getNumber());
+    }
+
+    /**
+     * The threads keep booking and canceling the same seats, the listener applies the changes to its own copy.
+     * The changes of a row reach the listener in the order they were made, so the copy ends as the map.
+     */
+    @Test
+    void testChangeListener_ChangesOfRowReplayToSameMap() throws Exception {
+        ConcurrentFlightSeatsMap seatsMap = new ConcurrentFlightSeatsMap(ROWS, SEATS);
+        boolean[][] replayed = new boolean[ROWS][SEATS];
+        seatsMap.setChangeListener((action, row, seat, passengers) -> {
+            synchronized (replayed) {
+                for (int i = seat; i < seat + passengers; i++) {
+                    replayed[row - 'A'][i] = action == BookingAction.BOOK;
+                }
+            }
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            Random random = new Random(t);
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < OPERATIONS_PER_THREAD / 10; i++) {
+                    char row = (char) ('A' + random.nextInt(ROWS));
+                    int seat = random.nextInt(SEATS - 1);
+                    if (random.nextBoolean()) {
+                        seatsMap.bookSeat(row, seat, 2);
+                    } else {
+                        seatsMap.cancelBook(row, seat, 1);
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        synchronized (replayed) {
+            assertArrayEquals(seatsMap.getSnapshot(), replayed);
+        }
+    }
+}
@@ -1,10 +1,16 @@
 package com.pogodin.flightbooking.entity;
 
+import com.pogodin.flightbooking.BookingAction;
+import com.pogodin.flightbooking.FailureCode;
 import com.pogodin.flightbooking.OperationResult;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class FlightSeatsMapTest {
@@ -26,12 +32,24 @@ class FlightSeatsMapTest {
         flightSeatsMap.bookSeat('A', 1, 1);
         OperationResult result = flightSeatsMap.bookSeat('A', 1, 1);
         assertFalse(result.isSuccess(), "Booking should fail as the seat is occupied: " + result.getFailureReason());
+        assertSame(OperationResult.failure(FailureCode.SEATS_TAKEN), result, "Failure should be preallocated");
     }
 
     @Test
     void testBookSeat_Fail_OutOfBounds() {
         OperationResult result = flightSeatsMap.bookSeat('F', 1, 1); // Row 'F' does not exist
         assertFalse(result.isSuccess(), "Booking should fail as the row is out of bounds: " + result.getFailureReason());
+        assertEquals(FailureCode.OUT_OF_BOUNDS, result.getFailureCode());
+    }
+
+    @Test
+    void testBookSeat_Fail_NoPassengers() {
+        assertEquals(FailureCode.OUT_OF_BOUNDS, flightSeatsMap.bookSeat('F', 1, 0).getFailureCode(),
+                "Empty run on a missing row should fail, not throw");
+        assertEquals(FailureCode.OUT_OF_BOUNDS, flightSeatsMap.bookSeat('A', 1, -1).getFailureCode());
+        assertEquals(FailureCode.OUT_OF_BOUNDS, flightSeatsMap.cancelBook('@', 1, 0).getFailureCode());
+        assertEquals(FailureCode.OUT_OF_BOUNDS, flightSeatsMap.holdSeats('A', 1, 0).getFailureCode());
+        assertEquals(0, flightSeatsMap.getLargestFreeRun('F'));
     }
 
     @Test
@@ -45,6 +63,7 @@ class FlightSeatsMapTest {
         flightSeatsMap.bookSeat('A', 4, 1);
         OperationResult result = flightSeatsMap.bookSeat('A', 3, 3); // A4 is occupied
         assertFalse(result.isSuccess(), "Booking should fail if not enough space: " + result.getFailureReason());
+        assertEquals(FailureCode.OUT_OF_BOUNDS, result.getFailureCode(), "A5 does not exist");
     }
 
     @Test
@@ -58,6 +77,7 @@ class FlightSeatsMapTest {
     void testCancelBooking_Fail_InvalidSeat() {
         OperationResult result = flightSeatsMap.cancelBook('F', 1, 1); // Row 'F' does not exist
         assertFalse(result.isSuccess(), "Canceling should fail if the seat does not exist: " + result.getFailureReason());
+        assertEquals(FailureCode.OUT_OF_BOUNDS, result.getFailureCode());
     }
 
     @Test
@@ -82,4 +102,158 @@ class FlightSeatsMapTest {
         OperationResult bookResult2 = flightSeatsMap.bookSeat('D', 2, 2);
         assertTrue(bookResult2.isSuccess(), "Rebooking seats D2-D3 should be successful");
     }
-}
\ No newline at end of file
+
+    @Test
+    void testBookSeat_WideRowAcrossWords() {
+        FlightSeatsMap wideMap = new FlightSeatsMap(2, 150);
+        assertTrue(wideMap.bookSeat('A', 60, 10).isSuccess(), "Booking across the word boundary should succeed");
+        assertFalse(wideMap.bookSeat('A', 69, 1).isSuccess(), "A69 should be occupied");
+        assertTrue(wideMap.bookSeat('A', 70, 80).isSuccess(), "Booking till the end of the row should succeed");
+        assertFalse(wideMap.bookSeat('A', 149, 2).isSuccess(), "Booking past the end of the row should fail");
+        assertTrue(wideMap.seatAvailable('A', 59), "A59 should stay free");
+
+        assertTrue(wideMap.cancelBook('A', 64, 3).isSuccess(), "Canceling inside the second word should succeed");
+        assertTrue(wideMap.bookSeat('A', 64, 3).isSuccess(), "Rebooking the canceled seats should succeed");
+    }
+
+    @Test
+    void testSnapshot_RoundTrip() {
+        flightSeatsMap.bookSeat('B', 1, 3);
+        flightSeatsMap.bookSeat('E', 4, 1);
+
+        FlightSeatsMap restored = new FlightSeatsMap(flightSeatsMap.getSnapshot());
+        assertEquals('E', restored.getLastRow());
+        assertFalse(restored.seatAvailable('B', 3), "B3 should be restored as occupied");
+        assertFalse(restored.seatAvailable('E', 4), "E4 should be restored as occupied");
+        assertTrue(restored.seatAvailable('B', 4), "B4 should be restored as free");
+    }
+
+    @Test
+    void testBookAnySeats_PicksSmallestFittingRun() {
+        // A: free run of 5, B: free runs of 2 and 2, C: free run of 3, D and E are full
+        flightSeatsMap.bookSeat('B', 2, 1);
+        flightSeatsMap.bookSeat('C', 0, 2);
+        flightSeatsMap.bookSeat('D', 0, 5);
+        flightSeatsMap.bookSeat('E', 0, 5);
+
+        OperationResult result = flightSeatsMap.bookAnySeats(2);
+        assertTrue(result.isSuccess(), "Booking 2 seats anywhere should be successful");
+        assertEquals(new BookingRequest(BookingAction.BOOK, 'B', 0, 2), result.getBooked());
+
+        result = flightSeatsMap.bookAnySeats(3);
+        assertEquals(new BookingRequest(BookingAction.BOOK, 'C', 2, 3), result.getBooked());
+        assertEquals(0, flightSeatsMap.getLargestFreeRun('C'));
+
+        result = flightSeatsMap.bookAnySeats(4);
+        assertEquals(new BookingRequest(BookingAction.BOOK, 'A', 0, 4), result.getBooked());
+        assertEquals(1, flightSeatsMap.getLargestFreeRun('A'));
+    }
+
+    @Test
+    void testBookAnySeats_Fail_NoRowFits() {
+        flightSeatsMap.bookSeat('A', 2, 1);
+        flightSeatsMap.bookSeat('B', 2, 1);
+        flightSeatsMap.bookSeat('C', 2, 1);
+        flightSeatsMap.bookSeat('D', 2, 1);
+        flightSeatsMap.bookSeat('E', 2, 1);
+
+        assertFalse(flightSeatsMap.bookAnySeats(3).isSuccess(), "No row has 3 free seats together");
+        assertFalse(flightSeatsMap.bookAnySeats(0).isSuccess(), "No seats could be picked for 0 passengers");
+
+        flightSeatsMap.cancelBook('C', 2, 1);
+        assertEquals(5, flightSeatsMap.getLargestFreeRun('C'));
+        assertEquals(new BookingRequest(BookingAction.BOOK, 'C', 0, 3), flightSeatsMap.bookAnySeats(3).getBooked());
+    }
+
+    @Test
+    void testCurrentVersion_OldVersionIsNotChanged() {
+        flightSeatsMap.bookSeat('A', 0, 2);
+        SeatMapVersion before = flightSeatsMap.currentVersion();
+        boolean[][] snapshotBefore = before.getSnapshot();
+
+        flightSeatsMap.bookSeat('B', 1, 3);
+        flightSeatsMap.cancelBook('A', 0, 1);
+        SeatMapVersion after = flightSeatsMap.currentVersion();
+
+        assertEquals(1, before.getNumber());
+        assertEquals(3, after.getNumber());
+        assertArrayEquals(snapshotBefore, before.getSnapshot(), "Published version should never change");
+        assertTrue(before.isOccupied('A', 0));
+        assertFalse(after.isOccupied('A', 0));
+        assertTrue(after.isOccupied('B', 3));
+        assertArrayEquals(flightSeatsMap.getSnapshot(), after.getSnapshot());
+    }
+
+    @Test
+    void testCurrentVersion_OnlyChangedRowIsCopied() {
+        SeatMapVersion before = flightSeatsMap.currentVersion();
+        flightSeatsMap.bookSeat('C', 0, 1);
+        SeatMapVersion after = flightSeatsMap.currentVersion();
+
+        assertSame(after, flightSeatsMap.currentVersion(), "Version without changes should be reused");
+        assertNotSame(before.rowWords(2), after.rowWords(2));
+        for (int row : new int[]{0, 1, 3, 4}) {
+            assertSame(before.rowWords(row), after.rowWords(row), "Unchanged rows should be shared");
+        }
+    }
+
+    @Test
+    void testFreeSeats() {
+        assertEquals(25, flightSeatsMap.getFreeSeats());
+        assertEquals(5, flightSeatsMap.getLargestFreeRun());
+
+        for (char row = 'A'; row <= 'E'; row++) {
+            flightSeatsMap.bookSeat(row, 2, 1);
+        }
+        assertEquals(20, flightSeatsMap.getFreeSeats());
+        assertEquals(2, flightSeatsMap.getLargestFreeRun());
+        assertEquals(20, flightSeatsMap.currentVersion().getFreeSeats());
+        assertEquals(2, flightSeatsMap.currentVersion().getLargestFreeRun());
+    }
+
+    @Test
+    void testHoldSeats_HeldSeatsAreNotBookedNorSaved() {
+        assertTrue(flightSeatsMap.holdSeats('B', 1, 3).isSuccess());
+        assertFalse(flightSeatsMap.bookSeat('B', 3, 1).isSuccess(), "Held seat should not be booked");
+        assertEquals(FailureCode.SEATS_TAKEN, flightSeatsMap.holdSeats('B', 0, 2).getFailureCode());
+        assertEquals(1, flightSeatsMap.getLargestFreeRun('B'));
+
+        assertFalse(flightSeatsMap.getSnapshot()[1][1], "Held seat should stay free in the snapshot");
+        assertEquals(0, flightSeatsMap.currentVersion().getNumber(), "Hold should not change the bookings");
+    }
+
+    @Test
+    void testConfirmHold_HeldSeatsAreBooked() {
+        flightSeatsMap.holdSeats('C', 2, 2);
+        assertEquals(FailureCode.NOT_HELD, flightSeatsMap.confirmHold('C', 1, 2).getFailureCode());
+
+        OperationResult result = flightSeatsMap.confirmHold('C', 2, 2);
+        assertTrue(result.isSuccess());
+        assertEquals(new BookingRequest(BookingAction.BOOK, 'C', 2, 2), result.getBooked());
+        assertTrue(flightSeatsMap.getSnapshot()[2][3]);
+        assertEquals(FailureCode.NOT_HELD, flightSeatsMap.releaseHold('C', 2, 2).getFailureCode(),
+                "Confirmed seats are not held anymore");
+    }
+
+    @Test
+    void testReleaseHold_OnlyHeldSeatsAreFreed() {
+        flightSeatsMap.bookSeat('D', 0, 1);
+        flightSeatsMap.holdSeats('D', 1, 2);
+        assertTrue(flightSeatsMap.releaseHold('D', 0, 3).isSuccess());
+
+        assertTrue(flightSeatsMap.getSnapshot()[3][0], "Booked seat should stay booked");
+        assertTrue(flightSeatsMap.seatAvailable('D', 1));
+        assertEquals(4, flightSeatsMap.getLargestFreeRun('D'));
+        assertEquals(FailureCode.NOT_HELD, flightSeatsMap.releaseHold('D', 0, 3).getFailureCode());
+    }
+
+    @Test
+    void testCancelBook_EndsTheHold() {
+        flightSeatsMap.holdSeats('E', 0, 2);
+        flightSeatsMap.cancelBook('E', 0, 2);
+
+        assertTrue(flightSeatsMap.bookSeat('E', 0, 2).isSuccess());
+        assertEquals(FailureCode.NOT_HELD, flightSeatsMap.confirmHold('E', 0, 2).getFailureCode());
+        assertTrue(flightSeatsMap.getSnapshot()[4][1]);
+    }
+}
@@ -0,0 +1,132 @@
+package com.pogodin.flightbooking.entity;
+
+import com.pogodin.flightbooking.BookingAction;
+import com.pogodin.flightbooking.OperationResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OffHeapSeatMapsTest {
+
+    @Test
+    void testFlightsAreIndependent() {
+        try (OffHeapSeatMaps seatMaps = new OffHeapSeatMaps(3, 5, 10)) {
+            int first = seatMaps.addFlight(5, 5);
+            int second = seatMaps.addFlight(3, 10);
+
+            assertTrue(seatMaps.bookSeat(first, 'A', 0, 5).isSuccess());
+            assertFalse(seatMaps.seatAvailable(first, 'A', 4));
+            assertTrue(seatMaps.seatAvailable(second, 'A', 4), "Flights should not share the seats");
+            assertFalse(seatMaps.bookSeat(first, 'A', 5, 1).isSuccess(), "First flight has 5 seats in a row");
+            assertTrue(seatMaps.bookSeat(second, 'C', 5, 5).isSuccess());
+            assertFalse(seatMaps.bookSeat(second, 'D', 0, 1).isSuccess(), "Second flight has 3 rows");
+            assertFalse(seatMaps.bookSeat(second, 'D', 0, 0).isSuccess(), "Empty run on a missing row should fail");
+            assertEquals('C', seatMaps.seatMap(second).getLastRow());
+            assertEquals(10, seatMaps.seatMap(second).getSeatsInARow());
+        }
+    }
+
+    @Test
+    void testRemovedSlotIsReusedEmpty() {
+        try (OffHeapSeatMaps seatMaps = new OffHeapSeatMaps(1, 5, 5)) {
+            int slot = seatMaps.addFlight(5, 5);
+            seatMaps.bookSeat(slot, 'B', 1, 3);
+            assertThrows(IllegalStateException.class, () -> seatMaps.addFlight(5, 5), "Storage is full");
+
+            seatMaps.removeFlight(slot);
+            assertFalse(seatMaps.bookSeat(slot, 'A', 0, 1).isSuccess(), "Removed flight has no seats");
+
+            int reused = seatMaps.addFlight(new FlightSeatsMap(4, 4));
+            assertEquals(slot, reused);
+            assertTrue(seatMaps.seatAvailable(reused, 'B', 1), "Reused slot should start empty");
+            assertArrayEquals(new FlightSeatsMap(4, 4).getSnapshot(), seatMaps.getSnapshot(reused));
+        }
+    }
+
+    /**
+     * The same random operations applied to the heap seat map and to the off-heap one should give
+     * the same results and the same seats, including the rows wider than one word and the holds
+     */
+    @Test
+    void testSameResultsAsFlightSeatsMap() {
+        Random random = new Random(7);
+        try (OffHeapSeatMaps seatMaps = new OffHeapSeatMaps(4, 26, 150)) {
+            for (int seatsInRow : new int[]{5, 64, 65, 150}) {
+                FlightSeatsMap expected = new FlightSeatsMap(10, seatsInRow);
+                int slot = seatMaps.addFlight(expected);
+
+                for (int i = 0; i < 20_000; i++) {
+                    char row = (char) ('A' + random.nextInt(11));
+                    int seat = random.nextInt(seatsInRow + 2) - 1;
+                    int passengers = 1 + random.nextInt(7);
+                    OperationResult expectedResult;
+                    OperationResult result;
+                    switch (random.nextInt(6)) {
+                        case 0 -> {
+                            expectedResult = expected.bookSeat(row, seat, passengers);
+                            result = seatMaps.bookSeat(slot, row, seat, passengers);
+                        }
+                        case 1 -> {
+                            expectedResult = expected.cancelBook(row, seat, passengers);
+                            result = seatMaps.cancelBook(slot, row, seat, passengers);
+                        }
+                        case 2 -> {
+                            expectedResult = expected.holdSeats(row, seat, passengers);
+                            result = seatMaps.holdSeats(slot, row, seat, passengers);
+                        }
+                        case 3 -> {
+                            expectedResult = expected.confirmHold(row, seat, passengers);
+                            result = seatMaps.confirmHold(slot, row, seat, passengers);
+                        }
+                        case 4 -> {
+                            expectedResult = expected.releaseHold(row, seat, passengers);
+                            result = seatMaps.releaseHold(slot, row, seat, passengers);
+                        }
+                        default -> {
+                            expectedResult = expected.bookAnySeats(passengers);
+                            result = seatMaps.bookAnySeats(slot, passengers);
+                        }
+                    }
+                    assertEquals(expectedResult.isSuccess(), result.isSuccess());
+                    assertEquals(expectedResult.getFailureReason(), result.getFailureReason());
+                    assertEquals(expectedResult.getBooked(), result.getBooked());
+                    assertEquals(expected.seatAvailable(row, seat), seatMaps.seatAvailable(slot, row, seat));
+                    assertEquals(expected.getLargestFreeRun(), seatMaps.largestFreeRun(slot));
+                    assertEquals(expected.getFreeSeats(), seatMaps.freeSeats(slot));
+                }
+                assertArrayEquals(expected.getSnapshot(), seatMaps.getSnapshot(slot));
+            }
+        }
+    }
+
+    @Test
+    void testSeatMapView_Holds() {
+        try (OffHeapSeatMaps seatMaps = new OffHeapSeatMaps(1, 5, 5)) {
+            SeatMap seatMap = seatMaps.seatMap(seatMaps.addFlight(5, 5));
+            assertTrue(seatMap.holdSeats('B', 1, 3).isSuccess());
+            assertFalse(seatMap.bookSeat('B', 2, 1).isSuccess(), "Held seat should not be booked");
+            assertFalse(seatMap.getSnapshot()[1][2], "Held seat should be free in the snapshot");
+            assertEquals(new BookingRequest(BookingAction.BOOK, 'B', 1, 3), seatMap.confirmHold('B', 1, 3).getBooked());
+            assertTrue(seatMap.getSnapshot()[1][2], "Confirmed seat should be booked");
+            assertFalse(seatMap.releaseHold('B', 1, 3).isSuccess(), "Confirmed seats are not held");
+
+            assertTrue(seatMap.holdSeats('C', 0, 2).isSuccess());
+            assertTrue(seatMap.releaseHold('C', 0, 2).isSuccess());
+            assertTrue(seatMaps.seatAvailable(0, 'C', 1), "Released seat should be free");
+        }
+    }
+
+    @Test
+    void testSeatMapView() {
+        try (OffHeapSeatMaps seatMaps = new OffHeapSeatMaps(1, 5, 5)) {
+            SeatMap seatMap = seatMaps.seatMap(seatMaps.addFlight(5, 5));
+            assertTrue(seatMap.bookSeat('E', 0, 2).isSuccess());
+            assertEquals(new BookingRequest(BookingAction.BOOK, 'A', 0, 5), seatMap.bookAnySeats(5).getBooked());
+            assertTrue(seatMap.cancelBook('E', 0, 1).isSuccess());
+            assertTrue(seatMaps.seatAvailable(0, 'E', 0));
+            assertFalse(seatMaps.seatAvailable(0, 'E', 1));
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.pogodin.flightbooking.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void testBucket_HighestValueCoversRecordedValue() {
+        for (long value : new long[]{0, 1, 15, 16, 17, 31, 32, 1_000, 123_456_789L, Long.MAX_VALUE}) {
+            long highest = LatencyHistogram.highestValue(LatencyHistogram.bucket(value));
+            assertTrue(highest >= value, "Bucket of " + value + " ends below it");
+            assertTrue(highest - value <= value / 16, "Bucket of " + value + " is too wide");
+        }
+    }
+
+    @Test
+    void testPercentile_WithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.percentile(50), "Empty histogram has no latency");
+
+        for (long value = 1; value <= 10_000; value++) {
+            histogram.record(value * 1_000);
+        }
+
+        assertEquals(10_000, histogram.count());
+        assertEquals(5_000_000, histogram.percentile(50), 5_000_000 / 16.0);
+        assertEquals(9_900_000, histogram.percentile(99), 9_900_000 / 16.0);
+        assertEquals(9_990_000, histogram.percentile(99.9), 9_990_000 / 16.0);
+
+        histogram.reset();
+        assertEquals(0, histogram.count());
+    }
+
+    @Test
+    void testRecord_ConcurrentRecordsAreNotLost() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 100_000; i++) {
+                    histogram.record(i);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(400_000, histogram.count());
+    }
+}
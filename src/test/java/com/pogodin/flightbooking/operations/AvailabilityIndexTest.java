@@ -0,0 +1,56 @@
+package com.pogodin.flightbooking.operations;
+
+import com.pogodin.flightbooking.entity.FlightSeatsMap;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AvailabilityIndexTest {
+
+    @Test
+    void testFindFlights_BySeatsTogether() {
+        AvailabilityIndex index = new AvailabilityIndex();
+        index.update("LH1", 3, 20);
+        index.update("LH2", 5, 10);
+        index.update("LH3", 8, 40);
+
+        assertEquals(List.of("LH2", "LH3"), index.findFlights(5, 0),
+                "Flights with the shortest fitting run should come first");
+        assertEquals(List.of("LH1", "LH2", "LH3"), index.findFlights(1, 0));
+        assertEquals(List.of(), index.findFlights(9, 0));
+    }
+
+    @Test
+    void testFindFlights_ByFreeSeats() {
+        AvailabilityIndex index = new AvailabilityIndex();
+        index.update("LH1", 4, 30);
+        index.update("LH2", 4, 10);
+        index.update("LH3", 6, 12);
+
+        assertEquals(List.of("LH2", "LH1", "LH3"), index.findFlights(4, 10));
+        assertEquals(List.of("LH1"), index.findFlights(4, 13));
+        assertEquals(List.of("LH3"), index.findFlights(5, 11));
+    }
+
+    @Test
+    void testUpdate_FlightMovesBetweenBuckets() {
+        AvailabilityIndex index = new AvailabilityIndex();
+        FlightSeatsMap seatMap = new FlightSeatsMap(2, 6);
+        index.update("LH1", seatMap);
+        assertEquals(List.of("LH1"), index.findFlights(6, 12));
+
+        seatMap.bookSeat('A', 2, 1);
+        seatMap.bookSeat('B', 3, 1);
+        index.update("LH1", seatMap);
+        assertEquals(List.of(), index.findFlights(4, 0), "Largest free run is 3 now");
+        assertEquals(List.of("LH1"), index.findFlights(3, 10));
+        assertEquals(List.of(), index.findFlights(3, 11));
+
+        seatMap.cancelBook('B', 3, 1);
+        index.update("LH1", seatMap);
+        assertEquals(List.of("LH1"), index.findFlights(6, 11));
+        assertEquals(1, index.size(), "Flight should be indexed once");
+    }
+}
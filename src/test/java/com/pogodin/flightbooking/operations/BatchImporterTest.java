@@ -0,0 +1,128 @@
+package com.pogodin.flightbooking.operations;
+
+import com.pogodin.flightbooking.entity.BookingRequest;
+import com.pogodin.flightbooking.entity.FlightSeatsMap;
+import com.pogodin.flightbooking.entity.SeatMap;
+import com.pogodin.flightbooking.exception.BookingSaveFileException;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchImporterTest {
+
+    /**
+     * Store keeping the saved snapshots in memory
+     */
+    private static class MemoryStore implements BookingStore {
+        private final List<boolean[][]> saves = new ArrayList<>();
+        private boolean failSaves;
+
+        @Override
+        public FlightSeatsMap load(int planeRowsNumber, int planeRowSize) {
+            return saves.isEmpty()
+                    ? new FlightSeatsMap(planeRowsNumber, planeRowSize)
+                    : new FlightSeatsMap(saves.get(saves.size() - 1));
+        }
+
+        @Override
+        public void recordOperation(SeatMap seatMap, BookingRequest applied) {
+            save(seatMap);
+        }
+
+        @Override
+        public synchronized void save(SeatMap seatMap) {
+            if (failSaves) {
+                throw new BookingSaveFileException("Save-file is not writable");
+            }
+            saves.add(seatMap.getSnapshot());
+        }
+    }
+
+    private static ReadableByteChannel channel(String commands) {
+        return Channels.newChannel(new ByteArrayInputStream(commands.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @Test
+    void testProcess_PerLineResultsInOrder() throws IOException {
+        String commands = "BOOK A0 2\r\nBOOK A1 1\n\n  CANCEL A0 2 \nFLY A1 1\nBOOK ANY 3\nBOOK A1 1";
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int applied = new BatchImporter(new BookingProcessor(new MemoryStore(), 5, 5), 0)
+                .process(channel(commands), new PrintStream(out));
+
+        assertEquals(3, applied);
+        assertArrayEquals(new String[]{"SUCCESS", "FAIL", "SUCCESS", "FAIL", "SUCCESS A0 3", "FAIL"},
+                out.toString().lines().toArray(String[]::new));
+    }
+
+    /**
+     * Small chunks split the lines between the chunks and wait for each other,
+     * the results and the saves should be the same as of the sequential batch processor
+     */
+    @Test
+    void testProcess_SameAsBatchProcessor() throws IOException {
+        Random random = new Random(7);
+        StringBuilder commands = new StringBuilder();
+        String[] actions = {"BOOK", "CANCEL", "BOOK", "LAND", "HOLD"};
+        for (int i = 0; i < 5000; i++) {
+            commands.append(actions[random.nextInt(actions.length)]).append(' ')
+                    .append((char) ('A' + random.nextInt(6))).append(random.nextInt(9)).append(' ')
+                    .append(1 + random.nextInt(3)).append(i % 10 == 0 ? "\r\n" : "\n");
+        }
+
+        MemoryStore sequentialStore = new MemoryStore();
+        ByteArrayOutputStream sequentialOut = new ByteArrayOutputStream();
+        int sequentialApplied = new BatchProcessor(new BookingProcessor(sequentialStore, 5, 8), 7)
+                .process(new BufferedReader(new StringReader(commands.toString())), new PrintStream(sequentialOut));
+
+        MemoryStore pipelinedStore = new MemoryStore();
+        ByteArrayOutputStream pipelinedOut = new ByteArrayOutputStream();
+        int pipelinedApplied = new BatchImporter(new BookingProcessor(pipelinedStore, 5, 8), 7, 100, 3)
+                .process(channel(commands.toString()), new PrintStream(pipelinedOut));
+
+        assertEquals(sequentialApplied, pipelinedApplied);
+        assertEquals(sequentialOut.toString(), pipelinedOut.toString());
+        assertEquals(sequentialStore.saves.size(), pipelinedStore.saves.size());
+        for (int i = 0; i < sequentialStore.saves.size(); i++) {
+            assertArrayEquals(sequentialStore.saves.get(i), pipelinedStore.saves.get(i), "Save " + i + " differs");
+        }
+    }
+
+    @Test
+    void testProcess_LineLongerThanTheChunk() throws IOException {
+        String commands = "BOOK B0 2\n" + " ".repeat(50) + "BOOK B2 1" + " ".repeat(50) + "\nBOOK B2 1\n";
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new BatchImporter(new BookingProcessor(new MemoryStore(), 5, 5), 0, 16, 2)
+                .process(channel(commands), new PrintStream(out));
+
+        assertArrayEquals(new String[]{"SUCCESS", "SUCCESS", "FAIL"}, out.toString().lines().toArray(String[]::new));
+    }
+
+    @Test
+    void testProcess_StopsOnFailedSave() {
+        MemoryStore store = new MemoryStore();
+        store.failSaves = true;
+        StringBuilder commands = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            commands.append(i % 2 == 0 ? "BOOK A0 1\n" : "CANCEL A0 1\n");
+        }
+
+        BatchImporter importer = new BatchImporter(new BookingProcessor(store, 5, 5), 1, 32, 2);
+        assertThrows(BookingSaveFileException.class,
+                () -> importer.process(channel(commands.toString()), new PrintStream(new ByteArrayOutputStream())));
+    }
+}
@@ -0,0 +1,82 @@
+package com.pogodin.flightbooking.operations;
+
+import com.pogodin.flightbooking.entity.FlightSeatsMap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchProcessorTest {
+    private final String filePath = "testBatchBooking.csv";
+    private BookingProcessor bookingProcessor;
+
+    @BeforeEach
+    void setUp() {
+        cleanUp();
+        bookingProcessor = new BookingProcessor(filePath, 5, 5);
+    }
+
+    @AfterEach
+    void cleanUp() {
+        File testStorage = new File(filePath);
+        if (testStorage.exists()) {
+            testStorage.delete();
+        }
+    }
+
+    @Test
+    void testProcess_PerLineResultsInOrder() throws IOException {
+        String commands = "BOOK A0 2\nBOOK A1 1\n\nCANCEL A0 2\nFLY A1 1\nBOOK A1 1\n";
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int applied = new BatchProcessor(bookingProcessor, 0)
+                .process(new BufferedReader(new StringReader(commands)), new PrintStream(out));
+
+        assertEquals(3, applied);
+        assertArrayEquals(new String[]{"SUCCESS", "FAIL", "SUCCESS", "FAIL", "SUCCESS"},
+                out.toString().lines().toArray(String[]::new));
+    }
+
+    @Test
+    void testProcess_HoldsAreRejected() throws IOException {
+        String commands = "HOLD A0 2\nBOOK A0 2\nCONFIRM A0 2\nRELEASE A0 2\n";
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int applied = new BatchProcessor(bookingProcessor, 0)
+                .process(new BufferedReader(new StringReader(commands)), new PrintStream(out));
+
+        assertEquals(1, applied);
+        assertArrayEquals(new String[]{"FAIL", "SUCCESS", "FAIL", "FAIL"}, out.toString().lines().toArray(String[]::new));
+        assertFalse(bookingProcessor.loadSeatMap().bookSeat('A', 1, 1).isSuccess(), "A1 should be persisted as booked");
+    }
+
+    @Test
+    void testProcess_PersistsAtTheEnd() throws IOException {
+        String commands = "BOOK B0 3\nBOOK E4 1\n";
+
+        new BatchProcessor(bookingProcessor, 0)
+                .process(new BufferedReader(new StringReader(commands)), new PrintStream(new ByteArrayOutputStream()));
+
+        FlightSeatsMap stored = bookingProcessor.loadSeatMap();
+        assertFalse(stored.bookSeat('B', 2, 1).isSuccess(), "B2 should be persisted as booked");
+        assertFalse(stored.bookSeat('E', 4, 1).isSuccess(), "E4 should be persisted as booked");
+        assertTrue(stored.bookSeat('B', 3, 1).isSuccess(), "B3 should stay free");
+    }
+
+    @Test
+    void testProcess_NothingSavedWithoutChanges() throws IOException {
+        new BatchProcessor(bookingProcessor, 1)
+                .process(new BufferedReader(new StringReader("BOOK Z0 1\n")),
+                        new PrintStream(new ByteArrayOutputStream()));
+
+        assertFalse(new File(filePath).exists(), "Failed commands should not create the save-file");
+    }
+}
@@ -0,0 +1,135 @@
+package com.pogodin.flightbooking.operations;
+
+import com.pogodin.flightbooking.BookingAction;
+import com.pogodin.flightbooking.entity.BookingRequest;
+import com.pogodin.flightbooking.entity.FlightSeatsMap;
+import com.pogodin.flightbooking.exception.BookingSaveFileException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinarySeatMapFileTest {
+    private final String csvPath = "testBinaryBooking.csv";
+    private final String binaryPath = "testBinaryBooking" + FileOperations.BINARY_EXTENSION;
+
+    @BeforeEach
+    void setUp() {
+        cleanUp();
+    }
+
+    @AfterEach
+    void cleanUp() {
+        new File(csvPath).delete();
+        new File(binaryPath).delete();
+        new File(csvPath + SeatMapFileLock.LOCK_SUFFIX).delete();
+        new File(binaryPath + SeatMapFileLock.LOCK_SUFFIX).delete();
+    }
+
+    @Test
+    void testSaveAndLoad_RoundTrip() {
+        FlightSeatsMap seatMap = new FlightSeatsMap(20, 10);
+        seatMap.bookSeat('A', 0, 3);
+        seatMap.bookSeat('T', 7, 3);
+
+        FileOperations.getInstance().saveBookingMap(seatMap, binaryPath);
+        assertEquals(BinarySeatMapFile.HEADER_SIZE + 20 * 2 * (2 + BinarySeatMapFile.SLOT_OVERHEAD),
+                new File(binaryPath).length());
+
+        FlightSeatsMap loaded = FileOperations.getInstance().loadBookingMap(binaryPath);
+        assertArrayEquals(seatMap.getSnapshot(), loaded.getSnapshot());
+        assertEquals('T', loaded.getLastRow());
+    }
+
+    @Test
+    void testSave_FailedSaveKeepsPreviousFile() throws IOException {
+        FlightSeatsMap seatMap = new FlightSeatsMap(5, 5);
+        seatMap.bookSeat('A', 0, 3);
+        FileOperations.getInstance().saveBookingMap(seatMap, binaryPath);
+        assertFalse(tempPath().exists(), "Temp file should be renamed to the save-file");
+
+        seatMap.bookSeat('E', 0, 5);
+        // the temp file cannot be written over the directory
+        Files.createDirectory(tempPath().toPath());
+        try {
+            assertThrows(BookingSaveFileException.class,
+                    () -> FileOperations.getInstance().saveBookingMap(seatMap, binaryPath));
+        } finally {
+            tempPath().delete();
+        }
+        FlightSeatsMap loaded = FileOperations.getInstance().loadBookingMap(binaryPath);
+        assertFalse(loaded.bookSeat('A', 0, 1).isSuccess(), "Previous save-file should be kept whole");
+        assertTrue(loaded.bookSeat('E', 0, 5).isSuccess());
+    }
+
+    @Test
+    void testProcessOperation_UpdatesSingleRow() {
+        BookingProcessor bookingProcessor = new BookingProcessor(binaryPath, 5, 5);
+        assertTrue(bookingProcessor.processOperation(new BookingRequest(BookingAction.BOOK, 'B', 1, 2)).isSuccess());
+        assertTrue(bookingProcessor.processOperation(new BookingRequest(BookingAction.BOOK, 'D', 0, 5)).isSuccess());
+        assertTrue(bookingProcessor.processOperation(new BookingRequest(BookingAction.CANCEL, 'B', 2, 1)).isSuccess());
+
+        FlightSeatsMap loaded = bookingProcessor.loadSeatMap();
+        assertFalse(loaded.bookSeat('B', 1, 1).isSuccess(), "B1 should be stored as booked");
+        assertTrue(loaded.bookSeat('B', 2, 1).isSuccess(), "B2 should be stored as canceled");
+        assertFalse(loaded.bookSeat('D', 4, 1).isSuccess(), "D4 should be stored as booked");
+    }
+
+    @Test
+    void testLoad_FailsOnCorruptedRow() throws IOException {
+        FlightSeatsMap seatMap = new FlightSeatsMap(5, 5);
+        seatMap.bookSeat('C', 0, 2);
+        FileOperations.getInstance().saveBookingMap(seatMap, binaryPath);
+
+        try (RandomAccessFile file = new RandomAccessFile(binaryPath, "rw")) {
+            file.seek(BinarySeatMapFile.HEADER_SIZE + 2);
+            file.write(0x1F);
+        }
+
+        assertThrows(BookingSaveFileException.class, () -> FileOperations.getInstance().loadBookingMap(binaryPath));
+    }
+
+    /**
+     * The update of the row torn by a crash leaves the row as it was before the update
+     */
+    @Test
+    void testSaveRow_TornUpdateKeepsPreviousRow() throws IOException {
+        FlightSeatsMap seatMap = new FlightSeatsMap(5, 5);
+        seatMap.bookSeat('C', 0, 2);
+        FileOperations.getInstance().saveBookingMap(seatMap, binaryPath);
+        seatMap.bookSeat('C', 3, 2);
+        FileOperations.getInstance().saveBookingRow(seatMap, 'C', binaryPath);
+        boolean[] previousRow = {true, true, false, false, false};
+        assertArrayEquals(seatMap.getRow('C'), FileOperations.getInstance().loadBookingMap(binaryPath).getRow('C'));
+
+        int slotSize = BinarySeatMapFile.slotSize(5);
+        try (RandomAccessFile file = new RandomAccessFile(binaryPath, "rw")) {
+            // the seats of the second slot of the row C, written by the update
+            file.seek(BinarySeatMapFile.HEADER_SIZE + 2 * 2 * slotSize + slotSize + Integer.BYTES);
+            file.write(0x1F);
+        }
+
+        assertArrayEquals(previousRow, FileOperations.getInstance().loadBookingMap(binaryPath).getRow('C'));
+    }
+
+    @Test
+    void testConvert_FromCsv() {
+        FlightSeatsMap seatMap = new FlightSeatsMap(5, 5);
+        seatMap.bookSeat('E', 2, 3);
+        FileOperations.getInstance().saveBookingMap(seatMap, csvPath);
+
+        FileOperations.getInstance().convertBookingMap(csvPath, binaryPath);
+
+        assertArrayEquals(seatMap.getSnapshot(), FileOperations.getInstance().loadBookingMap(binaryPath).getSnapshot());
+    }
+
+    private File tempPath() {
+        return new File(BinarySeatMapFile.TEMP_PREFIX + binaryPath);
+    }
+}
@@ -0,0 +1,115 @@
+package com.pogodin.flightbooking.operations;
+
+import com.pogodin.flightbooking.BookingAction;
+import com.pogodin.flightbooking.entity.BookingRequest;
+import com.pogodin.flightbooking.entity.FlightSeatsMap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BookingJournalTest {
+    private static final int THREADS = 16;
+    private static final int ROWS = 26;
+
+    private final Path journalPath = Paths.get("testGroupCommit.csv" + JournalBookingStore.JOURNAL_SUFFIX);
+
+    @BeforeEach
+    void setUp() {
+        cleanUp();
+    }
+
+    @AfterEach
+    void cleanUp() {
+        journalPath.toFile().delete();
+        new BookingJournal(journalPath).removeSealed(Long.MAX_VALUE);
+    }
+
+    /**
+     * Every thread books its own seats of every row, all of them should be in the journal once the appends return,
+     * including the ones sealed into the segments while the others were appended
+     */
+    @Test
+    void testAppend_ConcurrentAppendsAreCommittedTogether() throws Exception {
+        BookingJournal journal = new BookingJournal(journalPath, 8, 200);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS + 1);
+        List<Future<?>> appends = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final int seat = t;
+            appends.add(executor.submit(() -> {
+                start.await();
+                for (int row = 0; row < ROWS; row++) {
+                    journal.append(new BookingRequest(BookingAction.BOOK, (char) ('A' + row), seat, 1));
+                }
+                return null;
+            }));
+        }
+        Future<?> seals = executor.submit(() -> {
+            start.await();
+            for (int i = 0; i < 5; i++) {
+                journal.seal();
+                Thread.sleep(1);
+            }
+            return null;
+        });
+
+        start.countDown();
+        for (Future<?> append : appends) {
+            append.get();
+        }
+        seals.get();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        FlightSeatsMap restored = new FlightSeatsMap(ROWS, THREADS);
+        assertEquals(THREADS * ROWS, new BookingJournal(journalPath).replay(restored));
+        for (boolean[] row : restored.getSnapshot()) {
+            for (boolean occupied : row) {
+                assertTrue(occupied, "Every appended booking should be replayed");
+            }
+        }
+    }
+
+    @Test
+    void testAppend_SingleAppendDoesNotWaitForFullBatch() throws IOException {
+        BookingJournal journal = new BookingJournal(journalPath, 64, 1_000);
+
+        long started = System.nanoTime();
+        journal.append(new BookingRequest(BookingAction.BOOK, 'A', 0, 2));
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+        assertTrue(elapsedMillis < 1_000, "Append should wait for the batch no longer than the max wait");
+        assertEquals(BookingJournal.RECORD_SIZE, Files.size(journalPath));
+    }
+
+    /**
+     * The records are replayed in the order they were placed, not in the order they were waited for
+     */
+    @Test
+    void testPlace_RecordsKeepPlacedOrder() {
+        BookingJournal journal = new BookingJournal(journalPath, 8, 0);
+
+        BookingStore.PendingRecord booked = journal.place(new BookingRequest(BookingAction.BOOK, 'A', 0, 2));
+        BookingStore.PendingRecord canceled = journal.place(new BookingRequest(BookingAction.CANCEL, 'A', 0, 1));
+        canceled.await();
+        booked.await();
+
+        FlightSeatsMap restored = new FlightSeatsMap(1, 4);
+        assertEquals(2, new BookingJournal(journalPath).replay(restored));
+        assertArrayEquals(new boolean[]{false, true, false, false}, restored.getSnapshot()[0]);
+    }
+}
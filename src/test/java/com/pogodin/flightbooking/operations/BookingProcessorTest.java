@@ -37,6 +37,7 @@ class BookingProcessorTest {
         if (testStorage.exists()) {
             testStorage.delete();
         }
+        new File(filePath + SeatMapFileLock.LOCK_SUFFIX).delete();
     }
 
     @Test
@@ -107,4 +108,23 @@ class BookingProcessorTest {
         assertTrue(exception.getMessage().contains("Consider providing the positive number of customers"));
     }
 
-}
\ No newline at end of file
+    @Test
+    void testSplitOperation_BookAny() throws MalformedRequestException {
+        BookingRequest request = bookingProcessor.terminalToBookingRequest("BOOK ANY 4");
+        assertEquals(BookingAction.BOOK_ANY, request.action());
+        assertEquals(4, request.passengers());
+
+        assertThrows(MalformedRequestException.class, () -> bookingProcessor.terminalToBookingRequest("CANCEL ANY 4"));
+        assertThrows(MalformedRequestException.class, () -> bookingProcessor.terminalToBookingRequest("BOOK_ANY A0 4"));
+    }
+
+    @Test
+    void testProcessOperation_BookAnyReportsSeats() {
+        bookingProcessor.processOperation(new BookingRequest(BookingAction.BOOK, 'A', 0, 3));
+
+        OperationResult result = bookingProcessor.processOperation(new BookingRequest(BookingAction.BOOK_ANY, '\0', 0, 2));
+        assertEquals("SUCCESS A3 2", result.toResponse());
+        assertFalse(bookingProcessor.loadSeatMap().bookSeat('A', 4, 1).isSuccess(), "A4 should be stored as booked");
+    }
+
+}
@@ -0,0 +1,119 @@
+package com.pogodin.flightbooking.operations;
+
+import com.pogodin.flightbooking.BookingAction;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChangeFeedTest {
+
+    private static ChangeFeed.ChangeListener collect(List<String> changes) {
+        return (sequence, flightId, action, row, seat, seats) ->
+                changes.add(sequence + " " + flightId + " " + action + " " + row + seat + " " + seats);
+    }
+
+    @Test
+    void testPoll_ChangesInOrderFromAnySequence() {
+        ChangeFeed feed = new ChangeFeed(6);
+        assertEquals(8, feed.getCapacity());
+        ChangeFeed.Subscriber fromStart = feed.subscribe();
+        feed.publish("LH1", BookingAction.BOOK, 'A', 0, 2);
+        feed.publish(null, BookingAction.CANCEL, 'Z', 63, 64);
+        feed.publish("LH2", BookingAction.BOOK, 'C', 1000, 1);
+
+        List<String> changes = new ArrayList<>();
+        assertEquals(2, fromStart.poll(collect(changes), 2));
+        assertEquals(1, fromStart.poll(collect(changes), 10));
+        assertEquals(0, fromStart.poll(collect(changes), 10), "Nothing is published yet");
+        assertEquals(List.of("0 LH1 BOOK A0 2", "1 null CANCEL Z63 64", "2 LH2 BOOK C1000 1"), changes);
+
+        List<String> caughtUp = new ArrayList<>();
+        assertEquals(2, feed.subscribe(1).poll(collect(caughtUp), 10));
+        assertEquals(List.of("1 null CANCEL Z63 64", "2 LH2 BOOK C1000 1"), caughtUp);
+    }
+
+    @Test
+    void testPoll_SubscriberBehindTheRingContinuesFromTheOldest() {
+        ChangeFeed feed = new ChangeFeed(4);
+        ChangeFeed.Subscriber subscriber = feed.subscribe();
+        for (int i = 0; i < 10; i++) {
+            feed.publish("LH1", BookingAction.BOOK, 'A', i, 1);
+        }
+
+        List<String> changes = new ArrayList<>();
+        assertEquals(ChangeFeed.LOST, subscriber.poll(collect(changes), 10));
+        assertEquals(6, subscriber.getNextSequence());
+        assertEquals(4, subscriber.poll(collect(changes), 10));
+        assertEquals("6 LH1 BOOK A6 1", changes.get(0));
+    }
+
+    @Test
+    void testAwaitChange_SubscriberIsWokenByPublisher() throws Exception {
+        ChangeFeed feed = new ChangeFeed(4);
+        ChangeFeed.Subscriber subscriber = feed.subscribe();
+        assertFalse(subscriber.awaitChange(10, TimeUnit.MILLISECONDS), "Nothing is published yet");
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<Boolean> awaited = executor.submit(() -> subscriber.awaitChange(30, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        feed.publish("LH1", BookingAction.BOOK, 'A', 0, 1);
+        assertTrue(awaited.get(5, TimeUnit.SECONDS), "Subscriber should be woken by the published change");
+        executor.shutdown();
+
+        List<String> changes = new ArrayList<>();
+        assertEquals(1, subscriber.poll(collect(changes), 10));
+        assertEquals(List.of("0 LH1 BOOK A0 1"), changes);
+        assertTrue(feed.subscribe(0).awaitChange(0, TimeUnit.MILLISECONDS), "Published change is not awaited");
+    }
+
+    /**
+     * The publishers overwrite the small ring while the subscriber reads it,
+     * the subscriber may lose the changes but should never see a torn or reordered one
+     */
+    @Test
+    void testPublish_ConcurrentPublishersAndSubscriber() throws Exception {
+        ChangeFeed feed = new ChangeFeed(64);
+        int publishers = 4;
+        int changesPerPublisher = 100_000;
+        ExecutorService executor = Executors.newFixedThreadPool(publishers);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int p = 0; p < publishers; p++) {
+            String flightId = "LH" + p;
+            futures.add(executor.submit(() -> {
+                for (int i = 1; i <= changesPerPublisher; i++) {
+                    feed.publish(flightId, i % 2 == 0 ? BookingAction.BOOK : BookingAction.CANCEL, 'A', i, i);
+                }
+            }));
+        }
+
+        Map<String, Integer> lastSeat = new HashMap<>();
+        long[] lastSequence = {-1};
+        ChangeFeed.ChangeListener check = (sequence, flightId, action, row, seat, seats) -> {
+            assertTrue(sequence > lastSequence[0], "Changes should come in the order of the sequence");
+            lastSequence[0] = sequence;
+            assertEquals(seat, seats, "Change should not be torn");
+            assertEquals(seat % 2 == 0 ? BookingAction.BOOK : BookingAction.CANCEL, action);
+            Integer previous = lastSeat.put(flightId, seat);
+            assertTrue(previous == null || previous < seat, "Changes of the flight should keep their order");
+        };
+        ChangeFeed.Subscriber subscriber = feed.subscribe(0);
+        long total = (long) publishers * changesPerPublisher;
+        while (subscriber.getNextSequence() < total) {
+            subscriber.poll(check, 16);
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        assertEquals(total, feed.nextSequence());
+    }
+}
@@ -0,0 +1,91 @@
+package com.pogodin.flightbooking.operations;
+
+import com.pogodin.flightbooking.BookingAction;
+import com.pogodin.flightbooking.entity.BookingRequest;
+import com.pogodin.flightbooking.entity.FlightSeatsMap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CheckpointerTest {
+    private final String filePath = "testCheckpointBooking.csv";
+    private final Path journalPath = Paths.get(filePath + JournalBookingStore.JOURNAL_SUFFIX);
+    private JournalBookingStore store;
+    private BookingProcessor bookingProcessor;
+
+    @BeforeEach
+    void setUp() {
+        cleanUp();
+        store = new JournalBookingStore(filePath);
+        bookingProcessor = new BookingProcessor(store, 5, 5);
+    }
+
+    @AfterEach
+    void cleanUp() {
+        new File(filePath).delete();
+        journalPath.toFile().delete();
+        new BookingJournal(journalPath).removeSealed(Long.MAX_VALUE);
+    }
+
+    @Test
+    void testCheckpointer_IntervalsShouldBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> new Checkpointer(store, 0, 60_000));
+        assertThrows(IllegalArgumentException.class, () -> new Checkpointer(store, 10, 0));
+    }
+
+    @Test
+    void testCheckpoint_AfterOperationCount() throws InterruptedException {
+        FlightSeatsMap seatMap = bookingProcessor.loadSeatMap();
+        Checkpointer checkpointer = new Checkpointer(store, 3, 60_000);
+        checkpointer.start(seatMap);
+
+        apply(seatMap, new BookingRequest(BookingAction.BOOK, 'A', 0, 2));
+        apply(seatMap, new BookingRequest(BookingAction.BOOK, 'B', 0, 2));
+        checkpointer.operationRecorded();
+        checkpointer.operationRecorded();
+        assertFalse(new File(filePath).exists(), "Checkpoint should not be made before the operation count");
+
+        apply(seatMap, new BookingRequest(BookingAction.BOOK, 'C', 0, 2));
+        checkpointer.operationRecorded();
+        BookingJournal journal = new BookingJournal(journalPath);
+        for (int i = 0; i < 100 && (!new File(filePath).exists() || !journal.sealedSegments().isEmpty()); i++) {
+            Thread.sleep(20);
+        }
+        assertTrue(new File(filePath).exists(), "Snapshot should be written by the checkpoint");
+        assertFalse(Files.exists(journalPath), "Journal covered by the snapshot should be removed");
+        checkpointer.stop();
+
+        FlightSeatsMap restored = bookingProcessor.loadSeatMap();
+        assertFalse(restored.bookSeat('C', 1, 1).isSuccess(), "C1 should be restored from the snapshot");
+    }
+
+    @Test
+    void testCheckpoint_OnStopKeepsLaterOperations() {
+        FlightSeatsMap seatMap = bookingProcessor.loadSeatMap();
+        Checkpointer checkpointer = new Checkpointer(store, 1_000, 60_000);
+        checkpointer.start(seatMap);
+
+        apply(seatMap, new BookingRequest(BookingAction.BOOK, 'D', 1, 3));
+        checkpointer.operationRecorded();
+        checkpointer.stop();
+        assertTrue(new BookingJournal(journalPath).sealedSegments().isEmpty(), "Sealed segments should be removed");
+
+        apply(seatMap, new BookingRequest(BookingAction.CANCEL, 'D', 1, 1));
+
+        FlightSeatsMap restored = bookingProcessor.loadSeatMap();
+        assertTrue(restored.bookSeat('D', 1, 1).isSuccess(), "D1 should be restored as canceled from the journal");
+        assertFalse(restored.bookSeat('D', 2, 2).isSuccess(), "D2-D3 should be restored as booked from the snapshot");
+    }
+
+    private void apply(FlightSeatsMap seatMap, BookingRequest request) {
+        assertTrue(bookingProcessor.applyOperation(seatMap, request).isSuccess());
+        bookingProcessor.recordOperation(seatMap, request);
+    }
+}
@@ -0,0 +1,160 @@
+package com.pogodin.flightbooking.operations;
+
+import com.pogodin.flightbooking.BookingAction;
+import com.pogodin.flightbooking.entity.BookingRequest;
+import com.pogodin.flightbooking.exception.MalformedRequestException;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommandParserTest {
+    private static final String[] FRAGMENTS = {
+            "BOOK", "CANCEL", "BOOK_ANY", "book", "FLY", "ANY", "any", "HOLD", "CONFIRM", "RELEASE", "hold",
+            "A0", "Z9", "T7", "a0", "[0", "A:", "AA", "A10", "@5",
+            "1", "4", "0", "-1", "+3", "+", "-", "01", "٣", "５", "2147483647", "2147483648", "x",
+            "", " ", "  ", "\t", "\n", "\u0001"
+    };
+    // valid parts of the action, place and passengers, picked more often to get the accepted commands too
+    private static final String[][] VALID_FRAGMENTS = {
+            {"BOOK", "CANCEL", "HOLD", "CONFIRM", "RELEASE"}, {"A0", "Z9", "T7", "ANY"}, {"1", "4", "+3", "01", "٣", "2147483647"}
+    };
+    private static final String[] SEPARATORS = {" ", " ", " ", "  ", "\t", " \t ", ""};
+
+    private final BookingProcessor bookingProcessor = new BookingProcessor("testParserBooking.csv", 5, 5);
+
+    @Test
+    void testParse_ValidCommands() {
+        CommandParser parser = new CommandParser();
+
+        assertEquals(CommandParser.Status.OK, parser.parse("BOOK A0 1"));
+        assertEquals(new BookingRequest(BookingAction.BOOK, 'A', 0, 1), parser.toBookingRequest());
+        assertEquals(CommandParser.Status.OK, parser.parse("CANCEL T7 12"));
+        assertEquals(new BookingRequest(BookingAction.CANCEL, 'T', 7, 12), parser.toBookingRequest());
+        assertEquals(CommandParser.Status.OK, parser.parse("BOOK ANY 4"));
+        assertEquals(BookingAction.BOOK_ANY, parser.getAction());
+        assertEquals(4, parser.getPassengers());
+    }
+
+    @Test
+    void testParse_RejectsWithStatus() {
+        CommandParser parser = new CommandParser();
+
+        assertEquals(CommandParser.Status.EMPTY, parser.parse(""));
+        assertEquals(CommandParser.Status.WRONG_FORM, parser.parse("BOOK A0"));
+        assertEquals(CommandParser.Status.WRONG_FORM, parser.parse("BOOK A0 1 2"));
+        assertEquals(CommandParser.Status.UNSUPPORTED_OPERATION, parser.parse("FLY A0 1"));
+        assertEquals(CommandParser.Status.UNSUPPORTED_OPERATION, parser.parse("BOOK_ANY A0 1"));
+        assertEquals(CommandParser.Status.WRONG_PLACE, parser.parse("CANCEL ANY 1"));
+        assertEquals(CommandParser.Status.WRONG_PLACE, parser.parse("BOOK a0 1"));
+        assertEquals(CommandParser.Status.WRONG_PASSENGERS, parser.parse("BOOK A0 0"));
+        assertEquals(CommandParser.Status.WRONG_PASSENGERS, parser.parse("BOOK A0 2147483648"));
+    }
+
+    /**
+     * Random commands glued from the valid and the broken parts should be accepted or rejected
+     * the same way the terminalToBookingRequest does it, with the single space separated command line form
+     * and with the whitespace separated batch form
+     */
+    @Test
+    void testParse_SameDecisionsAsTerminalToBookingRequest() {
+        CommandParser parser = new CommandParser();
+        CommandParser batchParser = new CommandParser(true);
+        Random random = new Random(42);
+        int accepted = 0;
+
+        for (int i = 0; i < 200_000; i++) {
+            String command = randomCommand(random);
+
+            BookingRequest expected = referenceParse(command);
+            CommandParser.Status status = parser.parse(command);
+            assertEquals(expected != null, status == CommandParser.Status.OK, "Different decision on \"" + command + "\"");
+            if (expected != null) {
+                assertEquals(expected, parser.toBookingRequest(), "Different request of \"" + command + "\"");
+                accepted++;
+            }
+
+            BookingRequest expectedBatch = referenceBatchParse(command);
+            CommandParser.Status batchStatus = batchParser.parse(command);
+            assertEquals(expectedBatch != null, batchStatus == CommandParser.Status.OK,
+                    "Different batch decision on \"" + command + "\"");
+            if (expectedBatch != null) {
+                assertEquals(expectedBatch, batchParser.toBookingRequest(), "Different batch request of \"" + command + "\"");
+            }
+        }
+        assertTrue(accepted > 1_000, "Valid commands should be generated as well, only " + accepted + " were");
+    }
+
+    @Test
+    void testParse_SameDecisionsOnEdgeCases() {
+        CommandParser parser = new CommandParser();
+        for (String command : List.of(" ", "   ", " BOOK A0 1", "BOOK A0 1 ", "BOOK A0 1   ", "BOOK  A0 1", "BOOK A0  1",
+                "BOOK A0 +1", "BOOK A0 +", "BOOK A0 -0", "BOOK A0 ٣", "BOOK A0 1\t", "BOOK ANY 2147483647")) {
+            BookingRequest expected = referenceParse(command);
+            assertEquals(expected != null, parser.parse(command) == CommandParser.Status.OK,
+                    "Different decision on \"" + command + "\"");
+            if (expected != null) {
+                assertEquals(expected, parser.toBookingRequest());
+            }
+        }
+    }
+
+    private static String randomCommand(Random random) {
+        StringBuilder sb = new StringBuilder();
+        int parts = 1 + random.nextInt(4);
+        if (random.nextInt(10) == 0) {
+            sb.append(SEPARATORS[random.nextInt(SEPARATORS.length)]);
+        }
+        for (int p = 0; p < parts; p++) {
+            if (p > 0) {
+                sb.append(SEPARATORS[random.nextInt(SEPARATORS.length)]);
+            }
+            if (p < VALID_FRAGMENTS.length && random.nextBoolean()) {
+                sb.append(VALID_FRAGMENTS[p][random.nextInt(VALID_FRAGMENTS[p].length)]);
+            } else {
+                sb.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+            }
+        }
+        if (random.nextInt(10) == 0) {
+            sb.append(SEPARATORS[random.nextInt(SEPARATORS.length)]);
+        }
+        return sb.toString();
+    }
+
+    private BookingRequest referenceParse(String command) {
+        try {
+            return bookingProcessor.terminalToBookingRequest(command);
+        } catch (MalformedRequestException e) {
+            return null;
+        }
+    }
+
+    private BookingRequest referenceBatchParse(String command) {
+        String line = command.trim();
+        if (line.isEmpty()) {
+            return null;
+        }
+        try {
+            return bookingProcessor.terminalToBookingRequest(line.split("\\s+"));
+        } catch (MalformedRequestException e) {
+            return null;
+        }
+    }
+
+    @Test
+    void testParse_OptionalFlightId() {
+        CommandParser parser = new CommandParser(false, true);
+
+        assertEquals(CommandParser.Status.OK, parser.parse("LH123 BOOK A0 2"));
+        assertEquals("LH123", parser.getFlightId());
+        assertEquals(new BookingRequest(BookingAction.BOOK, 'A', 0, 2), parser.toBookingRequest());
+        assertEquals(CommandParser.Status.OK, parser.parse("CANCEL A0 2"));
+        assertNull(parser.getFlightId(), "Command without the flight id is for the default flight");
+        assertEquals(CommandParser.Status.WRONG_FLIGHT, parser.parse("../etc BOOK A0 2"));
+        assertEquals(CommandParser.Status.WRONG_FORM, parser.parse("LH1 LH2 BOOK A0 2"));
+        assertEquals(CommandParser.Status.WRONG_FORM, new CommandParser().parse("LH123 BOOK A0 2"),
+                "Flight id is not accepted unless enabled");
+    }
+}
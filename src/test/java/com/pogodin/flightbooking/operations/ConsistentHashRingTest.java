@@ -0,0 +1,59 @@
+package com.pogodin.flightbooking.operations;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConsistentHashRingTest {
+    private static final int FLIGHTS = 10_000;
+
+    @Test
+    void testNodeFor_SameNodesRouteTheSameWay() {
+        ConsistentHashRing<Integer> ring = new ConsistentHashRing<>();
+        assertNull(ring.nodeFor("LH1"), "Empty ring has no owner");
+        ring.addNode(7001);
+        ring.addNode(7002);
+        ConsistentHashRing<Integer> other = new ConsistentHashRing<>();
+        other.addNode(7002);
+        other.addNode(7001);
+        other.addNode(7001);
+
+        assertEquals(List.of(7002, 7001), other.getNodes());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(ring.nodeFor("F" + i), other.nodeFor("F" + i), "The order of the nodes should not matter");
+        }
+    }
+
+    @Test
+    void testAddNode_MovesOnlyTheFlightsOfTheNewNode() {
+        ConsistentHashRing<Integer> ring = new ConsistentHashRing<>();
+        ring.addNode(7001);
+        ring.addNode(7002);
+        ring.addNode(7003);
+        Map<String, Integer> before = new HashMap<>();
+        for (int i = 0; i < FLIGHTS; i++) {
+            before.put("F" + i, ring.nodeFor("F" + i));
+        }
+
+        ring.addNode(7004);
+        int moved = 0;
+        for (Map.Entry<String, Integer> flight : before.entrySet()) {
+            int owner = ring.nodeFor(flight.getKey());
+            if (owner != flight.getValue()) {
+                assertEquals(7004, owner, "Flight " + flight.getKey() + " should move only to the new node");
+                moved++;
+            }
+        }
+        // about a quarter of the flights, the points spread them evenly enough
+        assertTrue(moved > FLIGHTS / 8 && moved < FLIGHTS * 3 / 8, "Moved " + moved + " flights");
+
+        ring.removeNode(7004);
+        for (Map.Entry<String, Integer> flight : before.entrySet()) {
+            assertEquals(flight.getValue(), ring.nodeFor(flight.getKey()), "Removing the node should move them back");
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.pogodin.flightbooking.operations;
+
+import com.opencsv.CSVWriter;
+import com.pogodin.flightbooking.entity.FlightSeatsMap;
+import com.pogodin.flightbooking.exception.BookingSaveFileException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvSeatMapFileTest {
+    private final Path csvPath = Paths.get("testCsvBooking.csv");
+
+    @BeforeEach
+    void setUp() {
+        cleanUp();
+    }
+
+    @AfterEach
+    void cleanUp() {
+        csvPath.toFile().delete();
+    }
+
+    @Test
+    void testSave_SameBytesAsOpenCsv() throws IOException {
+        FlightSeatsMap seatMap = new FlightSeatsMap(4, 3);
+        seatMap.bookSeat('A', 0, 2);
+        seatMap.bookSeat('D', 2, 1);
+
+        CsvSeatMapFile.save(seatMap, csvPath);
+
+        StringWriter expected = new StringWriter();
+        try (CSVWriter writer = new CSVWriter(expected)) {
+            for (boolean[] row : seatMap.getSnapshot()) {
+                String[] values = new String[row.length];
+                for (int i = 0; i < row.length; i++) {
+                    values[i] = row[i] ? "1" : "0";
+                }
+                writer.writeNext(values);
+            }
+        }
+        assertEquals(expected.toString(), Files.readString(csvPath));
+        assertArrayEquals(seatMap.getSnapshot(), CsvSeatMapFile.load(csvPath).getSnapshot());
+    }
+
+    @Test
+    void testLoad_UnquotedValuesAndWindowsLineEnds() throws IOException {
+        Files.writeString(csvPath, "1,0,0\r\n0,0,1\r\n");
+
+        boolean[][] snapshot = CsvSeatMapFile.load(csvPath).getSnapshot();
+        assertArrayEquals(new boolean[][]{{true, false, false}, {false, false, true}}, snapshot);
+    }
+
+    @Test
+    void testLoad_OtherFormIsReadWithOpenCsv() throws IOException {
+        String content = "\"1\",\"0\"\n\"0\",\"yes\"\n\"1\",\"1\"";
+        assertNull(CsvSeatMapFile.parse(content.getBytes(StandardCharsets.UTF_8)));
+        Files.writeString(csvPath, content);
+
+        boolean[][] snapshot = CsvSeatMapFile.load(csvPath).getSnapshot();
+        assertArrayEquals(new boolean[][]{{true, false}, {false, false}, {true, true}}, snapshot);
+    }
+
+    @Test
+    void testLoad_EmptyFileFails() throws IOException {
+        Files.writeString(csvPath, "");
+
+        assertThrows(BookingSaveFileException.class, () -> CsvSeatMapFile.load(csvPath));
+    }
+
+    @Test
+    void testLoad_MissingFileFails() {
+        assertThrows(BookingSaveFileException.class, () -> CsvSeatMapFile.load(csvPath));
+    }
+}
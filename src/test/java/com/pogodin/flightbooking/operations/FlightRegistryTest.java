@@ -0,0 +1,426 @@
+package com.pogodin.flightbooking.operations;
+
+import com.pogodin.flightbooking.BookingAction;
+import com.pogodin.flightbooking.FailureCode;
+import com.pogodin.flightbooking.entity.BookingRequest;
+import com.pogodin.flightbooking.entity.FlightSeatsMap;
+import com.pogodin.flightbooking.entity.OffHeapSeatMaps;
+import com.pogodin.flightbooking.entity.SeatMap;
+import com.pogodin.flightbooking.exception.BookingSaveFileException;
+import com.pogodin.flightbooking.exception.FlightUnavailableException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FlightRegistryTest {
+    private final Map<String, boolean[][]> stored = new ConcurrentHashMap<>();
+    private final Set<String> dropped = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private BookingProcessor processor(String flightId) {
+        return processor(stored, dropped, flightId);
+    }
+
+    /**
+     * Store keeping the snapshot of the flight in the map of the test and the removed flights in the set
+     */
+    private BookingProcessor processor(Map<String, boolean[][]> stored, Set<String> dropped, String flightId) {
+        int rows = flightId.startsWith("W") ? 3 : 5;
+        int seats = flightId.startsWith("W") ? 10 : 5;
+        return new BookingProcessor(new BookingStore() {
+            @Override
+            public FlightSeatsMap load(int planeRowsNumber, int planeRowSize) {
+                loads.incrementAndGet();
+                boolean[][] snapshot = stored.get(flightId);
+                return snapshot != null ? new FlightSeatsMap(snapshot) : new FlightSeatsMap(planeRowsNumber, planeRowSize);
+            }
+
+            @Override
+            public void recordOperation(SeatMap seatMap, BookingRequest applied) {
+                save(seatMap);
+            }
+
+            @Override
+            public void save(SeatMap seatMap) {
+                stored.put(flightId, seatMap.getSnapshot());
+                dropped.remove(flightId);
+            }
+
+            @Override
+            public void delete() {
+                dropped.add(flightId);
+                stored.remove(flightId);
+            }
+
+            @Override
+            public boolean isDeleted() {
+                return dropped.contains(flightId);
+            }
+        }, rows, seats);
+    }
+
+    @Test
+    void testProcess_FlightsAreLoadedLazilyWithOwnSize() {
+        FlightRegistry registry = new FlightRegistry(this::processor, 4, 60_000);
+        assertEquals(0, registry.loadedFlights());
+
+        assertTrue(registry.process("LH1", new BookingRequest(BookingAction.BOOK, 'A', 0, 5)).isSuccess());
+        assertFalse(registry.process("LH1", new BookingRequest(BookingAction.BOOK, 'A', 4, 1)).isSuccess(),
+                "A4 of LH1 is already booked");
+        assertTrue(registry.process("W2", new BookingRequest(BookingAction.BOOK, 'A', 4, 6)).isSuccess(),
+                "W2 has 10 seats in a row and its own seat map");
+        assertFalse(registry.process("W2", new BookingRequest(BookingAction.BOOK, 'D', 0, 1)).isSuccess(),
+                "W2 has 3 rows only");
+
+        assertEquals(2, registry.loadedFlights());
+        assertEquals(2, loads.get(), "Every flight should be loaded once");
+    }
+
+    @Test
+    void testEvictIdle_FlightIsReloadedWithItsBookings() throws InterruptedException {
+        FlightRegistry registry = new FlightRegistry(this::processor, 4, 20);
+        registry.process("LH1", new BookingRequest(BookingAction.BOOK, 'B', 1, 2));
+        assertEquals(0, registry.evictIdle(), "Recently used flight should stay");
+
+        Thread.sleep(40);
+        assertEquals(1, registry.evictIdle());
+        assertEquals(0, registry.loadedFlights());
+
+        assertFalse(registry.process("LH1", new BookingRequest(BookingAction.BOOK, 'B', 2, 1)).isSuccess(),
+                "B2 should be reloaded as booked");
+        assertEquals(2, loads.get());
+    }
+
+    /**
+     * The evicted flight is saved without the lock of the shard, so the other flights of the shard are served meanwhile
+     */
+    @Test
+    void testEvictIdle_OtherFlightsOfShardAreServedWhileSaving() throws Exception {
+        CountDownLatch saving = new CountDownLatch(1);
+        CountDownLatch saved = new CountDownLatch(1);
+        BookingProcessor slowProcessor = new BookingProcessor(new BookingStore() {
+            @Override
+            public FlightSeatsMap load(int planeRowsNumber, int planeRowSize) {
+                return new FlightSeatsMap(planeRowsNumber, planeRowSize);
+            }
+
+            @Override
+            public void recordOperation(SeatMap seatMap, BookingRequest applied) {
+            }
+
+            @Override
+            public void save(SeatMap seatMap) {
+                saving.countDown();
+                try {
+                    saved.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, 5, 5);
+        FlightRegistry registry = new FlightRegistry(
+                flightId -> flightId.equals("LH1") ? slowProcessor : processor(flightId), 1, 20);
+        registry.process("LH1", new BookingRequest(BookingAction.BOOK, 'A', 0, 1));
+        Thread.sleep(40);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<Integer> evicted = executor.submit(registry::evictIdle);
+        assertTrue(saving.await(5, TimeUnit.SECONDS));
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> assertTrue(
+                registry.process("LH2", new BookingRequest(BookingAction.BOOK, 'A', 0, 1)).isSuccess()));
+
+        saved.countDown();
+        assertEquals(1, evicted.get(5, TimeUnit.SECONDS));
+        assertEquals(1, registry.loadedFlights(), "LH2 was used after the idle flights were found");
+        executor.shutdown();
+    }
+
+    @Test
+    void testProcess_OffHeapSeatMaps() throws InterruptedException {
+        try (OffHeapSeatMaps offHeapSeatMaps = new OffHeapSeatMaps(1, 5, 10)) {
+            FlightRegistry registry = new FlightRegistry(this::processor, 4, 20, offHeapSeatMaps);
+            assertTrue(registry.process("LH1", new BookingRequest(BookingAction.BOOK, 'C', 0, 5)).isSuccess());
+            assertFalse(registry.process("LH1", new BookingRequest(BookingAction.BOOK, 'C', 4, 1)).isSuccess());
+            assertFalse(offHeapSeatMaps.seatAvailable(0, 'C', 4), "Seat map should be kept off the heap");
+
+            Thread.sleep(40);
+            assertEquals(1, registry.evictIdle());
+            assertTrue(registry.process("W2", new BookingRequest(BookingAction.BOOK, 'A', 0, 10)).isSuccess(),
+                    "Slot of the evicted flight should be reused");
+            assertTrue(stored.get("LH1")[2][4], "Evicted flight should be saved");
+
+            registry.close();
+            assertTrue(stored.get("W2")[0][9], "Flights should be saved on close");
+            assertThrows(IllegalStateException.class, () -> offHeapSeatMaps.seatAvailable(0, 'A', 0),
+                    "Off-heap memory should be released on close");
+        }
+    }
+
+    @Test
+    void testProcess_OffHeapSeatMapsHoldSeats() {
+        try (OffHeapSeatMaps offHeapSeatMaps = new OffHeapSeatMaps(2, 5, 10)) {
+            FlightRegistry registry = new FlightRegistry(this::processor, 4, 60_000, offHeapSeatMaps);
+            assertTrue(registry.process("LH1", new BookingRequest(BookingAction.HOLD, 'A', 0, 2)).isSuccess());
+            assertFalse(registry.process("LH1", new BookingRequest(BookingAction.BOOK, 'A', 1, 1)).isSuccess(),
+                    "Held seat should not be booked");
+            assertTrue(registry.process("LH1", new BookingRequest(BookingAction.CONFIRM, 'A', 0, 2)).isSuccess());
+            assertTrue(stored.get("LH1")[0][1], "Confirmed seats should be saved as booked");
+
+            assertTrue(registry.process("LH1", new BookingRequest(BookingAction.HOLD, 'B', 0, 3)).isSuccess());
+            assertTrue(registry.process("LH1", new BookingRequest(BookingAction.RELEASE, 'B', 0, 3)).isSuccess());
+            assertTrue(registry.process("LH1", new BookingRequest(BookingAction.BOOK, 'B', 0, 3)).isSuccess(),
+                    "Released seats should be booked");
+        }
+    }
+
+    @Test
+    void testProcess_FullOffHeapSeatMapsEvictLeastRecentlyUsed() {
+        BookingProcessor unsavedProcessor = new BookingProcessor(new BookingStore() {
+            @Override
+            public FlightSeatsMap load(int planeRowsNumber, int planeRowSize) {
+                return new FlightSeatsMap(planeRowsNumber, planeRowSize);
+            }
+
+            @Override
+            public void recordOperation(SeatMap seatMap, BookingRequest applied) {
+            }
+
+            @Override
+            public void save(SeatMap seatMap) {
+                throw new BookingSaveFileException("The store is gone");
+            }
+        }, 5, 5);
+        try (OffHeapSeatMaps offHeapSeatMaps = new OffHeapSeatMaps(1, 5, 10)) {
+            FlightRegistry registry = new FlightRegistry(
+                    flightId -> flightId.equals("LH3") ? unsavedProcessor : processor(flightId), 4, 60_000,
+                    offHeapSeatMaps);
+            assertTrue(registry.process("LH1", new BookingRequest(BookingAction.BOOK, 'C', 0, 5)).isSuccess());
+
+            assertTrue(registry.process("W2", new BookingRequest(BookingAction.BOOK, 'A', 0, 2)).isSuccess(),
+                    "LH1 should be evicted to make room for W2");
+            assertTrue(stored.get("LH1")[2][4], "Evicted flight should be saved");
+            assertTrue(registry.process("LH3", new BookingRequest(BookingAction.BOOK, 'A', 0, 2)).isSuccess(),
+                    "W2 should be evicted to make room for LH3");
+
+            assertEquals(FailureCode.FLIGHT_UNAVAILABLE,
+                    registry.process("LH1", new BookingRequest(BookingAction.BOOK, 'A', 0, 1)).getFailureCode(),
+                    "LH3 could not be saved and evicted");
+        }
+    }
+
+    @Test
+    void testFindFlights_IndexFollowsBookingsAndEviction() throws InterruptedException {
+        FlightRegistry registry = new FlightRegistry(this::processor, 4, 20);
+        registry.process("LH1", new BookingRequest(BookingAction.BOOK, 'A', 0, 1));
+        registry.process("W2", new BookingRequest(BookingAction.BOOK, 'A', 0, 4));
+        assertEquals(List.of("LH1", "W2"), registry.findFlights(5, 0));
+        assertEquals(List.of("W2"), registry.findFlights(6, 0));
+
+        registry.process("W2", new BookingRequest(BookingAction.BOOK, 'B', 2, 3));
+        registry.process("W2", new BookingRequest(BookingAction.BOOK, 'C', 2, 3));
+        assertEquals(List.of("W2"), registry.findFlights(6, 0), "A4-A9 are still free");
+        registry.process("W2", new BookingRequest(BookingAction.BOOK, 'A', 5, 1));
+        assertEquals(List.of(), registry.findFlights(6, 0));
+        assertEquals(List.of("W2", "LH1"), registry.findFlights(5, 0), "W2 has fewer free seats");
+
+        Thread.sleep(40);
+        assertEquals(2, registry.evictIdle());
+        assertEquals(List.of("LH1"), registry.findFlights(5, 24), "Evicted flights should stay in the index");
+        assertEquals(2, loads.get(), "Search should not load the flights");
+    }
+
+    @Test
+    void testFindFlights_StoredFlightsAreFoundAfterRestart() {
+        FlightRegistry registry = new FlightRegistry(this::processor, 4, 60_000);
+        registry.process("LH1", new BookingRequest(BookingAction.BOOK, 'A', 0, 1));
+        registry.process("W2", new BookingRequest(BookingAction.BOOK, 'A', 0, 4));
+        registry.close();
+
+        FlightRegistry restarted = new FlightRegistry(this::processor, 4, 60_000);
+        restarted.setStoredFlights(stored::keySet);
+        assertEquals(List.of(), restarted.findFlights(5, 0), "Nothing is indexed before the stored flights");
+        assertEquals(2, restarted.indexStoredFlights());
+        assertEquals(List.of("LH1", "W2"), restarted.findFlights(5, 0));
+        assertEquals(List.of("W2"), restarted.findFlights(6, 0));
+        assertEquals(0, restarted.loadedFlights(), "Indexed flights should not be kept in the memory");
+
+        restarted.process("W2", new BookingRequest(BookingAction.BOOK, 'B', 0, 10));
+        restarted.process("W2", new BookingRequest(BookingAction.BOOK, 'C', 0, 10));
+        restarted.process("W2", new BookingRequest(BookingAction.BOOK, 'A', 5, 1));
+        assertEquals(List.of("LH1"), restarted.findFlights(5, 0), "Index should follow the bookings after the start");
+    }
+
+    @Test
+    void testProcess_HeldSeatsAreConfirmedOrExpire() throws InterruptedException {
+        FlightRegistry registry = new FlightRegistry(this::processor, 4, 60_000);
+        registry.setHoldMillis(30);
+        assertTrue(registry.process("LH1", new BookingRequest(BookingAction.HOLD, 'A', 0, 2)).isSuccess());
+        assertFalse(registry.process("LH1", new BookingRequest(BookingAction.BOOK, 'A', 1, 1)).isSuccess(),
+                "Held seat should not be booked");
+        assertEquals(FailureCode.NOT_HELD,
+                registry.process("LH1", new BookingRequest(BookingAction.CONFIRM, 'A', 0, 3)).getFailureCode(),
+                "Only the whole hold should be confirmed");
+        assertTrue(registry.process("LH1", new BookingRequest(BookingAction.CONFIRM, 'A', 0, 2)).isSuccess());
+        assertTrue(stored.get("LH1")[0][1], "Confirmed seats should be saved as booked");
+
+        registry.process("LH1", new BookingRequest(BookingAction.HOLD, 'B', 0, 5));
+        assertEquals(List.of(), registry.findFlights(1, 19), "Held seats are not free");
+        assertEquals(0, registry.expireHolds(), "Hold should not expire early");
+        Thread.sleep(30 + 2 * FlightRegistry.HOLD_TICK_MILLIS);
+        assertEquals(1, registry.expireHolds());
+        assertEquals(List.of("LH1"), registry.findFlights(1, 19));
+        assertEquals(FailureCode.NOT_HELD,
+                registry.process("LH1", new BookingRequest(BookingAction.CONFIRM, 'B', 0, 5)).getFailureCode());
+        assertTrue(registry.process("LH1", new BookingRequest(BookingAction.BOOK, 'B', 0, 5)).isSuccess());
+        assertFalse(stored.get("LH1")[2][0], "Held seats should never be saved");
+    }
+
+    @Test
+    void testEvictIdle_FlightWithHoldsStays() throws InterruptedException {
+        FlightRegistry registry = new FlightRegistry(this::processor, 4, 20);
+        registry.process("LH1", new BookingRequest(BookingAction.HOLD, 'C', 0, 1));
+        Thread.sleep(40);
+        assertEquals(0, registry.evictIdle(), "Flight with the holds should stay loaded");
+
+        assertTrue(registry.process("LH1", new BookingRequest(BookingAction.RELEASE, 'C', 0, 1)).isSuccess());
+        assertEquals(FailureCode.NOT_HELD,
+                registry.process("LH1", new BookingRequest(BookingAction.RELEASE, 'C', 0, 1)).getFailureCode());
+        Thread.sleep(40);
+        assertEquals(1, registry.evictIdle());
+    }
+
+    @Test
+    void testProcess_StoredChangesArePublished() {
+        FlightRegistry registry = new FlightRegistry(this::processor, 4, 60_000);
+        ChangeFeed feed = new ChangeFeed(16);
+        registry.setChangeFeed(feed);
+        registry.process("LH1", new BookingRequest(BookingAction.BOOK, 'A', 0, 2));
+        registry.process("LH1", new BookingRequest(BookingAction.BOOK, 'A', 1, 1));
+        registry.process("W2", new BookingRequest(BookingAction.HOLD, 'B', 3, 2));
+        registry.process("W2", new BookingRequest(BookingAction.CONFIRM, 'B', 3, 2));
+        registry.process("LH1", new BookingRequest(BookingAction.CANCEL, 'A', 0, 1));
+
+        List<String> changes = new ArrayList<>();
+        feed.subscribe(0).poll((sequence, flightId, action, row, seat, seats) ->
+                changes.add(sequence + " " + flightId + " " + action + " " + row + seat + " " + seats), 10);
+        assertEquals(List.of("0 LH1 BOOK A0 2", "1 W2 BOOK B3 2", "2 LH1 CANCEL A0 1"), changes,
+                "Failed operations and holds should not be published, confirmed hold is a booking");
+    }
+
+    /**
+     * Every thread books the seats of its own flight and one seat at a time of the shared flight,
+     * no booking of the shared flight should be lost or doubled
+     */
+    @Test
+    void testImportAndDrop_FlightMovesToAnotherRegistry() {
+        Map<String, boolean[][]> targetStored = new ConcurrentHashMap<>();
+        FlightRegistry source = new FlightRegistry(this::processor, 4, 60_000);
+        FlightRegistry target = new FlightRegistry(
+                flightId -> processor(targetStored, ConcurrentHashMap.newKeySet(), flightId), 4, 60_000);
+        source.setStoredFlights(stored::keySet);
+        source.process("LH1", new BookingRequest(BookingAction.BOOK, 'B', 1, 2));
+        source.process("LH2", new BookingRequest(BookingAction.BOOK, 'A', 0, 5));
+        assertEquals(List.of("LH1", "LH2"), source.flightIds());
+
+        target.importFlight("LH1", source.snapshot("LH1").seats());
+        source.dropFlight("LH1");
+
+        assertEquals(List.of("LH2"), source.flightIds());
+        assertFalse(stored.containsKey("LH1"), "Dropped flight should be deleted from its store");
+        assertTrue(targetStored.containsKey("LH1"), "Imported flight should be stored");
+        assertFalse(target.process("LH1", new BookingRequest(BookingAction.BOOK, 'B', 2, 1)).isSuccess(),
+                "B2 of LH1 was booked before the move");
+        assertEquals(List.of("LH1"), target.findFlights(5, 0));
+        assertEquals(List.of("LH2"), source.findFlights(5, 0), "Dropped LH1 should not be found");
+
+        assertEquals(FailureCode.FLIGHT_UNAVAILABLE,
+                source.process("LH1", new BookingRequest(BookingAction.BOOK, 'A', 0, 1)).getFailureCode(),
+                "Dropped flight should not be created again");
+        assertThrows(FlightUnavailableException.class, () -> source.snapshot("LH1"));
+        assertNull(source.existingSnapshot("LH1"));
+        assertEquals(List.of("LH2"), source.flightIds());
+        assertFalse(stored.containsKey("LH1"), "Rejected command should not store the dropped flight");
+
+        source.importFlight("LH1", target.snapshot("LH1").seats());
+        assertFalse(source.process("LH1", new BookingRequest(BookingAction.BOOK, 'B', 2, 1)).isSuccess(),
+                "Flight imported back should be served with its bookings");
+    }
+
+    @Test
+    void testDropFlight_DroppedFlightIsRejectedAfterRestart(@TempDir Path directory) {
+        Function<String, BookingProcessor> processors = flightId ->
+                new BookingProcessor(directory.resolve("booking-" + flightId + ".csv").toString(), 5, 5);
+        FlightRegistry registry = new FlightRegistry(processors, 4, 60_000);
+        registry.process("LH1", new BookingRequest(BookingAction.BOOK, 'B', 1, 2));
+        boolean[][] seats = registry.snapshot("LH1").seats();
+        registry.dropFlight("LH1");
+        registry.close();
+
+        FlightRegistry restarted = new FlightRegistry(processors, 4, 60_000);
+        assertEquals(FailureCode.FLIGHT_UNAVAILABLE,
+                restarted.process("LH1", new BookingRequest(BookingAction.BOOK, 'A', 0, 1)).getFailureCode(),
+                "Dropped flight should not be created again after the restart");
+        assertFalse(Files.exists(directory.resolve("booking-LH1.csv")), "Dropped flight should not be stored");
+
+        restarted.importFlight("LH1", seats);
+        restarted.close();
+        FlightRegistry imported = new FlightRegistry(processors, 4, 60_000);
+        assertFalse(imported.process("LH1", new BookingRequest(BookingAction.BOOK, 'B', 2, 1)).isSuccess(),
+                "Flight imported back should be served with its bookings after the restart");
+        assertTrue(imported.process("LH1", new BookingRequest(BookingAction.BOOK, 'A', 0, 1)).isSuccess());
+    }
+
+    @Test
+    void testProcess_ConcurrentFlights() throws Exception {
+        FlightRegistry registry = new FlightRegistry(this::processor, 4, 60_000);
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            String ownFlight = "OWN" + t;
+            results.add(executor.submit(() -> {
+                start.await();
+                int sharedBooked = 0;
+                for (int i = 0; i < 25; i++) {
+                    assertTrue(registry.process(ownFlight,
+                            new BookingRequest(BookingAction.BOOK, (char) ('A' + i / 5), i % 5, 1)).isSuccess());
+                    if (registry.process("SHARED", new BookingRequest(BookingAction.BOOK_ANY, (char) 0, 0, 1)).isSuccess()) {
+                        sharedBooked++;
+                    }
+                }
+                return sharedBooked;
+            }));
+        }
+
+        start.countDown();
+        int sharedBooked = 0;
+        for (Future<Integer> result : results) {
+            sharedBooked += result.get();
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(25, sharedBooked, "Every seat of the shared flight should be booked exactly once");
+        assertEquals(threads + 1, registry.loadedFlights());
+        registry.close();
+        assertEquals(0, registry.loadedFlights());
+    }
+}
@@ -0,0 +1,88 @@
+package com.pogodin.flightbooking.operations;
+
+import com.pogodin.flightbooking.BookingAction;
+import com.pogodin.flightbooking.entity.BookingRequest;
+import com.pogodin.flightbooking.entity.FlightSeatsMap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JournalBookingStoreTest {
+    private final String filePath = "testJournalBooking.csv";
+    private final Path journalPath = Paths.get(filePath + JournalBookingStore.JOURNAL_SUFFIX);
+    private BookingProcessor bookingProcessor;
+
+    @BeforeEach
+    void setUp() {
+        cleanUp();
+        bookingProcessor = new BookingProcessor(new JournalBookingStore(filePath), 5, 5);
+    }
+
+    @AfterEach
+    void cleanUp() {
+        new File(filePath).delete();
+        journalPath.toFile().delete();
+        new File(filePath + SeatMapFileLock.LOCK_SUFFIX).delete();
+    }
+
+    @Test
+    void testProcessOperation_AppendsToJournalOnly() throws IOException {
+        assertTrue(bookingProcessor.processOperation(new BookingRequest(BookingAction.BOOK, 'A', 0, 3)).isSuccess());
+        assertTrue(bookingProcessor.processOperation(new BookingRequest(BookingAction.CANCEL, 'A', 1, 1)).isSuccess());
+        assertFalse(bookingProcessor.processOperation(new BookingRequest(BookingAction.BOOK, 'A', 2, 1)).isSuccess());
+
+        assertFalse(new File(filePath).exists(), "Snapshot should not be written on every operation");
+        assertEquals(2 * BookingJournal.RECORD_SIZE, Files.size(journalPath));
+
+        FlightSeatsMap restored = bookingProcessor.loadSeatMap();
+        assertFalse(restored.bookSeat('A', 0, 1).isSuccess(), "A0 should be restored as booked");
+        assertTrue(restored.bookSeat('A', 1, 1).isSuccess(), "A1 should be restored as canceled");
+        assertFalse(restored.bookSeat('A', 2, 1).isSuccess(), "A2 should be restored as booked");
+    }
+
+    @Test
+    void testLoad_ReplaysJournalOnTopOfSnapshot() {
+        bookingProcessor.processOperation(new BookingRequest(BookingAction.BOOK, 'B', 0, 2));
+        bookingProcessor.saveSeatMap(bookingProcessor.loadSeatMap());
+        assertFalse(Files.exists(journalPath), "Journal should be truncated after the snapshot is saved");
+
+        bookingProcessor.processOperation(new BookingRequest(BookingAction.BOOK, 'C', 3, 2));
+
+        FlightSeatsMap restored = bookingProcessor.loadSeatMap();
+        assertFalse(restored.bookSeat('B', 1, 1).isSuccess(), "B1 should be restored from the snapshot");
+        assertFalse(restored.bookSeat('C', 4, 1).isSuccess(), "C4 should be restored from the journal");
+    }
+
+    @Test
+    void testLoad_ReplayIsIdempotent() {
+        BookingJournal journal = new BookingJournal(journalPath);
+        journal.append(new BookingRequest(BookingAction.BOOK, 'D', 0, 3));
+        journal.append(new BookingRequest(BookingAction.CANCEL, 'D', 0, 1));
+
+        FlightSeatsMap seatMap = new FlightSeatsMap(5, 5);
+        journal.replay(seatMap);
+        journal.replay(seatMap);
+
+        assertTrue(seatMap.bookSeat('D', 0, 1).isSuccess(), "D0 should stay canceled after the second replay");
+        assertFalse(seatMap.bookSeat('D', 1, 2).isSuccess(), "D1-D2 should stay booked after the second replay");
+    }
+
+    @Test
+    void testLoad_IgnoresTornLastRecord() throws IOException {
+        bookingProcessor.processOperation(new BookingRequest(BookingAction.BOOK, 'E', 1, 1));
+        Files.write(journalPath, new byte[]{0, 'E', 0}, StandardOpenOption.APPEND);
+
+        FlightSeatsMap restored = bookingProcessor.loadSeatMap();
+        assertFalse(restored.bookSeat('E', 1, 1).isSuccess(), "E1 should be restored as booked");
+        assertTrue(restored.bookSeat('E', 0, 1).isSuccess(), "Torn record should not be applied");
+    }
+}
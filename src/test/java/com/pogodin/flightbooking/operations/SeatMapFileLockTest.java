@@ -0,0 +1,230 @@
+package com.pogodin.flightbooking.operations;
+
+import com.pogodin.flightbooking.BookingAction;
+import com.pogodin.flightbooking.entity.BookingRequest;
+import com.pogodin.flightbooking.entity.FlightSeatsMap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SeatMapFileLockTest {
+    private static final int PROCESSES = 4;
+    private static final int ROWS = 26;
+    private static final int SEATS = 4;
+    private static final String BOOKED_PREFIX = "BOOKED ";
+
+    private final String filePath = "testMultiProcessBooking";
+
+    @BeforeEach
+    void setUp() {
+        cleanUp();
+    }
+
+    @AfterEach
+    void cleanUp() {
+        for (String extension : new String[]{".csv", FileOperations.BINARY_EXTENSION}) {
+            new File(filePath + extension).delete();
+            new File(filePath + extension + SeatMapFileLock.LOCK_SUFFIX).delete();
+            new File(filePath + extension + SeatMapTombstone.SUFFIX).delete();
+        }
+    }
+
+    @Test
+    void testProcessOperation_ConcurrentProcessesBookEverySeatOnce_Csv() throws Exception {
+        bookEverySeatConcurrently(".csv");
+    }
+
+    @Test
+    void testProcessOperation_ConcurrentProcessesBookEverySeatOnce_Binary() throws Exception {
+        bookEverySeatConcurrently(FileOperations.BINARY_EXTENSION);
+    }
+
+    /**
+     * Every process tries to book every seat of the plane starting from its own row, every seat should be booked
+     * by exactly one of them: the lost update makes the seat bookable again, the torn read makes the load fail
+     */
+    private void bookEverySeatConcurrently(String extension) throws Exception {
+        String path = filePath + extension;
+        List<Process> processes = new ArrayList<>();
+        for (int i = 0; i < PROCESSES; i++) {
+            processes.add(startWorker(path, i * ROWS / PROCESSES));
+        }
+
+        int booked = 0;
+        for (Process process : processes) {
+            String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            assertTrue(process.waitFor(60, TimeUnit.SECONDS), "Worker process should finish");
+            assertEquals(0, process.exitValue(), "Worker process should succeed: " + output);
+            booked += bookedSeats(output);
+        }
+
+        assertEquals(ROWS * SEATS, booked, "Every seat should be booked exactly once");
+        FlightSeatsMap seatMap = FileOperations.getInstance().loadBookingMap(path);
+        for (boolean[] row : seatMap.getSnapshot()) {
+            for (boolean occupied : row) {
+                assertTrue(occupied, "Every booked seat should be saved");
+            }
+        }
+    }
+
+    @Test
+    void testLockRow_DifferentRowsAreLockedIndependently() throws Exception {
+        String path = filePath + FileOperations.BINARY_EXTENSION;
+        try (SeatMapFileLock ignored = SeatMapFileLock.lockRow(path, 'A')) {
+            // the row B is free for the other process, the row A is not
+            Process rowB = startLocker(path, "B");
+            assertTrue(rowB.waitFor(30, TimeUnit.SECONDS), "Other row should be locked right away");
+            assertEquals(0, rowB.exitValue());
+
+            Process rowA = startLocker(path, "A");
+            assertFalse(rowA.waitFor(1, TimeUnit.SECONDS), "Same row should wait for the lock");
+            rowA.destroyForcibly().waitFor();
+        }
+    }
+
+    @Test
+    void testDeleteSeatMap_LockFileIsDeletedWithSaveFile() {
+        for (String extension : new String[]{".csv", FileOperations.BINARY_EXTENSION}) {
+            String path = filePath + extension;
+            BookingProcessor bookingProcessor = new BookingProcessor(path, 5, 5);
+            assertTrue(bookingProcessor.processOperation(new BookingRequest(BookingAction.BOOK, 'A', 0, 1)).isSuccess());
+            assertTrue(new File(path + SeatMapFileLock.LOCK_SUFFIX).exists());
+
+            bookingProcessor.deleteSeatMap();
+            assertFalse(new File(path).exists(), "Save-file should be deleted");
+            assertFalse(new File(path + SeatMapFileLock.LOCK_SUFFIX).exists(), "Lock-file should be deleted");
+            assertTrue(bookingProcessor.seatMapDeleted(), "Deletion should be remembered");
+            bookingProcessor.saveSeatMap(bookingProcessor.loadSeatMap());
+            assertFalse(bookingProcessor.seatMapDeleted(), "Saved seat map is not deleted anymore");
+        }
+    }
+
+    @Test
+    void testLockRow_ThreadsOfOneProcessWaitForEachOther() throws Exception {
+        String path = filePath + FileOperations.BINARY_EXTENSION;
+        AtomicInteger holders = new AtomicInteger();
+        AtomicInteger maxHolders = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(4);
+        for (int i = 0; i < 4; i++) {
+            final char row = (char) ('A' + i % 2);
+            Thread.startVirtualThread(() -> {
+                for (int j = 0; j < 50; j++) {
+                    try (SeatMapFileLock ignored = SeatMapFileLock.lockRow(path, row)) {
+                        maxHolders.accumulateAndGet(holders.incrementAndGet(), Math::max);
+                        holders.decrementAndGet();
+                    }
+                }
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertEquals(1, maxHolders.get());
+    }
+
+    @Test
+    void testProcessOperation_ThreadsSharingStoreBookEverySeatOnce() throws Exception {
+        String path = filePath + FileOperations.BINARY_EXTENSION;
+        BookingProcessor processor = new BookingProcessor(new FileBookingStore(path), ROWS, SEATS);
+        processor.saveSeatMap(new FlightSeatsMap(ROWS, SEATS));
+        AtomicInteger booked = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(PROCESSES);
+        for (int i = 0; i < PROCESSES; i++) {
+            final int firstRow = i * ROWS / PROCESSES;
+            Thread.startVirtualThread(() -> {
+                try {
+                    for (int j = 0; j < ROWS * SEATS; j++) {
+                        int place = (firstRow * SEATS + j) % (ROWS * SEATS);
+                        BookingRequest request = new BookingRequest(
+                                BookingAction.BOOK, (char) ('A' + place / SEATS), place % SEATS, 1);
+                        if (processor.processOperation(request).isSuccess()) {
+                            booked.incrementAndGet();
+                        }
+                    }
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        assertEquals(ROWS * SEATS, booked.get(), "Every seat should be booked exactly once");
+        for (boolean[] row : processor.loadSeatMap().getSnapshot()) {
+            for (boolean occupied : row) {
+                assertTrue(occupied, "Every booked seat should be saved");
+            }
+        }
+    }
+
+    /**
+     * Booking every seat of the plane one by one, the way the concurrent CLI invocations do it
+     * Usage: [save-file] [first row]
+     */
+    public static void main(String[] args) {
+        String path = args[0];
+        int firstRow = Integer.parseInt(args[1]);
+        int booked = 0;
+        for (int i = 0; i < ROWS * SEATS; i++) {
+            int place = (firstRow * SEATS + i) % (ROWS * SEATS);
+            BookingProcessor processor = new BookingProcessor(new FileBookingStore(path), ROWS, SEATS);
+            BookingRequest request = new BookingRequest(
+                    BookingAction.BOOK, (char) ('A' + place / SEATS), place % SEATS, 1);
+            if (processor.processOperation(request).isSuccess()) {
+                booked++;
+            }
+        }
+        System.out.println(BOOKED_PREFIX + booked);
+    }
+
+    /**
+     * Holding the lock of the row for a moment
+     */
+    static class Locker {
+        public static void main(String[] args) {
+            try (SeatMapFileLock ignored = SeatMapFileLock.lockRow(args[0], args[1].charAt(0))) {
+                System.out.println("locked " + args[1]);
+            }
+        }
+    }
+
+    private static Process startWorker(String path, int firstRow) throws IOException {
+        return start(SeatMapFileLockTest.class, path, String.valueOf(firstRow));
+    }
+
+    private static Process startLocker(String path, String row) throws IOException {
+        return start(Locker.class, path, row);
+    }
+
+    private static Process start(Class<?> mainClass, String... args) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        if (ManagementFactory.getRuntimeMXBean().getInputArguments().contains("--enable-preview")) {
+            command.add("--enable-preview");
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(mainClass.getName());
+        command.addAll(List.of(args));
+        return new ProcessBuilder(command).redirectErrorStream(true).start();
+    }
+
+    private static int bookedSeats(String output) {
+        for (String line : output.split("\\R")) {
+            if (line.startsWith(BOOKED_PREFIX)) {
+                return Integer.parseInt(line.substring(BOOKED_PREFIX.length()).trim());
+            }
+        }
+        return fail("Worker process did not report the booked seats: " + output);
+    }
+}
@@ -0,0 +1,80 @@
+package com.pogodin.flightbooking.operations;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimingWheelTest {
+    private static final long TICK = 10;
+
+    /**
+     * Items spread over all the levels should expire exactly at the first tick not earlier than the deadline
+     */
+    @Test
+    void testAdvance_ItemsExpireAtTheTickOfTheirDeadline() {
+        TimingWheel<Long> wheel = new TimingWheel<>(TICK, 1000);
+        Random random = new Random(42);
+        Map<Long, Long> expiredAt = new HashMap<>();
+        List<Long> deadlines = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            // up to the third level, 64 * 64 * 64 ticks
+            long deadline = 1000 + random.nextLong(TICK * 300_000);
+            if (!deadlines.contains(deadline)) {
+                deadlines.add(deadline);
+                wheel.schedule(deadline, deadline);
+            }
+        }
+
+        for (long now = 1000; expiredAt.size() < deadlines.size(); now += TICK) {
+            long time = now;
+            wheel.advance(now, deadline -> assertNull(expiredAt.put(deadline, time), "Item should expire once"));
+        }
+        for (long deadline : deadlines) {
+            long tickOfDeadline = 1000 + (deadline - 1000 + TICK - 1) / TICK * TICK;
+            assertEquals(tickOfDeadline, expiredAt.get(deadline), "Item of " + deadline + " expired at another tick");
+        }
+    }
+
+    @Test
+    void testAdvance_LongPauseExpiresAllPassedItems() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, 0);
+        wheel.schedule("soon", 50);
+        wheel.schedule("later", 70_000);
+        wheel.schedule("past", -10);
+        List<String> expired = new ArrayList<>();
+
+        assertEquals(1, wheel.advance(0, expired::add));
+        assertEquals(List.of("past"), expired);
+        assertEquals(2, wheel.advance(100_000, expired::add));
+        assertEquals(List.of("past", "soon", "later"), expired);
+    }
+
+    @Test
+    void testCancel_CanceledItemNeverExpires() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, 0);
+        TimingWheel.Timeout<String> canceled = wheel.schedule("canceled", 1_000);
+        wheel.schedule("kept", 1_000);
+        wheel.advance(500, item -> fail("Nothing should expire yet"));
+        canceled.cancel();
+
+        List<String> expired = new ArrayList<>();
+        wheel.advance(2_000, expired::add);
+        assertEquals(List.of("kept"), expired);
+    }
+
+    @Test
+    void testSchedule_DeadlineBeyondTheTopLevel() {
+        TimingWheel<String> wheel = new TimingWheel<>(1, 0);
+        long deadline = (1L << 24) + 1000;
+        wheel.schedule("far", deadline);
+
+        assertEquals(0, wheel.advance(deadline - 1, item -> fail("Item should not expire early")));
+        assertEquals(1, wheel.advance(deadline, item -> assertEquals("far", item)));
+    }
+}
@@ -0,0 +1,63 @@
+package com.pogodin.flightbooking.server;
+
+import com.pogodin.flightbooking.operations.ConsistentHashRing;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BookingRouterTest {
+    @TempDir
+    Path directory;
+    private BookingRouter router;
+
+    @AfterEach
+    void cleanUp() {
+        if (router != null) {
+            router.stop();
+        }
+    }
+
+    @Test
+    void testStart_GivenServersAreSaved() throws IOException {
+        Path serversFile = directory.resolve("router.servers");
+        router = new BookingRouter(0, List.of(7001, 7002), serversFile);
+        assertEquals(-1, router.serverFor("LH123"), "Servers are not known before the start");
+
+        router.start();
+        assertEquals(List.of("7001", "7002"), Files.readAllLines(serversFile));
+        assertTrue(List.of(7001, 7002).contains(router.serverFor("LH123")));
+    }
+
+    @Test
+    void testStart_SavedServersWinOverGivenOnes() throws IOException {
+        Path serversFile = directory.resolve("router.servers");
+        Files.write(serversFile, List.of("7001", "7002", "7003"));
+        router = new BookingRouter(0, List.of(7001, 7002), serversFile);
+        router.start();
+
+        ConsistentHashRing<Integer> ring = new ConsistentHashRing<>();
+        List.of(7001, 7002, 7003).forEach(ring::addNode);
+        for (int i = 0; i < 30; i++) {
+            assertEquals(ring.nodeFor("F" + i), router.serverFor("F" + i));
+        }
+        assertEquals(List.of("7001", "7002", "7003"), Files.readAllLines(serversFile), "Saved servers are kept");
+    }
+
+    @Test
+    void testStart_MalformedServersFileFails() throws IOException {
+        Path serversFile = directory.resolve("router.servers");
+        Files.write(serversFile, List.of("7001", "seven"));
+        router = new BookingRouter(0, List.of(7001), serversFile);
+        assertThrows(IOException.class, router::start);
+
+        Files.write(serversFile, List.of(""));
+        assertThrows(IOException.class, router::start, "Servers file without servers");
+    }
+}
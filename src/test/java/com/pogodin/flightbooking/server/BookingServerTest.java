@@ -0,0 +1,199 @@
+package com.pogodin.flightbooking.server;
+
+import com.pogodin.flightbooking.entity.FlightSeatsMap;
+import com.pogodin.flightbooking.operations.BookingProcessor;
+import com.pogodin.flightbooking.operations.FlightRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BookingServerTest {
+    private final String filePath = "testServerBooking.csv";
+    private BookingProcessor bookingProcessor;
+    private BookingServer server;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        deleteStorage();
+        bookingProcessor = new BookingProcessor(filePath, 5, 5);
+        server = new BookingServer(bookingProcessor, 0, 50);
+        server.start();
+    }
+
+    @AfterEach
+    void cleanUp() {
+        server.stop();
+        deleteStorage();
+    }
+
+    @Test
+    void testCommandsOverSocket() throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort());
+             PrintWriter writer = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+             BufferedReader reader = new BufferedReader(
+                     new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+            assertEquals("SUCCESS", send(writer, reader, "BOOK A0 2"));
+            assertEquals("FAIL", send(writer, reader, "BOOK A1 1"));
+            assertEquals("FAIL", send(writer, reader, "BOOK A1"));
+            assertEquals("SUCCESS", send(writer, reader, "CANCEL A0 2"));
+            assertEquals("SUCCESS", send(writer, reader, "BOOK A1 1"));
+            assertEquals("FAIL", send(writer, reader, "FIND 1"), "No flights without the registry");
+        }
+    }
+
+    @Test
+    void testSubscribeToChanges() throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort());
+             PrintWriter writer = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+             BufferedReader reader = new BufferedReader(
+                     new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             Socket subscriberSocket = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort());
+             PrintWriter subscriberWriter = new PrintWriter(
+                     subscriberSocket.getOutputStream(), true, StandardCharsets.UTF_8);
+             BufferedReader changes = new BufferedReader(
+                     new InputStreamReader(subscriberSocket.getInputStream(), StandardCharsets.UTF_8))) {
+            subscriberSocket.setSoTimeout(5000);
+            assertEquals("FAIL", send(subscriberWriter, changes, "SUBSCRIBE first"));
+            assertEquals("SUBSCRIBED 0", send(subscriberWriter, changes, "SUBSCRIBE"));
+
+            assertEquals("SUCCESS", send(writer, reader, "BOOK A0 2"));
+            assertEquals("FAIL", send(writer, reader, "BOOK A1 1"));
+            assertEquals("SUCCESS", send(writer, reader, "CANCEL A1 1"));
+            assertEquals("CHANGE 0 BOOK A0 2", readChange(changes));
+            assertEquals("CHANGE 1 CANCEL A1 1", readChange(changes));
+        }
+
+        try (Socket subscriberSocket = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort());
+             PrintWriter subscriberWriter = new PrintWriter(
+                     subscriberSocket.getOutputStream(), true, StandardCharsets.UTF_8);
+             BufferedReader changes = new BufferedReader(
+                     new InputStreamReader(subscriberSocket.getInputStream(), StandardCharsets.UTF_8))) {
+            subscriberSocket.setSoTimeout(5000);
+            assertEquals("SUBSCRIBED 1", send(subscriberWriter, changes, "SUBSCRIBE 1"));
+            assertEquals("CHANGE 1 CANCEL A1 1", readChange(changes), "Subscriber should catch up from the sequence");
+        }
+    }
+
+    @Test
+    void testSeatsAndSnapshot() throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort());
+             PrintWriter writer = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+             BufferedReader reader = new BufferedReader(
+                     new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+            assertEquals("SUCCESS", send(writer, reader, "BOOK A0 2"));
+            assertEquals("SUCCESS", send(writer, reader, "BOOK E4 1"));
+            assertEquals("SEATS 11000 00000 00000 00000 00001", send(writer, reader, "SEATS"));
+            assertEquals("SNAPSHOT 2 11000 00000 00000 00000 00001", send(writer, reader, "SNAPSHOT"));
+            assertEquals("FAIL", send(writer, reader, "SEATS LH1"), "No flights without the registry");
+        }
+
+        String[] parts = "SNAPSHOT 2 110 001".split(" ");
+        assertArrayEquals(new boolean[][]{{true, true, false}, {false, false, true}}, BookingServer.parseRows(parts, 2));
+        assertNull(BookingServer.parseRows("SEATS 110 01".split(" "), 1), "Rows should be of the same length");
+    }
+
+    @Test
+    void testFinalSaveOnStop() throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort());
+             PrintWriter writer = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+             BufferedReader reader = new BufferedReader(
+                     new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+            assertEquals("SUCCESS", send(writer, reader, "BOOK C2 3"));
+        }
+        server.stop();
+
+        FlightSeatsMap stored = bookingProcessor.loadSeatMap();
+        assertFalse(stored.bookSeat('C', 4, 1).isSuccess(), "C4 should be saved as booked on stop");
+    }
+
+    @Test
+    void testStopClosesClientConnections() throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort());
+             PrintWriter writer = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+             BufferedReader reader = new BufferedReader(
+                     new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+            socket.setSoTimeout(5000);
+            assertEquals("SUCCESS", send(writer, reader, "BOOK C2 1"));
+            server.stop();
+            String response;
+            try {
+                response = send(writer, reader, "BOOK D0 1");
+            } catch (SocketException e) {
+                response = null;
+            }
+            assertNull(response, "Connection should be closed on stop");
+        }
+
+        FlightSeatsMap stored = bookingProcessor.loadSeatMap();
+        assertFalse(stored.bookSeat('C', 2, 1).isSuccess(), "C2 should be saved as booked on stop");
+        assertTrue(stored.bookSeat('D', 0, 1).isSuccess(), "D0 was sent after the stop");
+    }
+
+    @Test
+    void testFlightCommandsOverSocket() throws IOException {
+        String flightPath = "testServerBooking-LH1.csv";
+        new File(flightPath).delete();
+        BookingServer flightServer = new BookingServer(bookingProcessor, 0, 50);
+        flightServer.setFlightRegistry(new FlightRegistry(
+                flightId -> new BookingProcessor("testServerBooking-" + flightId + ".csv", 3, 3), 4, 60_000));
+        flightServer.start();
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), flightServer.getLocalPort());
+             PrintWriter writer = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+             BufferedReader reader = new BufferedReader(
+                     new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+            assertEquals("SUCCESS", send(writer, reader, "LH1 BOOK A0 3"));
+            assertEquals("FAIL", send(writer, reader, "LH1 BOOK A0 1"));
+            assertEquals("FAIL", send(writer, reader, "LH1 BOOK D0 1"), "LH1 has 3 rows");
+            assertEquals("SUCCESS", send(writer, reader, "BOOK A0 1"), "Default flight is separate");
+            assertEquals("FLIGHTS LH1", send(writer, reader, "FIND 3"));
+            assertEquals("FLIGHTS", send(writer, reader, "FIND 3 7"), "LH1 has 6 free seats");
+            assertEquals("FAIL", send(writer, reader, "FIND three"));
+            assertEquals("SUCCESS", send(writer, reader, "LH1 HOLD B0 2"));
+            assertEquals("FAIL", send(writer, reader, "LH1 BOOK B1 1"), "B1 of LH1 is held");
+            assertEquals("SUCCESS B0 2", send(writer, reader, "LH1 CONFIRM B0 2"));
+            assertEquals("FAIL", send(writer, reader, "HOLD B0 1"), "Default flight does not hold the seats");
+        } finally {
+            flightServer.stop();
+        }
+
+        FlightSeatsMap stored = new BookingProcessor(flightPath, 3, 3).loadSeatMap();
+        assertFalse(stored.bookSeat('A', 2, 1).isSuccess(), "A2 of LH1 should be saved as booked");
+        assertFalse(stored.bookSeat('B', 1, 1).isSuccess(), "Confirmed B1 of LH1 should be saved as booked");
+        new File(flightPath).delete();
+    }
+
+    /**
+     * Next line of the change stream skipping the HEAD lines
+     */
+    private String readChange(BufferedReader changes) throws IOException {
+        String line = changes.readLine();
+        while (line != null && line.startsWith(BookingServer.HEAD_RESPONSE + " ")) {
+            line = changes.readLine();
+        }
+        return line;
+    }
+
+    private String send(PrintWriter writer, BufferedReader reader, String command) throws IOException {
+        writer.println(command);
+        return reader.readLine();
+    }
+
+    private void deleteStorage() {
+        File testStorage = new File(filePath);
+        if (testStorage.exists()) {
+            testStorage.delete();
+        }
+    }
+}
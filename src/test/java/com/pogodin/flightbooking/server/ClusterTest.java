@@ -0,0 +1,82 @@
+package com.pogodin.flightbooking.server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static com.pogodin.flightbooking.server.LocalNodes.send;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The router and the booking servers running as the separate processes, every server with its own save-files
+ */
+class ClusterTest {
+    private static final int FLIGHTS = 30;
+
+    @TempDir
+    Path directory;
+    private final LocalNodes nodes = new LocalNodes();
+
+    @AfterEach
+    void cleanUp() throws InterruptedException {
+        nodes.close();
+    }
+
+    @Test
+    void testFlightsAreRoutedAndMovedToAddedServer() throws Exception {
+        int first = nodes.start(nodeDirectory("first"), "SERVE", "0");
+        int second = nodes.start(nodeDirectory("second"), "SERVE", "0");
+        int router = nodes.start(nodeDirectory("router"), "ROUTE", "0", String.valueOf(first), String.valueOf(second));
+
+        for (int i = 0; i < FLIGHTS; i++) {
+            assertEquals("SUCCESS", send(router, "F" + i + " BOOK A0 2"));
+        }
+        assertEquals("FAIL", send(router, "BOOK A0 1"), "Default flight is not routed");
+        assertEquals("FAIL", send(router, "F1 BOOK A0"));
+        Set<String> onFirst = storedFlights(first);
+        Set<String> onSecond = storedFlights(second);
+        assertFalse(onFirst.isEmpty() || onSecond.isEmpty(), "Both servers should own some flights");
+        assertEquals(FLIGHTS, onFirst.size() + onSecond.size(), "Every flight should be on one server only");
+
+        int third = nodes.start(nodeDirectory("third"), "SERVE", "0");
+        String moved = send(router, "ADD " + third);
+        Set<String> onThird = storedFlights(third);
+        assertFalse(onThird.isEmpty(), "Added server should take over some flights");
+        assertEquals("MOVED " + onThird.size(), moved);
+        assertEquals("FAIL", send(router, "ADD " + third), "Server is already added");
+
+        Set<String> leftOnFirst = storedFlights(first);
+        Set<String> leftOnSecond = storedFlights(second);
+        assertTrue(onFirst.containsAll(leftOnFirst) && onSecond.containsAll(leftOnSecond),
+                "The flights should move only to the added server");
+        assertEquals(FLIGHTS, leftOnFirst.size() + leftOnSecond.size() + onThird.size());
+        for (String flightId : onThird) {
+            assertTrue(Files.exists(nodeDirectory("third").resolve("booking-" + flightId + ".csv")));
+            assertFalse(Files.exists(nodeDirectory("first").resolve("booking-" + flightId + ".csv")));
+            assertFalse(Files.exists(nodeDirectory("second").resolve("booking-" + flightId + ".csv")));
+        }
+        for (int i = 0; i < FLIGHTS; i++) {
+            assertEquals("FAIL", send(router, "F" + i + " BOOK A1 1"), "A1 of F" + i + " was booked before the move");
+            assertEquals("SUCCESS", send(router, "F" + i + " BOOK A2 1"));
+        }
+    }
+
+    private Set<String> storedFlights(int server) throws IOException {
+        String stored = send(server, "STORED");
+        assertTrue(stored.startsWith("FLIGHTS"), stored);
+        Set<String> flightIds = new TreeSet<>(Arrays.asList(stored.split(" ")));
+        flightIds.remove("FLIGHTS");
+        return flightIds;
+    }
+
+    private Path nodeDirectory(String name) throws IOException {
+        return Files.createDirectories(directory.resolve(name));
+    }
+}
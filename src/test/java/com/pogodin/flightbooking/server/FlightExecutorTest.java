@@ -0,0 +1,78 @@
+package com.pogodin.flightbooking.server;
+
+import com.pogodin.flightbooking.BookingAction;
+import com.pogodin.flightbooking.FailureCode;
+import com.pogodin.flightbooking.OperationResult;
+import com.pogodin.flightbooking.entity.BookingRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FlightExecutorTest {
+
+    @Test
+    void testSubmit_AppliedInArrivalOrderPerFlight() {
+        Map<String, List<Integer>> applied = new ConcurrentHashMap<>();
+        try (FlightExecutor executor = new FlightExecutor((flightId, request) -> {
+            applied.computeIfAbsent(flightId, id -> new ArrayList<>()).add(request.passengers());
+            return OperationResult.success();
+        })) {
+            List<CompletableFuture<OperationResult>> results = new ArrayList<>();
+            for (int i = 1; i <= 1_000; i++) {
+                results.add(executor.submit("F" + i % 3, new BookingRequest(BookingAction.BOOK, 'A', 0, i)));
+            }
+            results.forEach(CompletableFuture::join);
+        }
+
+        for (int flight = 0; flight < 3; flight++) {
+            List<Integer> passengers = applied.get("F" + flight);
+            assertEquals(1_000 / 3 + (flight > 0 && flight <= 1_000 % 3 ? 1 : 0), passengers.size());
+            for (int i = 1; i < passengers.size(); i++) {
+                assertTrue(passengers.get(i - 1) < passengers.get(i), "Requests of F" + flight + " are reordered");
+            }
+        }
+    }
+
+    @Test
+    void testSubmit_FlightsDoNotWaitForEachOther() throws InterruptedException {
+        CountDownLatch otherFlightApplied = new CountDownLatch(1);
+        try (FlightExecutor executor = new FlightExecutor((flightId, request) -> {
+            if (flightId.equals("SLOW")) {
+                try {
+                    // completes only if the other flight is applied meanwhile
+                    return otherFlightApplied.await(5, TimeUnit.SECONDS)
+                            ? OperationResult.success() : OperationResult.failure(FailureCode.FLIGHT_UNAVAILABLE, "blocked");
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return OperationResult.failure(FailureCode.FLIGHT_UNAVAILABLE, "interrupted");
+                }
+            }
+            otherFlightApplied.countDown();
+            return OperationResult.success();
+        })) {
+            CompletableFuture<OperationResult> slow = executor.submit("SLOW", new BookingRequest(BookingAction.BOOK, 'A', 0, 1));
+            assertTrue(executor.process("FAST", new BookingRequest(BookingAction.BOOK, 'A', 0, 1)).isSuccess());
+            assertTrue(slow.join().isSuccess());
+        }
+    }
+
+    @Test
+    void testProcess_RethrowsFailureOfOperation() {
+        try (FlightExecutor executor = new FlightExecutor((flightId, request) -> {
+            throw new IllegalStateException("store is broken");
+        })) {
+            BookingRequest request = new BookingRequest(BookingAction.BOOK, 'A', 0, 1);
+            assertThrows(IllegalStateException.class, () -> executor.process("F1", request));
+            assertThrows(IllegalStateException.class, () -> executor.process("F1", request),
+                    "Mailbox should be drained again after the failure");
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.pogodin.flightbooking.server;
+
+import com.pogodin.flightbooking.MainApp;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The application started in the separate JVMs on the local ports, as it is deployed
+ */
+class LocalNodes implements AutoCloseable {
+    private final List<Process> processes = new ArrayList<>();
+
+    /**
+     * Starting the application with the save-files in the directory, E.G. start(directory, "SERVE", "0")
+     *
+     * @param directory working directory of the node, the save-files and the logs are kept in it
+     * @param args      arguments of the application
+     * @return the port the node listens on
+     */
+    int start(Path directory, String... args) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        if (ManagementFactory.getRuntimeMXBean().getInputArguments().contains("--enable-preview")) {
+            command.add("--enable-preview");
+        }
+        command.add("-Dbooking.file=" + directory.resolve("booking.csv"));
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(MainApp.class.getName());
+        command.addAll(List.of(args));
+        Process process = new ProcessBuilder(command)
+                .directory(directory.toFile())
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        processes.add(process);
+
+        BufferedReader output = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        String line = output.readLine();
+        assertNotNull(line, "Node " + String.join(" ", args) + " exited");
+        assertTrue(line.startsWith("LISTENING "), "Node " + String.join(" ", args) + " failed: " + line);
+        return Integer.parseInt(line.substring("LISTENING ".length()));
+    }
+
+    /**
+     * Sending one command on a new connection
+     *
+     * @return the response line
+     */
+    static String send(int port, String command) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             PrintWriter writer = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+             BufferedReader reader = new BufferedReader(
+                     new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+            socket.setSoTimeout(5000);
+            writer.println(command);
+            return reader.readLine();
+        }
+    }
+
+    /**
+     * Stopping the nodes the way the shutdown hooks run, killing those not stopped in time
+     */
+    @Override
+    public void close() throws InterruptedException {
+        for (Process process : processes) {
+            process.destroy();
+        }
+        for (Process process : processes) {
+            if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.pogodin.flightbooking.server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static com.pogodin.flightbooking.server.LocalNodes.send;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The leader and the followers running as the separate processes, as they are deployed
+ */
+class ReplicationTest {
+    private static final long CONVERGE_MILLIS = 15_000;
+
+    @TempDir
+    Path directory;
+    private final LocalNodes nodes = new LocalNodes();
+
+    @AfterEach
+    void cleanUp() throws InterruptedException {
+        nodes.close();
+    }
+
+    @Test
+    void testFollowersConvergeWithLeader() throws Exception {
+        int leader = nodes.start(directory, "SERVE", "0");
+        int follower = nodes.start(directory, "FOLLOW", String.valueOf(leader), "0");
+
+        assertEquals("SUCCESS", send(leader, "BOOK A0 2"));
+        assertEquals("SUCCESS", send(leader, "LH1 BOOK C2 3"));
+        assertEquals("SUCCESS", send(leader, "BOOK B3 1"));
+        assertEquals("FAIL", send(leader, "BOOK B3 1"));
+        // started from the snapshot taken in the middle of the changes
+        int lateFollower = nodes.start(directory, "FOLLOW", String.valueOf(leader), "0");
+        assertEquals("SUCCESS", send(leader, "CANCEL A0 1"));
+        assertEquals("SUCCESS", send(leader, "LH2 BOOK A0 8"));
+        assertEquals("SUCCESS", send(leader, "LH1 CANCEL C3 1"));
+
+        for (int node : new int[]{follower, lateFollower}) {
+            awaitConvergence(leader, node);
+            assertEquals("FLIGHTS LH1", send(node, "FIND 8 157"));
+            assertEquals("FAIL", send(node, "BOOK A5 1"), "Followers are read-only");
+        }
+        assertEquals("SEATS 01000000 00010000", firstRows(send(follower, "SEATS"), 2));
+        assertEquals("SEATS 00000000 00000000 00101000", firstRows(send(follower, "SEATS LH1"), 3));
+    }
+
+    @Test
+    void testFollowerReadsDoNotCreateFlightsOnLeader() throws Exception {
+        int leader = nodes.start(directory, "SERVE", "0");
+        int follower = nodes.start(directory, "FOLLOW", String.valueOf(leader), "0");
+        assertEquals("SUCCESS", send(leader, "LH1 BOOK A0 1"));
+
+        assertEquals("FAIL", send(follower, "SEATS LH9"), "Leader has no flight LH9");
+        assertEquals(send(leader, "SEATS LH1"), send(follower, "SEATS LH1"));
+        assertEquals("FLIGHTS LH1", send(leader, "STORED"), "Reads of the follower should not create the flights");
+    }
+
+    private void awaitConvergence(int leader, int follower) throws Exception {
+        long deadline = System.currentTimeMillis() + CONVERGE_MILLIS;
+        while (true) {
+            boolean converged = send(follower, "LAG").startsWith("LAG 0 ");
+            for (String command : new String[]{"SEATS", "SEATS LH1", "SEATS LH2"}) {
+                converged &= send(leader, command).equals(send(follower, command));
+            }
+            if (converged) {
+                return;
+            }
+            assertTrue(System.currentTimeMillis() < deadline, "Follower on port " + follower + " did not converge");
+            Thread.sleep(50);
+        }
+    }
+
+    private static String firstRows(String seats, int rows) {
+        String[] parts = seats.split(" ");
+        return String.join(" ", List.of(parts).subList(0, rows + 1));
+    }
+}